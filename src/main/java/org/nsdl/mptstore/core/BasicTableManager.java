@@ -71,6 +71,26 @@ public class BasicTableManager
      */
     private Map<String, PredicateNode> _reverseMap;
 
+    /**
+     * The version of the in-memory mappings, incremented on each change.
+     */
+    private long _mappingVersion;
+
+    /**
+     * The <code>StatisticsReader</code> to use when refreshing statistics.
+     */
+    private final StatisticsReader _statisticsReader;
+
+    /**
+     * The per-predicate table statistics.
+     */
+    private final StatisticsCatalog _statistics;
+
+    /**
+     * The summary of which predicates each node appears with, if enabled.
+     */
+    private volatile PredicateSummaryIndex _summaryIndex;
+
     /**
      * Initialize the table manager. This will create the map table if it
      * doesn't yet exist, and will read the current mappings into memory.
@@ -93,11 +113,44 @@ public class BasicTableManager
                              final String mapTable,
                              final String soTablePrefix)
             throws SQLException {
+        this(dataSource, ddlGenerator, mapTable, soTablePrefix,
+                new GenericStatisticsReader());
+    }
+
+    /**
+     * Initialize the table manager with a specific
+     * <code>StatisticsReader</code>. This will create the map table if it
+     * doesn't yet exist, and will read the current mappings into memory.
+     * Statistics are not read until {@link #refreshStatistics()} is called.
+     *
+     * @param dataSource
+     *        The DataSource from which to obtain connections for DDL
+     *        operations.
+     * @param ddlGenerator
+     *        The DDLGenerator to use when DDL is needed.
+     * @param mapTable
+     *        The name of the table in which the table-to-predicate mappings are
+     *        persisted.
+     * @param soTablePrefix
+     *        The prefix for all predicate table names.
+     * @param statisticsReader
+     *        The StatisticsReader to use when refreshing statistics.
+     * @throws SQLException
+     *         if any kind of database error occurs.
+     */
+    public BasicTableManager(final DataSource dataSource,
+                             final DDLGenerator ddlGenerator,
+                             final String mapTable,
+                             final String soTablePrefix,
+                             final StatisticsReader statisticsReader)
+            throws SQLException {
 
         _dataSource = dataSource;
         _ddlGenerator = ddlGenerator;
         _mapTable = mapTable;
         _soTablePrefix = soTablePrefix;
+        _statisticsReader = statisticsReader;
+        _statistics = new StatisticsCatalog();
 
         Connection conn = dataSource.getConnection();
         try {
@@ -170,6 +223,93 @@ public class BasicTableManager
         }
     }
 
+    /** {@inheritDoc} */
+    public long getMappingVersion() {
+        synchronized (_map) {
+            return _mappingVersion;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public StatisticsCatalog getStatistics() {
+        return _statistics;
+    }
+
+    /** {@inheritDoc} */
+    public PredicateSummaryIndex getSummaryIndex() {
+        return _summaryIndex;
+    }
+
+    /**
+     * Start maintaining a summary of which predicates each subject and
+     * object appears with, building it from the current predicate tables.
+     * <p>
+     *   This reads every predicate table, so it may take some time on a
+     *   large store.  The summary must see every triple added from then
+     *   on, so it should only be enabled if all writes go through this
+     *   MPTStore instance.  It is best enabled before any writes begin,
+     *   since a write already in progress when this is called may be
+     *   missed.
+     * </p>
+     *
+     * @param numBuckets The number of hash buckets for each of subjects
+     *        and objects.  See {@link PredicateSummaryIndex}.
+     * @throws SQLException if a database error occurs.
+     */
+    public void enableSummaryIndex(final int numBuckets) throws SQLException {
+        PredicateSummaryIndex index = new PredicateSummaryIndex(numBuckets);
+        _summaryIndex = index;
+        Map<String, PredicateNode> tables;
+        synchronized (_map) {
+            loadMapTable();
+            tables = new HashMap<String, PredicateNode>(_reverseMap);
+        }
+        Connection conn = _dataSource.getConnection();
+        try {
+            index.rebuild(conn, tables);
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                LOG.warn("unable to close/release connection", e);
+            }
+        }
+    }
+
+    /**
+     * Stop maintaining the predicate summary index.
+     */
+    public void disableSummaryIndex() {
+        _summaryIndex = null;
+    }
+
+    /** {@inheritDoc} */
+    public void refreshStatistics() throws SQLException {
+        LOG.info("Refreshing predicate table statistics");
+        Map<String, PredicateNode> tables;
+        synchronized (_map) {
+            loadMapTable();
+            tables = new HashMap<String, PredicateNode>(_reverseMap);
+        }
+        Map<String, TableStatistics> stats;
+        Connection conn = _dataSource.getConnection();
+        try {
+            stats = _statisticsReader.readStatistics(conn, tables.keySet());
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                LOG.warn("unable to close/release connection", e);
+            }
+        }
+        for (Map.Entry<String, TableStatistics> entry : stats.entrySet()) {
+            PredicateNode predicate = tables.get(entry.getKey());
+            if (predicate != null) {
+                _statistics.put(predicate, entry.getValue());
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     public int dropEmptyPredicateTables() throws SQLException {
         LOG.info("Dropping empty predicate tables");
@@ -269,10 +409,8 @@ public class BasicTableManager
         if (_map == null || _reverseMap == null) {
             _map = new HashMap<PredicateNode, String>();
             _reverseMap = new HashMap<String, PredicateNode>();
-        } else {
-            _map.clear();
-            _reverseMap.clear();
         }
+        Map<PredicateNode, String> map = new HashMap<PredicateNode, String>();
         Statement st = conn.createStatement();
         ResultSet results = null;
         String pString = null;
@@ -282,8 +420,7 @@ public class BasicTableManager
                 String table = _soTablePrefix + results.getInt(1);
                 pString = results.getString(2);
                 PredicateNode predicate = NTriplesUtil.parsePredicate(pString);
-                _map.put(predicate, table);
-                _reverseMap.put(table, predicate);
+                map.put(predicate, table);
             }
         } catch (ParseException e) {
             throw new SQLException("Unable to parse predicate (" + pString
@@ -302,6 +439,17 @@ public class BasicTableManager
                 LOG.warn("unable to close statement", e);
             }
         }
+        synchronized (_map) {
+            if (!map.equals(_map)) {
+                _map.clear();
+                _reverseMap.clear();
+                for (Map.Entry<PredicateNode, String> entry : map.entrySet()) {
+                    _map.put(entry.getKey(), entry.getValue());
+                    _reverseMap.put(entry.getValue(), entry.getKey());
+                }
+                _mappingVersion++;
+            }
+        }
     }
 
     /**
@@ -355,7 +503,9 @@ public class BasicTableManager
             synchronized (_map) {
                 _map.put(predicate, table);
                 _reverseMap.put(table, predicate);
+                _mappingVersion++;
             }
+            _statistics.put(predicate, TableStatistics.EMPTY);
             return table;
         }
     }
@@ -517,7 +667,12 @@ public class BasicTableManager
     /** {@inheritDoc} */
     public int dropAllPredicateTables() throws SQLException {
         LOG.info("Dropping all predicate tables");
-        return dropPredicateTables(true);
+        int dropCount = dropPredicateTables(true);
+        PredicateSummaryIndex index = _summaryIndex;
+        if (index != null) {
+            index.clear();
+        }
+        return dropCount;
     }
 
     /**
@@ -577,8 +732,12 @@ public class BasicTableManager
         LOG.info("Unmapping " + pString + " and dropping associated table: "
                 + table);
 
-        _map.remove(predicate);
-        _reverseMap.remove(table);
+        synchronized (_map) {
+            _map.remove(predicate);
+            _reverseMap.remove(table);
+            _mappingVersion++;
+        }
+        _statistics.remove(predicate);
 
         PreparedStatement ps =
                 conn.prepareStatement("DELETE FROM " + _mapTable
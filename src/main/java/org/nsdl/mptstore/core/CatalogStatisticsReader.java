@@ -0,0 +1,167 @@
+package org.nsdl.mptstore.core;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A partial <code>StatisticsReader</code> that reads estimates from a
+ * vendor-specific system catalog.
+ *
+ * <p>
+ *   Subclasses provide two queries: one that returns
+ *   <code>(table name, row count)</code> rows, and one that returns
+ *   <code>(table name, column name, distinct count)</code> rows for the
+ *   s and o columns.  Both may return rows for tables other than
+ *   predicate tables; these are ignored.  Table and column names are
+ *   matched case-insensitively, since databases differ in how they fold
+ *   unquoted identifiers.
+ * </p>
+ */
+public abstract class CatalogStatisticsReader implements StatisticsReader {
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(CatalogStatisticsReader.class.getName());
+
+    /**
+     * Get the query that returns the estimated row count of each table.
+     *
+     * @return the SQL.
+     */
+    protected abstract String getRowCountSQL();
+
+    /**
+     * Get the query that returns the estimated distinct value count of
+     * each column.
+     *
+     * @return the SQL.
+     */
+    protected abstract String getDistinctCountSQL();
+
+    /**
+     * Convert a raw distinct value from the catalog into a count.
+     *
+     * The default implementation returns the value as-is.
+     *
+     * @param rawValue the value reported by the catalog.
+     * @param rowCount the estimated row count of the table.
+     * @return the estimated number of distinct values.
+     */
+    protected long getDistinctCount(final double rawValue,
+                                    final long rowCount) {
+        return Math.round(rawValue);
+    }
+
+    /** {@inheritDoc} */
+    public Map<String, TableStatistics> readStatistics(
+            final Connection conn,
+            final Set<String> tables)
+            throws SQLException {
+
+        Map<String, String> names = new HashMap<String, String>();
+        for (String table : tables) {
+            names.put(table.toLowerCase(), table);
+        }
+
+        Map<String, Long> rows = new HashMap<String, Long>();
+        Map<String, Long> subjects = new HashMap<String, Long>();
+        Map<String, Long> objects = new HashMap<String, Long>();
+
+        Statement st = conn.createStatement();
+        try {
+            ResultSet results = st.executeQuery(getRowCountSQL());
+            try {
+                while (results.next()) {
+                    String table = names.get(
+                            results.getString(1).toLowerCase());
+                    long count = results.getLong(2);
+                    if (table != null && count >= 0) {
+                        rows.put(table, Long.valueOf(count));
+                    }
+                }
+            } finally {
+                close(results);
+            }
+            results = st.executeQuery(getDistinctCountSQL());
+            try {
+                while (results.next()) {
+                    String table = names.get(
+                            results.getString(1).toLowerCase());
+                    if (table != null && rows.containsKey(table)) {
+                        String column = results.getString(2).toLowerCase();
+                        Long count = Long.valueOf(getDistinctCount(
+                                results.getDouble(3),
+                                rows.get(table).longValue()));
+                        if (column.equals("s")) {
+                            subjects.put(table, count);
+                        } else if (column.equals("o")) {
+                            objects.put(table, count);
+                        }
+                    }
+                }
+            } finally {
+                close(results);
+            }
+        } finally {
+            try {
+                st.close();
+            } catch (SQLException e) {
+                LOG.warn("unable to close statement", e);
+            }
+        }
+
+        Map<String, TableStatistics> stats =
+                new HashMap<String, TableStatistics>();
+        for (Map.Entry<String, Long> entry : rows.entrySet()) {
+            String table = entry.getKey();
+            long rowCount = entry.getValue().longValue();
+            stats.put(table, new TableStatistics(rowCount,
+                    getOrDefault(subjects, table, rowCount),
+                    getOrDefault(objects, table, rowCount)));
+        }
+        return stats;
+    }
+
+    /**
+     * Get the value for the given key, or a default value if not present.
+     *
+     * @param map the map.
+     * @param key the key.
+     * @param defaultValue the default value.
+     * @return the value.
+     */
+    private static long getOrDefault(final Map<String, Long> map,
+                                     final String key,
+                                     final long defaultValue) {
+        Long value = map.get(key);
+        if (value == null) {
+            return defaultValue;
+        } else {
+            return value.longValue();
+        }
+    }
+
+    /**
+     * Close the given result set, logging any error.
+     *
+     * @param results the result set.
+     */
+    private static void close(final ResultSet results) {
+        try {
+            results.close();
+        } catch (SQLException e) {
+            LOG.warn("unable to close result set", e);
+        }
+    }
+
+}
@@ -1,9 +1,13 @@
 package org.nsdl.mptstore.core;
 
+import java.io.OutputStream;
+import java.io.Writer;
+
 import java.sql.Connection;
 
 import java.util.Iterator;
 
+import org.nsdl.mptstore.query.ExportFormat;
 import org.nsdl.mptstore.query.QueryException;
 import org.nsdl.mptstore.query.QueryResults;
 import org.nsdl.mptstore.query.lang.QueryLanguage;
@@ -129,4 +133,64 @@ public interface DatabaseAdaptor {
                        String queryText)
             throws QueryException;
 
+    /**
+     * Evaluate the given query in the specified language and write
+     * the results to the given <code>Writer</code> in the given format.
+     *
+     * <p>
+     *   Unlike {@link #query(Connection, QueryLanguage, int, boolean,
+     *   String)}, results are copied to the output as they are read from
+     *   the database, without parsing them into nodes.  This is much
+     *   cheaper when the results are only going to be written out again,
+     *   as for bulk exports.  The caller is responsible for the
+     *   connection, which is not released by this method.
+     * </p>
+     *
+     * @param connection the database connection to use.
+     * @param lang the language of the query.
+     * @param fetchSize the JDBC fetch size hint for each statement.
+     *                  See {@link #query(Connection, QueryLanguage, int,
+     *                  boolean, String)}.
+     * @param queryText The query.
+     * @param out where to write the results.  It is flushed, but not
+     *            closed.
+     * @param format the format to write.
+     * @return the number of result rows written.
+     * @throws QueryException if the query failed for any reason, or
+     *         the results could not be written.
+     */
+    long export(Connection connection,
+                QueryLanguage lang,
+                int fetchSize,
+                String queryText,
+                Writer out,
+                ExportFormat format)
+            throws QueryException;
+
+    /**
+     * Evaluate the given query in the specified language and write
+     * the results to the given <code>OutputStream</code> in the given
+     * format, encoded as UTF-8.
+     *
+     * @param connection the database connection to use.
+     * @param lang the language of the query.
+     * @param fetchSize the JDBC fetch size hint for each statement.
+     * @param queryText The query.
+     * @param out where to write the results.  It is flushed, but not
+     *            closed.
+     * @param format the format to write.
+     * @return the number of result rows written.
+     * @throws QueryException if the query failed for any reason, or
+     *         the results could not be written.
+     * @see #export(Connection, QueryLanguage, int, String, Writer,
+     *      ExportFormat)
+     */
+    long export(Connection connection,
+                QueryLanguage lang,
+                int fetchSize,
+                String queryText,
+                OutputStream out,
+                ExportFormat format)
+            throws QueryException;
+
 }
@@ -1,5 +1,11 @@
 package org.nsdl.mptstore.core;
 
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -7,15 +13,25 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Executor;
+
+import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
 
+import org.nsdl.mptstore.query.ExportFormat;
+import org.nsdl.mptstore.query.ParallelSQLUnionQueryResults;
+import org.nsdl.mptstore.query.PrefetchingQueryResults;
 import org.nsdl.mptstore.query.QueryException;
 import org.nsdl.mptstore.query.QueryResults;
+import org.nsdl.mptstore.query.SQLResultsExporter;
 import org.nsdl.mptstore.query.SQLUnionQueryResults;
+import org.nsdl.mptstore.query.StatementCache;
+import org.nsdl.mptstore.query.lang.CachingQueryCompiler;
 import org.nsdl.mptstore.query.lang.QueryCompiler;
 import org.nsdl.mptstore.query.lang.QueryLanguage;
 import org.nsdl.mptstore.query.lang.spo.SPOQueryCompiler;
+import org.nsdl.mptstore.query.provider.LimitedSQLProvider;
 import org.nsdl.mptstore.query.provider.SQLProvider;
 import org.nsdl.mptstore.rdf.PredicateNode;
 import org.nsdl.mptstore.rdf.Triple;
@@ -47,6 +63,33 @@ public class GenericDatabaseAdaptor implements DatabaseAdaptor {
      */
     private Map<QueryLanguage, QueryCompiler> _compilerMap;
 
+    /**
+     * The cache of prepared statements used for queries, if any.
+     */
+    private StatementCache _statementCache;
+
+    /**
+     * The executor used to run workers for parallel and prefetching
+     * queries, if any.
+     */
+    private Executor _queryExecutor;
+
+    /**
+     * The number of rows to read ahead of the caller, or <code>0</code>
+     * if results are not read ahead.
+     */
+    private int _prefetchSize;
+
+    /**
+     * Whether query results hold lazily-parsed nodes.
+     */
+    private boolean _lazyNodes;
+
+    /**
+     * The dialect used to express database-specific query SQL.
+     */
+    private SQLDialect _dialect = new GenericSQLDialect();
+
     /**
      * Get an instance supporting the built-in query languages.
      *
@@ -79,6 +122,151 @@ public class GenericDatabaseAdaptor implements DatabaseAdaptor {
         _compilerMap = compilerMap;
     }
 
+    /**
+     * Set the maximum number of compiled queries to cache for each
+     * supported language.
+     * <p>
+     *   When enabled, repeated queries skip parsing and SQL generation.
+     *   See {@link CachingQueryCompiler} for details.
+     * </p>
+     *
+     * @param maxSize The maximum number of compiled queries to keep per
+     *        language, or <code>0</code> to disable caching.
+     */
+    public void setQueryCacheSize(final int maxSize) {
+        Map<QueryLanguage, QueryCompiler> compilerMap =
+                new HashMap<QueryLanguage, QueryCompiler>();
+        for (Map.Entry<QueryLanguage, QueryCompiler> entry
+                : _compilerMap.entrySet()) {
+            QueryCompiler compiler = entry.getValue();
+            if (compiler instanceof CachingQueryCompiler) {
+                compiler = ((CachingQueryCompiler) compiler).getCompiler();
+            }
+            if (maxSize > 0) {
+                compiler = new CachingQueryCompiler(compiler,
+                                                    _tableManager,
+                                                    maxSize);
+            }
+            compilerMap.put(entry.getKey(), compiler);
+        }
+        _compilerMap = compilerMap;
+    }
+
+    /**
+     * Set the cache of prepared statements to use for queries.
+     * <p>
+     *   When set, queries whose compiled form supports bind parameters
+     *   (see {@link org.nsdl.mptstore.query.provider.ParameterizedSQLProvider})
+     *   are executed as prepared statements, so the database sees the same
+     *   SQL text for every query of the same shape.  When <code>null</code>
+     *   (the default), node values are inlined into the SQL.
+     * </p>
+     * <p>
+     *   Connections passed to queries that do not release them
+     *   automatically, and to the <code>export</code> methods, must be
+     *   passed to {@link StatementCache#release(Connection)} before they
+     *   are closed or returned to a pool.  Otherwise their idle statements
+     *   stay open indefinitely.
+     * </p>
+     *
+     * @param statementCache The statement cache, or <code>null</code>.
+     */
+    public void setStatementCache(final StatementCache statementCache) {
+        _statementCache = statementCache;
+    }
+
+    /**
+     * Set the executor used to run workers for parallel and prefetching
+     * queries.
+     * <p>
+     *   When <code>null</code> (the default), a new daemon thread is
+     *   started for each worker.
+     * </p>
+     *
+     * @param queryExecutor The executor, or <code>null</code>.
+     * @see #parallelQuery(DataSource, QueryLanguage, int, int, boolean,
+     *      String)
+     */
+    public void setQueryExecutor(final Executor queryExecutor) {
+        _queryExecutor = queryExecutor;
+    }
+
+    /**
+     * Set the number of rows to read ahead of the caller in a background
+     * thread.
+     * <p>
+     *   When enabled, results returned by
+     *   {@link #query(Connection, QueryLanguage, int, boolean, String)}
+     *   are fetched and parsed while the caller processes earlier rows.
+     *   See {@link PrefetchingQueryResults} for the implications for
+     *   connections that are not automatically released.  Workers run
+     *   on the executor given to {@link #setQueryExecutor(Executor)},
+     *   if any.
+     * </p>
+     *
+     * @param prefetchSize The number of rows to read ahead, or
+     *        <code>0</code> (the default) to disable prefetching.
+     */
+    public void setPrefetchSize(final int prefetchSize) {
+        _prefetchSize = prefetchSize;
+    }
+
+    /**
+     * Set whether query results hold nodes that are only parsed when
+     * their parts are needed.
+     * <p>
+     *   When enabled, results returned by
+     *   {@link #query(Connection, QueryLanguage, int, boolean, String)}
+     *   hold {@link org.nsdl.mptstore.rdf.LazyNode}s rather than
+     *   <code>URIReference</code>s and <code>Literal</code>s.  This makes
+     *   reading results much cheaper for callers that only write the
+     *   nodes out again in N-Triples form.
+     * </p>
+     * <p>
+     *   Callers that compare result nodes with other nodes, or cast them
+     *   to <code>SubjectNode</code>, <code>PredicateNode</code> or
+     *   <code>ObjectNode</code>, must use
+     *   {@link org.nsdl.mptstore.rdf.LazyNode#getNode()} first: a lazy node
+     *   implements none of those types, and is only equal to other lazy
+     *   nodes.
+     * </p>
+     *
+     * @param lazyNodes Whether to return lazy nodes, <code>false</code>
+     *        by default.
+     */
+    public void setLazyNodes(final boolean lazyNodes) {
+        _lazyNodes = lazyNodes;
+    }
+
+    /**
+     * Set the dialect used to express database-specific query SQL, such
+     * as result limits.
+     *
+     * The dialect is also passed to each {@link SPOQueryCompiler} in the
+     * compiler map, including any wrapped by a
+     * {@link CachingQueryCompiler}, whose cached queries are discarded.
+     * Other compilers must be given the dialect by the caller.
+     *
+     * @param dialect The dialect of the database, {@link GenericSQLDialect}
+     *        by default.
+     */
+    public void setSQLDialect(final SQLDialect dialect) {
+        _dialect = dialect;
+        for (QueryCompiler compiler : _compilerMap.values()) {
+            CachingQueryCompiler cache = null;
+            if (compiler instanceof CachingQueryCompiler) {
+                cache = (CachingQueryCompiler) compiler;
+                compiler = cache.getCompiler();
+            }
+            if (compiler instanceof SPOQueryCompiler) {
+                ((SPOQueryCompiler) compiler).setDialect(dialect);
+                if (cache != null) {
+                    cache.clear();
+                }
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     public void addTriples(final Connection conn,
                            final Iterator<Triple> triples)
@@ -113,6 +301,8 @@ public class GenericDatabaseAdaptor implements DatabaseAdaptor {
 
         Map<PredicateNode, PreparedStatement> statements =
                 new HashMap<PredicateNode, PreparedStatement>();
+        Map<PredicateNode, Long> counts = new HashMap<PredicateNode, Long>();
+        PredicateSummaryIndex index = _tableManager.getSummaryIndex();
 
         try {
             while (triples.hasNext()) {
@@ -146,10 +336,26 @@ public class GenericDatabaseAdaptor implements DatabaseAdaptor {
                     statements.put(predicate, statement);
                 }
 
-                statement.setString(1, triple.getSubject().toString());
-                statement.setString(2, triple.getObject().toString());
-                statement.execute();
+                String subject = triple.getSubject().toString();
+                String object = triple.getObject().toString();
+                if (index != null && !delete) {
+                    // record before the triple becomes visible
+                    index.add(subject, predicate, object);
+                }
+                statement.setString(1, subject);
+                statement.setString(2, object);
+                int updated = statement.executeUpdate();
+                if (updated > 0) {
+                    Long count = counts.get(predicate);
+                    if (count == null) {
+                        counts.put(predicate, Long.valueOf(updated));
+                    } else {
+                        counts.put(predicate,
+                                Long.valueOf(count.longValue() + updated));
+                    }
+                }
             }
+            recordUpdates(counts, delete);
         } catch (SQLException e) {
             throw new ModificationException("Database update failed", e);
         } finally {
@@ -167,6 +373,28 @@ public class GenericDatabaseAdaptor implements DatabaseAdaptor {
         }
     }
 
+    /**
+     * Record the number of triples added or deleted for each predicate
+     * in the statistics catalog.
+     *
+     * @param counts The number of affected rows, per predicate.
+     * @param delete Boolean indicating whether the rows were added or
+     *        deleted.
+     */
+    private void recordUpdates(final Map<PredicateNode, Long> counts,
+                               final boolean delete) {
+        StatisticsCatalog statistics = _tableManager.getStatistics();
+        for (Map.Entry<PredicateNode, Long> entry : counts.entrySet()) {
+            if (delete) {
+                statistics.recordDeleted(entry.getKey(),
+                                         entry.getValue().longValue());
+            } else {
+                statistics.recordAdded(entry.getKey(),
+                                       entry.getValue().longValue());
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     public void deleteAllTriples(final Connection conn)
             throws ModificationException {
@@ -185,15 +413,63 @@ public class GenericDatabaseAdaptor implements DatabaseAdaptor {
                               final boolean autoReleaseConnection,
                               final String query)
             throws QueryException {
+        return query(connection, language, fetchSize, autoReleaseConnection,
+                     query, -1, 0);
+    }
+
+    /**
+     * Evaluate the given query in the specified language and return
+     * a window of the results.
+     * <p>
+     *   The window is pushed into the SQL in the configured dialect, so
+     *   rows outside of it are not sent by the database.  If the query
+     *   compiles to several statements, each is limited separately and
+     *   the window is applied across them, with no further statements
+     *   executed once it is filled.  See {@link LimitedSQLProvider}.
+     * </p>
+     *
+     * @param connection The database connection to use.
+     * @param language The language of the query.
+     * @param fetchSize The JDBC fetch size hint for each statement.
+     * @param autoReleaseConnection Whether to automatically release/close
+     *        the connection if the query fails or the results are closed.
+     * @param query The query.
+     * @param limit The maximum number of rows to return, or a negative
+     *        number for no limit.
+     * @param offset The number of rows to skip before returning any.
+     * @return the results.
+     * @throws QueryException if the query failed for any reason.
+     * @see DatabaseAdaptor#query(Connection, QueryLanguage, int, boolean,
+     *      String)
+     */
+    public QueryResults query(final Connection connection,
+                              final QueryLanguage language,
+                              final int fetchSize,
+                              final boolean autoReleaseConnection,
+                              final String query,
+                              final int limit,
+                              final int offset)
+            throws QueryException {
         QueryResults results = null;
         try {
             QueryCompiler compiler = _compilerMap.get(language);
             if (compiler != null) {
                 SQLProvider provider = compiler.compile(query);
+                if (limit >= 0 || offset > 0) {
+                    provider = new LimitedSQLProvider(provider, _dialect,
+                                                      limit, offset);
+                }
                 results = new SQLUnionQueryResults(connection,
                                                    provider,
                                                    fetchSize,
-                                                   autoReleaseConnection);
+                                                   autoReleaseConnection,
+                                                   _statementCache,
+                                                   _lazyNodes);
+                if (_prefetchSize > 0) {
+                    results = new PrefetchingQueryResults(results,
+                                                          _prefetchSize,
+                                                          _queryExecutor);
+                }
                 return results;
             } else {
                 throw new QueryException("Query language not supported: "
@@ -206,4 +482,101 @@ public class GenericDatabaseAdaptor implements DatabaseAdaptor {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     *   The output is buffered internally unless it is already a
+     *   <code>BufferedWriter</code>.  See {@link SQLResultsExporter}.
+     * </p>
+     */
+    public long export(final Connection connection,
+                       final QueryLanguage language,
+                       final int fetchSize,
+                       final String query,
+                       final Writer out,
+                       final ExportFormat format)
+            throws QueryException {
+        QueryCompiler compiler = _compilerMap.get(language);
+        if (compiler != null) {
+            SQLProvider provider = compiler.compile(query);
+            Writer writer = out;
+            if (!(writer instanceof BufferedWriter)) {
+                writer = new BufferedWriter(writer);
+            }
+            return new SQLResultsExporter(connection,
+                                          provider,
+                                          fetchSize,
+                                          _statementCache)
+                    .export(writer, format);
+        } else {
+            throw new QueryException("Query language not supported: "
+                    + language.getName());
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long export(final Connection connection,
+                       final QueryLanguage language,
+                       final int fetchSize,
+                       final String query,
+                       final OutputStream out,
+                       final ExportFormat format)
+            throws QueryException {
+        try {
+            return export(connection, language, fetchSize, query,
+                          new OutputStreamWriter(out, "UTF-8"), format);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported", e);
+        }
+    }
+
+    /**
+     * Evaluate the given query in the specified language, executing the
+     * SQL statements it compiles to concurrently, each on a connection
+     * from the given <code>DataSource</code>.
+     * <p>
+     *   Every connection is released when the results are closed or
+     *   exhausted.  Since the statements run on separate connections,
+     *   they will not see any uncommitted changes.
+     *   See {@link ParallelSQLUnionQueryResults} for details.
+     * </p>
+     *
+     * @param dataSource The source of connections.
+     * @param language The language of the query.
+     * @param fetchSize The JDBC fetch size hint for each statement.
+     *        See {@link DatabaseAdaptor#query(Connection, QueryLanguage,
+     *        int, boolean, String)}.
+     * @param parallelism The maximum number of statements to execute at
+     *        once.
+     * @param preserveOrder Whether to return rows in the same order as a
+     *        sequential query would.
+     * @param query The query.
+     * @return the results.
+     * @throws QueryException if the query failed for any reason.
+     */
+    public QueryResults parallelQuery(final DataSource dataSource,
+                                      final QueryLanguage language,
+                                      final int fetchSize,
+                                      final int parallelism,
+                                      final boolean preserveOrder,
+                                      final String query)
+            throws QueryException {
+        QueryCompiler compiler = _compilerMap.get(language);
+        if (compiler != null) {
+            SQLProvider provider = compiler.compile(query);
+            return new ParallelSQLUnionQueryResults(
+                    dataSource,
+                    provider,
+                    fetchSize,
+                    parallelism,
+                    ParallelSQLUnionQueryResults.DEFAULT_QUEUE_SIZE,
+                    preserveOrder,
+                    _queryExecutor);
+        } else {
+            throw new QueryException("Query language not supported: "
+                    + language.getName());
+        }
+    }
+
 }
@@ -0,0 +1,165 @@
+package org.nsdl.mptstore.core;
+
+/**
+ * A <code>SQLDialect</code> that uses standard SQL syntax.
+ *
+ * <p>
+ *   Result windows are expressed with the SQL:2008
+ *   <code>OFFSET ... ROWS FETCH FIRST ... ROWS ONLY</code> clauses, which
+ *   are understood by Derby (10.5 and later), Postgres (8.4 and later),
+ *   H2, and Oracle (12c and later), among others.
+ * </p>
+ * <p>
+ *   Transitive closures are computed with a <code>WITH RECURSIVE</code>
+ *   common table expression, which is understood by Postgres (8.4 and
+ *   later), H2 and MySQL (8.0 and later).  Rows are combined with
+ *   <code>UNION</code> rather than <code>UNION ALL</code>, so a pair that
+ *   has already been found is never followed again and cycles end the
+ *   recursion.  When the path length is limited, the depth is carried
+ *   along with each pair and the recursion stops at the limit.
+ * </p>
+ * <p>
+ *   Literals are typed as varying-length strings with
+ *   <code>CAST(... AS VARCHAR(n))</code>.
+ * </p>
+ */
+public class GenericSQLDialect implements SQLDialect {
+
+    /**
+     * The default maximum number of values in one <code>IN</code> list,
+     * which is the limit imposed by Oracle.
+     */
+    public static final int DEFAULT_MAX_IN_LIST_SIZE = 1000;
+
+    /**
+     * Whether <code>SELECT DISTINCT</code> may be used.
+     */
+    private boolean _supportsDistinct = true;
+
+    /**
+     * The maximum number of values in one <code>IN</code> list.
+     */
+    private int _maxInListSize = DEFAULT_MAX_IN_LIST_SIZE;
+
+    /**
+     * Set whether the database can remove duplicate rows with
+     * <code>SELECT DISTINCT</code>.
+     *
+     * This is <code>true</code> by default, which is correct for the DDL
+     * generated by all built-in <code>DDLGenerator</code>s.  It should be
+     * set to <code>false</code> if the subject and object columns have
+     * been defined as large object types, such as <code>CLOB</code>.
+     *
+     * @param supportsDistinct whether <code>SELECT DISTINCT</code> may be
+     *        used.
+     */
+    public void setSupportsDistinct(final boolean supportsDistinct) {
+        _supportsDistinct = supportsDistinct;
+    }
+
+    /** {@inheritDoc} */
+    public boolean supportsDistinct() {
+        return _supportsDistinct;
+    }
+
+    /**
+     * Set the maximum number of values that may be given in a single
+     * <code>IN (...)</code> list.
+     *
+     * This is <code>DEFAULT_MAX_IN_LIST_SIZE</code> by default, which
+     * all known databases accept.  Smaller values may help databases
+     * that plan long lists poorly.
+     *
+     * @param maxInListSize the maximum number of values in one list.
+     */
+    public void setMaxInListSize(final int maxInListSize) {
+        _maxInListSize = Math.max(maxInListSize, 1);
+    }
+
+    /** {@inheritDoc} */
+    public int getMaxInListSize() {
+        return _maxInListSize;
+    }
+
+    /** {@inheritDoc} */
+    public String limit(final String sql,
+                        final int limit,
+                        final int offset) {
+        StringBuffer out = new StringBuffer(sql);
+        if (offset > 0) {
+            out.append(" OFFSET ");
+            out.append(offset);
+            out.append(" ROWS");
+        }
+        if (limit >= 0) {
+            out.append(" FETCH FIRST ");
+            out.append(limit);
+            out.append(" ROWS ONLY");
+        }
+        return out.toString();
+    }
+
+    /** {@inheritDoc} */
+    public String transitiveClosure(final String table,
+                                    final String anchor,
+                                    final boolean backward,
+                                    final int maxDepth) {
+        boolean limited = maxDepth >= 0;
+        StringBuffer out = new StringBuffer();
+        out.append("WITH RECURSIVE tc(s, o");
+        if (limited) {
+            out.append(", depth");
+        }
+        out.append(") AS (SELECT s, o");
+        if (limited) {
+            out.append(", 1");
+        }
+        out.append(" FROM ");
+        out.append(table);
+        if (anchor != null) {
+            out.append(" WHERE ");
+            out.append(anchor);
+        }
+        if (backward) {
+            out.append(" UNION SELECT ");
+            out.append(table);
+            out.append(".s, tc.o");
+        } else {
+            out.append(" UNION SELECT tc.s, ");
+            out.append(table);
+            out.append(".o");
+        }
+        if (limited) {
+            out.append(", tc.depth + 1");
+        }
+        out.append(" FROM tc JOIN ");
+        out.append(table);
+        if (backward) {
+            out.append(" ON ");
+            out.append(table);
+            out.append(".o = tc.s");
+        } else {
+            out.append(" ON tc.o = ");
+            out.append(table);
+            out.append(".s");
+        }
+        if (limited) {
+            out.append(" WHERE tc.depth < ");
+            out.append(maxDepth);
+        }
+        out.append(") SELECT ");
+        if (limited && supportsDistinct()) {
+            out.append("DISTINCT ");
+        }
+        out.append("s, o FROM tc");
+        return out.toString();
+    }
+
+    /** {@inheritDoc} */
+    public String varcharLiteral(final String quoted,
+                                 final int maxLength) {
+        return "CAST(" + quoted + " AS VARCHAR(" + Math.max(maxLength, 1)
+                + "))";
+    }
+
+}
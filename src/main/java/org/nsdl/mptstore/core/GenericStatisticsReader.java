@@ -0,0 +1,70 @@
+package org.nsdl.mptstore.core;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A <code>StatisticsReader</code> designed to work with any database.
+ *
+ * Exact statistics are computed with a
+ * <code>SELECT COUNT(*), COUNT(DISTINCT s), COUNT(DISTINCT o)</code>
+ * query against each table.  This is accurate, but requires a full scan
+ * of every predicate table, so it should be used sparingly on large
+ * stores.
+ */
+public class GenericStatisticsReader implements StatisticsReader {
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(GenericStatisticsReader.class.getName());
+
+    /** {@inheritDoc} */
+    public Map<String, TableStatistics> readStatistics(
+            final Connection conn,
+            final Set<String> tables)
+            throws SQLException {
+
+        Map<String, TableStatistics> stats =
+                new HashMap<String, TableStatistics>();
+        Statement st = conn.createStatement();
+        try {
+            for (String table : tables) {
+                ResultSet results = st.executeQuery("SELECT COUNT(*), "
+                        + "COUNT(DISTINCT s), COUNT(DISTINCT o) FROM "
+                        + table);
+                try {
+                    if (results.next()) {
+                        stats.put(table, new TableStatistics(
+                                results.getLong(1),
+                                results.getLong(2),
+                                results.getLong(3)));
+                    }
+                } finally {
+                    try {
+                        results.close();
+                    } catch (SQLException e) {
+                        LOG.warn("unable to close result set", e);
+                    }
+                }
+            }
+        } finally {
+            try {
+                st.close();
+            } catch (SQLException e) {
+                LOG.warn("unable to close statement", e);
+            }
+        }
+        return stats;
+    }
+
+}
@@ -0,0 +1,451 @@
+package org.nsdl.mptstore.core;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import org.nsdl.mptstore.rdf.PredicateNode;
+
+/**
+ * An in-memory summary of which predicates each subject and object
+ * appears with.
+ *
+ * <p>
+ *   Subjects and objects are hashed into a fixed number of buckets, and
+ *   each bucket has a bitmap of the predicates used by any node in it.
+ *   The summary is conservative: if a node appears with a predicate, the
+ *   predicate's bit is set in the node's bucket, but a set bit only means
+ *   that the node <em>may</em> appear with the predicate.  Bits are never
+ *   cleared when triples are deleted, since other nodes in the same bucket
+ *   (or other triples with the same node) may still need them.  To
+ *   tighten them again, {@link #clear()} the summary and then
+ *   {@link #rebuild(Connection, Map)} it while no writes are in progress.
+ * </p>
+ * <p>
+ *   The summary is only consulted once it is complete, i.e. once it has
+ *   been rebuilt from the predicate tables.  From then on, it must see
+ *   every triple added to the store, so it must not be used if the
+ *   database is written to by other means.  Until it is complete,
+ *   {@link #mayContain(PredicateNode, String, String)} always answers
+ *   <code>true</code>.
+ * </p>
+ * <p>
+ *   Memory use is roughly two bitmaps per bucket, each as long as the
+ *   number of predicates in use in that bucket.  More buckets give more
+ *   precise answers at the cost of more memory.
+ * </p>
+ */
+public class PredicateSummaryIndex {
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(PredicateSummaryIndex.class.getName());
+
+    /**
+     * The number of buckets for each of subjects and objects.
+     */
+    private final int _numBuckets;
+
+    /**
+     * The predicate bitmap for each subject bucket, if any.
+     */
+    private final BitSet[] _subjectBuckets;
+
+    /**
+     * The predicate bitmap for each object bucket, if any.
+     */
+    private final BitSet[] _objectBuckets;
+
+    /**
+     * The bit number of each predicate.
+     */
+    private final Map<PredicateNode, Integer> _ordinals;
+
+    /**
+     * The predicate for each bit number.
+     */
+    private final List<PredicateNode> _predicates;
+
+    /**
+     * Whether the summary reflects the entire store.
+     */
+    private boolean _complete;
+
+    /**
+     * Incremented whenever the answer to any question might have changed.
+     */
+    private long _version;
+
+    /**
+     * Instantiate an empty, incomplete summary.
+     *
+     * @param numBuckets the number of buckets for each of subjects and
+     *        objects.
+     */
+    public PredicateSummaryIndex(final int numBuckets) {
+        _numBuckets = numBuckets;
+        _subjectBuckets = new BitSet[numBuckets];
+        _objectBuckets = new BitSet[numBuckets];
+        _ordinals = new HashMap<PredicateNode, Integer>();
+        _predicates = new ArrayList<PredicateNode>();
+    }
+
+    /**
+     * Record that a triple has been (or is about to be) added.
+     *
+     * To ensure the triple is never missed by a query, this should be
+     * called before the triple is visible to other connections.
+     *
+     * @param subject the N-Triples form of the subject.
+     * @param predicate the predicate.
+     * @param object the N-Triples form of the object.
+     */
+    public synchronized void add(final String subject,
+                                 final PredicateNode predicate,
+                                 final String object) {
+        int ordinal = getOrdinal(predicate);
+        boolean changed = set(_subjectBuckets, subject, ordinal);
+        changed |= set(_objectBuckets, object, ordinal);
+        if (changed) {
+            _version++;
+        }
+    }
+
+    /**
+     * Tell whether any triple with the given predicate may match the given
+     * subject and object.
+     *
+     * @param predicate the predicate.
+     * @param subject the N-Triples form of the subject, or <code>null</code>
+     *        if unbound.
+     * @param object the N-Triples form of the object, or <code>null</code>
+     *        if unbound.
+     * @return false only if the summary is complete and no such triple can
+     *         exist.
+     */
+    public synchronized boolean mayContain(final PredicateNode predicate,
+                                           final String subject,
+                                           final String object) {
+        if (!_complete) {
+            return true;
+        }
+        Integer ordinal = _ordinals.get(predicate);
+        if (ordinal == null) {
+            return false;
+        }
+        return isSet(_subjectBuckets, subject, ordinal.intValue())
+                && isSet(_objectBuckets, object, ordinal.intValue());
+    }
+
+    /**
+     * Get the predicates the given subject may appear with.
+     *
+     * @param subject the N-Triples form of the subject.
+     * @return the predicates, or <code>null</code> if the summary is not
+     *         complete.
+     */
+    public synchronized Set<PredicateNode> getPredicatesForSubject(
+            final String subject) {
+        return getPredicates(_subjectBuckets, subject);
+    }
+
+    /**
+     * Get the predicates the given object may appear with.
+     *
+     * @param object the N-Triples form of the object.
+     * @return the predicates, or <code>null</code> if the summary is not
+     *         complete.
+     */
+    public synchronized Set<PredicateNode> getPredicatesForObject(
+            final String object) {
+        return getPredicates(_objectBuckets, object);
+    }
+
+    /**
+     * Tell whether the summary reflects the entire store.
+     *
+     * @return true if complete.
+     */
+    public synchronized boolean isComplete() {
+        return _complete;
+    }
+
+    /**
+     * Get the current version of the summary.
+     *
+     * The version changes whenever the answer given by any method may have
+     * changed, so anything derived from the summary (such as compiled SQL)
+     * may be safely re-used for as long as the version stays the same.
+     * Since adding a triple with a new subject or object usually sets a
+     * new bit, the version changes often while triples are being added.
+     *
+     * @return the version.
+     */
+    public synchronized long getVersion() {
+        return _version;
+    }
+
+    /**
+     * Forget everything, leaving the summary complete if it was, since an
+     * empty summary accurately describes an empty store.
+     *
+     * This should be called when all triples are deleted.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < _numBuckets; i++) {
+            _subjectBuckets[i] = null;
+            _objectBuckets[i] = null;
+        }
+        _ordinals.clear();
+        _predicates.clear();
+        _version++;
+    }
+
+    /**
+     * Mark the summary as complete without rebuilding it.
+     *
+     * This is only appropriate if every triple in the store has already
+     * been passed to {@link #add(String, PredicateNode, String)}, for
+     * instance, when the store was empty when the summary was created.
+     */
+    public synchronized void markComplete() {
+        _complete = true;
+        _version++;
+    }
+
+    /**
+     * Mark the summary as incomplete, so it will no longer be consulted
+     * until it is rebuilt.
+     */
+    public synchronized void invalidate() {
+        _complete = false;
+        _version++;
+    }
+
+    /**
+     * Rebuild the summary by reading the distinct subjects and objects of
+     * each predicate table, then mark it complete.
+     *
+     * The bits read are merged into the existing ones, which are never
+     * cleared, since they may record triples written by transactions that
+     * the connection used here cannot see yet.  Triples may continue to be
+     * added while this is in progress, as long as they are also passed to
+     * {@link #add(String, PredicateNode, String)}.
+     *
+     * @param conn the connection to read with.
+     * @param tables the predicate for each predicate table.
+     * @throws SQLException if a database error occurs.  The summary will
+     *         be left as complete as it was.
+     */
+    public void rebuild(final Connection conn,
+                        final Map<String, PredicateNode> tables)
+            throws SQLException {
+        LOG.info("Rebuilding predicate summary index from " + tables.size()
+                + " tables");
+        Statement st = conn.createStatement();
+        try {
+            for (Map.Entry<String, PredicateNode> entry : tables.entrySet()) {
+                BitSet subjects = readColumn(st, entry.getKey(), "s");
+                BitSet objects = readColumn(st, entry.getKey(), "o");
+                merge(entry.getValue(), subjects, objects);
+            }
+        } finally {
+            try {
+                st.close();
+            } catch (SQLException e) {
+                LOG.warn("unable to close statement", e);
+            }
+        }
+        synchronized (this) {
+            _complete = true;
+            _version++;
+        }
+        LOG.info("Finished rebuilding predicate summary index");
+    }
+
+    /**
+     * Get the buckets of the distinct values of the given column.
+     *
+     * @param st the statement to query with.
+     * @param table the predicate table.
+     * @param column the column.
+     * @return the bucket numbers.
+     * @throws SQLException if a database error occurs.
+     */
+    private BitSet readColumn(final Statement st,
+                              final String table,
+                              final String column)
+            throws SQLException {
+        BitSet buckets = new BitSet(_numBuckets);
+        ResultSet results = st.executeQuery("SELECT DISTINCT " + column
+                + " FROM " + table);
+        try {
+            while (results.next()) {
+                buckets.set(getBucket(results.getString(1)));
+            }
+        } finally {
+            try {
+                results.close();
+            } catch (SQLException e) {
+                LOG.warn("unable to close result set", e);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Set the bit for the given predicate in the given subject and object
+     * buckets.
+     *
+     * @param predicate the predicate.
+     * @param subjects the subject bucket numbers.
+     * @param objects the object bucket numbers.
+     */
+    private synchronized void merge(final PredicateNode predicate,
+                                    final BitSet subjects,
+                                    final BitSet objects) {
+        int ordinal = getOrdinal(predicate);
+        boolean changed = setAll(_subjectBuckets, subjects, ordinal);
+        changed |= setAll(_objectBuckets, objects, ordinal);
+        if (changed) {
+            _version++;
+        }
+    }
+
+    /**
+     * Set the given bit in each of the given buckets.
+     *
+     * @param buckets the buckets.
+     * @param numbers the bucket numbers.
+     * @param ordinal the bit number.
+     * @return true if any bit was not already set.
+     */
+    private static boolean setAll(final BitSet[] buckets,
+                                  final BitSet numbers,
+                                  final int ordinal) {
+        boolean changed = false;
+        for (int i = numbers.nextSetBit(0); i >= 0;
+                i = numbers.nextSetBit(i + 1)) {
+            BitSet bits = buckets[i];
+            if (bits == null) {
+                bits = new BitSet();
+                buckets[i] = bits;
+            }
+            if (!bits.get(ordinal)) {
+                bits.set(ordinal);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Get the bit number for the given predicate, assigning one if needed.
+     *
+     * @param predicate the predicate.
+     * @return the bit number.
+     */
+    private int getOrdinal(final PredicateNode predicate) {
+        Integer ordinal = _ordinals.get(predicate);
+        if (ordinal == null) {
+            ordinal = Integer.valueOf(_predicates.size());
+            _ordinals.put(predicate, ordinal);
+            _predicates.add(predicate);
+        }
+        return ordinal.intValue();
+    }
+
+    /**
+     * Set the given bit in the bucket for the given value.
+     *
+     * @param buckets the buckets.
+     * @param value the value.
+     * @param ordinal the bit number.
+     * @return true if the bit was not already set.
+     */
+    private boolean set(final BitSet[] buckets,
+                        final String value,
+                        final int ordinal) {
+        int bucket = getBucket(value);
+        BitSet bits = buckets[bucket];
+        if (bits == null) {
+            bits = new BitSet();
+            buckets[bucket] = bits;
+        }
+        if (bits.get(ordinal)) {
+            return false;
+        } else {
+            bits.set(ordinal);
+            return true;
+        }
+    }
+
+    /**
+     * Tell whether the given bit is set in the bucket for the given value.
+     *
+     * @param buckets the buckets.
+     * @param value the value, or <code>null</code> to match any bucket.
+     * @param ordinal the bit number.
+     * @return true if the value is null or the bit is set.
+     */
+    private boolean isSet(final BitSet[] buckets,
+                          final String value,
+                          final int ordinal) {
+        if (value == null) {
+            return true;
+        }
+        BitSet bits = buckets[getBucket(value)];
+        return bits != null && bits.get(ordinal);
+    }
+
+    /**
+     * Get the predicates whose bits are set in the bucket for the given
+     * value.
+     *
+     * @param buckets the buckets.
+     * @param value the value.
+     * @return the predicates, or <code>null</code> if the summary is not
+     *         complete.
+     */
+    private Set<PredicateNode> getPredicates(final BitSet[] buckets,
+                                             final String value) {
+        if (!_complete) {
+            return null;
+        }
+        Set<PredicateNode> predicates = new HashSet<PredicateNode>();
+        BitSet bits = buckets[getBucket(value)];
+        if (bits != null) {
+            for (int i = bits.nextSetBit(0); i >= 0;
+                    i = bits.nextSetBit(i + 1)) {
+                predicates.add(_predicates.get(i));
+            }
+        }
+        return predicates;
+    }
+
+    /**
+     * Get the bucket number for the given value.
+     *
+     * @param value the value.
+     * @return the bucket number.
+     */
+    private int getBucket(final String value) {
+        int h = value.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % _numBuckets;
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.nsdl.mptstore.core;
+
+/**
+ * Provides RDBMS-specific forms of query SQL that is not portable.
+ *
+ * <p>
+ *   Query SQL is otherwise generated using a subset of SQL92 that works
+ *   with most databases.  Where a database supports no standard form of
+ *   a feature (or only recent versions do), an implementation of this
+ *   interface supplies the syntax it understands.
+ * </p>
+ */
+public interface SQLDialect {
+
+    /**
+     * Restrict the rows returned by the given <code>SELECT</code>
+     * statement.
+     *
+     * The statement may end in an <code>ORDER BY</code> clause, in which
+     * case the window applies to the ordered rows, and may be a
+     * <code>UNION ALL</code> of several queries, in which case the window
+     * applies to the union.
+     *
+     * @param sql the statement.
+     * @param limit the maximum number of rows to return, or a negative
+     *        number for no limit.
+     * @param offset the number of rows to skip before returning any.
+     * @return the restricted statement, which may return additional
+     *         columns after those of the original.
+     */
+    String limit(String sql, int limit, int offset);
+
+    /**
+     * Tell whether the database can remove duplicate rows with
+     * <code>SELECT DISTINCT</code>.
+     *
+     * This is not the case if the subject and object columns are
+     * large object types, which most databases cannot compare.
+     *
+     * @return true if <code>SELECT DISTINCT</code> may be used.
+     */
+    boolean supportsDistinct();
+
+    /**
+     * Get the maximum number of values that may be given in a single
+     * <code>IN (...)</code> list.
+     *
+     * Longer lists of values are split into several <code>IN</code> lists
+     * combined with <code>OR</code>.
+     *
+     * @return the maximum number of values in one list.
+     */
+    int getMaxInListSize();
+
+    /**
+     * Get a query for the transitive closure of a predicate table.
+     *
+     * The query returns columns named <code>s</code> and <code>o</code>,
+     * with a row for each pair of nodes connected by a path of one or
+     * more triples in the table, and must terminate even if the triples
+     * form cycles.  It is used as a derived table, so it must be valid
+     * within parentheses in a <code>FROM</code> clause.
+     *
+     * @param table the predicate table.
+     * @param anchor a condition on the <code>s</code> column of the table
+     *        (or the <code>o</code> column, if <code>backward</code>)
+     *        restricting where paths start, or <code>null</code> if paths
+     *        may start anywhere.
+     * @param backward whether paths are followed from objects to subjects
+     *        rather than from subjects to objects.  This does not change
+     *        the meaning of the result, only where it is computed from.
+     * @param maxDepth the maximum number of triples in a path, or a
+     *        negative number for no limit.
+     * @return the query, or <code>null</code> if the database has no way
+     *         of expressing it.
+     */
+    String transitiveClosure(String table,
+                             String anchor,
+                             boolean backward,
+                             int maxDepth);
+
+    /**
+     * Get an expression for a string literal whose type is a
+     * varying-length string.
+     *
+     * Some databases, such as Derby, type string literals as fixed-length
+     * <code>CHAR</code>, so when literals of different lengths are
+     * combined in the same column with <code>UNION ALL</code>, the
+     * shorter values are returned padded with spaces.  Literals in such
+     * columns are given in this form instead.
+     *
+     * @param quoted the quoted string literal.
+     * @param maxLength the maximum length of the value, in bytes.
+     * @return the expression.
+     */
+    String varcharLiteral(String quoted, int maxLength);
+
+}
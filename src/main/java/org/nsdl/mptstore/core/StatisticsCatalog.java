@@ -0,0 +1,211 @@
+package org.nsdl.mptstore.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.nsdl.mptstore.rdf.PredicateNode;
+
+/**
+ * A thread-safe, in-memory catalog of per-predicate table statistics.
+ *
+ * <p>
+ *   The catalog is kept current in two ways:
+ *   <ul>
+ *     <li> Incrementally, by the write path, as triples are added and
+ *          deleted (see {@link #recordAdded(PredicateNode, long)} and
+ *          {@link #recordDeleted(PredicateNode, long)}).</li>
+ *     <li> In bulk, when {@link TableManager#refreshStatistics()} is called,
+ *          from the database's own catalog via a
+ *          {@link StatisticsReader}.</li>
+ *   </ul>
+ * </p>
+ * <p>
+ *   Incremental updates are applied when the statements execute, not when
+ *   the surrounding transaction commits, so a rolled back transaction will
+ *   leave the catalog slightly off until the next refresh.  Statistics are
+ *   estimates and should only be used as such.
+ * </p>
+ */
+public class StatisticsCatalog {
+
+    /**
+     * The statistics for each predicate, if known.
+     */
+    private final Map<PredicateNode, TableStatistics> _stats;
+
+    /**
+     * Incremented whenever a predicate becomes known to be empty, or stops
+     * being known to be empty.
+     */
+    private long _version;
+
+    /**
+     * Construct an empty catalog.
+     */
+    public StatisticsCatalog() {
+        _stats = new HashMap<PredicateNode, TableStatistics>();
+    }
+
+    /**
+     * Get the statistics for the given predicate.
+     *
+     * @param predicate the predicate.
+     * @return the statistics, or <code>null</code> if unknown.
+     */
+    public TableStatistics get(final PredicateNode predicate) {
+        synchronized (_stats) {
+            return _stats.get(predicate);
+        }
+    }
+
+    /**
+     * Get the estimated number of triples with the given predicate.
+     *
+     * @param predicate the predicate.
+     * @return the row count, or <code>-1</code> if unknown.
+     */
+    public long getRowCount(final PredicateNode predicate) {
+        TableStatistics stats = get(predicate);
+        if (stats == null) {
+            return -1;
+        } else {
+            return stats.getRowCount();
+        }
+    }
+
+    /**
+     * Get the current version of the catalog.
+     * <p>
+     *   The version changes whenever the set of predicates known to have
+     *   no triples changes, so anything that depends only on that set (such
+     *   as compiled SQL that skips empty tables) may be safely re-used for
+     *   as long as the version stays the same.  It does not change for
+     *   other updates.
+     * </p>
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        synchronized (_stats) {
+            return _version;
+        }
+    }
+
+    /**
+     * Get a snapshot of all known statistics.
+     *
+     * @return a copy of the predicate-to-statistics map.
+     */
+    public Map<PredicateNode, TableStatistics> getAll() {
+        synchronized (_stats) {
+            return new HashMap<PredicateNode, TableStatistics>(_stats);
+        }
+    }
+
+    /**
+     * Set the statistics for the given predicate, replacing any existing
+     * values.
+     *
+     * @param predicate the predicate.
+     * @param stats the statistics.
+     */
+    public void put(final PredicateNode predicate,
+                    final TableStatistics stats) {
+        synchronized (_stats) {
+            update(_stats.put(predicate, stats), stats);
+        }
+    }
+
+    /**
+     * Forget the statistics for the given predicate.
+     *
+     * @param predicate the predicate.
+     */
+    public void remove(final PredicateNode predicate) {
+        synchronized (_stats) {
+            update(_stats.remove(predicate), null);
+        }
+    }
+
+    /**
+     * Forget all statistics.
+     */
+    public void clear() {
+        synchronized (_stats) {
+            _stats.clear();
+            _version++;
+        }
+    }
+
+    /**
+     * Record that triples with the given predicate were added.
+     *
+     * This has no effect if the statistics for the predicate are unknown,
+     * since adjusting an unknown base would give a misleadingly precise
+     * value.
+     *
+     * @param predicate the predicate.
+     * @param count the number of triples added.
+     */
+    public void recordAdded(final PredicateNode predicate, final long count) {
+        adjust(predicate, count);
+    }
+
+    /**
+     * Record that triples with the given predicate were deleted.
+     *
+     * This has no effect if the statistics for the predicate are unknown.
+     *
+     * @param predicate the predicate.
+     * @param count the number of triples deleted.
+     */
+    public void recordDeleted(final PredicateNode predicate,
+                              final long count) {
+        adjust(predicate, -count);
+    }
+
+    /**
+     * Increment the version if the given change alters whether a
+     * predicate is known to be empty.  Must be called while holding the
+     * lock on <code>_stats</code>.
+     *
+     * @param before the prior statistics, or <code>null</code> if unknown.
+     * @param after the new statistics, or <code>null</code> if unknown.
+     */
+    private void update(final TableStatistics before,
+                        final TableStatistics after) {
+        if (isEmpty(before) != isEmpty(after)) {
+            _version++;
+        }
+    }
+
+    /**
+     * Tell whether the given statistics show an empty table.
+     *
+     * @param stats the statistics, or <code>null</code> if unknown.
+     * @return true if known to be empty.
+     */
+    private static boolean isEmpty(final TableStatistics stats) {
+        return stats != null && stats.getRowCount() == 0;
+    }
+
+    /**
+     * Adjust the row count of the given predicate, if known.
+     *
+     * @param predicate the predicate.
+     * @param delta the number of rows added or removed.
+     */
+    private void adjust(final PredicateNode predicate, final long delta) {
+        if (delta != 0) {
+            synchronized (_stats) {
+                TableStatistics stats = _stats.get(predicate);
+                if (stats != null) {
+                    TableStatistics adjusted = stats.adjust(delta);
+                    _stats.put(predicate, adjusted);
+                    update(stats, adjusted);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.nsdl.mptstore.core;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads cardinality statistics for predicate tables from the database.
+ *
+ * <p>
+ *   Implementations typically consult a vendor-specific system catalog,
+ *   which is fast but only as current as the database's last statistics
+ *   gathering run.  {@link GenericStatisticsReader} computes exact values
+ *   with standard SQL, which works anywhere but requires a scan of each
+ *   table.
+ * </p>
+ */
+public interface StatisticsReader {
+
+    /**
+     * Read the statistics for the given predicate tables.
+     *
+     * @param conn the connection to use.
+     * @param tables the names of the predicate tables.
+     * @return a map of table name to statistics.  Tables for which the
+     *         database has no statistics are omitted.
+     * @throws SQLException if a database error occurs.
+     */
+    Map<String, TableStatistics> readStatistics(Connection conn,
+                                                Set<String> tables)
+            throws SQLException;
+
+}
@@ -62,6 +62,18 @@ public interface TableManager {
      */
     Set<PredicateNode> getPredicates();
 
+    /**
+     * Get the current version of the predicate-to-table mappings.
+     * <p>
+     *   The version changes whenever a mapping is added or removed, so
+     *   anything derived from the mappings (such as compiled SQL) may be
+     *   safely re-used for as long as the version stays the same.
+     * </p>
+     *
+     * @return the mapping version.
+     */
+    long getMappingVersion();
+
     /**
      * Drop all unused predicate tables and mappings.
      *
@@ -79,4 +91,31 @@ public interface TableManager {
      */
     int dropAllPredicateTables() throws SQLException;
 
+    /**
+     * Get the catalog of per-predicate table statistics.
+     * <p>
+     *   The catalog is live: it reflects incremental updates made by the
+     *   write path as well as the most recent call to
+     *   {@link #refreshStatistics()}.
+     * </p>
+     *
+     * @return the statistics catalog, never <code>null</code>.
+     */
+    StatisticsCatalog getStatistics();
+
+    /**
+     * Get the summary of which predicates each subject and object appears
+     * with, if one is maintained.
+     *
+     * @return the summary index, or <code>null</code> if not enabled.
+     */
+    PredicateSummaryIndex getSummaryIndex();
+
+    /**
+     * Re-read the statistics for all predicate tables from the database.
+     *
+     * @throws SQLException if a database error occured during the operation.
+     */
+    void refreshStatistics() throws SQLException;
+
 }
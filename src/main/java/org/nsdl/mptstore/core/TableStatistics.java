@@ -0,0 +1,162 @@
+package org.nsdl.mptstore.core;
+
+/**
+ * Cardinality statistics for a single predicate table.
+ *
+ * <p>
+ *   Instances are immutable.  The values are estimates: they may come from
+ *   the database's own catalog (which is only as fresh as its last
+ *   <code>ANALYZE</code>), and are adjusted incrementally as triples are
+ *   added and deleted.
+ * </p>
+ */
+public class TableStatistics {
+
+    /**
+     * Statistics for an empty table.
+     */
+    public static final TableStatistics EMPTY = new TableStatistics(0, 0, 0);
+
+    /**
+     * The (estimated) number of rows in the table.
+     */
+    private final long _rowCount;
+
+    /**
+     * The (estimated) number of distinct values in the s column.
+     */
+    private final long _distinctSubjects;
+
+    /**
+     * The (estimated) number of distinct values in the o column.
+     */
+    private final long _distinctObjects;
+
+    /**
+     * Construct an instance with the given values.
+     *
+     * Negative values are treated as zero, and distinct counts are
+     * constrained to be no greater than the row count, and no less than
+     * one if there are any rows.
+     *
+     * @param rowCount the number of rows.
+     * @param distinctSubjects the number of distinct subjects.
+     * @param distinctObjects the number of distinct objects.
+     */
+    public TableStatistics(final long rowCount,
+                           final long distinctSubjects,
+                           final long distinctObjects) {
+        _rowCount = Math.max(0, rowCount);
+        _distinctSubjects = constrain(distinctSubjects, _rowCount);
+        _distinctObjects = constrain(distinctObjects, _rowCount);
+    }
+
+    /**
+     * Keep a distinct count within [1, rows], or 0 if there are no rows.
+     *
+     * @param distinct the distinct count.
+     * @param rows the row count.
+     * @return the constrained count.
+     */
+    private static long constrain(final long distinct, final long rows) {
+        if (rows == 0) {
+            return 0;
+        } else if (distinct < 1) {
+            return 1;
+        } else if (distinct > rows) {
+            return rows;
+        } else {
+            return distinct;
+        }
+    }
+
+    /**
+     * Get the number of rows in the table.
+     *
+     * @return the row count.
+     */
+    public long getRowCount() {
+        return _rowCount;
+    }
+
+    /**
+     * Get the number of distinct subjects in the table.
+     *
+     * @return the distinct subject count.
+     */
+    public long getDistinctSubjects() {
+        return _distinctSubjects;
+    }
+
+    /**
+     * Get the number of distinct objects in the table.
+     *
+     * @return the distinct object count.
+     */
+    public long getDistinctObjects() {
+        return _distinctObjects;
+    }
+
+    /**
+     * Get the average number of rows per distinct subject.
+     *
+     * This is the expected number of rows matched when the subject
+     * is bound to a single value.
+     *
+     * @return the fan-out, or <code>0</code> if the table is empty.
+     */
+    public double getSubjectFanOut() {
+        if (_rowCount == 0) {
+            return 0;
+        } else {
+            return (double) _rowCount / _distinctSubjects;
+        }
+    }
+
+    /**
+     * Get the average number of rows per distinct object.
+     *
+     * This is the expected number of rows matched when the object
+     * is bound to a single value.
+     *
+     * @return the fan-out, or <code>0</code> if the table is empty.
+     */
+    public double getObjectFanOut() {
+        if (_rowCount == 0) {
+            return 0;
+        } else {
+            return (double) _rowCount / _distinctObjects;
+        }
+    }
+
+    /**
+     * Get new statistics reflecting the addition (or removal) of rows.
+     *
+     * Since the distinctness of the added or removed values is unknown,
+     * the distinct counts are scaled so that the average fan-out of each
+     * column is preserved.  If the table was previously empty, every new
+     * row is assumed to be distinct.
+     *
+     * @param rowDelta the number of rows added (positive) or removed
+     *        (negative).
+     * @return the adjusted statistics.
+     */
+    public TableStatistics adjust(final long rowDelta) {
+        long rows = Math.max(0, _rowCount + rowDelta);
+        if (_rowCount == 0) {
+            return new TableStatistics(rows, rows, rows);
+        } else {
+            double scale = (double) rows / _rowCount;
+            return new TableStatistics(rows,
+                                       Math.round(_distinctSubjects * scale),
+                                       Math.round(_distinctObjects * scale));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return "rows=" + _rowCount + ", distinctSubjects=" + _distinctSubjects
+                + ", distinctObjects=" + _distinctObjects;
+    }
+
+}
@@ -0,0 +1,32 @@
+package org.nsdl.mptstore.impl.derby;
+
+import org.nsdl.mptstore.core.GenericSQLDialect;
+
+/**
+ * A <code>SQLDialect</code> that works with Derby.
+ * <p>
+ *   Result windows are expressed with the standard clauses, which Derby
+ *   understands as of version 10.5.  Derby has no form of recursive
+ *   query, so transitive closures are not supported.
+ * </p>
+ */
+public class DerbySQLDialect extends GenericSQLDialect {
+
+    /**
+     * Always returns <code>null</code>, since Derby cannot express a
+     * transitive closure.
+     *
+     * @param table the predicate table.
+     * @param anchor the condition restricting where paths start.
+     * @param backward whether paths are followed from objects to subjects.
+     * @param maxDepth the maximum number of triples in a path.
+     * @return <code>null</code>.
+     */
+    public String transitiveClosure(final String table,
+                                    final String anchor,
+                                    final boolean backward,
+                                    final int maxDepth) {
+        return null;
+    }
+
+}
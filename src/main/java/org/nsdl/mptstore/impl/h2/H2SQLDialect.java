@@ -0,0 +1,30 @@
+package org.nsdl.mptstore.impl.h2;
+
+import org.nsdl.mptstore.core.GenericSQLDialect;
+
+/**
+ * A <code>SQLDialect</code> that works with H2.
+ * <p>
+ *   Result windows are expressed with <code>LIMIT</code> and
+ *   <code>OFFSET</code>.
+ * </p>
+ */
+public class H2SQLDialect extends GenericSQLDialect {
+
+    /** {@inheritDoc} */
+    public String limit(final String sql,
+                        final int limit,
+                        final int offset) {
+        StringBuffer out = new StringBuffer(sql);
+        if (limit >= 0) {
+            out.append(" LIMIT ");
+            out.append(limit);
+        }
+        if (offset > 0) {
+            out.append(" OFFSET ");
+            out.append(offset);
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.nsdl.mptstore.impl.mysql;
+
+import org.nsdl.mptstore.core.GenericSQLDialect;
+
+/**
+ * A <code>SQLDialect</code> that works with MySQL.
+ * <p>
+ *   Result windows are expressed with <code>LIMIT</code>.  MySQL does
+ *   not allow an offset without a limit, so an offset alone is given
+ *   the largest limit MySQL accepts.
+ * </p>
+ * <p>
+ *   String literals are already of a varying-length type, and MySQL
+ *   does not accept <code>CAST(... AS VARCHAR)</code>, so they are left
+ *   as they are.
+ * </p>
+ */
+public class MysqlSQLDialect extends GenericSQLDialect {
+
+    /**
+     * The largest row count accepted by <code>LIMIT</code>.
+     */
+    private static final String MAX_LIMIT = "18446744073709551615";
+
+    /** {@inheritDoc} */
+    public String limit(final String sql,
+                        final int limit,
+                        final int offset) {
+        if (limit < 0 && offset <= 0) {
+            return sql;
+        }
+        StringBuffer out = new StringBuffer(sql);
+        out.append(" LIMIT ");
+        if (offset > 0) {
+            out.append(offset);
+            out.append(", ");
+        }
+        if (limit >= 0) {
+            out.append(limit);
+        } else {
+            out.append(MAX_LIMIT);
+        }
+        return out.toString();
+    }
+
+    /** {@inheritDoc} */
+    public String varcharLiteral(final String quoted,
+                                 final int maxLength) {
+        return quoted;
+    }
+
+}
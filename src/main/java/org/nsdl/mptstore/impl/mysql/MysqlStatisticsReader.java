@@ -0,0 +1,34 @@
+package org.nsdl.mptstore.impl.mysql;
+
+import org.nsdl.mptstore.core.CatalogStatisticsReader;
+
+/**
+ * A <code>StatisticsReader</code> that works with Mysql.
+ * <p>
+ *   Row counts are read from <code>information_schema.TABLES</code> and
+ *   distinct counts from the index cardinalities in
+ *   <code>information_schema.STATISTICS</code>.  Note that for InnoDB
+ *   tables, both are sampled estimates.
+ * </p>
+ */
+public class MysqlStatisticsReader extends CatalogStatisticsReader {
+
+    /** {@inheritDoc} */
+    protected String getRowCountSQL() {
+        return "SELECT TABLE_NAME, TABLE_ROWS\n"
+             + "FROM information_schema.TABLES\n"
+             + "WHERE TABLE_SCHEMA = DATABASE()\n"
+             + "AND TABLE_ROWS IS NOT NULL";
+    }
+
+    /** {@inheritDoc} */
+    protected String getDistinctCountSQL() {
+        return "SELECT TABLE_NAME, COLUMN_NAME, CARDINALITY\n"
+             + "FROM information_schema.STATISTICS\n"
+             + "WHERE TABLE_SCHEMA = DATABASE()\n"
+             + "AND SEQ_IN_INDEX = 1\n"
+             + "AND COLUMN_NAME IN ('s', 'o')\n"
+             + "AND CARDINALITY IS NOT NULL";
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.nsdl.mptstore.impl.oracle;
+
+import org.nsdl.mptstore.core.GenericSQLDialect;
+
+/**
+ * A <code>SQLDialect</code> that works with Oracle.
+ * <p>
+ *   Result windows are expressed by wrapping the statement in an inline
+ *   view and filtering on <code>ROWNUM</code>, which works with all
+ *   versions of Oracle.  Oracle recognizes the <code>ROWNUM</code> limit
+ *   on an ordered view and uses a top-N sort rather than a full one.
+ * </p>
+ * <p>
+ *   When an offset is given, the row number is returned as an additional
+ *   column after those of the original statement.  Since the inline
+ *   view is selected with <code>*</code>, the columns of the original
+ *   statement must have distinct names.
+ * </p>
+ * <p>
+ *   Transitive closures are computed with a hierarchical
+ *   <code>CONNECT BY NOCYCLE</code> query, in which Oracle itself stops
+ *   following a path when it would return to a node already on it.
+ * </p>
+ */
+public class OracleSQLDialect extends GenericSQLDialect {
+
+    /** {@inheritDoc} */
+    public String limit(final String sql,
+                        final int limit,
+                        final int offset) {
+        if (offset > 0) {
+            StringBuffer out = new StringBuffer();
+            out.append("SELECT * FROM (SELECT q.*, ROWNUM AS rn FROM (");
+            out.append(sql);
+            out.append(") q");
+            if (limit >= 0) {
+                out.append(" WHERE ROWNUM <= ");
+                out.append((long) offset + limit);
+            }
+            out.append(") WHERE rn > ");
+            out.append(offset);
+            return out.toString();
+        } else if (limit >= 0) {
+            return "SELECT * FROM (" + sql + ") WHERE ROWNUM <= " + limit;
+        } else {
+            return sql;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public String transitiveClosure(final String table,
+                                    final String anchor,
+                                    final boolean backward,
+                                    final int maxDepth) {
+        StringBuffer out = new StringBuffer("SELECT ");
+        if (supportsDistinct()) {
+            out.append("DISTINCT ");
+        }
+        if (backward) {
+            out.append("s, CONNECT_BY_ROOT o AS o");
+        } else {
+            out.append("CONNECT_BY_ROOT s AS s, o");
+        }
+        out.append(" FROM ");
+        out.append(table);
+        if (anchor != null) {
+            out.append(" START WITH ");
+            out.append(anchor);
+        }
+        if (backward) {
+            out.append(" CONNECT BY NOCYCLE PRIOR s = o");
+        } else {
+            out.append(" CONNECT BY NOCYCLE PRIOR o = s");
+        }
+        if (maxDepth >= 0) {
+            out.append(" AND LEVEL <= ");
+            out.append(maxDepth);
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.nsdl.mptstore.impl.oracle;
+
+import org.nsdl.mptstore.core.CatalogStatisticsReader;
+
+/**
+ * A <code>StatisticsReader</code> that works with Oracle.
+ * <p>
+ *   Row counts are read from <code>user_tables.num_rows</code> and
+ *   distinct counts from <code>user_tab_col_statistics.num_distinct</code>,
+ *   both of which are maintained by <code>DBMS_STATS</code>.  Tables
+ *   whose statistics have never been gathered are omitted.
+ * </p>
+ */
+public class OracleStatisticsReader extends CatalogStatisticsReader {
+
+    /** {@inheritDoc} */
+    protected String getRowCountSQL() {
+        return "SELECT table_name, num_rows\n"
+             + "FROM user_tables\n"
+             + "WHERE num_rows IS NOT NULL";
+    }
+
+    /** {@inheritDoc} */
+    protected String getDistinctCountSQL() {
+        return "SELECT table_name, column_name, num_distinct\n"
+             + "FROM user_tab_col_statistics\n"
+             + "WHERE column_name IN ('S', 'O')\n"
+             + "AND num_distinct IS NOT NULL";
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.nsdl.mptstore.impl.postgres;
+
+import org.nsdl.mptstore.core.GenericSQLDialect;
+
+/**
+ * A <code>SQLDialect</code> that works with Postgres.
+ * <p>
+ *   Result windows are expressed with <code>LIMIT</code> and
+ *   <code>OFFSET</code>, which all versions of Postgres support.
+ * </p>
+ */
+public class PostgresSQLDialect extends GenericSQLDialect {
+
+    /** {@inheritDoc} */
+    public String limit(final String sql,
+                        final int limit,
+                        final int offset) {
+        StringBuffer out = new StringBuffer(sql);
+        if (limit >= 0) {
+            out.append(" LIMIT ");
+            out.append(limit);
+        }
+        if (offset > 0) {
+            out.append(" OFFSET ");
+            out.append(offset);
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.nsdl.mptstore.impl.postgres;
+
+import org.nsdl.mptstore.core.CatalogStatisticsReader;
+
+/**
+ * A <code>StatisticsReader</code> that works with Postgres.
+ * <p>
+ *   Row counts are read from <code>pg_class.reltuples</code> and distinct
+ *   counts from <code>pg_stats.n_distinct</code>, both of which are
+ *   maintained by <code>ANALYZE</code> (and autovacuum).  A table that
+ *   has never been analyzed or vacuumed has a <code>reltuples</code> of
+ *   0 before Postgres 14, and -1 since, so only tables with at least one
+ *   page and a non-negative <code>reltuples</code> are read.  Others,
+ *   including tables that are really empty, are omitted, so their counts
+ *   are left as they were.
+ * </p>
+ */
+public class PostgresStatisticsReader extends CatalogStatisticsReader {
+
+    /** {@inheritDoc} */
+    protected String getRowCountSQL() {
+        return "SELECT c.relname, CAST(c.reltuples AS BIGINT)\n"
+             + "FROM pg_class c\n"
+             + "JOIN pg_namespace n ON n.oid = c.relnamespace\n"
+             + "WHERE c.relkind = 'r'\n"
+             + "AND c.relpages > 0\n"
+             + "AND c.reltuples >= 0\n"
+             + "AND n.nspname = current_schema()";
+    }
+
+    /** {@inheritDoc} */
+    protected String getDistinctCountSQL() {
+        return "SELECT tablename, attname, n_distinct\n"
+             + "FROM pg_stats\n"
+             + "WHERE schemaname = current_schema()\n"
+             + "AND attname IN ('s', 'o')";
+    }
+
+    /**
+     * Convert <code>n_distinct</code> to a count.
+     *
+     * A negative <code>n_distinct</code> is the negated fraction of rows
+     * that are distinct, used by Postgres when the number of distinct
+     * values is expected to grow with the table.
+     *
+     * @param rawValue the n_distinct value.
+     * @param rowCount the estimated row count of the table.
+     * @return the estimated number of distinct values.
+     */
+    protected long getDistinctCount(final double rawValue,
+                                    final long rowCount) {
+        if (rawValue < 0) {
+            return Math.round(-rawValue * rowCount);
+        } else {
+            return Math.round(rawValue);
+        }
+    }
+
+}
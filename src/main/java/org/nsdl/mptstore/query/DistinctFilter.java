@@ -0,0 +1,83 @@
+package org.nsdl.mptstore.query;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Recognizes result rows that have already been seen.
+ *
+ * <p>
+ *   Rows are remembered in a hash set, up to a maximum number.  Once the
+ *   maximum is reached, rows already remembered are still recognized,
+ *   but new rows are no longer remembered, so later duplicates of them
+ *   are let through.  This bounds memory use at the cost of an
+ *   incomplete result, which is logged.  Where possible, duplicates
+ *   should be removed by the database instead.
+ * </p>
+ */
+public class DistinctFilter {
+
+    /**
+     * The default maximum number of rows to remember.
+     */
+    public static final int DEFAULT_MAX_ROWS = 100000;
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(DistinctFilter.class.getName());
+
+    /**
+     * The maximum number of rows to remember.
+     */
+    private final int _maxRows;
+
+    /**
+     * The rows seen so far.
+     */
+    private final Set<List<?>> _seen;
+
+    /**
+     * Instantiate a filter that remembers up to
+     * <code>DEFAULT_MAX_ROWS</code> rows.
+     */
+    public DistinctFilter() {
+        this(DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Instantiate a filter that remembers up to the given number of rows.
+     *
+     * @param maxRows the maximum number of rows to remember.
+     */
+    public DistinctFilter(final int maxRows) {
+        _maxRows = maxRows;
+        _seen = new HashSet<List<?>>();
+    }
+
+    /**
+     * Tell whether the given row should be returned, remembering it if
+     * there is room.
+     *
+     * @param row the row, as nodes or in any other form whose elements
+     *        are equal when the nodes are.
+     * @return false if the row has already been seen.
+     */
+    public boolean accept(final List<?> row) {
+        if (_seen.size() < _maxRows) {
+            boolean added = _seen.add(row);
+            if (added && _seen.size() == _maxRows) {
+                LOG.warn("Remembered " + _maxRows + " distinct rows; "
+                        + "further duplicates will not be removed");
+            }
+            return added;
+        } else {
+            return !_seen.contains(row);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.nsdl.mptstore.query;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.nsdl.mptstore.rdf.Node;
+
+/**
+ * <code>QueryResults</code> with duplicate rows removed.
+ *
+ * This is useful when the underlying query can return duplicates and the
+ * database cannot be asked to remove them.  See {@link DistinctFilter}
+ * for the memory bound and its consequences.
+ */
+public class DistinctQueryResults implements QueryResults {
+
+    /**
+     * The results to remove duplicates from.
+     */
+    private final QueryResults _results;
+
+    /**
+     * Recognizes duplicates.
+     */
+    private final DistinctFilter _filter;
+
+    /**
+     * The row to be returned by the next call to next(), if already read.
+     */
+    private List<Node> _nextTuple;
+
+    /**
+     * Remove duplicates from the given results.
+     *
+     * @param results the results.
+     * @param maxRows the maximum number of distinct rows to remember.
+     */
+    public DistinctQueryResults(final QueryResults results,
+                                final int maxRows) {
+        _results = results;
+        _filter = new DistinctFilter(maxRows);
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getTargets() {
+        return _results.getTargets();
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasNext() {
+        while (_nextTuple == null && _results.hasNext()) {
+            List<Node> tuple = _results.next();
+            if (_filter.accept(tuple)) {
+                _nextTuple = tuple;
+            }
+        }
+        return _nextTuple != null;
+    }
+
+    /** {@inheritDoc} */
+    public List<Node> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        } else {
+            List<Node> thisTuple = _nextTuple;
+            _nextTuple = null;
+            return thisTuple;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void remove() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    /** {@inheritDoc} */
+    public void close() {
+        _results.close();
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.nsdl.mptstore.query;
+
+/**
+ * A text format in which query results can be exported.
+ *
+ * @see SQLResultsExporter
+ */
+public enum ExportFormat {
+
+    /**
+     * N-Triples, one triple per line.  Only results with exactly three
+     * columns (subject, predicate and object) can be exported this way.
+     */
+    NTRIPLES,
+
+    /**
+     * Tab-separated values.  The first line holds the column names, each
+     * preceded by <code>?</code>, and each following line holds the
+     * N-Triples form of the nodes in a row.  Unbound values are empty.
+     */
+    TSV
+
+}
@@ -0,0 +1,675 @@
+package org.nsdl.mptstore.query;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.text.ParseException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+
+import org.nsdl.mptstore.query.provider.RestrictedSQLProvider;
+import org.nsdl.mptstore.query.provider.SQLProvider;
+import org.nsdl.mptstore.query.provider.TypedSQLProvider;
+import org.nsdl.mptstore.rdf.Literal;
+import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.URIReference;
+import org.nsdl.mptstore.util.DBUtil;
+import org.nsdl.mptstore.util.NTriplesUtil;
+
+/**
+ * RDF query results generated from a list of SQL statements executed
+ * concurrently.
+ *
+ * <p>
+ *   Up to <code>parallelism</code> workers each take a connection from
+ *   the given <code>DataSource</code> and execute statements from the
+ *   list, in order, until none remain.  Each result row is parsed by
+ *   the worker and handed to the reader through a bounded queue, so a
+ *   slow reader holds back the workers rather than letting rows pile up
+ *   in memory.
+ * </p>
+ * <p>
+ *   If <code>preserveOrder</code> is <code>true</code>, rows are returned
+ *   in exactly the order {@link SQLUnionQueryResults} would return them:
+ *   each statement gets its own bounded queue, and the queues are read in
+ *   statement order.  Otherwise, rows are returned in whatever order the
+ *   workers produce them, which lets a fast statement finish without
+ *   waiting for the reader to get through a slow one.
+ * </p>
+ * <p>
+ *   Since the statements run on separate connections, they do not see
+ *   uncommitted changes made by the caller, and they may not see a
+ *   consistent snapshot of the database if it is being written to
+ *   concurrently.  This is only worthwhile for queries that compile to
+ *   several statements (for instance, those with an unbound predicate),
+ *   and against a pool with at least <code>parallelism</code> spare
+ *   connections.
+ * </p>
+ * <p>
+ *   If the provider is a <code>RestrictedSQLProvider</code>, the
+ *   restrictions it leaves to the results are applied to the merged rows.
+ *   Unless order is preserved, which rows fall within a window is
+ *   unpredictable.
+ * </p>
+ * <p>
+ *   Closing the results cancels any statements still executing.  Each
+ *   worker releases its own connection once it notices the results have
+ *   been closed.  Callers <strong>must</strong> close results they do not
+ *   read to the end.  As a safeguard, if the reader stops asking for rows
+ *   for <code>maxIdleMillis</code> while workers are waiting for room in
+ *   a queue, the workers give up, release their connections, and the
+ *   results fail with a <code>QueryException</code>.
+ * </p>
+ */
+public class ParallelSQLUnionQueryResults implements QueryResults {
+
+    /**
+     * The default number of rows that may be queued (per statement, if
+     * preserving order) before workers must wait for the reader.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * The default time workers wait for the reader to take a row before
+     * giving up, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(ParallelSQLUnionQueryResults.class.getName());
+
+    /**
+     * How long to wait on a queue before checking for errors or closure,
+     * in milliseconds.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Queued to signal that a statement has no more rows.
+     */
+    private static final Object END_OF_QUERY = new Object();
+
+    /**
+     * Provides the SQL and column names for the query.
+     */
+    private final SQLProvider _sqlProvider;
+
+    /**
+     * The state shared with the workers.  Workers do not refer to this
+     * instance, so it can be collected if abandoned.
+     */
+    private final Job _job;
+
+    /**
+     * The number of statements read to the end so far.
+     */
+    private int _finishedQueries;
+
+    /**
+     * The row to be returned by the next call to next().
+     */
+    private List<Node> _nextTuple;
+
+    /**
+     * Recognizes duplicate rows, if they must be removed.
+     */
+    private DistinctFilter _distinctFilter;
+
+    /**
+     * The number of rows still to be skipped.
+     */
+    private int _skip;
+
+    /**
+     * The number of rows still to be returned, or a negative number if
+     * unlimited.
+     */
+    private int _remaining;
+
+    /**
+     * Instantiate ParallelSQLUnionQueryResults and start executing the
+     * given SQL, with workers that wait up to
+     * <code>DEFAULT_MAX_IDLE_MILLIS</code> for the reader.
+     *
+     * @param dataSource the source of connections for the workers.
+     * @param sqlProvider provides the SQL and column names for the query.
+     * @param fetchSize the JDBC fetchSize to use for each SQL query.
+     * @param parallelism the maximum number of statements to execute at
+     *        once.
+     * @param queueSize the maximum number of rows to queue (per statement,
+     *        if preserving order) before workers must wait for the reader.
+     * @param preserveOrder whether to return rows in statement order.
+     * @param executor the executor to run workers with, or
+     *        <code>null</code> to start a new daemon thread for each.
+     * @throws QueryException if an unexpected error occurs starting the query.
+     */
+    public ParallelSQLUnionQueryResults(final DataSource dataSource,
+                                        final SQLProvider sqlProvider,
+                                        final int fetchSize,
+                                        final int parallelism,
+                                        final int queueSize,
+                                        final boolean preserveOrder,
+                                        final Executor executor)
+            throws QueryException {
+        this(dataSource, sqlProvider, fetchSize, parallelism, queueSize,
+                preserveOrder, executor, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * Instantiate ParallelSQLUnionQueryResults and start executing the
+     * given SQL.
+     *
+     * @param dataSource the source of connections for the workers.
+     * @param sqlProvider provides the SQL and column names for the query.
+     * @param fetchSize the JDBC fetchSize to use for each SQL query.
+     * @param parallelism the maximum number of statements to execute at
+     *        once.
+     * @param queueSize the maximum number of rows to queue (per statement,
+     *        if preserving order) before workers must wait for the reader.
+     * @param preserveOrder whether to return rows in statement order.
+     * @param executor the executor to run workers with, or
+     *        <code>null</code> to start a new daemon thread for each.
+     * @param maxIdleMillis how long workers wait for the reader to ask for
+     *        a row before giving up, in milliseconds.
+     * @throws QueryException if an unexpected error occurs starting the query.
+     */
+    public ParallelSQLUnionQueryResults(final DataSource dataSource,
+                                        final SQLProvider sqlProvider,
+                                        final int fetchSize,
+                                        final int parallelism,
+                                        final int queueSize,
+                                        final boolean preserveOrder,
+                                        final Executor executor,
+                                        final long maxIdleMillis)
+            throws QueryException {
+
+        _sqlProvider = sqlProvider;
+        _job = new Job(dataSource, sqlProvider, fetchSize, queueSize,
+                       preserveOrder, maxIdleMillis);
+
+        if (sqlProvider instanceof RestrictedSQLProvider) {
+            RestrictedSQLProvider restricted =
+                    (RestrictedSQLProvider) sqlProvider;
+            if (restricted.isDistinctRequired()) {
+                _distinctFilter = new DistinctFilter();
+            }
+            _skip = restricted.getOffset();
+            _remaining = restricted.getLimit();
+        } else {
+            _skip = 0;
+            _remaining = -1;
+        }
+
+        try {
+            int workers = Math.min(Math.max(parallelism, 1),
+                                   _job._queries.size());
+            LOG.info("Executing " + _job._queries.size() + " queries with "
+                    + workers + " workers");
+            try {
+                for (int i = 0; i < workers; i++) {
+                    if (executor == null) {
+                        Thread thread = new Thread(new Worker(_job),
+                                "ParallelSQLUnionQueryResults worker");
+                        thread.setDaemon(true);
+                        thread.start();
+                    } else {
+                        executor.execute(new Worker(_job));
+                    }
+                }
+            } catch (RejectedExecutionException e) {
+                throw new QueryException("Unable to start query worker", e);
+            }
+            readNextTuple();
+        } catch (QueryException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Set _nextTuple to the next tuple.
+     *
+     * If there are no more tuples, proactively close and set
+     * <code>_nextTuple</code> to <code>null</code>.
+     *
+     * @throws QueryException if a worker failed or waiting was interrupted.
+     */
+    @SuppressWarnings("unchecked")
+    private void readNextTuple() throws QueryException {
+        while (_remaining != 0 && _finishedQueries < _job._queries.size()) {
+            if (_job._error != null) {
+                throw _job._error;
+            }
+            BlockingQueue<Object> queue;
+            if (_job._preserveOrder) {
+                queue = _job._queues.get(_finishedQueries);
+            } else {
+                queue = _job._queue;
+            }
+            Object item;
+            try {
+                item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryException("Interrupted waiting for results", e);
+            }
+            // the reader is active even while waiting on another queue
+            _job._lastRead = System.currentTimeMillis();
+            if (item == END_OF_QUERY) {
+                if (_job._preserveOrder) {
+                    _job._queues.set(_finishedQueries, null);
+                }
+                _finishedQueries++;
+            } else if (item != null && _distinctFilter != null
+                    && !_distinctFilter.accept((List<Node>) item)) {
+                continue;
+            } else if (item != null && _skip > 0) {
+                _skip--;
+            } else if (item != null) {
+                if (_remaining > 0) {
+                    _remaining--;
+                }
+                _nextTuple = (List<Node>) item;
+                return;
+            }
+        }
+        LOG.info("Finished reading results");
+        _nextTuple = null;
+        close(); // proactively close if no more queries
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getTargets() {
+        return _sqlProvider.getTargets();
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasNext() {
+        return _nextTuple != null;
+    }
+
+    /** {@inheritDoc} */
+    public List<Node> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        } else {
+            List<Node> thisTuple = _nextTuple;
+            try {
+                readNextTuple();
+                return thisTuple;
+            } catch (QueryException e) {
+                close(); // proactively close on error
+                LOG.error(e);
+                throw new RuntimeQueryException(e);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void remove() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop all workers and discard any queued rows.
+     *
+     * Statements still executing are cancelled, and each worker closes
+     * its statement and releases its connection as it finishes.
+     */
+    public void close() {
+        _job.close();
+    }
+
+    /**
+     * The state of a query, shared by the results and its workers.
+     */
+    private static class Job {
+
+        /**
+         * The source of connections for the workers.
+         */
+        private final DataSource _dataSource;
+
+        /**
+         * The SQL queries to execute.
+         */
+        private final List<String> _queries;
+
+        /**
+         * The number of columns in each row.
+         */
+        private final int _tupleSize;
+
+        /**
+         * The datatype of each column holding plain values rather than
+         * N-Triples nodes, or <code>null</code> if all hold nodes.
+         */
+        private final List<URIReference> _datatypes;
+
+        /**
+         * The JDBC fetchSize to use for each SQL query.
+         */
+        private final int _fetchSize;
+
+        /**
+         * Whether rows are returned in statement order.
+         */
+        private final boolean _preserveOrder;
+
+        /**
+         * How long workers wait for the reader before giving up, in
+         * milliseconds.
+         */
+        private final long _maxIdleMillis;
+
+        /**
+         * The queue shared by all statements, if not preserving order.
+         */
+        private final BlockingQueue<Object> _queue;
+
+        /**
+         * The queue for each statement, if preserving order.  Entries are
+         * set to <code>null</code> once read to the end.
+         */
+        private final List<BlockingQueue<Object>> _queues;
+
+        /**
+         * The index of the next statement to be taken by a worker.
+         */
+        private final AtomicInteger _nextQuery = new AtomicInteger(0);
+
+        /**
+         * The statements currently executing, so they can be cancelled.
+         */
+        private final Set<Statement> _running = new HashSet<Statement>();
+
+        /**
+         * The first error encountered by any worker.
+         */
+        private volatile QueryException _error;
+
+        /**
+         * When the reader last asked for a row, in milliseconds.
+         */
+        private volatile long _lastRead = System.currentTimeMillis();
+
+        /**
+         * Whether the results have been closed.
+         */
+        private volatile boolean _closed;
+
+        /**
+         * Instantiate a job.
+         *
+         * @param dataSource the source of connections for the workers.
+         * @param sqlProvider provides the SQL and column names.
+         * @param fetchSize the JDBC fetchSize to use for each SQL query.
+         * @param queueSize the maximum number of rows to queue.
+         * @param preserveOrder whether to return rows in statement order.
+         * @param maxIdleMillis how long workers wait for the reader.
+         * @throws QueryException if the SQL cannot be provided.
+         */
+        Job(final DataSource dataSource,
+            final SQLProvider sqlProvider,
+            final int fetchSize,
+            final int queueSize,
+            final boolean preserveOrder,
+            final long maxIdleMillis) throws QueryException {
+            _dataSource = dataSource;
+            _queries = new ArrayList<String>(sqlProvider.getSQL());
+            _tupleSize = sqlProvider.getTargets().size();
+            if (sqlProvider instanceof TypedSQLProvider) {
+                _datatypes = ((TypedSQLProvider) sqlProvider)
+                        .getTargetDatatypes();
+            } else {
+                _datatypes = null;
+            }
+            _fetchSize = fetchSize;
+            _preserveOrder = preserveOrder;
+            _maxIdleMillis = maxIdleMillis;
+            if (preserveOrder) {
+                _queue = null;
+                _queues = new ArrayList<BlockingQueue<Object>>(
+                        _queries.size());
+                for (int i = 0; i < _queries.size(); i++) {
+                    _queues.add(new LinkedBlockingQueue<Object>(queueSize));
+                }
+            } else {
+                _queue = new LinkedBlockingQueue<Object>(queueSize);
+                _queues = null;
+            }
+        }
+
+        /**
+         * Stop all workers and discard any queued rows.
+         */
+        void close() {
+            if (!_closed) {
+                _closed = true;
+                synchronized (_running) {
+                    for (Statement statement : _running) {
+                        try {
+                            statement.cancel();
+                        } catch (Exception e) {
+                            LOG.warn("Error cancelling statement", e);
+                        }
+                    }
+                }
+                if (_preserveOrder) {
+                    for (BlockingQueue<Object> queue : _queues) {
+                        if (queue != null) {
+                            queue.clear();
+                        }
+                    }
+                } else {
+                    _queue.clear();
+                }
+            }
+        }
+
+        /**
+         * Record the given error for the reader, unless another worker
+         * already failed or the results were closed.
+         *
+         * @param e the error.
+         */
+        void fail(final QueryException e) {
+            if (!_closed) {
+                synchronized (_running) {
+                    if (_error == null) {
+                        _error = e;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes statements on its own connection until none remain or the
+     * results are closed.
+     */
+    private static class Worker implements Runnable {
+
+        /**
+         * The query.
+         */
+        private final Job _job;
+
+        /**
+         * Instantiate a worker.
+         *
+         * @param job the query.
+         */
+        Worker(final Job job) {
+            _job = job;
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            Connection conn = null;
+            try {
+                conn = _job._dataSource.getConnection();
+                int i = _job._nextQuery.getAndIncrement();
+                while (!_job._closed && i < _job._queries.size()) {
+                    execute(conn, i);
+                    i = _job._nextQuery.getAndIncrement();
+                }
+            } catch (SQLException e) {
+                _job.fail(new QueryException("Error querying database", e));
+            } catch (QueryException e) {
+                _job.fail(e);
+            } catch (InterruptedException e) {
+                _job.fail(new QueryException("Query worker interrupted", e));
+            } catch (RuntimeException e) {
+                _job.fail(new QueryException(
+                        "Unexpected error in query worker", e));
+            } finally {
+                if (conn != null) {
+                    DBUtil.release(conn);
+                }
+            }
+        }
+
+        /**
+         * Execute the given statement and queue its rows, followed by
+         * the end-of-query marker.
+         *
+         * @param conn the connection to use.
+         * @param i the index of the statement.
+         * @throws SQLException if there is a database error.
+         * @throws QueryException if a row could not be parsed.
+         * @throws InterruptedException if interrupted while waiting for
+         *         room in the queue.
+         */
+        private void execute(final Connection conn, final int i)
+                throws SQLException, QueryException, InterruptedException {
+            BlockingQueue<Object> queue;
+            if (_job._preserveOrder) {
+                queue = _job._queues.get(i);
+            } else {
+                queue = _job._queue;
+            }
+            Statement statement = conn.createStatement();
+            synchronized (_job._running) {
+                _job._running.add(statement);
+            }
+            try {
+                statement.setFetchSize(_job._fetchSize);
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                String query = _job._queries.get(i);
+                LOG.info("Executing query:\n" + query);
+                ResultSet results = statement.executeQuery(query);
+                try {
+                    int tupleSize = _job._tupleSize;
+                    while (!_job._closed && results.next()) {
+                        put(queue, parseTuple(results, tupleSize));
+                    }
+                } finally {
+                    try {
+                        results.close();
+                    } catch (SQLException e) {
+                        LOG.warn("unable to close result set", e);
+                    }
+                }
+                put(queue, END_OF_QUERY);
+            } catch (SQLException e) {
+                if (!_job._closed) {
+                    throw e;
+                } // else cancelled by close()
+            } finally {
+                synchronized (_job._running) {
+                    _job._running.remove(statement);
+                }
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    LOG.warn("unable to close statement", e);
+                }
+            }
+        }
+
+        /**
+         * Parse the current row of the given result set.
+         *
+         * @param results the result set.
+         * @param tupleSize the number of columns.
+         * @return the row.
+         * @throws SQLException if there is a database error.
+         * @throws QueryException if a node could not be parsed.
+         */
+        private List<Node> parseTuple(final ResultSet results,
+                                      final int tupleSize)
+                throws SQLException, QueryException {
+            List<Node> tuple = new ArrayList<Node>(tupleSize);
+            for (int i = 1; i <= tupleSize; i++) {
+                String nodeString = DBUtil.getLongString(results, i);
+                try {
+                    if (nodeString == null) {
+                        tuple.add(null);
+                    } else if (_job._datatypes != null
+                            && _job._datatypes.get(i - 1) != null) {
+                        tuple.add(new Literal(nodeString,
+                                              _job._datatypes.get(i - 1)));
+                    } else {
+                        tuple.add(NTriplesUtil.parseTrustedNode(nodeString));
+                    }
+                } catch (ParseException e) {
+                    throw new QueryException("Error parsing RDF node ("
+                            + nodeString + ") from database: "
+                            + e.getMessage(), e);
+                }
+            }
+            return tuple;
+        }
+
+        /**
+         * Wait for room in the given queue and add the given item, unless
+         * the results are closed first.
+         *
+         * If the reader has taken no row for longer than the job allows,
+         * the results are assumed to be abandoned, and are failed and
+         * closed.
+         *
+         * @param queue the queue.
+         * @param item the item.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        private void put(final BlockingQueue<Object> queue,
+                         final Object item)
+                throws InterruptedException {
+            while (!_job._closed) {
+                if (queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                if (System.currentTimeMillis() - _job._lastRead
+                        > _job._maxIdleMillis) {
+                    LOG.warn("Results not read for " + _job._maxIdleMillis
+                            + "ms; assuming they were abandoned");
+                    _job.fail(new QueryException("Results not read for "
+                            + _job._maxIdleMillis + "ms; query abandoned"));
+                    _job.close();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,346 @@
+package org.nsdl.mptstore.query;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import org.nsdl.mptstore.rdf.Node;
+
+/**
+ * <code>QueryResults</code> that read ahead of the consumer in a
+ * background thread.
+ *
+ * <p>
+ *   A producer thread pulls rows from the wrapped results (and so does
+ *   the JDBC fetching and N-Triples parsing) into a bounded buffer, while
+ *   the consumer takes rows from the other end.  This lets the work of
+ *   producing rows overlap with whatever the consumer does with them.
+ *   When the buffer is full, the producer waits.
+ * </p>
+ * <p>
+ *   The wrapped results are only ever touched by the producer thread,
+ *   including when they are closed.  Closing this object discards any
+ *   buffered rows and asks the producer to stop; if the producer is in
+ *   the middle of fetching a row, the wrapped results (and, if they
+ *   release it, their connection) are closed as soon as that fetch
+ *   returns.  A caller that keeps its connection must therefore not
+ *   use it for anything else until the results have been read to the
+ *   end, since it cannot know when the producer has finished with it.
+ * </p>
+ * <p>
+ *   An error from the wrapped results is delivered to the consumer after
+ *   the rows that preceded it.
+ * </p>
+ * <p>
+ *   Callers <strong>must</strong> close results they do not read to the
+ *   end.  As a safeguard, if the consumer stops asking for rows for
+ *   <code>maxIdleMillis</code> while the buffer is full, the producer
+ *   gives up and closes the wrapped results, and the consumer gets a
+ *   <code>RuntimeQueryException</code>.
+ * </p>
+ */
+public class PrefetchingQueryResults implements QueryResults {
+
+    /**
+     * The default time the producer waits for the consumer to ask for a
+     * row before giving up, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(PrefetchingQueryResults.class.getName());
+
+    /**
+     * How long the producer waits for room in the buffer, and the consumer
+     * for a row, before checking whether the results have been closed, in
+     * milliseconds.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Buffered to signal that there are no more rows.
+     */
+    private static final Object END_OF_RESULTS = new Object();
+
+    /**
+     * The state shared with the producer.  The producer does not refer to
+     * this instance, so it can be collected if abandoned.
+     */
+    private final Prefetch _prefetch;
+
+    /**
+     * The next item from the buffer, if already taken.
+     */
+    private Object _next;
+
+    /**
+     * Instantiate PrefetchingQueryResults and start reading ahead, with a
+     * producer that waits up to <code>DEFAULT_MAX_IDLE_MILLIS</code> for
+     * the consumer.
+     *
+     * @param results the results to read ahead.
+     * @param bufferSize the maximum number of rows to read ahead.
+     * @param executor the executor to run the producer with, or
+     *        <code>null</code> to start a new daemon thread for it.
+     * @throws QueryException if the producer could not be started.  The
+     *         given results will have been closed.
+     */
+    public PrefetchingQueryResults(final QueryResults results,
+                                   final int bufferSize,
+                                   final Executor executor)
+            throws QueryException {
+        this(results, bufferSize, executor, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * Instantiate PrefetchingQueryResults and start reading ahead.
+     *
+     * @param results the results to read ahead.
+     * @param bufferSize the maximum number of rows to read ahead.
+     * @param executor the executor to run the producer with, or
+     *        <code>null</code> to start a new daemon thread for it.
+     * @param maxIdleMillis how long the producer waits for the consumer
+     *        to ask for a row before giving up, in milliseconds.
+     * @throws QueryException if the producer could not be started.  The
+     *         given results will have been closed.
+     */
+    public PrefetchingQueryResults(final QueryResults results,
+                                   final int bufferSize,
+                                   final Executor executor,
+                                   final long maxIdleMillis)
+            throws QueryException {
+        _prefetch = new Prefetch(results, bufferSize, maxIdleMillis);
+        try {
+            if (executor == null) {
+                Thread thread = new Thread(new Producer(_prefetch),
+                        "PrefetchingQueryResults producer");
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                executor.execute(new Producer(_prefetch));
+            }
+        } catch (RejectedExecutionException e) {
+            _prefetch._closed = true;
+            results.close();
+            throw new QueryException("Unable to start prefetching", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getTargets() {
+        return _prefetch._results.getTargets();
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasNext() {
+        while (_next == null) {
+            if (_prefetch._closed) {
+                if (_prefetch._error != null) {
+                    throw _prefetch._error;
+                }
+                return false;
+            }
+            try {
+                _next = _prefetch._buffer.poll(POLL_MILLIS,
+                                               TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeQueryException(new QueryException(
+                        "Interrupted waiting for results", e));
+            }
+            // the consumer is active even while the buffer is empty
+            _prefetch._lastRead = System.currentTimeMillis();
+        }
+        if (_next instanceof RuntimeQueryException) {
+            RuntimeQueryException e = (RuntimeQueryException) _next;
+            close();
+            throw e;
+        }
+        return _next != END_OF_RESULTS;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public List<Node> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        } else {
+            List<Node> thisTuple = (List<Node>) _next;
+            _next = null;
+            return thisTuple;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void remove() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop reading ahead and discard any buffered rows.
+     *
+     * The wrapped results are closed by the producer thread as soon as it
+     * notices.
+     */
+    public void close() {
+        _next = null;
+        _prefetch.close();
+    }
+
+    /**
+     * The state shared by the results and the producer.
+     */
+    private static class Prefetch {
+
+        /**
+         * The results being read ahead.
+         */
+        private final QueryResults _results;
+
+        /**
+         * The rows read ahead, followed by <code>END_OF_RESULTS</code> or
+         * the error that ended them.
+         */
+        private final BlockingQueue<Object> _buffer;
+
+        /**
+         * How long the producer waits for the consumer before giving up,
+         * in milliseconds.
+         */
+        private final long _maxIdleMillis;
+
+        /**
+         * Whether the results have been closed.
+         */
+        private volatile boolean _closed;
+
+        /**
+         * The error to give the consumer if the producer gave up, if any.
+         */
+        private volatile RuntimeQueryException _error;
+
+        /**
+         * When the consumer last asked for a row, in milliseconds.
+         */
+        private volatile long _lastRead = System.currentTimeMillis();
+
+        /**
+         * Instantiate the shared state.
+         *
+         * @param results the results to read ahead.
+         * @param bufferSize the maximum number of rows to read ahead.
+         * @param maxIdleMillis how long the producer waits for the
+         *        consumer.
+         */
+        Prefetch(final QueryResults results,
+                 final int bufferSize,
+                 final long maxIdleMillis) {
+            _results = results;
+            _buffer = new ArrayBlockingQueue<Object>(Math.max(bufferSize, 1));
+            _maxIdleMillis = maxIdleMillis;
+        }
+
+        /**
+         * Stop reading ahead and discard any buffered rows.
+         */
+        void close() {
+            if (!_closed) {
+                _closed = true;
+                _buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Moves rows from the wrapped results into the buffer.
+     */
+    private static class Producer implements Runnable {
+
+        /**
+         * The shared state.
+         */
+        private final Prefetch _prefetch;
+
+        /**
+         * Instantiate a producer.
+         *
+         * @param prefetch the shared state.
+         */
+        Producer(final Prefetch prefetch) {
+            _prefetch = prefetch;
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            QueryResults results = _prefetch._results;
+            try {
+                while (!_prefetch._closed && results.hasNext()) {
+                    put(results.next());
+                }
+                put(END_OF_RESULTS);
+            } catch (RuntimeQueryException e) {
+                put(e);
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error reading ahead", e);
+                put(new RuntimeQueryException(new QueryException(
+                        "Unexpected error reading ahead", e)));
+            } finally {
+                results.close();
+                if (_prefetch._closed) {
+                    _prefetch._buffer.clear();
+                }
+            }
+        }
+
+        /**
+         * Wait for room in the buffer and add the given item, unless the
+         * results are closed first.
+         *
+         * If the consumer has not asked for a row for longer than allowed,
+         * the results are assumed to be abandoned, and are failed and
+         * closed.  If the producer is interrupted, the results are failed
+         * and closed, too.
+         *
+         * @param item the item.
+         */
+        private void put(final Object item) {
+            try {
+                while (!_prefetch._closed) {
+                    if (_prefetch._buffer.offer(item, POLL_MILLIS,
+                                                TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                    if (System.currentTimeMillis() - _prefetch._lastRead
+                            > _prefetch._maxIdleMillis) {
+                        LOG.warn("Results not read for "
+                                + _prefetch._maxIdleMillis
+                                + "ms; assuming they were abandoned");
+                        _prefetch._error = new RuntimeQueryException(
+                                new QueryException("Results not read for "
+                                + _prefetch._maxIdleMillis
+                                + "ms; query abandoned"));
+                        _prefetch.close();
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while reading ahead; closing");
+                Thread.currentThread().interrupt();
+                _prefetch._error = new RuntimeQueryException(
+                        new QueryException("Interrupted while reading ahead",
+                        e));
+                _prefetch.close();
+            }
+        }
+    }
+
+}
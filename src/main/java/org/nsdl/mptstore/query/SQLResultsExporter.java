@@ -0,0 +1,557 @@
+package org.nsdl.mptstore.query;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.nsdl.mptstore.query.provider.ParameterizedSQL;
+import org.nsdl.mptstore.query.provider.ParameterizedSQLProvider;
+import org.nsdl.mptstore.query.provider.RestrictedSQLProvider;
+import org.nsdl.mptstore.query.provider.SQLProvider;
+import org.nsdl.mptstore.query.provider.TypedSQLProvider;
+import org.nsdl.mptstore.rdf.URIReference;
+
+/**
+ * Writes the results of a list of SQL statements directly as text.
+ *
+ * <p>
+ *   Since the database holds nodes in N-Triples form, results can be
+ *   exported without parsing them: the text of each column is copied
+ *   from the JDBC <code>ResultSet</code> to the output as-is.  No
+ *   <code>Node</code> objects are created, and long values stored as
+ *   CLOBs are streamed through a reusable buffer.  The output should be
+ *   buffered, since it is written in small pieces.
+ * </p>
+ * <p>
+ *   As with {@link SQLUnionQueryResults}, the statements are executed in
+ *   the order given, and any restrictions of a
+ *   <code>RestrictedSQLProvider</code> are applied across all of them.
+ *   Duplicate rows are recognized by their text.
+ * </p>
+ */
+public class SQLResultsExporter {
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(SQLResultsExporter.class.getName());
+
+    /**
+     * The size of the buffer used to copy CLOB values.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The database connection to use for the SQL queries.
+     */
+    private final Connection _conn;
+
+    /**
+     * Provides the SQL and column names for the query.
+     */
+    private final SQLProvider _sqlProvider;
+
+    /**
+     * The JDBC fetchSize to use for each SQL query.
+     */
+    private final int _fetchSize;
+
+    /**
+     * The cache from which to obtain prepared statements, if any.
+     */
+    private final StatementCache _statementCache;
+
+    /**
+     * The buffer used to copy CLOB values.
+     */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Instantiate an exporter for the given SQL on the given connection.
+     *
+     * If a statement cache is given and the provider is a
+     * <code>ParameterizedSQLProvider</code>, its parameterized queries
+     * will be executed using prepared statements from the cache.
+     * Otherwise, its queries will be executed as plain statements.
+     * The connection is never closed by the exporter.
+     *
+     * @param conn the database connection to use.
+     * @param sqlProvider provides the SQL and column names for the query.
+     * @param fetchSize the JDBC fetchSize to use for each SQL query.
+     * @param statementCache the cache of prepared statements to use, or
+     *        <code>null</code> to execute plain statements.
+     */
+    public SQLResultsExporter(final Connection conn,
+                              final SQLProvider sqlProvider,
+                              final int fetchSize,
+                              final StatementCache statementCache) {
+        _conn = conn;
+        _sqlProvider = sqlProvider;
+        _fetchSize = fetchSize;
+        _statementCache = statementCache;
+    }
+
+    /**
+     * Execute the queries and write all result rows in the given format.
+     *
+     * @param out where to write the rows.  It is flushed, but not closed.
+     * @param format the format to write.
+     * @return the number of rows written.
+     * @throws QueryException if the results cannot be written in the
+     *         given format, or the query or output failed for any reason.
+     */
+    public long export(final Writer out,
+                       final ExportFormat format)
+            throws QueryException {
+
+        List<String> targets = _sqlProvider.getTargets();
+        if (format == ExportFormat.NTRIPLES && targets.size() != 3) {
+            throw new QueryException("Cannot export results as N-Triples; "
+                    + "expected 3 columns, but got " + targets.size());
+        }
+
+        try {
+            if (format == ExportFormat.TSV) {
+                writeHeader(out, targets);
+            }
+            long count;
+            if (_statementCache != null
+                    && _sqlProvider instanceof ParameterizedSQLProvider) {
+                count = exportParameterized(out, format);
+            } else {
+                count = exportPlain(out, format);
+            }
+            out.flush();
+            LOG.info("Exported " + count + " rows");
+            return count;
+        } catch (SQLException e) {
+            throw new QueryException("Error querying database", e);
+        } catch (IOException e) {
+            throw new QueryException("Error writing results", e);
+        }
+    }
+
+    /**
+     * Execute each query as a plain statement and write its rows.
+     *
+     * @param out where to write the rows.
+     * @param format the format to write.
+     * @return the number of rows written.
+     * @throws SQLException if there is a database error.
+     * @throws IOException if there is an error writing.
+     * @throws QueryException if a row cannot be written.
+     */
+    private long exportPlain(final Writer out,
+                             final ExportFormat format)
+            throws SQLException, IOException, QueryException {
+        RowWriter writer = new RowWriter(out, format);
+        for (String query : _sqlProvider.getSQL()) {
+            if (writer.isDone()) {
+                break;
+            }
+            Statement statement = _conn.createStatement();
+            try {
+                statement.setFetchSize(_fetchSize);
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                LOG.info("Executing query:\n" + query);
+                ResultSet results = statement.executeQuery(query);
+                try {
+                    writer.writeAll(results);
+                } finally {
+                    results.close();
+                }
+            } finally {
+                statement.close();
+            }
+        }
+        return writer.getCount();
+    }
+
+    /**
+     * Execute each query as a prepared statement from the statement
+     * cache and write its rows.
+     *
+     * @param out where to write the rows.
+     * @param format the format to write.
+     * @return the number of rows written.
+     * @throws SQLException if there is a database error.
+     * @throws IOException if there is an error writing.
+     * @throws QueryException if a row cannot be written.
+     */
+    private long exportParameterized(final Writer out,
+                                     final ExportFormat format)
+            throws SQLException, IOException, QueryException {
+        RowWriter writer = new RowWriter(out, format);
+        List<ParameterizedSQL> queries = ((ParameterizedSQLProvider)
+                _sqlProvider).getParameterizedSQL();
+        for (ParameterizedSQL query : queries) {
+            if (writer.isDone()) {
+                break;
+            }
+            LOG.info("Executing query:\n" + query);
+            PreparedStatement statement =
+                    _statementCache.checkOut(_conn, query.getSQL());
+            try {
+                statement.setFetchSize(_fetchSize);
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                List<String> parameters = query.getParameters();
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setString(i + 1, parameters.get(i));
+                }
+                ResultSet results = statement.executeQuery();
+                try {
+                    writer.writeAll(results);
+                } finally {
+                    results.close();
+                }
+            } finally {
+                _statementCache.checkIn(_conn, query.getSQL(), statement);
+            }
+        }
+        return writer.getCount();
+    }
+
+    /**
+     * Write the TSV header line.
+     *
+     * @param out where to write the header.
+     * @param targets the column names.
+     * @throws IOException if there is an error writing.
+     */
+    private static void writeHeader(final Writer out,
+                                    final List<String> targets)
+            throws IOException {
+        for (int i = 0; i < targets.size(); i++) {
+            if (i > 0) {
+                out.write('\t');
+            }
+            out.write('?');
+            out.write(targets.get(i));
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Writes rows of JDBC ResultSets, keeping track of the restrictions
+     * that apply across all of them.
+     */
+    private class RowWriter {
+
+        /**
+         * Where to write the rows.
+         */
+        private final Writer _out;
+
+        /**
+         * The format to write.
+         */
+        private final ExportFormat _format;
+
+        /**
+         * The number of columns.
+         */
+        private final int _columns;
+
+        /**
+         * The datatype of each column holding plain values rather than
+         * N-Triples nodes, or <code>null</code> if all hold nodes.
+         */
+        private List<URIReference> _datatypes;
+
+        /**
+         * Holds the columns of the current row while it is checked, when
+         * duplicates need not be removed.  Each is the text of the column,
+         * its CLOB if the text is only available that way, or
+         * <code>null</code> if unbound.
+         */
+        private final List<Object> _values;
+
+        /**
+         * Recognizes duplicate rows, if they must be removed.
+         */
+        private DistinctFilter _distinctFilter;
+
+        /**
+         * The number of rows still to be skipped.
+         */
+        private int _skip;
+
+        /**
+         * The number of rows still to be written, or a negative number if
+         * unlimited.
+         */
+        private int _remaining;
+
+        /**
+         * The number of rows written so far.
+         */
+        private long _count;
+
+        /**
+         * Instantiate a RowWriter for the exporter's provider.
+         *
+         * @param out where to write the rows.
+         * @param format the format to write.
+         */
+        RowWriter(final Writer out, final ExportFormat format) {
+            _out = out;
+            _format = format;
+            _columns = _sqlProvider.getTargets().size();
+            _values = new ArrayList<Object>(_columns);
+            if (_sqlProvider instanceof TypedSQLProvider) {
+                _datatypes = ((TypedSQLProvider) _sqlProvider)
+                        .getTargetDatatypes();
+            }
+            if (_sqlProvider instanceof RestrictedSQLProvider) {
+                RestrictedSQLProvider restricted =
+                        (RestrictedSQLProvider) _sqlProvider;
+                if (restricted.isDistinctRequired()) {
+                    _distinctFilter = new DistinctFilter();
+                }
+                _skip = restricted.getOffset();
+                _remaining = restricted.getLimit();
+            } else {
+                _skip = 0;
+                _remaining = -1;
+            }
+        }
+
+        /**
+         * Tell whether the result limit has been reached.
+         *
+         * @return true if no more rows should be written.
+         */
+        boolean isDone() {
+            return _remaining == 0;
+        }
+
+        /**
+         * Get the number of rows written so far.
+         *
+         * @return the number of rows.
+         */
+        long getCount() {
+            return _count;
+        }
+
+        /**
+         * Write the remaining rows of the given ResultSet, up to the
+         * result limit.
+         *
+         * @param results the ResultSet.
+         * @throws SQLException if there is a database error.
+         * @throws IOException if there is an error writing.
+         * @throws QueryException if a row cannot be written.
+         */
+        void writeAll(final ResultSet results)
+                throws SQLException, IOException, QueryException {
+            while (_remaining != 0 && results.next()) {
+                if (_distinctFilter != null) {
+                    List<String> row = readRow(results);
+                    if (!_distinctFilter.accept(row) || skip()) {
+                        continue;
+                    }
+                    checkBound(row);
+                    for (int i = 0; i < _columns; i++) {
+                        writeValue(row.get(i), i);
+                    }
+                    endRow();
+                } else if (!skip()) {
+                    readValues(results);
+                    checkBound(_values);
+                    for (int i = 0; i < _columns; i++) {
+                        copyValue(_values.get(i), i);
+                    }
+                    endRow();
+                }
+            }
+            if (_remaining == 0) {
+                LOG.info("Reached result limit");
+            }
+        }
+
+        /**
+         * Consume one of the rows still to be skipped, if any.
+         *
+         * @return true if the current row should be skipped.
+         */
+        private boolean skip() {
+            if (_skip > 0) {
+                _skip--;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        /**
+         * Read the text of every column of the current row.
+         *
+         * @param results the ResultSet.
+         * @return the text of each column, <code>null</code> if unbound.
+         * @throws SQLException if there is a database error.
+         */
+        private List<String> readRow(final ResultSet results)
+                throws SQLException {
+            List<String> row = new ArrayList<String>(_columns);
+            for (int i = 1; i <= _columns; i++) {
+                String value = results.getString(i);
+                if (value == null) {
+                    Clob c = results.getClob(i);
+                    if (c != null) {
+                        value = c.getSubString(1, (int) c.length());
+                    }
+                }
+                row.add(value);
+            }
+            return row;
+        }
+
+        /**
+         * Read the columns of the current row into <code>_values</code>,
+         * without reading the content of any CLOBs.
+         *
+         * @param results the ResultSet.
+         * @throws SQLException if there is a database error.
+         */
+        private void readValues(final ResultSet results)
+                throws SQLException {
+            _values.clear();
+            for (int i = 1; i <= _columns; i++) {
+                Object value = results.getString(i);
+                if (value == null) {
+                    value = results.getClob(i);
+                }
+                _values.add(value);
+            }
+        }
+
+        /**
+         * Make sure a row can be written in the output format before any
+         * of it is written.
+         *
+         * @param row the columns of the row, <code>null</code> if unbound.
+         * @throws QueryException if a column is unbound and the format
+         *         does not allow it.
+         */
+        private void checkBound(final List<?> row) throws QueryException {
+            if (_format == ExportFormat.NTRIPLES && row.contains(null)) {
+                throw new QueryException("Cannot export row with "
+                        + "unbound value as N-Triples");
+            }
+        }
+
+        /**
+         * Copy a column of the current row to the output, streaming it if
+         * it is only available as a CLOB.
+         *
+         * @param value the text or CLOB of the column, or
+         *        <code>null</code> if unbound.
+         * @param column the zero-based column index.
+         * @throws SQLException if there is a database error.
+         * @throws IOException if there is an error writing.
+         */
+        private void copyValue(final Object value, final int column)
+                throws SQLException, IOException {
+            if (!(value instanceof Clob)) {
+                writeValue((String) value, column);
+                return;
+            }
+            Clob c = (Clob) value;
+            startValue(column);
+            Reader reader = c.getCharacterStream();
+            try {
+                int len;
+                while ((len = reader.read(_buffer)) != -1) {
+                    _out.write(_buffer, 0, len);
+                }
+            } finally {
+                reader.close();
+            }
+            endValue(column);
+        }
+
+        /**
+         * Write the text of a column.
+         *
+         * @param value the text, or <code>null</code> if unbound.
+         * @param column the zero-based column index.
+         * @throws IOException if there is an error writing.
+         */
+        private void writeValue(final String value, final int column)
+                throws IOException {
+            if (value == null) {
+                if (column > 0) {
+                    _out.write('\t');
+                }
+            } else {
+                startValue(column);
+                _out.write(value);
+                endValue(column);
+            }
+        }
+
+        /**
+         * Write whatever precedes the text of a column.
+         *
+         * @param column the zero-based column index.
+         * @throws IOException if there is an error writing.
+         */
+        private void startValue(final int column) throws IOException {
+            if (column > 0) {
+                if (_format == ExportFormat.NTRIPLES) {
+                    _out.write(' ');
+                } else {
+                    _out.write('\t');
+                }
+            }
+            if (_datatypes != null && _datatypes.get(column) != null) {
+                _out.write('"');
+            }
+        }
+
+        /**
+         * Write whatever follows the text of a column.
+         *
+         * @param column the zero-based column index.
+         * @throws IOException if there is an error writing.
+         */
+        private void endValue(final int column) throws IOException {
+            if (_datatypes != null && _datatypes.get(column) != null) {
+                _out.write("\"^^");
+                _out.write(_datatypes.get(column).toString());
+            }
+        }
+
+        /**
+         * Finish the current row.
+         *
+         * @throws IOException if there is an error writing.
+         */
+        private void endRow() throws IOException {
+            if (_format == ExportFormat.NTRIPLES) {
+                _out.write(" .\n");
+            } else {
+                _out.write('\n');
+            }
+            if (_remaining > 0) {
+                _remaining--;
+            }
+            _count++;
+        }
+    }
+
+}
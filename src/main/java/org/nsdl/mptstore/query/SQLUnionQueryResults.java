@@ -1,6 +1,7 @@
 package org.nsdl.mptstore.query;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
@@ -14,8 +15,15 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
+import org.nsdl.mptstore.query.provider.ParameterizedSQL;
+import org.nsdl.mptstore.query.provider.ParameterizedSQLProvider;
+import org.nsdl.mptstore.query.provider.RestrictedSQLProvider;
 import org.nsdl.mptstore.query.provider.SQLProvider;
+import org.nsdl.mptstore.query.provider.TypedSQLProvider;
+import org.nsdl.mptstore.rdf.LazyNode;
+import org.nsdl.mptstore.rdf.Literal;
 import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.URIReference;
 import org.nsdl.mptstore.util.DBUtil;
 import org.nsdl.mptstore.util.NTriplesUtil;
 
@@ -61,6 +69,24 @@ public class SQLUnionQueryResults implements QueryResults {
      */
     private Iterator<String> _queries;
 
+    /**
+     * The parameterized SQL queries to execute, if executing them as
+     * prepared statements.
+     */
+    private Iterator<ParameterizedSQL> _parameterizedQueries;
+
+    /**
+     * The cache from which to obtain prepared statements, if executing
+     * parameterized queries.
+     */
+    private StatementCache _statementCache;
+
+    /**
+     * The SQL of the current JDBC Statement, if it was obtained from the
+     * statement cache.
+     */
+    private String _statementSQL;
+
     /**
      * Whether this instance has been closed.
      */
@@ -81,6 +107,33 @@ public class SQLUnionQueryResults implements QueryResults {
      */
     private List<Node> _nextTuple;
 
+    /**
+     * The datatype of each column holding plain values rather than
+     * N-Triples nodes, or <code>null</code> if all hold nodes.
+     */
+    private List<URIReference> _datatypes;
+
+    /**
+     * Whether to return nodes as <code>LazyNode</code>s.
+     */
+    private boolean _lazyNodes;
+
+    /**
+     * Recognizes duplicate rows, if they must be removed.
+     */
+    private DistinctFilter _distinctFilter;
+
+    /**
+     * The number of rows still to be skipped.
+     */
+    private int _skip;
+
+    /**
+     * The number of rows still to be returned, or a negative number if
+     * unlimited.
+     */
+    private int _remaining;
+
     /**
      * Instantiate SQLUnionQueryResults to work with the given SQL on the
      * given connection.
@@ -97,16 +150,105 @@ public class SQLUnionQueryResults implements QueryResults {
                                 final int fetchSize,
                                 final boolean autoReleaseConnection)
             throws QueryException {
+        this(conn, sqlProvider, fetchSize, autoReleaseConnection, null);
+    }
+
+    /**
+     * Instantiate SQLUnionQueryResults to work with the given SQL on the
+     * given connection, using prepared statements where possible.
+     *
+     * If a statement cache is given and the provider is a
+     * <code>ParameterizedSQLProvider</code>, its parameterized queries
+     * will be executed using prepared statements from the cache.
+     * Otherwise, its queries will be executed as plain statements.
+     *
+     * If the provider is a <code>RestrictedSQLProvider</code>, the
+     * restrictions it leaves to the results are applied across all
+     * statements, and no more statements are executed once its limit has
+     * been reached.
+     *
+     * @param conn the database connection to use.
+     * @param sqlProvider provides the SQL and column names for the query.
+     * @param fetchSize the JDBC fetchSize to use for each SQL query.
+     * @param autoReleaseConnection whether to automatically close/release
+     *        the connection when the results are closed.
+     * @param statementCache the cache of prepared statements to use, or
+     *        <code>null</code> to execute plain statements.
+     * @throws QueryException if an unexpected error occurs starting the query.
+     */
+    public SQLUnionQueryResults(final Connection conn,
+                                final SQLProvider sqlProvider,
+                                final int fetchSize,
+                                final boolean autoReleaseConnection,
+                                final StatementCache statementCache)
+            throws QueryException {
+        this(conn, sqlProvider, fetchSize, autoReleaseConnection,
+             statementCache, false);
+    }
+
+    /**
+     * Instantiate SQLUnionQueryResults to work with the given SQL on the
+     * given connection, optionally deferring the parsing of nodes.
+     *
+     * If <code>lazyNodes</code> is true, each node is returned as a
+     * {@link LazyNode} holding its N-Triples form, which is only parsed
+     * if its parts are needed.  This saves most of the cost of reading
+     * rows whose nodes are only re-serialized.  Note that if duplicate
+     * rows must be removed (see <code>RestrictedSQLProvider</code>),
+     * nodes are parsed in order to compare them.
+     *
+     * @param conn the database connection to use.
+     * @param sqlProvider provides the SQL and column names for the query.
+     * @param fetchSize the JDBC fetchSize to use for each SQL query.
+     * @param autoReleaseConnection whether to automatically close/release
+     *        the connection when the results are closed.
+     * @param statementCache the cache of prepared statements to use, or
+     *        <code>null</code> to execute plain statements.
+     * @param lazyNodes whether to return nodes as <code>LazyNode</code>s.
+     * @throws QueryException if an unexpected error occurs starting the query.
+     */
+    public SQLUnionQueryResults(final Connection conn,
+                                final SQLProvider sqlProvider,
+                                final int fetchSize,
+                                final boolean autoReleaseConnection,
+                                final StatementCache statementCache,
+                                final boolean lazyNodes)
+            throws QueryException {
 
         _conn = conn;
+        _lazyNodes = lazyNodes;
         _sqlProvider = sqlProvider;
         _fetchSize = fetchSize;
         _autoReleaseConnection = autoReleaseConnection;
 
         _closed = false;
 
+        if (sqlProvider instanceof TypedSQLProvider) {
+            _datatypes = ((TypedSQLProvider) sqlProvider)
+                    .getTargetDatatypes();
+        }
+        if (sqlProvider instanceof RestrictedSQLProvider) {
+            RestrictedSQLProvider restricted =
+                    (RestrictedSQLProvider) sqlProvider;
+            if (restricted.isDistinctRequired()) {
+                _distinctFilter = new DistinctFilter();
+            }
+            _skip = restricted.getOffset();
+            _remaining = restricted.getLimit();
+        } else {
+            _skip = 0;
+            _remaining = -1;
+        }
+
         try {
-            _queries = sqlProvider.getSQL().iterator();
+            if (statementCache != null
+                    && sqlProvider instanceof ParameterizedSQLProvider) {
+                _statementCache = statementCache;
+                _parameterizedQueries = ((ParameterizedSQLProvider)
+                        sqlProvider).getParameterizedSQL().iterator();
+            } else {
+                _queries = sqlProvider.getSQL().iterator();
+            }
             try {
                 startNextQuery();
             } catch (SQLException e) {
@@ -129,36 +271,78 @@ public class SQLUnionQueryResults implements QueryResults {
      */
     private void readNextTuple() throws QueryException {
 
-        try {
-            while (_results != null && !_results.next()) {
-                startNextQuery();
-            }
+        if (_remaining == 0) {
+            LOG.info("Reached result limit");
+            close(); // proactively close; no more rows needed
+            _nextTuple = null;
+            return;
+        }
 
-            if (_results == null) {
-                _nextTuple = null;
-            } else {
-                int tupleSize = _sqlProvider.getTargets().size();
-                _nextTuple = new ArrayList<Node>(tupleSize);
-                for (int i = 1; i <= tupleSize; i++) {
-                    String nodeString = DBUtil.getLongString(_results, i);
-                    try {
-                        if (nodeString != null) {
-                            _nextTuple.add(NTriplesUtil.parseNode(nodeString));
-                        } else {
-                            _nextTuple.add(null);
-                        }
-                    } catch (ParseException e) {
-                        throw new QueryException("Error parsing RDF node ("
-                                + nodeString + ") from database: "
-                                + e.getMessage(), e);
-                    }
+        try {
+            while (true) {
+                while (_results != null && !_results.next()) {
+                    startNextQuery();
+                }
+                if (_results == null) {
+                    _nextTuple = null;
+                    return;
+                }
+                if (_skip > 0 && _distinctFilter == null) {
+                    _skip--; // no need to parse it
+                    continue;
+                }
+                List<Node> tuple = readTuple();
+                if (_distinctFilter != null
+                        && !_distinctFilter.accept(tuple)) {
+                    continue;
+                }
+                if (_skip > 0) {
+                    _skip--;
+                    continue;
+                }
+                if (_remaining > 0) {
+                    _remaining--;
                 }
+                _nextTuple = tuple;
+                return;
             }
         } catch (SQLException e) {
             throw new QueryException("Error querying database", e);
         }
     }
 
+    /**
+     * Parse the current row of the current JDBC ResultSet.
+     *
+     * @return the row.
+     * @throws SQLException if there is a database error.
+     * @throws QueryException if a node could not be parsed.
+     */
+    private List<Node> readTuple() throws SQLException, QueryException {
+        int tupleSize = _sqlProvider.getTargets().size();
+        List<Node> tuple = new ArrayList<Node>(tupleSize);
+        for (int i = 1; i <= tupleSize; i++) {
+            String nodeString = DBUtil.getLongString(_results, i);
+            try {
+                if (nodeString == null) {
+                    tuple.add(null);
+                } else if (_datatypes != null
+                        && _datatypes.get(i - 1) != null) {
+                    tuple.add(new Literal(nodeString, _datatypes.get(i - 1)));
+                } else if (_lazyNodes) {
+                    tuple.add(new LazyNode(nodeString));
+                } else {
+                    tuple.add(NTriplesUtil.parseTrustedNode(nodeString));
+                }
+            } catch (ParseException e) {
+                throw new QueryException("Error parsing RDF node ("
+                        + nodeString + ") from database: "
+                        + e.getMessage(), e);
+            }
+        }
+        return tuple;
+    }
+
     /**
      * Start the next SQL query, setting _results as appropriate.
      *
@@ -168,7 +352,9 @@ public class SQLUnionQueryResults implements QueryResults {
      * @throws SQLException if there is a database error.
      */
     private void startNextQuery() throws SQLException {
-        if (_queries.hasNext()) {
+        if (_parameterizedQueries != null) {
+            startNextParameterizedQuery();
+        } else if (_queries.hasNext()) {
             if (_results != null) {
                 // close previous query
                 _results.close();
@@ -187,6 +373,56 @@ public class SQLUnionQueryResults implements QueryResults {
         }
     }
 
+    /**
+     * Start the next parameterized SQL query, setting _results as
+     * appropriate.
+     *
+     * The prior statement, if any, is returned to the statement cache.
+     * If there are no more queries, _results will be set to
+     * <code>null</code>.
+     *
+     * @throws SQLException if there is a database error.
+     */
+    private void startNextParameterizedQuery() throws SQLException {
+        if (_parameterizedQueries.hasNext()) {
+            if (_results != null) {
+                // close previous query
+                _results.close();
+                _results = null;
+                checkInStatement();
+            }
+            ParameterizedSQL query = _parameterizedQueries.next();
+            LOG.info("Executing query:\n" + query);
+            PreparedStatement statement =
+                    _statementCache.checkOut(_conn, query.getSQL());
+            _statement = statement;
+            _statementSQL = query.getSQL();
+            statement.setFetchSize(_fetchSize);
+            statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+            List<String> parameters = query.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setString(i + 1, parameters.get(i));
+            }
+            _results = statement.executeQuery();
+        } else {
+            LOG.info("Finished executing all queries");
+            close(); // proactively close if no more queries
+            _results = null;
+        }
+    }
+
+    /**
+     * Return the current statement to the statement cache.
+     */
+    private void checkInStatement() {
+        if (_statement != null) {
+            _statementCache.checkIn(_conn, _statementSQL,
+                                    (PreparedStatement) _statement);
+            _statement = null;
+            _statementSQL = null;
+        }
+    }
+
     /** {@inheritDoc} */
     public List<String> getTargets() {
         return _sqlProvider.getTargets();
@@ -236,7 +472,9 @@ public class SQLUnionQueryResults implements QueryResults {
                     LOG.warn("Error closing result set", e);
                 }
             }
-            if (_statement != null) {
+            if (_statementCache != null) {
+                checkInStatement();
+            } else if (_statement != null) {
                 try {
                     _statement.close();
                 } catch (Exception e) {
@@ -244,6 +482,9 @@ public class SQLUnionQueryResults implements QueryResults {
                 }
             }
             if (_autoReleaseConnection) {
+                if (_statementCache != null) {
+                    _statementCache.release(_conn);
+                }
                 DBUtil.release(_conn);
             }
             _closed = true;
@@ -0,0 +1,211 @@
+package org.nsdl.mptstore.query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A cache of idle <code>PreparedStatement</code>s, per connection.
+ *
+ * <p>
+ *   Statements are checked out for the duration of a query and checked
+ *   back in when the query is finished with them.  At most one idle
+ *   statement is kept for each distinct SQL string, and at most
+ *   <code>maxPerConnection</code> idle statements are kept for each
+ *   connection; beyond that, the least recently used statement is closed.
+ * </p>
+ * <p>
+ *   Idle statements hold open cursors on the database, and each holds a
+ *   reference to its connection, so they are kept until explicitly
+ *   released.  A connection that is going to be closed or returned to a
+ *   pool <strong>must</strong> first be passed to
+ *   {@link #release(Connection)}.  This is done automatically for query
+ *   results that release their own connection; for connections managed
+ *   by the caller, it is the caller's responsibility.  Connections are
+ *   compared by identity, since a pooled connection wrapper may define
+ *   equality differently.
+ * </p>
+ * <p>
+ *   Note that many drivers and pools (including the Oracle driver's
+ *   implicit statement cache and DBCP's <code>poolPreparedStatements</code>
+ *   option) can cache statements themselves, which is preferable where
+ *   available since such caches survive the connection being returned to
+ *   the pool.  This class works with any driver.
+ * </p>
+ */
+public class StatementCache {
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(StatementCache.class.getName());
+
+    /**
+     * The maximum number of idle statements per connection.
+     */
+    private final int _maxPerConnection;
+
+    /**
+     * The idle statements for each connection, keyed by SQL, in access
+     * order.
+     */
+    private final Map<Connection, LinkedHashMap<String, PreparedStatement>>
+            _idle;
+
+    /**
+     * Instantiate a cache.
+     *
+     * @param maxPerConnection the maximum number of idle statements to keep
+     *        for each connection.  If zero, statements are closed as soon as
+     *        they are checked in.
+     */
+    public StatementCache(final int maxPerConnection) {
+        _maxPerConnection = maxPerConnection;
+        _idle = new IdentityHashMap<Connection,
+                LinkedHashMap<String, PreparedStatement>>();
+    }
+
+    /**
+     * Get a statement for the given SQL, preparing it if no idle statement
+     * is available.
+     *
+     * The caller has exclusive use of the statement until it is checked
+     * back in.
+     *
+     * @param conn the connection.
+     * @param sql the SQL.
+     * @return the statement.
+     * @throws SQLException if the statement must be prepared and preparing
+     *         it fails.
+     */
+    public PreparedStatement checkOut(final Connection conn,
+                                      final String sql)
+            throws SQLException {
+        synchronized (_idle) {
+            Map<String, PreparedStatement> statements = _idle.get(conn);
+            if (statements != null) {
+                PreparedStatement statement = statements.remove(sql);
+                if (statement != null) {
+                    return statement;
+                }
+            }
+        }
+        return conn.prepareStatement(sql);
+    }
+
+    /**
+     * Return a statement that was obtained via
+     * {@link #checkOut(Connection, String)}.
+     *
+     * Any result set obtained from the statement must already be closed.
+     * If the cache has no room for the statement, it (or a less recently
+     * used one) is closed.
+     *
+     * @param conn the connection.
+     * @param sql the SQL.
+     * @param statement the statement.
+     */
+    public void checkIn(final Connection conn,
+                        final String sql,
+                        final PreparedStatement statement) {
+        PreparedStatement toClose = statement;
+        if (_maxPerConnection > 0 && !isClosed(conn)) {
+            synchronized (_idle) {
+                LinkedHashMap<String, PreparedStatement> statements =
+                        _idle.get(conn);
+                if (statements == null) {
+                    statements = new LinkedHashMap<String, PreparedStatement>(
+                            16, 0.75f, true);
+                    _idle.put(conn, statements);
+                }
+                if (!statements.containsKey(sql)) {
+                    statements.put(sql, statement);
+                    toClose = null;
+                    if (statements.size() > _maxPerConnection) {
+                        Iterator<PreparedStatement> iter =
+                                statements.values().iterator();
+                        toClose = iter.next();
+                        iter.remove();
+                    }
+                }
+            }
+        }
+        if (toClose != null) {
+            close(toClose);
+        }
+    }
+
+    /**
+     * Close all idle statements for the given connection and forget it.
+     *
+     * This must be called before the connection is closed or returned
+     * to a pool, or its idle statements will never be closed.
+     *
+     * @param conn the connection.
+     */
+    public void release(final Connection conn) {
+        Map<String, PreparedStatement> statements;
+        synchronized (_idle) {
+            statements = _idle.remove(conn);
+        }
+        if (statements != null) {
+            for (PreparedStatement statement : statements.values()) {
+                close(statement);
+            }
+        }
+    }
+
+    /**
+     * Get the number of idle statements for the given connection.
+     *
+     * @param conn the connection.
+     * @return the number of idle statements.
+     */
+    public int size(final Connection conn) {
+        synchronized (_idle) {
+            Map<String, PreparedStatement> statements = _idle.get(conn);
+            if (statements == null) {
+                return 0;
+            } else {
+                return statements.size();
+            }
+        }
+    }
+
+    /**
+     * Tell whether the given connection is closed, treating errors as
+     * closed.
+     *
+     * @param conn the connection.
+     * @return true if the connection is closed or unusable.
+     */
+    private static boolean isClosed(final Connection conn) {
+        try {
+            return conn.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Close the given statement, logging any error.
+     *
+     * @param statement the statement.
+     */
+    private static void close(final PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.warn("unable to close statement", e);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.nsdl.mptstore.query.component;
+
+/**
+ * An aggregate value computed over the solutions of a {@link GraphQuery}.
+ * <p>
+ * When a query has aggregates, its solutions are grouped by the values of
+ * the target variables, and each result row holds the targets of one group
+ * followed by the value of each aggregate over that group. With no
+ * targets, there is a single group containing every solution.
+ * </p>
+ */
+public class Aggregate {
+
+    /**
+     * Supported aggregate functions.
+     */
+    public enum Function {
+
+        /**
+         * The number of solutions, or of solutions binding the variable,
+         * if one is given.
+         */
+        COUNT,
+
+        /** The number of distinct values bound to the variable. */
+        COUNT_DISTINCT
+    }
+
+    private final Function function;
+
+    private final String variable;
+
+    private final String name;
+
+    /**
+     * Create an aggregate over all solutions.
+     *
+     * @param func
+     *            the aggregate function.
+     * @param resultName
+     *            the name of the result column.
+     */
+    public Aggregate(final Function func, final String resultName) {
+        this(func, null, resultName);
+    }
+
+    /**
+     * Create an aggregate over the values of a variable.
+     *
+     * @param func
+     *            the aggregate function.
+     * @param varName
+     *            the variable, or <code>null</code> to aggregate over all
+     *            solutions.
+     * @param resultName
+     *            the name of the result column.
+     */
+    public Aggregate(final Function func, final String varName,
+            final String resultName) {
+        if (func == Function.COUNT_DISTINCT && varName == null) {
+            throw new IllegalArgumentException("COUNT_DISTINCT requires "
+                    + "a variable");
+        }
+        this.function = func;
+        this.variable = varName;
+        this.name = resultName;
+    }
+
+    /**
+     * Get the aggregate function.
+     *
+     * @return the function.
+     */
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Get the variable whose values are aggregated.
+     *
+     * @return the variable name, or <code>null</code> if aggregating over
+     *         all solutions.
+     */
+    public String getVariable() {
+        return variable;
+    }
+
+    /**
+     * Get the name of the result column.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return function + "(" + (variable == null ? "*" : variable)
+                + ") AS " + name;
+    }
+}
@@ -12,12 +12,16 @@ import java.util.List;
  * GraphQuery is also a QueryElement, graph queries can be arbitrarily
  * nested.
  * </p>
+ * <p> A GraphQuery may also have {@link Aggregate}s, which are computed
+ * over its solutions rather than returning each one.
+ * </p>
  *
  * @author birkland
  */
 public class GraphQuery implements QueryElement {
     private ArrayList<QueryElement> required = new ArrayList<QueryElement>();
     private ArrayList<QueryElement> optional = new ArrayList<QueryElement>();
+    private ArrayList<Aggregate> aggregates = new ArrayList<Aggregate>();
 
     /** {@inheritDoc} */
     public QueryElement.Type getType() {
@@ -59,4 +63,23 @@ public class GraphQuery implements QueryElement {
     public List<QueryElement> getOptional() {
         return new ArrayList<QueryElement>(optional);
     }
+
+    /**
+     * Add an aggregate to be computed over the solutions.
+     *
+     * @param a the aggregate to add.
+     */
+    public void addAggregate(final Aggregate a) {
+        aggregates.add(a);
+    }
+
+    /**
+     * Get the aggregates.
+     *
+     * @return the list of aggregates, empty if solutions are returned
+     *         individually.
+     */
+    public List<Aggregate> getAggregates() {
+        return new ArrayList<Aggregate>(aggregates);
+    }
 }
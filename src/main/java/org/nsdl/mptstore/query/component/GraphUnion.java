@@ -0,0 +1,40 @@
+package org.nsdl.mptstore.query.component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A set of alternative query elements.
+ * <p>
+ * A GraphUnion matches whatever any one of its alternatives matches, e.g.
+ * resources linked to another by either of two predicates.  Each
+ * alternative may be a {@link GraphPattern} or a {@link GraphQuery}, and
+ * all alternatives must use the same variables.
+ * </p>
+ */
+public class GraphUnion implements QueryElement {
+    private ArrayList<QueryElement> alternatives =
+            new ArrayList<QueryElement>();
+
+    /** {@inheritDoc} */
+    public QueryElement.Type getType() {
+        return QueryElement.Type.GraphUnion;
+    }
+
+    /**
+     * Add an alternative.
+     *
+     * @param e the element to add.
+     */
+    public void addAlternative(final QueryElement e) {
+        alternatives.add(e);
+    }
+
+    /**
+     * Get the alternatives.
+     *
+     * @return the list of alternative elements.
+     */
+    public List<QueryElement> getAlternatives() {
+        return new ArrayList<QueryElement>(alternatives);
+    }
+}
@@ -1,5 +1,10 @@
 package org.nsdl.mptstore.query.component;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
 import org.nsdl.mptstore.rdf.Node;
 import org.nsdl.mptstore.rdf.ObjectNode;
 import org.nsdl.mptstore.rdf.PredicateNode;
@@ -27,6 +32,7 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
     private final boolean isVariable;
     private final T nodeValue;
     private final String varName;
+    private final List<Node> nodeValues;
     private MPTable boundTable;
     private String theType;
 
@@ -42,6 +48,7 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
         this.varName = variable;
         this.isVariable = true;
         this.nodeValue = null;
+        this.nodeValues = null;
         theType = type;
     }
 
@@ -64,6 +71,7 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
         this.varName = null;
         this.isVariable = false;
         this.nodeValue = node;
+        this.nodeValues = null;
     }
 
     /**
@@ -79,9 +87,13 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
         this.varName = nodePattern.getVarName();
         this.isVariable = nodePattern.isVariable();
         this.nodeValue = nodePattern.getNode();
+        this.nodeValues = nodesOf(nodePattern);
 
         if (!nodePattern.isVariable()) {
-            T node = nodePattern.getNode();
+            Node node = nodePattern.getNode();
+            if (nodeValues != null && !nodeValues.isEmpty()) {
+                node = nodeValues.get(0);
+            }
             if (node instanceof SubjectNode) {
                 theType = Types.SUBJECT;
             } else if (node instanceof ObjectNode) {
@@ -113,7 +125,7 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
         this.varName = nodePattern.getVarName();
         this.isVariable = nodePattern.isVariable();
         this.nodeValue = nodePattern.getNode();
-
+        this.nodeValues = nodesOf(nodePattern);
 
         if (SubjectNode.class.isAssignableFrom(patternType)) {
             theType = Types.SUBJECT;
@@ -127,6 +139,29 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
         }
     }
 
+    /*
+     * Get the nodes of the given pattern if it is a set pattern, or null
+     */
+    private static List<Node> nodesOf(final NodePattern<?> nodePattern) {
+        if (nodePattern instanceof NodeSetPattern) {
+            return Collections.unmodifiableList(new ArrayList<Node>(
+                    ((NodeSetPattern<?>) nodePattern).getNodes()));
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get the nodes matched by this pattern, if it was created from a
+     * {@link NodeSetPattern}.
+     *
+     * @return the nodes, in the order given, or null if this pattern is a
+     *         variable or a single node.
+     */
+    public List<Node> getNodes() {
+        return nodeValues;
+    }
+
     /**
      * Tell whether this node pattern is variable.
      *
@@ -175,6 +210,10 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
      * Return the table/alias and column identifier of the RDBMS location of
      * this value or literal.
      *
+     * A given predicate is identified by its table alone, since each
+     * predicate has its own table.  A variable predicate is bound to a
+     * table that has a <code>p</code> column holding its value.
+     *
      * @return the mapped name.
      */
     public String mappedName() {
@@ -188,8 +227,8 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
             }
         }
 
-        if (theType == null || theType.equals(
-                MappableNodePattern.Types.PREDICATE)) {
+        if (theType == null || (!isVariable && theType.equals(
+                MappableNodePattern.Types.PREDICATE))) {
             return boundTable.alias();
         } else {
             return (boundTable.alias() + "." + theType);
@@ -222,6 +261,8 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
      *   <li> Nulls are not equal.</li>
      *   <li> If both patterns are Nodes, equality is determined by comparing
      *   getValue() for each node.</li>
+     *   <li> If both patterns are sets of nodes, they are equal if they match
+     *   the same nodes, regardless of order.</li>
      *  </ul>
      *  </p>
      * @param p the object to compare this one to.
@@ -231,7 +272,7 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
         if (!(p instanceof MappableNodePattern)) {
             return false;
         }
-        MappableNodePattern comparison = (MappableNodePattern) p;
+        MappableNodePattern<?> comparison = (MappableNodePattern<?>) p;
 
         if (this.isVariable() && comparison.isVariable()) {
             if (this.getVarName() == null || comparison.getVarName() == null) {
@@ -239,6 +280,11 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
             }
             return this.getVarName().equals(comparison.getVarName());
         } else if ((!this.isVariable()) && (!comparison.isVariable())) {
+            if (this.getNodes() != null) {
+                return comparison.getNodes() != null
+                        && new HashSet<Node>(this.getNodes()).equals(
+                                new HashSet<Node>(comparison.getNodes()));
+            }
             if (this.getNode() == null || comparison.getNode() == null) {
                 return false;
             }
@@ -256,13 +302,16 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
      * Get a string representation of this mappable node pattern.
      *
      * If variable, this is the variable.
-     * Otherwise, it's the node's string representation.
+     * Otherwise, it's the string representation of the node or set of
+     * nodes.
      *
      * @return the string representation.
      */
     public String toString() {
         if (isVariable) {
             return varName;
+        } else if (nodeValues != null) {
+            return nodeValues.toString();
         } else {
             return nodeValue.toString();
         }
@@ -272,13 +321,15 @@ public class MappableNodePattern<T extends Node> implements NodePattern<T> {
      * Get a hash code for this mappable node pattern.
      *
      * If variable, the hash code is that of the variable string.
-     * Otherwise, it's the hash code of the node.
+     * Otherwise, it's the hash code of the node or set of nodes.
      *
      * @return the hash code.
      */
     public int hashCode() {
         if (isVariable) {
             return varName.hashCode();
+        } else if (nodeValues != null) {
+            return new HashSet<Node>(nodeValues).hashCode();
         } else {
             return nodeValue.hashCode();
         }
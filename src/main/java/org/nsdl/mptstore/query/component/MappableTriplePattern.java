@@ -28,6 +28,8 @@ public class MappableTriplePattern implements TriplePattern {
     private final MappableNodePattern<SubjectNode> subject;
     private final MappableNodePattern<PredicateNode> predicate;
     private final MappableNodePattern<ObjectNode> object;
+    private final boolean transitive;
+    private final int maxDepth;
 
     /**
      * Construct a mappable triple pattern with the given component
@@ -44,6 +46,8 @@ public class MappableTriplePattern implements TriplePattern {
         this.subject = s;
         this.predicate = p;
         this.object = o;
+        this.transitive = false;
+        this.maxDepth = TransitivePattern.UNLIMITED;
     }
 
     /**
@@ -58,6 +62,32 @@ public class MappableTriplePattern implements TriplePattern {
                 pattern.getPredicate(), PredicateNode.class);
         this.object = new MappableNodePattern<ObjectNode>(
                 pattern.getObject(), ObjectNode.class);
+        if (pattern instanceof TransitivePattern) {
+            this.transitive = true;
+            this.maxDepth = ((TransitivePattern) pattern).getMaxDepth();
+        } else {
+            this.transitive = false;
+            this.maxDepth = TransitivePattern.UNLIMITED;
+        }
+    }
+
+    /**
+     * Tell whether this pattern matches paths of triples rather than single
+     * triples, i.e. whether it was created from a {@link TransitivePattern}.
+     *
+     * @return whether this pattern is transitive.
+     */
+    public boolean isTransitive() {
+        return this.transitive;
+    }
+
+    /**
+     * Get the maximum number of triples in a path matched by this pattern.
+     *
+     * @return the maximum length, or <code>TransitivePattern.UNLIMITED</code>.
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
     }
 
     /**
@@ -99,7 +129,8 @@ public class MappableTriplePattern implements TriplePattern {
     }
 
     /**
-     * Get the subject and object node patterns in a set.
+     * Get the subject and object node patterns in a set, along with the
+     * predicate pattern if it is a variable.
      *
      * @return a set containing the subject and object node patterns.
      */
@@ -107,6 +138,9 @@ public class MappableTriplePattern implements TriplePattern {
         Set<MappableNodePattern<? extends Node>> parts =
                 new HashSet<MappableNodePattern<? extends Node>>();
         parts.add(subject);
+        if (predicate.isVariable()) {
+            parts.add(predicate);
+        }
         parts.add(object);
         return parts;
     }
@@ -125,7 +159,9 @@ public class MappableTriplePattern implements TriplePattern {
 
         return (this.subject.equals(pattern.subject)
                 && this.predicate.equals(pattern.predicate)
-                && this.object.equals(pattern.object));
+                && this.object.equals(pattern.object)
+                && this.transitive == pattern.transitive
+                && this.maxDepth == pattern.maxDepth);
     }
 
     /** {@inheritDoc} */
@@ -135,6 +171,9 @@ public class MappableTriplePattern implements TriplePattern {
 
     /** {@inheritDoc} */
     public String toString() {
+        if (transitive) {
+            return subject + " " + predicate + "+ " + object;
+        }
         return subject + " " + predicate + " " + object;
     }
 }
@@ -0,0 +1,105 @@
+package org.nsdl.mptstore.query.component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.nsdl.mptstore.rdf.Node;
+
+/** A node pattern that matches any one of a set of given nodes.
+ * <p>
+ * This allows many lookups that differ only in the value of one node to be
+ * made with a single query, e.g. finding the titles of a page of resources
+ * at once rather than one resource at a time.  A set pattern is not a
+ * variable, and has no single node value: {@link #getNode()} always returns
+ * null, and the nodes are available from {@link #getNodes()}.
+ * </p>
+ * <p>
+ * Set patterns may be given for the subject or object of a triple pattern,
+ * but not for its predicate or within a {@link NodeFilter}.
+ * </p>
+ *
+ *
+ * @param <T> The type of node that is described by the pattern.  Typically,
+ * this is one of SubjectNode, PredicateNode, ObjectNode, or just Node if the
+ * exact node type is unimportant or unknown.
+ */
+public class NodeSetPattern<T extends Node> implements NodePattern<T> {
+
+    private final Set<T> nodeValues;
+
+    /**
+     * Construct a NodeSetPattern matching any of the given nodes.
+     *
+     * @param nodes the nodes.  Duplicates are ignored, and the order of the
+     *        first occurrence of each node is kept.
+     */
+    public NodeSetPattern(final Collection<? extends T> nodes) {
+        this.nodeValues = Collections.unmodifiableSet(
+                new LinkedHashSet<T>(nodes));
+    }
+
+    /**
+     * Get the nodes this pattern matches.
+     *
+     * @return the nodes, in the order given.
+     */
+    public Set<T> getNodes() {
+        return this.nodeValues;
+    }
+
+    /**
+     * Always returns null, since a set pattern has no single node value.
+     *
+     * @return null.
+     */
+    public T getNode() {
+        return null;
+    }
+
+    /**
+     * Always returns null, since a set pattern is not a variable.
+     *
+     * @return null.
+     */
+    public String getVarName() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isVariable() {
+        return false;
+    }
+
+    /** Equality of set patterns.
+     * <p>
+     * Set patterns are equal if they match the same nodes, regardless of
+     * order.
+     * </p>
+     *
+     * @param p the object to compare this one to.
+     * @return whether the objects are equal.
+     */
+    public boolean equals(final Object p) {
+        if (!(p instanceof NodeSetPattern)) {
+            return false;
+        }
+        return this.nodeValues.equals(((NodeSetPattern<?>) p).getNodes());
+    }
+
+    /**
+     * Get a hash code for this set pattern, which is that of its set of
+     * nodes.
+     *
+     * @return the hash code.
+     */
+    public int hashCode() {
+        return nodeValues.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return nodeValues.toString();
+    }
+}
@@ -3,9 +3,9 @@ package org.nsdl.mptstore.query.component;
 
 /** A component of a graph query.
  * <p>
- * Currently, query elements may be a {@link GraphQuery} or a
- * {@link GraphPattern}.  The known QueryElement types are
- * enumerated in {@link QueryElement.Type}.
+ * Currently, query elements may be a {@link GraphQuery}, a
+ * {@link GraphPattern} or a {@link GraphUnion}.  The known QueryElement
+ * types are enumerated in {@link QueryElement.Type}.
  * </p>
  *
  * @author birkland
@@ -29,6 +29,9 @@ public interface QueryElement {
         GraphQuery,
 
         /** A graph pattern. */
-        GraphPattern
+        GraphPattern,
+
+        /** A union of alternative query elements. */
+        GraphUnion
     }
 }
@@ -0,0 +1,74 @@
+package org.nsdl.mptstore.query.component;
+
+import org.nsdl.mptstore.rdf.ObjectNode;
+import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.SubjectNode;
+
+/** A triple pattern matching paths of one or more triples.
+ * <p>
+ * A transitive pattern with predicate p matches a subject and object if
+ * the object can be reached from the subject by following one or more
+ * triples with predicate p, e.g. all collections that an item is directly
+ * or indirectly a member of.  Each pair is matched once, however many
+ * paths connect it, and cycles in the data are allowed.
+ * </p>
+ * <p>
+ * The predicate must be given; the length of paths may optionally be
+ * limited.
+ * </p>
+ */
+public class TransitivePattern extends BasicTriplePattern {
+
+    /** Indicates that the length of paths is not limited. */
+    public static final int UNLIMITED = -1;
+
+    private final int maxDepth;
+
+    /**
+     * Construct a TransitivePattern matching paths of any length.
+     *
+     * @param s the subject pattern.
+     * @param p the predicate pattern.
+     * @param o the object pattern.
+     */
+    public TransitivePattern(final NodePattern<SubjectNode> s,
+                             final NodePattern<PredicateNode> p,
+                             final NodePattern<ObjectNode> o) {
+        this(s, p, o, UNLIMITED);
+    }
+
+    /**
+     * Construct a TransitivePattern matching paths of limited length.
+     *
+     * @param s the subject pattern.
+     * @param p the predicate pattern.
+     * @param o the object pattern.
+     * @param depth the maximum number of triples in a path, or
+     *        <code>UNLIMITED</code>.
+     */
+    public TransitivePattern(final NodePattern<SubjectNode> s,
+                             final NodePattern<PredicateNode> p,
+                             final NodePattern<ObjectNode> o,
+                             final int depth) {
+        super(s, p, o);
+        if (depth == 0 || depth < UNLIMITED) {
+            throw new IllegalArgumentException("Maximum path length must be "
+                    + "positive or UNLIMITED");
+        }
+        this.maxDepth = depth;
+    }
+
+    /**
+     * Get the maximum number of triples in a matching path.
+     *
+     * @return the maximum length, or <code>UNLIMITED</code>.
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return getSubject() + " " + getPredicate() + "+ " + getObject();
+    }
+}
@@ -0,0 +1,250 @@
+package org.nsdl.mptstore.query.lang;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import org.nsdl.mptstore.core.PredicateSummaryIndex;
+import org.nsdl.mptstore.core.TableManager;
+import org.nsdl.mptstore.query.QueryException;
+import org.nsdl.mptstore.query.provider.CompiledSQLProvider;
+import org.nsdl.mptstore.query.provider.SQLProvider;
+
+/**
+ * A <code>QueryCompiler</code> that caches the output of another.
+ *
+ * <p>
+ *   Compiled queries are cached as immutable {@link CompiledSQLProvider}s,
+ *   keyed by the normalized query text, the mapping version of the
+ *   {@link TableManager} and the versions of its statistics catalog and
+ *   predicate summary index, so a cache hit skips both parsing and SQL
+ *   generation.  When a predicate is mapped or unmapped, a table becomes
+ *   empty or non-empty, or the summary index gains a predicate for a
+ *   bucket, the key changes and entries compiled against the old state
+ *   are never hit again; they age out of the cache as new entries are
+ *   added.
+ * </p>
+ * <p>
+ *   While a summary index is enabled, nearly every insert of a new subject
+ *   or object sets a new bit, and so changes the key of every cached
+ *   query.  The cache is therefore of little use while the store is being
+ *   written to heavily.  The index version cannot be left out of the key,
+ *   since SQL compiled against an older index may leave out tables that
+ *   have since gained matching triples.
+ * </p>
+ * <p>
+ *   Query text is normalized by collapsing each run of spaces and tabs
+ *   outside of quoted strings and URI references to a single space.
+ *   This is only appropriate for languages, like SPO, in which the length
+ *   of such runs is insignificant.  Leading and trailing whitespace is
+ *   kept, so queries that would fail to parse are never mistaken for
+ *   cached ones.
+ * </p>
+ * <p>
+ *   The cache is bounded, evicting the least recently used entry when
+ *   full, and is safe for concurrent use.  Compilation itself happens
+ *   outside the lock, so two threads missing on the same query at once
+ *   may both compile it.
+ * </p>
+ */
+public class CachingQueryCompiler implements QueryCompiler {
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(CachingQueryCompiler.class.getName());
+
+    /**
+     * The compiler to delegate to on a cache miss.
+     */
+    private final QueryCompiler _compiler;
+
+    /**
+     * The table manager whose mapping, statistics and summary index
+     * versions are part of each key.
+     */
+    private final TableManager _tableManager;
+
+    /**
+     * The cache, in access order.
+     */
+    private final Map<String, SQLProvider> _cache;
+
+    /**
+     * The number of cache hits so far.
+     */
+    private long _hits;
+
+    /**
+     * The number of cache misses so far.
+     */
+    private long _misses;
+
+    /**
+     * Instantiate a caching compiler.
+     *
+     * @param compiler the compiler to delegate to on a cache miss.
+     * @param tableManager the table manager used by the compiler.
+     * @param maxSize the maximum number of compiled queries to keep.
+     */
+    public CachingQueryCompiler(final QueryCompiler compiler,
+                                final TableManager tableManager,
+                                final int maxSize) {
+        _compiler = compiler;
+        _tableManager = tableManager;
+        _cache = new LinkedHashMap<String, SQLProvider>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, SQLProvider> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    public SQLProvider compile(final String queryText)
+            throws QueryException {
+        PredicateSummaryIndex index = _tableManager.getSummaryIndex();
+        long indexVersion = -1;
+        if (index != null) {
+            indexVersion = index.getVersion();
+        }
+        String key = _tableManager.getMappingVersion() + " "
+                + _tableManager.getStatistics().getVersion() + " "
+                + indexVersion + " " + normalize(queryText);
+        synchronized (_cache) {
+            SQLProvider provider = _cache.get(key);
+            if (provider != null) {
+                _hits++;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Query cache hit: " + queryText);
+                }
+                return provider;
+            }
+            _misses++;
+        }
+        SQLProvider provider = new CompiledSQLProvider(
+                _compiler.compile(queryText));
+        synchronized (_cache) {
+            _cache.put(key, provider);
+        }
+        return provider;
+    }
+
+    /**
+     * Get the compiler this instance delegates to.
+     *
+     * @return the underlying compiler.
+     */
+    public QueryCompiler getCompiler() {
+        return _compiler;
+    }
+
+    /**
+     * Get the number of compiled queries currently cached.
+     *
+     * @return the cache size.
+     */
+    public int size() {
+        synchronized (_cache) {
+            return _cache.size();
+        }
+    }
+
+    /**
+     * Get the number of cache hits since this instance was created.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        synchronized (_cache) {
+            return _hits;
+        }
+    }
+
+    /**
+     * Get the number of cache misses since this instance was created.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        synchronized (_cache) {
+            return _misses;
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear() {
+        synchronized (_cache) {
+            _cache.clear();
+        }
+    }
+
+    /**
+     * Normalize the given query text.
+     *
+     * Runs of spaces and tabs are collapsed to a single space, except
+     * within double-quoted strings (which may contain backslash escapes)
+     * and angle-bracketed URI references.
+     *
+     * @param queryText the query text.
+     * @return the normalized text.
+     */
+    static String normalize(final String queryText) {
+        int len = queryText.length();
+        StringBuilder out = null;
+        boolean inQuote = false;
+        boolean inURI = false;
+        boolean inSpace = false;
+        for (int i = 0; i < len; i++) {
+            char c = queryText.charAt(i);
+            boolean space = !inQuote && !inURI && (c == ' ' || c == '\t');
+            if (space && inSpace) {
+                if (out == null) {
+                    out = new StringBuilder(len);
+                    out.append(queryText, 0, i);
+                }
+                continue;
+            }
+            if (space && c == '\t') {
+                if (out == null) {
+                    out = new StringBuilder(len);
+                    out.append(queryText, 0, i);
+                }
+                c = ' ';
+            }
+            inSpace = space;
+            if (inQuote) {
+                if (c == '\\' && i + 1 < len) {
+                    if (out != null) {
+                        out.append(c);
+                    }
+                    c = queryText.charAt(++i);
+                } else if (c == '"') {
+                    inQuote = false;
+                }
+            } else if (inURI) {
+                if (c == '>') {
+                    inURI = false;
+                }
+            } else if (c == '"') {
+                inQuote = true;
+            } else if (c == '<') {
+                inURI = true;
+            }
+            if (out != null) {
+                out.append(c);
+            }
+        }
+        if (out == null) {
+            return queryText;
+        } else {
+            return out.toString();
+        }
+    }
+
+}
@@ -10,6 +10,8 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
+import org.nsdl.mptstore.core.GenericSQLDialect;
+import org.nsdl.mptstore.core.SQLDialect;
 import org.nsdl.mptstore.core.TableManager;
 import org.nsdl.mptstore.query.QueryException;
 import org.nsdl.mptstore.query.component.BasicNodePattern;
@@ -79,6 +81,27 @@ public class SPOQueryCompiler implements QueryCompiler {
      */
     private boolean _backslashIsEscape;
 
+    /**
+     * The maximum number of per-table queries to combine into each
+     * statement.
+     */
+    private int _unionWidth = 1;
+
+    /**
+     * Whether to skip tables known to be empty.
+     */
+    private boolean _pruneEmptyTables;
+
+    /**
+     * Whether to remove duplicate triples.
+     */
+    private boolean _distinct;
+
+    /**
+     * The dialect of the database.
+     */
+    private SQLDialect _dialect = new GenericSQLDialect();
+
     /**
      * Instantiate an SPOQueryCompiler.
      *
@@ -93,6 +116,60 @@ public class SPOQueryCompiler implements QueryCompiler {
         _backslashIsEscape = backslashIsEscape;
     }
 
+    /**
+     * Set the maximum number of per-table queries to combine into each
+     * <code>UNION ALL</code> statement when the predicate is unbound.
+     *
+     * The default, <code>1</code>, executes a separate statement for each
+     * predicate table.
+     *
+     * @param unionWidth the maximum number of queries per statement.
+     */
+    public void setUnionWidth(final int unionWidth) {
+        _unionWidth = unionWidth;
+    }
+
+    /**
+     * Set the dialect of the database.
+     *
+     * This is used to type the predicate literals in combined statements
+     * (see {@link #setUnionWidth(int)}), so it should be set whenever the
+     * union width is more than one.  By default, standard SQL is
+     * generated; see {@link GenericSQLDialect}.
+     *
+     * @param dialect the dialect of the database.
+     */
+    public void setDialect(final SQLDialect dialect) {
+        _dialect = dialect;
+    }
+
+    /**
+     * Set whether to skip predicate tables that the statistics catalog
+     * shows to be empty.
+     *
+     * This is off by default, since statistics may be stale if the
+     * database is written to by other means.
+     *
+     * @param pruneEmptyTables whether to skip tables known to be empty.
+     * @see org.nsdl.mptstore.core.TableManager#getStatistics()
+     */
+    public void setPruneEmptyTables(final boolean pruneEmptyTables) {
+        _pruneEmptyTables = pruneEmptyTables;
+    }
+
+    /**
+     * Set whether to have the database remove duplicate triples.
+     *
+     * This is off by default, since <code>SELECT DISTINCT</code> costs the
+     * database a sort or hash for every query, and duplicates only exist
+     * if the same triple has been added more than once.
+     *
+     * @param distinct whether to remove duplicate triples.
+     */
+    public void setDistinct(final boolean distinct) {
+        _distinct = distinct;
+    }
+
     /** {@inheritDoc} */
     public SQLProvider compile(final String query)
             throws QueryException {
@@ -102,7 +179,11 @@ public class SPOQueryCompiler implements QueryCompiler {
                     _tableManager,
                     _backslashIsEscape,
                     parseTriplePattern(query),
-                    SPO_TARGETS);
+                    SPO_TARGETS,
+                    _unionWidth,
+                    _pruneEmptyTables,
+                    _distinct,
+                    _dialect);
         } catch (ParseException e) {
             throw new QuerySyntaxException("Error parsing SPO query", e);
         }
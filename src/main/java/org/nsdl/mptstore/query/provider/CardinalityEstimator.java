@@ -0,0 +1,104 @@
+package org.nsdl.mptstore.query.provider;
+
+import org.nsdl.mptstore.core.StatisticsCatalog;
+import org.nsdl.mptstore.core.TableManager;
+import org.nsdl.mptstore.core.TableStatistics;
+import org.nsdl.mptstore.rdf.PredicateNode;
+
+/**
+ * Estimates how many rows a triple pattern will match.
+ * <p>
+ * Estimates are based on the per-predicate statistics kept by the
+ * {@link TableManager}. A bound subject or object is assumed to match the
+ * average number of rows per distinct value in its column, so a pattern with
+ * both bound matches roughly
+ * <code>rows / (distinctSubjects * distinctObjects)</code>. Estimates may be
+ * fractional; they are meant for comparing patterns, not for sizing
+ * results.
+ * </p>
+ * <p>
+ * Predicates without a table are known to match nothing. Predicates whose
+ * statistics are unknown are assumed to have {@link #UNKNOWN_ROW_COUNT} rows
+ * with a fan-out of {@link #UNKNOWN_FAN_OUT} in each column.
+ * </p>
+ */
+public class CardinalityEstimator {
+
+    /**
+     * Row count assumed for tables whose statistics are unknown.
+     */
+    public static final long UNKNOWN_ROW_COUNT = 1000000;
+
+    /**
+     * Rows per distinct value assumed for tables whose statistics are
+     * unknown.
+     */
+    public static final long UNKNOWN_FAN_OUT = 10;
+
+    private final TableManager tableManager;
+
+    /**
+     * Create an instance.
+     *
+     * @param tm
+     *            the table manager to use for looking up tables and
+     *            statistics.
+     */
+    public CardinalityEstimator(final TableManager tm) {
+        this.tableManager = tm;
+    }
+
+    /**
+     * Get the statistics for a predicate.
+     * <p>
+     * The returned statistics are never <code>null</code>: if the predicate
+     * has no table, they are empty, and if the statistics are otherwise
+     * unknown, they are made up from the defaults.
+     * </p>
+     *
+     * @param predicate
+     *            the predicate.
+     * @return the known or assumed statistics.
+     */
+    public TableStatistics getStatistics(final PredicateNode predicate) {
+        if (tableManager.getTableFor(predicate) == null) {
+            return TableStatistics.EMPTY;
+        }
+        StatisticsCatalog catalog = tableManager.getStatistics();
+        TableStatistics stats = catalog.get(predicate);
+        if (stats == null) {
+            long distinct = UNKNOWN_ROW_COUNT / UNKNOWN_FAN_OUT;
+            return new TableStatistics(UNKNOWN_ROW_COUNT, distinct, distinct);
+        } else {
+            return stats;
+        }
+    }
+
+    /**
+     * Estimate the number of rows a pattern will match.
+     *
+     * @param predicate
+     *            the predicate of the pattern.
+     * @param subjectBound
+     *            whether the subject is bound to a single value, either a
+     *            constant or a previously joined column.
+     * @param objectBound
+     *            whether the object is bound to a single value.
+     * @return the estimated number of matching rows.
+     */
+    public double estimate(final PredicateNode predicate,
+            final boolean subjectBound, final boolean objectBound) {
+        TableStatistics stats = getStatistics(predicate);
+        if (stats.getRowCount() == 0) {
+            return 0;
+        }
+        double rows = stats.getRowCount();
+        if (subjectBound) {
+            rows /= stats.getDistinctSubjects();
+        }
+        if (objectBound) {
+            rows /= stats.getDistinctObjects();
+        }
+        return rows;
+    }
+}
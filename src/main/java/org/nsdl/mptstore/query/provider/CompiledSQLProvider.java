@@ -0,0 +1,147 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.nsdl.mptstore.query.QueryException;
+import org.nsdl.mptstore.rdf.URIReference;
+
+/**
+ * An immutable snapshot of the output of another <code>SQLProvider</code>.
+ *
+ * If the original provider is a <code>ParameterizedSQLProvider</code>, its
+ * parameterized statements are captured as well.  Otherwise, the
+ * parameterized form of each statement is simply the statement itself,
+ * with no parameters.  Likewise, if the original provider is a
+ * <code>RestrictedSQLProvider</code>, the restrictions it leaves to the
+ * results are captured, as are the column datatypes of a
+ * <code>TypedSQLProvider</code>.
+ *
+ * Since the targets and SQL are captured once, at construction time,
+ * instances are safe to share between threads and to re-use for as long
+ * as the table mappings they were generated against remain unchanged.
+ */
+public class CompiledSQLProvider implements ParameterizedSQLProvider,
+        RestrictedSQLProvider, TypedSQLProvider {
+
+    /**
+     * The target names.
+     */
+    private final List<String> _targets;
+
+    /**
+     * The datatype of each target, if it holds plain values.
+     */
+    private final List<URIReference> _datatypes;
+
+    /**
+     * The <code>SELECT</code> statements.
+     */
+    private final List<String> _sql;
+
+    /**
+     * The parameterized <code>SELECT</code> statements.
+     */
+    private final List<ParameterizedSQL> _parameterizedSQL;
+
+    /**
+     * Whether the results must remove duplicates.
+     */
+    private final boolean _distinct;
+
+    /**
+     * The maximum number of rows the results must return.
+     */
+    private final int _limit;
+
+    /**
+     * The number of rows the results must skip.
+     */
+    private final int _offset;
+
+    /**
+     * Capture the targets and SQL of the given provider.
+     *
+     * @param provider the provider to take a snapshot of.
+     * @throws QueryException if the provider could not generate its SQL.
+     */
+    public CompiledSQLProvider(final SQLProvider provider)
+            throws QueryException {
+        _sql = Collections.unmodifiableList(
+                new ArrayList<String>(provider.getSQL()));
+        _targets = Collections.unmodifiableList(
+                new ArrayList<String>(provider.getTargets()));
+        List<URIReference> datatypes;
+        if (provider instanceof TypedSQLProvider) {
+            datatypes = new ArrayList<URIReference>(
+                    ((TypedSQLProvider) provider).getTargetDatatypes());
+        } else {
+            datatypes = new ArrayList<URIReference>();
+            for (int i = 0; i < _targets.size(); i++) {
+                datatypes.add(null);
+            }
+        }
+        _datatypes = Collections.unmodifiableList(datatypes);
+        List<ParameterizedSQL> parameterizedSQL;
+        if (provider instanceof ParameterizedSQLProvider) {
+            parameterizedSQL = new ArrayList<ParameterizedSQL>(
+                    ((ParameterizedSQLProvider) provider)
+                    .getParameterizedSQL());
+        } else {
+            parameterizedSQL = new ArrayList<ParameterizedSQL>();
+            List<String> noParameters = Collections.emptyList();
+            for (String sql : _sql) {
+                parameterizedSQL.add(new ParameterizedSQL(sql, noParameters));
+            }
+        }
+        _parameterizedSQL = Collections.unmodifiableList(parameterizedSQL);
+        if (provider instanceof RestrictedSQLProvider) {
+            RestrictedSQLProvider restricted =
+                    (RestrictedSQLProvider) provider;
+            _distinct = restricted.isDistinctRequired();
+            _limit = restricted.getLimit();
+            _offset = restricted.getOffset();
+        } else {
+            _distinct = false;
+            _limit = -1;
+            _offset = 0;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getTargets() {
+        return _targets;
+    }
+
+    /** {@inheritDoc} */
+    public List<URIReference> getTargetDatatypes() {
+        return _datatypes;
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getSQL() {
+        return _sql;
+    }
+
+    /** {@inheritDoc} */
+    public List<ParameterizedSQL> getParameterizedSQL() {
+        return _parameterizedSQL;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isDistinctRequired() {
+        return _distinct;
+    }
+
+    /** {@inheritDoc} */
+    public int getLimit() {
+        return _limit;
+    }
+
+    /** {@inheritDoc} */
+    public int getOffset() {
+        return _offset;
+    }
+
+}
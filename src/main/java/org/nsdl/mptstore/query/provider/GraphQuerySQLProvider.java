@@ -1,28 +1,43 @@
 package org.nsdl.mptstore.query.provider;
 
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.nsdl.mptstore.core.GenericSQLDialect;
+import org.nsdl.mptstore.core.PredicateSummaryIndex;
+import org.nsdl.mptstore.core.SQLDialect;
+import org.nsdl.mptstore.core.StatisticsCatalog;
 import org.nsdl.mptstore.core.TableManager;
 import org.nsdl.mptstore.query.QueryException;
+import org.nsdl.mptstore.query.component.Aggregate;
 import org.nsdl.mptstore.query.component.GraphPattern;
 import org.nsdl.mptstore.query.component.GraphQuery;
+import org.nsdl.mptstore.query.component.GraphUnion;
 import org.nsdl.mptstore.query.component.MPTable;
 import org.nsdl.mptstore.query.component.MappableNodeFilter;
 import org.nsdl.mptstore.query.component.MappableNodePattern;
 import org.nsdl.mptstore.query.component.MappableTriplePattern;
 import org.nsdl.mptstore.query.component.NodeFilter;
+import org.nsdl.mptstore.query.component.NodeSetPattern;
 import org.nsdl.mptstore.query.component.QueryElement;
+import org.nsdl.mptstore.query.component.TransitivePattern;
 import org.nsdl.mptstore.query.component.TriplePattern;
 import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.ObjectNode;
 import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.SubjectNode;
+import org.nsdl.mptstore.rdf.URIReference;
 import org.nsdl.mptstore.util.DBUtil;
 
 /**
@@ -34,22 +49,57 @@ import org.nsdl.mptstore.util.DBUtil;
  * GraphPatterns.
  * </p>
  * <p>
- * TODO:
- * <ul>
- * <li> Truly handle nested subqueries (currently is set to barf if a required
- * or optional compomnent is not a GraphPattern). Things are set up for doing
- * so, just not finished yet</li>
- * <li> Implement a strategy for dealing with unbound predicates </li>
- * </ul>
+ * A subject or object given as a {@link NodeSetPattern} is matched with an
+ * <code>IN (...)</code> list, so that many lookups can be made with one
+ * statement. Sets larger than the dialect's maximum IN list size are split
+ * into several lists combined with <code>OR</code>.
+ * </p>
+ * <p>
+ * A {@link org.nsdl.mptstore.query.component.TransitivePattern} is joined
+ * as a derived table computing the transitive closure of its predicate
+ * table, in the form given by the {@link SQLDialect}. The closure is
+ * computed from the pattern's subject or object value, if either is given.
+ * </p>
+ * <p>
+ * A nested {@link GraphQuery} is joined as a derived table whose columns are
+ * the variables it uses, and a {@link GraphUnion} as a derived table holding
+ * the <code>UNION ALL</code> of its alternatives. Variables shared with the
+ * rest of the query become join conditions, so the database combines the
+ * parts.
+ * </p>
+ * <p>
+ * A triple pattern with a variable predicate is joined as a derived table
+ * holding the <code>UNION ALL</code> of the predicate tables that may match
+ * it, with a <code>p</code> column for the predicate. Tables are left out if
+ * the predicate summary index shows they cannot contain the pattern's
+ * subject or object value, or, if enabled with
+ * {@link #setPruneEmptyTables(boolean)}, if the statistics catalog shows them
+ * to be empty.
  * </p>
  *
  * @author birkland
  */
-public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
+public class GraphQuerySQLProvider implements SQLBuilder,
+        ParameterizedSQLProvider, RestrictedSQLProvider, TypedSQLProvider {
 
     private static final Logger LOG = Logger
             .getLogger(GraphQuerySQLProvider.class.getName());
 
+    private static final String PARAMETER_START = "{p";
+
+    private static final String PARAMETER_END = "}";
+
+    private static final URIReference XSD_INTEGER;
+
+    static {
+        try {
+            XSD_INTEGER = new URIReference(
+                    "http://www.w3.org/2001/XMLSchema#integer");
+        } catch (Exception e) {
+            throw new RuntimeException("Unexpected error", e);
+        }
+    }
+
     private final GraphQuery query;
 
     private final TableManager tableManager;
@@ -68,6 +118,28 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
 
     private HashMap<String, Set<String>> valueBindings;
 
+    private final CardinalityEstimator estimator;
+
+    private boolean optimizeJoinOrder = true;
+
+    private boolean pruneEmptyTables = false;
+
+    private List<String> optimizerTrace = new ArrayList<String>();
+
+    private List<String> parameters;
+
+    private SQLDialect dialect = new GenericSQLDialect();
+
+    private int limit = -1;
+
+    private int offset = 0;
+
+    private boolean distinct = false;
+
+    private boolean aliasTargets = false;
+
+    private int subqueryCount;
+
     /**
      * Create an instance.
      *
@@ -83,6 +155,7 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         this.tableManager = tm;
         this.query = graphQuery;
         this.backslashEscape = backslashIsEscape;
+        this.estimator = new CardinalityEstimator(tm);
     }
 
     /**
@@ -108,7 +181,8 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
      * <p>
      * Given the name of a target variable, results will be ordered by its bound
      * value. Results may be specified to return in ascending or descending
-     * order.
+     * order. If the query has aggregates, results may also be ordered by the
+     * value of an aggregate, given its name.
      * </p>
      *
      * @param target
@@ -118,7 +192,9 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
      *            otherwise.
      */
     public void orderBy(final String target, final boolean desc) {
-        if (this.targets == null || !this.targets.contains(target)) {
+        if (getAggregate(target) != null) {
+            this.ordering = target;
+        } else if (this.targets == null || !this.targets.contains(target)) {
             throw new IllegalArgumentException("Cannot group by variable '"
                     + target + "' since it is not in the target list "
                     + targets);
@@ -132,6 +208,145 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         }
     }
 
+    /**
+     * Set the dialect used to express database-specific SQL.
+     * <p>
+     * By default, standard SQL is generated. See {@link GenericSQLDialect}.
+     * </p>
+     *
+     * @param sqlDialect
+     *            the dialect of the target database.
+     */
+    public void setDialect(final SQLDialect sqlDialect) {
+        this.dialect = sqlDialect;
+    }
+
+    /**
+     * Set the maximum number of result rows.
+     * <p>
+     * The limit is applied by the database, after any ordering, so when
+     * combined with {@link #orderBy(String, boolean)}, the database need
+     * only find the first rows of the ordering rather than sorting them
+     * all.
+     * </p>
+     *
+     * @param maxRows
+     *            the maximum number of rows, or a negative number for no
+     *            limit (the default).
+     */
+    public void setLimit(final int maxRows) {
+        this.limit = maxRows;
+    }
+
+    /**
+     * Set the number of result rows to skip before returning any.
+     *
+     * @param skipRows
+     *            the number of rows to skip, <code>0</code> by default.
+     */
+    public void setOffset(final int skipRows) {
+        this.offset = skipRows;
+    }
+
+    /**
+     * Choose whether duplicate result rows are removed.
+     * <p>
+     * When a query joins along several paths, the same bindings can be
+     * found more than once. When enabled, the database is asked to remove
+     * duplicates with <code>SELECT DISTINCT</code>, so they are never
+     * sent. If the dialect does not support that, duplicates are removed
+     * from the results instead (see {@link #isDistinctRequired()}), and
+     * any limit or offset is left to the results as well.
+     * </p>
+     *
+     * @param distinctRows
+     *            true to remove duplicates, false (the default) to return
+     *            every row.
+     */
+    public void setDistinct(final boolean distinctRows) {
+        this.distinct = distinctRows;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isDistinctRequired() {
+        return distinct && !dialect.supportsDistinct();
+    }
+
+    /** {@inheritDoc} */
+    public int getLimit() {
+        if (isDistinctRequired()) {
+            return limit;
+        } else {
+            return -1;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int getOffset() {
+        if (isDistinctRequired()) {
+            return offset;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Choose whether triple patterns are joined in order of estimated cost.
+     * <p>
+     * When enabled (the default), the triple patterns of each graph pattern
+     * are joined greedily: the pattern expected to match the fewest rows
+     * comes first, and each subsequent join is the one with the smallest
+     * estimated fan-out, given the variables bound so far. Estimates come
+     * from the per-predicate statistics kept by the {@link TableManager}, so
+     * patterns with bound constants and patterns over small tables are
+     * joined early. When disabled, patterns are joined in the order given.
+     * </p>
+     * <p>
+     * Many databases will re-plan the joins anyway, but some (notably MySQL
+     * and Derby) largely follow the order in which they are written.
+     * </p>
+     *
+     * @param optimize
+     *            true to order joins by estimated cost, false to join in the
+     *            order given.
+     */
+    public void setOptimizeJoinOrder(final boolean optimize) {
+        this.optimizeJoinOrder = optimize;
+    }
+
+    /**
+     * Choose whether variable predicates skip tables known to be empty.
+     * <p>
+     * When enabled, predicate tables that the statistics catalog shows to
+     * be empty are left out of the tables a variable predicate may match.
+     * Since statistics read from the database's catalog can be stale (and
+     * some databases report no rows for tables that were never analyzed),
+     * this should only be enabled when all writes go through this MPTStore
+     * instance, or statistics are refreshed after external writes.
+     * </p>
+     *
+     * @param prune
+     *            true to skip tables known to be empty, false (the default)
+     *            to consider every table.
+     */
+    public void setPruneEmptyTables(final boolean prune) {
+        this.pruneEmptyTables = prune;
+    }
+
+    /**
+     * Get the decisions made by the join order optimizer.
+     * <p>
+     * Each entry describes one triple pattern chosen during the most recent
+     * call to {@link #getSQL()}, in join order, along with its estimated
+     * cost. The list is empty if join order optimization is disabled.
+     * </p>
+     *
+     * @return the optimizer trace.
+     */
+    public List<String> getOptimizerTrace() {
+        return new ArrayList<String>(optimizerTrace);
+    }
+
     /**
      * Returns a query in ANSI SQL
      * <p>
@@ -146,9 +361,54 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
      *             if there is some error translating the query to SQL.
      */
     public List<String> getSQL() throws QueryException {
+        List<String> sqlList = new ArrayList<String>();
+        for (String sql : generateSQL()) {
+            sqlList.add(render(sql, null));
+        }
+        return sqlList;
+    }
+
+    /**
+     * Returns a query in ANSI SQL, with node values as bind parameters.
+     * <p>
+     * The statements are the same as those returned by {@link #getSQL()},
+     * except that every node value is replaced with a <code>?</code>, so
+     * queries of the same shape share the same SQL text.
+     * </p>
+     *
+     * @return list of parameterized SQL statements
+     * @throws QueryException
+     *             if there is some error translating the query to SQL.
+     */
+    public List<ParameterizedSQL> getParameterizedSQL() throws QueryException {
+        List<ParameterizedSQL> sqlList = new ArrayList<ParameterizedSQL>();
+        for (String sql : generateSQL()) {
+            List<String> values = new ArrayList<String>();
+            sqlList.add(new ParameterizedSQL(render(sql, values), values));
+        }
+        return sqlList;
+    }
+
+    /*
+     * Translate the query into SQL statements in which each node value is
+     * represented by a parameter token (see literal()).
+     */
+    private List<String> generateSQL() throws QueryException {
+        return generateSQL(new ArrayList<String>());
+    }
+
+    /*
+     * Translate the query into SQL statements, adding node values to the
+     * given list of parameters.
+     */
+    private List<String> generateSQL(final List<String> params)
+            throws QueryException {
 
+        this.parameters = params;
+        this.subqueryCount = 0;
         this.manager = new MappingManager(tableManager);
         this.encounteredPatterns = new HashSet<MappableTriplePattern>();
+        this.optimizerTrace = new ArrayList<String>();
 
         valueBindings = new HashMap<String, Set<String>>();
 
@@ -167,23 +427,12 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
 
             LOG.debug("Processing required element: " + e);
 
-            /* Disallow subqueries for the time being */
-            if (e.getType().equals(QueryElement.Type.GraphQuery)) {
-                throw new QueryException("Currently, we do not support "
-                        + "subqueries");
-            } else if (!e.getType().equals(QueryElement.Type.GraphPattern)) {
-                /* Currently, this will never happen */
-                throw new QueryException("Unknown query element type "
-                        + e.getType());
-            }
-
             /* All required elements of the query are inner joined */
             if (joinSeq == null) {
-                joinSeq = new JoinSequence(parseGraphPattern((GraphPattern) e,
-                        requiredBindings));
+                joinSeq = new JoinSequence(parseElement(e, requiredBindings));
             } else {
-                joinSeq.addJoin(JoinType.INNER_JOIN, parseGraphPattern(
-                        (GraphPattern) e, requiredBindings), requiredBindings);
+                joinSeq.addJoin(JoinType.INNER_JOIN, parseElement(e,
+                        requiredBindings), requiredBindings);
             }
         }
 
@@ -195,31 +444,30 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
 
             HashMap<String, String> optionalBindings = requiredBindings;
 
-            /* Disallow subqueries for the time being */
-            if (e.getType().equals(QueryElement.Type.GraphQuery)) {
-                throw new QueryException("Currently, we do not support "
-                        + "subqueries");
-            } else if (!e.getType().equals(QueryElement.Type.GraphPattern)) {
-                /* Currently, this will never happen */
-                throw new QueryException("Unknown query element type "
-                        + e.getType());
-            }
-
-            joinSeq.addJoin(JoinType.LEFT_OUTER_JOIN, parseGraphPattern(
-                    (GraphPattern) e, optionalBindings), requiredBindings);
+            joinSeq.addJoin(JoinType.LEFT_OUTER_JOIN, parseElement(e,
+                    optionalBindings), requiredBindings);
 
             addNewMappings(optionalBindings, allBindings);
 
         }
 
         StringBuilder sql = new StringBuilder();
+        String aggregates = "";
 
         if (joinSeq == null) {
             /* No tables to join means no query parts submitted */
             return Arrays.asList("SELECT 1 WHERE 1=0");
         } else {
-            sql.append("SELECT " + generateTargets(allBindings) + " FROM "
-                    + joinSeq);
+            sql.append("SELECT ");
+            if (distinct && dialect.supportsDistinct()) {
+                sql.append("DISTINCT ");
+            }
+            String selects = generateTargets(allBindings);
+            aggregates = generateAggregates(allBindings);
+            if (selects.length() > 0 && aggregates.length() > 0) {
+                selects += ", ";
+            }
+            sql.append(selects + aggregates + " FROM " + joinSeq);
         }
         /*
          * If there are any values or constraints that remain to be added to the
@@ -238,7 +486,7 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
                         .get(valueKeys.get(i)));
                 for (int j = 0; j < values.size(); j++) {
                     if (i > 0 || j > 0) {
-                        sql.append(" AND ");
+                        additional.append(" AND ");
                     }
 
                     LOG.debug("Adding remaining unused binding for "
@@ -252,20 +500,254 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
             sql.append(additional.toString());
         }
 
+        if (aggregates.length() > 0 && !targets.isEmpty()) {
+            sql.append(" GROUP BY " + generateGroupBy(allBindings));
+        }
+
         if (ordering != null) {
-            sql.append(" ORDER BY " + allBindings.get(ordering) + " "
-                    + orderingDirection);
+            String sortKey = allBindings.get(ordering);
+            if (getAggregate(ordering) != null) {
+                sortKey = aggregateExpression(getAggregate(ordering),
+                        allBindings);
+            }
+            sql.append(" ORDER BY " + sortKey + " " + orderingDirection);
 
         }
 
         ArrayList<String> sqlList = new ArrayList<String>();
-        sqlList.add(sql.toString());
+        if (isWindowPushed()) {
+            sqlList.add(dialect.limit(sql.toString(), limit, offset));
+        } else {
+            sqlList.add(sql.toString());
+        }
         return sqlList;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * Get the names of the result columns: the targets, followed by the
+     * names of any aggregates.
+     *
+     * @return the column names.
+     */
     public List<String> getTargets() {
-        return new ArrayList<String>(targets);
+        List<String> names = new ArrayList<String>(targets);
+        for (Aggregate a : query.getAggregates()) {
+            names.add(a.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Get the datatype of each result column.
+     * <p>
+     * Aggregate values are returned as <code>xsd:integer</code> literals.
+     * </p>
+     *
+     * @return <code>null</code> for each target, followed by the datatype of
+     *         each aggregate.
+     */
+    public List<URIReference> getTargetDatatypes() {
+        List<URIReference> datatypes = new ArrayList<URIReference>();
+        for (int i = 0; i < targets.size(); i++) {
+            datatypes.add(null);
+        }
+        for (int i = 0; i < query.getAggregates().size(); i++) {
+            datatypes.add(XSD_INTEGER);
+        }
+        return datatypes;
+    }
+
+    /*
+     * Get the aggregate with the given name, if any
+     */
+    private Aggregate getAggregate(final String name) {
+        for (Aggregate a : query.getAggregates()) {
+            if (a.getName().equals(name)) {
+                return a;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Determine whether the limit and offset are applied in the SQL, rather
+     * than being left to the results.
+     */
+    private boolean isWindowPushed() {
+        return (limit >= 0 || offset > 0) && !isDistinctRequired();
+    }
+
+    /*
+     * Get the parameter token for a node value. The same value always gets
+     * the same token, so generated conditions can still be compared as
+     * strings.
+     */
+    private String literal(final String value) {
+        int index = parameters.indexOf(value);
+        if (index == -1) {
+            index = parameters.size();
+            parameters.add(value);
+        }
+        return PARAMETER_START + index + PARAMETER_END;
+    }
+
+    /*
+     * Replace the parameter tokens in the given SQL. If values is null, each
+     * token is replaced by its quoted value. Otherwise, each is replaced by a
+     * bind parameter, and its value appended to the list.
+     */
+    private String render(final String sql, final List<String> values) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int pos = 0;
+        int start = sql.indexOf(PARAMETER_START);
+        while (start != -1) {
+            int end = sql.indexOf(PARAMETER_END, start);
+            String value = parameters.get(Integer.parseInt(sql.substring(
+                    start + PARAMETER_START.length(), end)));
+            out.append(sql, pos, start);
+            if (values == null) {
+                out.append(DBUtil.quotedString(value, backslashEscape));
+            } else {
+                out.append('?');
+                values.add(value);
+            }
+            pos = end + PARAMETER_END.length();
+            start = sql.indexOf(PARAMETER_START, pos);
+        }
+        out.append(sql, pos, sql.length());
+        return out.toString();
+    }
+
+    /*
+     * Translate any kind of query element into something that can be joined.
+     */
+    private Joinable parseElement(final QueryElement e,
+            final HashMap<String, String> variableBindings)
+            throws QueryException {
+        if (e.getType().equals(QueryElement.Type.GraphPattern)) {
+            return parseGraphPattern((GraphPattern) e, variableBindings);
+        } else if (e.getType().equals(QueryElement.Type.GraphQuery)
+                || e.getType().equals(QueryElement.Type.GraphUnion)) {
+            return parseSubquery(e, variableBindings);
+        } else {
+            /* Currently, this will never happen */
+            throw new QueryException("Unknown query element type "
+                    + e.getType());
+        }
+    }
+
+    /*
+     * Translate a nested query or union into a derived table with a column
+     * for each of its variables, binding any of them that are not yet bound
+     * to those columns.
+     */
+    private Joinable parseSubquery(final QueryElement e,
+            final HashMap<String, String> variableBindings)
+            throws QueryException {
+        List<String> vars = new ArrayList<String>(variablesOf(e));
+        if (vars.isEmpty()) {
+            throw new QueryException("Subqueries must use at least one "
+                    + "variable");
+        }
+
+        String sql;
+        if (e.getType().equals(QueryElement.Type.GraphUnion)) {
+            StringBuilder union = new StringBuilder();
+            for (QueryElement alt : ((GraphUnion) e).getAlternatives()) {
+                if (!variablesOf(alt).equals(new HashSet<String>(vars))) {
+                    throw new QueryException("All alternatives of a union "
+                            + "must use the same variables");
+                }
+                if (union.length() > 0) {
+                    union.append(" UNION ALL ");
+                }
+                union.append(subquerySQL(asQuery(alt), vars));
+            }
+            sql = union.toString();
+        } else {
+            sql = subquerySQL((GraphQuery) e, vars);
+        }
+
+        MPTable table = new MPTable("(" + sql + ")", "sq" + ++subqueryCount);
+        Set<MappableNodePattern> columns = new HashSet<MappableNodePattern>();
+        for (int i = 0; i < vars.size(); i++) {
+            MappableNodePattern<Node> column = new MappableNodePattern<Node>(
+                    vars.get(i), "v" + (i + 1));
+            column.bindTo(table);
+            columns.add(column);
+            if (!variableBindings.containsKey(vars.get(i))) {
+                variableBindings.put(vars.get(i), column.mappedName());
+            }
+        }
+        return new DerivedTable(table, columns);
+    }
+
+    /*
+     * Translate a nested query into a single SQL statement selecting the
+     * given variables, sharing this provider's parameters.
+     */
+    private String subquerySQL(final GraphQuery q, final List<String> vars)
+            throws QueryException {
+        if (!q.getAggregates().isEmpty()) {
+            throw new QueryException("Aggregates are not supported in "
+                    + "subqueries");
+        }
+        GraphQuerySQLProvider sub = new GraphQuerySQLProvider(tableManager, q,
+                backslashEscape);
+        sub.setDialect(dialect);
+        sub.setOptimizeJoinOrder(optimizeJoinOrder);
+        sub.setPruneEmptyTables(pruneEmptyTables);
+        sub.setTargets(vars);
+        sub.aliasTargets = true;
+        return sub.generateSQL(parameters).get(0);
+    }
+
+    /*
+     * Get a query consisting of the given element.
+     */
+    private static GraphQuery asQuery(final QueryElement e) {
+        if (e.getType().equals(QueryElement.Type.GraphQuery)) {
+            return (GraphQuery) e;
+        } else {
+            GraphQuery q = new GraphQuery();
+            q.addRequired(e);
+            return q;
+        }
+    }
+
+    /*
+     * Get the names of the variables used in a query element, in the order
+     * they first appear. The variables of a union are those of its first
+     * alternative.
+     */
+    private static Set<String> variablesOf(final QueryElement e) {
+        Set<String> vars = new LinkedHashSet<String>();
+        if (e.getType().equals(QueryElement.Type.GraphPattern)) {
+            for (TriplePattern t : ((GraphPattern) e).getTriplePatterns()) {
+                if (t.getSubject().isVariable()) {
+                    vars.add(t.getSubject().getVarName());
+                }
+                if (t.getPredicate().isVariable()) {
+                    vars.add(t.getPredicate().getVarName());
+                }
+                if (t.getObject().isVariable()) {
+                    vars.add(t.getObject().getVarName());
+                }
+            }
+        } else if (e.getType().equals(QueryElement.Type.GraphQuery)) {
+            for (QueryElement r : ((GraphQuery) e).getRequired()) {
+                vars.addAll(variablesOf(r));
+            }
+            for (QueryElement o : ((GraphQuery) e).getOptional()) {
+                vars.addAll(variablesOf(o));
+            }
+        } else if (e.getType().equals(QueryElement.Type.GraphUnion)) {
+            List<QueryElement> alts = ((GraphUnion) e).getAlternatives();
+            if (!alts.isEmpty()) {
+                vars.addAll(variablesOf(alts.get(0)));
+            }
+        }
+        return vars;
     }
 
     private Joinable parseGraphPattern(final GraphPattern g,
@@ -281,6 +763,11 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         Set<MappableNodeFilter<Node>> givenFilters =
             new HashSet<MappableNodeFilter<Node>>();
         for (NodeFilter<Node> filter : g.getFilters()) {
+            if (filter.getNode() instanceof NodeSetPattern
+                    || filter.getConstraint() instanceof NodeSetPattern) {
+                throw new QueryException("Sets of values are not supported "
+                        + "in filters: " + filter);
+            }
             givenFilters.add(new MappableNodeFilter<Node>(filter));
         }
 
@@ -320,6 +807,15 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         LinkedList<MappableTriplePattern> steps =
             new LinkedList<MappableTriplePattern>();
         for (TriplePattern p : g.getTriplePatterns()) {
+            if (p.getPredicate() instanceof NodeSetPattern) {
+                throw new QueryException("Sets of predicate values are not "
+                        + "supported: " + p);
+            }
+            if (p instanceof TransitivePattern
+                    && p.getPredicate().isVariable()) {
+                throw new QueryException("Transitive patterns must have a "
+                        + "given predicate: " + p);
+            }
             steps.add(new MappableTriplePattern(p));
         }
 
@@ -332,7 +828,12 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         MappableTriplePattern step = null;
         boolean successfullyBoundFirstStep = false;
         while (!steps.isEmpty()) {
-            step = steps.removeFirst();
+            if (optimizeJoinOrder) {
+                step = getCheapestPattern(steps, variableBindings, false);
+                steps.remove(step);
+            } else {
+                step = steps.removeFirst();
+            }
 
             if (!bindPattern(step, variableBindings)) {
                 continue;
@@ -354,7 +855,11 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
 
         /* For all the remaining steps.. */
         while (!steps.isEmpty()) {
-            step = getJoinablePattern(steps, variableBindings);
+            if (optimizeJoinOrder) {
+                step = getCheapestPattern(steps, variableBindings, true);
+            } else {
+                step = getJoinablePattern(steps, variableBindings);
+            }
             if (step == null) {
                 throw new QueryException("Cannot bind all query steps! \n"
                         + "remaining:\n" + steps
@@ -422,22 +927,25 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         for (MappableNodePattern p : step.getNodes()) {
             if (isBound(p, variableBindings)) {
                 /* Join this var's column w/the corresponding bound one */
-                if (!p.mappedName().equals(getBoundValue(
-                        p, variableBindings))) {
-                    LOG.debug("parseGraphPattern: Adding Join Condition "
-                            + p.mappedName() + " = "
-                            + getBoundValue(p, variableBindings) + "\n");
-                    conditions.addCondition(p.mappedName(), " = ",
-                            getBoundValue(p, variableBindings));
-
-                    if (valueBindings.containsKey(p.boundTable().alias())) {
-                        LOG.debug("Removing value binding from queue: "
-                                + p.mappedName() + " = "
-                                + getBoundValue(p, variableBindings) + "\n");
-                        valueBindings.get(p.boundTable().alias()).remove(
-                                p.mappedName() + " = "
-                                        + getBoundValue(p, variableBindings));
+                String condition;
+                if (p.isVariable()) {
+                    String bound = getBoundValue(p, variableBindings);
+                    if (p.mappedName().equals(bound)) {
+                        continue;
                     }
+                    condition = p.mappedName() + " = " + bound;
+                } else {
+                    condition = nodeCondition(p.mappedName(), p);
+                }
+                LOG.debug("parseGraphPattern: Adding Join Condition "
+                        + condition + "\n");
+                conditions.addCondition(condition);
+
+                if (valueBindings.containsKey(p.boundTable().alias())) {
+                    LOG.debug("Removing value binding from queue: "
+                            + condition + "\n");
+                    valueBindings.get(p.boundTable().alias()).remove(
+                            condition);
                 }
             }
         }
@@ -461,8 +969,8 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
                         } else if (f.getNode().isVariable()) {
                             left = getBoundValue(f.getNode(), variableBindings);
                         } else {
-                            left = DBUtil.quotedString(f.getNode().getNode()
-                                    .toString(), backslashEscape);
+                            left = literal(f.getNode().getNode()
+                                    .toString());
                         }
 
                         if (f.getConstraint().isVariable()
@@ -474,8 +982,8 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
                             right = getBoundValue(f.getConstraint(),
                                     variableBindings);
                         } else {
-                            right = DBUtil.quotedString(f.getConstraint()
-                                    .getNode().toString(), backslashEscape);
+                            right = literal(f.getConstraint()
+                                    .getNode().toString());
                         }
 
                         conditions.addCondition(left, f.getOperator(), right);
@@ -523,9 +1031,8 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
                                         + " "
                                         + f.getOperator()
                                         + " "
-                                        + DBUtil.quotedString(f.getConstraint()
-                                                .getNode().toString(),
-                                                backslashEscape));
+                                        + literal(f.getConstraint()
+                                                .getNode().toString()));
                 LOG.debug("Remaining Filters: " + mappedName + " "
                         + f.getOperator() + " '" + f.getConstraint().getNode()
                         + "'" + "\n");
@@ -538,8 +1045,7 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
                         + "variable?  It's probably not legal to be here...");
             } else {
                 valueBindings.get(mappedName).add(
-                        DBUtil.quotedString(f.getNode().getNode().toString(),
-                                backslashEscape)
+                        literal(f.getNode().getNode().toString())
                                 + " " + f.getOperator() + " " + mappedName);
                 LOG.debug("Remaining Filters: " + "'" + f.getNode().getNode()
                         + "' " + f.getOperator() + " " + mappedName + "\n");
@@ -565,6 +1071,49 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         return null;
     }
 
+    /*
+     * From a list of mappable triple patterns, pick the one expected to match
+     * the fewest rows given the current variable bindings. If joinableOnly is
+     * set, only patterns that getJoinablePattern would accept are considered.
+     * Ties go to the pattern that appears first.
+     */
+    private MappableTriplePattern getCheapestPattern(
+            final List<MappableTriplePattern> l,
+            final HashMap<String, String> variableBindings,
+            final boolean joinableOnly) {
+        MappableTriplePattern cheapest = null;
+        double cheapestCost = 0;
+        for (MappableTriplePattern p : l) {
+            boolean subjectBound = isBound(p.getSubject(), variableBindings);
+            boolean objectBound = isBound(p.getObject(), variableBindings);
+            if (joinableOnly && !(subjectBound || objectBound)) {
+                continue;
+            }
+            double cost = estimateCost(p, subjectBound, objectBound);
+            if (cheapest == null || cost < cheapestCost) {
+                cheapest = p;
+                cheapestCost = cost;
+            }
+        }
+        if (cheapest != null) {
+            String decision = "Chose " + cheapest + " (estimated "
+                    + cheapestCost + " rows) from " + l.size()
+                    + " remaining pattern(s)";
+            LOG.debug(decision);
+            optimizerTrace.add(decision);
+        }
+        return cheapest;
+    }
+
+    private double estimateCost(final MappableTriplePattern p,
+            final boolean subjectBound, final boolean objectBound) {
+        if (p.getPredicate().isVariable()) {
+            return CardinalityEstimator.UNKNOWN_ROW_COUNT;
+        }
+        return estimator.estimate(p.getPredicate().getNode(), subjectBound,
+                objectBound);
+    }
+
     /*
      * Determine if a variable has been apped to a literal or specific column of
      * a table
@@ -587,7 +1136,7 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         if (n.isVariable()) {
             return variableBindings.get(n.getVarName());
         } else {
-            return DBUtil.quotedString(n.getNode().toString(), backslashEscape);
+            return literal(n.getNode().toString());
         }
     }
 
@@ -602,10 +1151,14 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         if (!encounteredPatterns.contains(t)) {
             encounteredPatterns.add(t);
             LOG.debug("Processing new pattern " + t);
-            t.bindTo(manager.mapPredicateTable(t.getPredicate()));
+            if (t.getPredicate().isVariable()) {
+                t.bindTo(manager.mapVariablePredicate(t));
+                bindNode(t.getPredicate(), variableBindings);
+            } else {
+                t.bindTo(manager.mapPredicateTable(t.getPredicate()));
+            }
 
             bindNode(t.getSubject(), variableBindings);
-            // bindNode(t.predicate, variableBindings);
             bindNode(t.getObject(), variableBindings);
             return true;
         } else {
@@ -614,7 +1167,6 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         }
     }
 
-    /* TODO: be able to bind a predicate node */
     private void bindNode(final MappableNodePattern p,
             final HashMap<String, String> variableBindings) {
         if (p.isVariable()) {
@@ -638,13 +1190,80 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
             LOG.debug("bindNode: adding valueBinding " + p.mappedName() + " = "
                     + "'" + p.getNode() + "'\n");
             valueBindings.get(p.boundTable().alias()).add(
-                    p.mappedName()
-                            + " = "
-                            + DBUtil.quotedString(p.getNode().toString(),
-                                    backslashEscape));
+                    nodeCondition(p.mappedName(), p));
         }
     }
 
+    /*
+     * Generate a condition matching a column against the value(s) of a
+     * non-variable node pattern.
+     */
+    private String nodeCondition(final String column,
+            final MappableNodePattern<?> p) {
+        if (p.getNodes() != null) {
+            return inCondition(column, p.getNodes());
+        } else {
+            return column + " = " + literal(p.getNode().toString());
+        }
+    }
+
+    /*
+     * Generate the query for the transitive closure of a pattern's table.
+     * Paths start from the subject if it is given, otherwise from the object
+     * if it is given, so that the database only follows the paths needed.
+     */
+    private String closureQuery(final MappableTriplePattern p)
+            throws QueryException {
+        String anchor = null;
+        boolean backward = false;
+        if (!p.getSubject().isVariable()) {
+            anchor = nodeCondition(MappableNodePattern.Types.SUBJECT,
+                    p.getSubject());
+        } else if (!p.getObject().isVariable()) {
+            anchor = nodeCondition(MappableNodePattern.Types.OBJECT,
+                    p.getObject());
+            backward = true;
+        }
+        String sql = dialect.transitiveClosure(p.getSubject().boundTable()
+                .name(), anchor, backward, p.getMaxDepth());
+        if (sql == null) {
+            throw new QueryException("Transitive patterns are not supported "
+                    + "by this database: " + p);
+        }
+        return sql;
+    }
+
+    /*
+     * Generate a condition matching a column against any of a set of values.
+     * Lists longer than the dialect allows are split into several IN lists.
+     */
+    private String inCondition(final String column,
+            final List<Node> nodes) {
+        if (nodes.isEmpty()) {
+            return "1=0";
+        } else if (nodes.size() == 1) {
+            return column + " = "
+                    + literal(nodes.get(0).toString());
+        }
+        int max = dialect.getMaxInListSize();
+        StringBuilder condition = new StringBuilder("(");
+        int count = 0;
+        for (Node node : nodes) {
+            if (count % max == 0) {
+                if (count > 0) {
+                    condition.append(") OR ");
+                }
+                condition.append(column + " IN (");
+            } else {
+                condition.append(", ");
+            }
+            condition.append(literal(node.toString()));
+            count++;
+        }
+        condition.append("))");
+        return condition.toString();
+    }
+
     /**
      * Removes a mapped value (and all associated keys) from a map.
      *
@@ -671,6 +1290,10 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         String selects = "";
         for (int i = 0; i < targets.size(); i++) {
             selects += variableBindings.get(targets.get(i));
+            if (isWindowPushed() || aliasTargets) {
+                /* Some dialects wrap the query, needing unique names */
+                selects += " AS v" + (i + 1);
+            }
             if (i < targets.size() - 1) {
                 selects += ", ";
             }
@@ -678,6 +1301,55 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         return selects;
     }
 
+    private String generateAggregates(
+            final HashMap<String, String> variableBindings)
+            throws QueryException {
+        List<Aggregate> aggregates = query.getAggregates();
+        String selects = "";
+        for (int i = 0; i < aggregates.size(); i++) {
+            selects += aggregateExpression(aggregates.get(i),
+                    variableBindings);
+            if (isWindowPushed()) {
+                /* Some dialects wrap the query, needing unique names */
+                selects += " AS a" + (i + 1);
+            }
+            if (i < aggregates.size() - 1) {
+                selects += ", ";
+            }
+        }
+        return selects;
+    }
+
+    private String aggregateExpression(final Aggregate a,
+            final HashMap<String, String> variableBindings)
+            throws QueryException {
+        if (a.getVariable() == null) {
+            return "COUNT(*)";
+        }
+        String column = variableBindings.get(a.getVariable());
+        if (column == null) {
+            throw new QueryException("Aggregate variable '" + a.getVariable()
+                    + "' does not occur in the query");
+        }
+        if (a.getFunction() == Aggregate.Function.COUNT_DISTINCT) {
+            return "COUNT(DISTINCT " + column + ")";
+        } else {
+            return "COUNT(" + column + ")";
+        }
+    }
+
+    private String generateGroupBy(
+            final HashMap<String, String> variableBindings) {
+        String groupBy = "";
+        for (int i = 0; i < targets.size(); i++) {
+            groupBy += variableBindings.get(targets.get(i));
+            if (i < targets.size() - 1) {
+                groupBy += ", ";
+            }
+        }
+        return groupBy;
+    }
+
     private <K, V> void addNewMappings(
             final Map<K, V> from, final Map<K, V> to) {
         for (K key : from.keySet()) {
@@ -697,9 +1369,18 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
 
     private class JoinTable implements Joinable {
         private final MappableTriplePattern t;
+        private final String closure;
 
-        public JoinTable(final MappableTriplePattern tPattern) {
+        public JoinTable(final MappableTriplePattern tPattern)
+                throws QueryException {
             this.t = tPattern;
+            /* The closure of a nonexistent (empty) table is empty */
+            if (t.isTransitive()
+                    && !t.getSubject().boundTable().name().startsWith("(")) {
+                this.closure = closureQuery(t);
+            } else {
+                this.closure = null;
+            }
         }
 
         public Set<MappableNodePattern> joinVars() {
@@ -708,6 +1389,10 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
                 s.add(t.getSubject());
             }
 
+            if (t.getPredicate().isVariable()) {
+                s.add(t.getPredicate());
+            }
+
             if (t.getObject().isVariable()) {
                 s.add(t.getObject());
             }
@@ -722,10 +1407,13 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         public String declaration() {
             String alias = t.getSubject().boundTable().alias();
             String name = t.getSubject().boundTable().name();
-            if (name.equals(alias)) {
+            /* No AS before table aliases; Oracle does not accept it */
+            if (closure != null) {
+                return "(" + closure + ") " + alias;
+            } else if (name.equals(alias)) {
                 return name;
             } else {
-                return (name + " AS " + alias);
+                return (name + " " + alias);
             }
         }
 
@@ -734,6 +1422,34 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
         }
     }
 
+    private class DerivedTable implements Joinable {
+        private final MPTable table;
+        private final Set<MappableNodePattern> columns;
+
+        public DerivedTable(final MPTable t,
+                final Set<MappableNodePattern> cols) {
+            this.table = t;
+            this.columns = cols;
+        }
+
+        public Set<MappableNodePattern> joinVars() {
+            return new HashSet<MappableNodePattern>(columns);
+        }
+
+        public String alias() {
+            return table.alias();
+        }
+
+        public String declaration() {
+            /* No AS before table aliases; Oracle does not accept it */
+            return table.name() + " " + table.alias();
+        }
+
+        public String toString() {
+            return declaration();
+        }
+    }
+
     private class JoinSequence implements Joinable {
         private final StringBuilder join;
 
@@ -878,16 +1594,9 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
                         + "be a variable");
             }
 
-            String tableName;
+            String tableName = adaptor.getTableFor(predicate.getNode());
             String alias;
 
-            if (predicate.isVariable()) {
-                tableName = allTableQuery();
-                alias = "ap_" + ++allMap;
-            } else {
-                tableName = adaptor.getTableFor(predicate.getNode());
-            }
-
             if (tableName == null) {
                 /* No predicate found.. create table that returns no results */
                 alias = "np_" + nonexistantMappings.size();
@@ -935,23 +1644,129 @@ public class GraphQuerySQLProvider implements SQLBuilder, SQLProvider {
             return table;
         }
 
-        private String allTableQuery() {
-            boolean first = true;
-            StringBuilder allTable = new StringBuilder();
-            allTable.append("( ");
-            for (PredicateNode predicate : adaptor.getPredicates()) {
-                if (first) {
-                    first = false;
-                } else {
-                    allTable.append(" UNION ALL ");
+        /*
+         * Map a pattern with a variable predicate to a derived table over the
+         * predicate tables that may match it.
+         */
+        public MPTable mapVariablePredicate(final MappableTriplePattern t) {
+            String alias = "ap_" + ++allMap;
+            return new MPTable(candidateTableQuery(t), alias);
+        }
+
+        /*
+         * Build the union of the predicate tables that may match the given
+         * pattern, each selecting its predicate as column p. Tables the
+         * summary index rules out for the pattern's subject or object values,
+         * and tables known to be empty if pruning is enabled, are left out.
+         */
+        private String candidateTableQuery(final MappableTriplePattern t) {
+            MappableNodePattern<SubjectNode> subject = t.getSubject();
+            MappableNodePattern<ObjectNode> object = t.getObject();
+            Set<PredicateNode> forSubject = null;
+            Set<PredicateNode> forObject = null;
+            if (!subject.isVariable() || !object.isVariable()) {
+                PredicateSummaryIndex index = adaptor.getSummaryIndex();
+                if (index != null) {
+                    forSubject = candidatePredicates(index, subject, true);
+                    forObject = candidatePredicates(index, object, false);
+                }
+            }
+            StatisticsCatalog stats = adaptor.getStatistics();
+
+            List<PredicateNode> predicates = new ArrayList<PredicateNode>(
+                    adaptor.getPredicates());
+            Collections.sort(predicates, new Comparator<PredicateNode>() {
+                public int compare(final PredicateNode a,
+                        final PredicateNode b) {
+                    return a.toString().compareTo(b.toString());
+                }
+            });
+
+            StringBuilder union = new StringBuilder();
+            int count = 0;
+            for (PredicateNode predicate : predicates) {
+                String table = adaptor.getTableFor(predicate);
+                if (table == null || (pruneEmptyTables
+                        && stats.getRowCount(predicate) == 0)) {
+                    continue;
                 }
+                if ((forSubject != null && !forSubject.contains(predicate))
+                        || (forObject != null
+                        && !forObject.contains(predicate))) {
+                    continue;
+                }
+                if (count > 0) {
+                    union.append(" UNION ALL ");
+                }
+                union.append("SELECT " + predicateLiteral(predicate)
+                        + " AS p, s, o FROM " + table);
+                if (!subject.isVariable()) {
+                    union.append(" WHERE " + nodeCondition(
+                            MappableNodePattern.Types.SUBJECT, subject));
+                }
+                if (!object.isVariable()) {
+                    union.append(subject.isVariable() ? " WHERE " : " AND ");
+                    union.append(nodeCondition(
+                            MappableNodePattern.Types.OBJECT, object));
+                }
+                count++;
+            }
+            LOG.debug("Variable predicate in " + t + " may match " + count
+                    + " of " + predicates.size() + " tables");
 
-                allTable.append(" SELECT * from "
-                        + adaptor.getTableFor(predicate));
+            if (count == 0) {
+                return "(SELECT p, p AS s, p AS o FROM tmap WHERE 1=0)";
+            } else {
+                return "(" + union + ")";
+            }
+        }
+
+        /*
+         * Get the literal selected as column p for a predicate table, typed
+         * as a varying-length string so that databases that type quoted
+         * literals as fixed-length CHAR do not pad the shorter predicates in
+         * the union.
+         */
+        private String predicateLiteral(final PredicateNode predicate) {
+            String value = predicate.toString();
+            try {
+                return dialect.varcharLiteral(DBUtil.quotedString(value,
+                        backslashEscape), value.getBytes("UTF-8").length);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException("UTF-8 not supported", e);
             }
+        }
 
-            allTable.append(")");
-            return allTable.toString();
+        /*
+         * Get the predicates that any of the values of a subject or object
+         * pattern may appear with, asking the index once per value, or null
+         * if the pattern is variable or the index is not complete.
+         */
+        private Set<PredicateNode> candidatePredicates(
+                final PredicateSummaryIndex index,
+                final MappableNodePattern<?> n, final boolean isSubject) {
+            if (n.isVariable()) {
+                return null;
+            }
+            List<Node> nodes = n.getNodes();
+            if (nodes == null) {
+                nodes = Collections.<Node>singletonList(n.getNode());
+            }
+            Set<PredicateNode> candidates = new HashSet<PredicateNode>();
+            for (Node node : nodes) {
+                String value = node.toString();
+                Set<PredicateNode> found;
+                if (isSubject) {
+                    found = index.getPredicatesForSubject(value);
+                } else {
+                    found = index.getPredicatesForObject(value);
+                }
+                if (found == null) {
+                    return null;
+                }
+                candidates.addAll(found);
+            }
+            return candidates;
         }
     }
 }
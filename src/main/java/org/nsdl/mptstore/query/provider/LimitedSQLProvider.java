@@ -0,0 +1,216 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.nsdl.mptstore.core.SQLDialect;
+import org.nsdl.mptstore.query.QueryException;
+import org.nsdl.mptstore.rdf.URIReference;
+
+/**
+ * Restricts the results of another <code>SQLProvider</code> to a window.
+ *
+ * <p>
+ *   If the original provider generates a single statement, the window is
+ *   pushed into it entirely, so the database returns only the requested
+ *   rows.  Otherwise, each statement is limited to
+ *   <code>offset + limit</code> rows (no statement can contribute more
+ *   than that to the window), and the remainder of the work, skipping
+ *   <code>offset</code> rows and stopping after <code>limit</code> more,
+ *   is left to the results.  {@link #getLimit()} and {@link #getOffset()}
+ *   give this remaining window, which {@link
+ *   org.nsdl.mptstore.query.SQLUnionQueryResults} applies across
+ *   statements, executing no further statements once the limit is
+ *   reached.
+ * </p>
+ * <p>
+ *   If the original provider is itself a {@link RestrictedSQLProvider}
+ *   that leaves restrictions to the results, nothing can be pushed into
+ *   its statements, so they are left as they are and the window is
+ *   combined with the original provider's restrictions.
+ * </p>
+ * <p>
+ *   Like {@link CompiledSQLProvider}, the SQL is captured once, at
+ *   construction time.
+ * </p>
+ */
+public class LimitedSQLProvider implements ParameterizedSQLProvider,
+        RestrictedSQLProvider, TypedSQLProvider {
+
+    /**
+     * The target names.
+     */
+    private final List<String> _targets;
+
+    /**
+     * The datatype of each target, if it holds plain values.
+     */
+    private final List<URIReference> _datatypes;
+
+    /**
+     * The <code>SELECT</code> statements.
+     */
+    private final List<String> _sql;
+
+    /**
+     * The parameterized <code>SELECT</code> statements.
+     */
+    private final List<ParameterizedSQL> _parameterizedSQL;
+
+    /**
+     * Whether the results must remove duplicates.
+     */
+    private final boolean _distinct;
+
+    /**
+     * The number of rows the results must still return, at most.
+     */
+    private final int _limit;
+
+    /**
+     * The number of rows the results must still skip.
+     */
+    private final int _offset;
+
+    /**
+     * Restrict the results of the given provider.
+     *
+     * @param provider the provider whose results to restrict.
+     * @param dialect the dialect in which to express the window.
+     * @param limit the maximum number of rows to return, or a negative
+     *        number for no limit.
+     * @param offset the number of rows to skip before returning any.
+     * @throws QueryException if the provider could not generate its SQL.
+     */
+    public LimitedSQLProvider(final SQLProvider provider,
+                              final SQLDialect dialect,
+                              final int limit,
+                              final int offset)
+            throws QueryException {
+
+        _targets = Collections.unmodifiableList(
+                new ArrayList<String>(provider.getTargets()));
+        List<URIReference> datatypes;
+        if (provider instanceof TypedSQLProvider) {
+            datatypes = new ArrayList<URIReference>(
+                    ((TypedSQLProvider) provider).getTargetDatatypes());
+        } else {
+            datatypes = new ArrayList<URIReference>();
+            for (int i = 0; i < _targets.size(); i++) {
+                datatypes.add(null);
+            }
+        }
+        _datatypes = Collections.unmodifiableList(datatypes);
+
+        List<ParameterizedSQL> original;
+        if (provider instanceof ParameterizedSQLProvider) {
+            original = ((ParameterizedSQLProvider) provider)
+                    .getParameterizedSQL();
+        } else {
+            original = new ArrayList<ParameterizedSQL>();
+            List<String> noParameters = Collections.emptyList();
+            for (String sql : provider.getSQL()) {
+                original.add(new ParameterizedSQL(sql, noParameters));
+            }
+        }
+        List<String> sqlList = provider.getSQL();
+
+        boolean distinct = false;
+        int innerLimit = -1;
+        int innerOffset = 0;
+        if (provider instanceof RestrictedSQLProvider) {
+            RestrictedSQLProvider restricted =
+                    (RestrictedSQLProvider) provider;
+            distinct = restricted.isDistinctRequired();
+            innerLimit = restricted.getLimit();
+            innerOffset = restricted.getOffset();
+        }
+        _distinct = distinct;
+
+        List<String> sql = new ArrayList<String>();
+        List<ParameterizedSQL> parameterizedSQL =
+                new ArrayList<ParameterizedSQL>();
+        if (distinct || innerLimit >= 0 || innerOffset > 0) {
+            // the window applies to restricted results; leave it to them
+            sql.addAll(sqlList);
+            parameterizedSQL.addAll(original);
+            int skip = Math.max(offset, 0);
+            _offset = innerOffset + skip;
+            if (innerLimit < 0) {
+                _limit = limit;
+            } else {
+                int innerRemaining = Math.max(innerLimit - skip, 0);
+                if (limit < 0) {
+                    _limit = innerRemaining;
+                } else {
+                    _limit = Math.min(limit, innerRemaining);
+                }
+            }
+        } else if (limit == 0) {
+            // nothing to return; nothing to execute
+            _limit = -1;
+            _offset = 0;
+        } else if (sqlList.size() == 1) {
+            sql.add(dialect.limit(sqlList.get(0), limit, offset));
+            parameterizedSQL.add(new ParameterizedSQL(
+                    dialect.limit(original.get(0).getSQL(), limit, offset),
+                    original.get(0).getParameters()));
+            _limit = -1;
+            _offset = 0;
+        } else {
+            int statementLimit = -1;
+            if (limit > 0) {
+                statementLimit = (int) Math.min(Integer.MAX_VALUE,
+                        (long) limit + Math.max(offset, 0));
+            }
+            for (int i = 0; i < sqlList.size(); i++) {
+                sql.add(dialect.limit(sqlList.get(i), statementLimit, 0));
+                parameterizedSQL.add(new ParameterizedSQL(
+                        dialect.limit(original.get(i).getSQL(),
+                                      statementLimit, 0),
+                        original.get(i).getParameters()));
+            }
+            _limit = limit;
+            _offset = Math.max(offset, 0);
+        }
+        _sql = Collections.unmodifiableList(sql);
+        _parameterizedSQL = Collections.unmodifiableList(parameterizedSQL);
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getTargets() {
+        return _targets;
+    }
+
+    /** {@inheritDoc} */
+    public List<URIReference> getTargetDatatypes() {
+        return _datatypes;
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getSQL() {
+        return _sql;
+    }
+
+    /** {@inheritDoc} */
+    public List<ParameterizedSQL> getParameterizedSQL() {
+        return _parameterizedSQL;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isDistinctRequired() {
+        return _distinct;
+    }
+
+    /** {@inheritDoc} */
+    public int getLimit() {
+        return _limit;
+    }
+
+    /** {@inheritDoc} */
+    public int getOffset() {
+        return _offset;
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A SQL statement with <code>?</code> placeholders, along with the values
+ * to bind to them.
+ *
+ * All parameters are strings, to be bound in order with
+ * <code>PreparedStatement.setString</code>.  Instances are immutable.
+ */
+public class ParameterizedSQL {
+
+    /**
+     * The SQL template.
+     */
+    private final String _sql;
+
+    /**
+     * The parameter values.
+     */
+    private final List<String> _parameters;
+
+    /**
+     * Instantiate from the given values.
+     *
+     * @param sql the SQL, with a <code>?</code> for each parameter.
+     * @param parameters the parameter values, in order.
+     */
+    public ParameterizedSQL(final String sql,
+                            final List<String> parameters) {
+        _sql = sql;
+        _parameters = Collections.unmodifiableList(
+                new ArrayList<String>(parameters));
+    }
+
+    /**
+     * Get the SQL template.
+     *
+     * @return the SQL, with a <code>?</code> for each parameter.
+     */
+    public String getSQL() {
+        return _sql;
+    }
+
+    /**
+     * Get the parameter values.
+     *
+     * @return the values, in the order they should be bound.
+     */
+    public List<String> getParameters() {
+        return _parameters;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return _sql + "\nParameters: " + _parameters;
+    }
+
+}
@@ -0,0 +1,32 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.List;
+
+import org.nsdl.mptstore.query.QueryException;
+
+/**
+ * A <code>SQLProvider</code> that can also provide its statements as
+ * templates with bind parameters.
+ *
+ * <p>
+ *   Executing the templates via <code>PreparedStatement</code> lets the
+ *   database re-use a parsed statement and its plan for every query of
+ *   the same shape, rather than hard-parsing a new statement for each
+ *   distinct node value.
+ * </p>
+ */
+public interface ParameterizedSQLProvider extends SQLProvider {
+
+    /**
+     * Get the sequence of <code>SELECT</code> statements as templates with
+     * bind parameters.
+     *
+     * The statements are equivalent to, and in the same order as, those
+     * returned by {@link #getSQL()}.
+     *
+     * @return the parameterized <code>SELECT</code> statements.
+     * @throws QueryException if the SQL could not be generated for any reason.
+     */
+    List<ParameterizedSQL> getParameterizedSQL() throws QueryException;
+
+}
@@ -0,0 +1,42 @@
+package org.nsdl.mptstore.query.provider;
+
+/**
+ * A <code>SQLProvider</code> whose statements may not fully apply the
+ * restrictions requested of it, leaving the rest to the results.
+ *
+ * <p>
+ *   The results of the statements, taken in order, must be restricted as
+ *   follows: first, if {@link #isDistinctRequired()}, duplicate rows are
+ *   removed; then the first {@link #getOffset()} rows are skipped; then
+ *   no more than {@link #getLimit()} rows are returned.  This is done by
+ *   {@link org.nsdl.mptstore.query.SQLUnionQueryResults}.
+ * </p>
+ */
+public interface RestrictedSQLProvider extends SQLProvider {
+
+    /**
+     * Tell whether duplicate rows must be removed from the results, because
+     * the statements do not remove them.
+     *
+     * @return true if duplicates must be removed.
+     */
+    boolean isDistinctRequired();
+
+    /**
+     * Get the maximum number of rows to return, after skipping
+     * {@link #getOffset()} rows.
+     *
+     * @return the limit, or a negative number if the statements return no
+     *         more rows than were requested.
+     */
+    int getLimit();
+
+    /**
+     * Get the number of rows that must be skipped.
+     *
+     * @return the offset, or <code>0</code> if the statements skip the
+     *         requested number of rows themselves.
+     */
+    int getOffset();
+
+}
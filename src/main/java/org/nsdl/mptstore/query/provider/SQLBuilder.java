@@ -3,7 +3,7 @@ package org.nsdl.mptstore.query.provider;
 import java.util.List;
 
 /**
- * A <code>SQLProvider</code> that supports target setting.
+ * A <code>SQLProvider</code> that supports target setting and limits.
  *
  * @author cwilper@cs.cornell.edu
  */
@@ -17,4 +17,19 @@ public interface SQLBuilder extends SQLProvider {
      */
     void setTargets(List<String> targets);
 
+    /**
+     * Set the maximum number of result rows.
+     *
+     * @param limit the maximum number of rows, or a negative number for
+     *        no limit (the default).
+     */
+    void setLimit(int limit);
+
+    /**
+     * Set the number of result rows to skip before returning any.
+     *
+     * @param offset the number of rows to skip, <code>0</code> by default.
+     */
+    void setOffset(int offset);
+
 }
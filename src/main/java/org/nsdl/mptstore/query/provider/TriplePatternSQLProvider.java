@@ -1,11 +1,17 @@
 package org.nsdl.mptstore.query.provider;
 
+import java.io.UnsupportedEncodingException;
+
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import org.nsdl.mptstore.core.GenericSQLDialect;
+import org.nsdl.mptstore.core.PredicateSummaryIndex;
+import org.nsdl.mptstore.core.SQLDialect;
 import org.nsdl.mptstore.core.TableManager;
 import org.nsdl.mptstore.query.component.TriplePattern;
 import org.nsdl.mptstore.rdf.ObjectNode;
@@ -18,7 +24,7 @@ import org.nsdl.mptstore.util.DBUtil;
  *
  * @author cwilper@cs.cornell.edu.
  */
-public class TriplePatternSQLProvider implements SQLProvider {
+public class TriplePatternSQLProvider implements ParameterizedSQLProvider {
 
     /**
      * The Logger for this class.
@@ -38,6 +44,18 @@ public class TriplePatternSQLProvider implements SQLProvider {
 
     private List<String> _sql;
 
+    private List<ParameterizedSQL> _parameterizedSQL;
+
+    private boolean _pruneEmptyTables;
+
+    private boolean _distinct;
+
+    /**
+     * The dialect used to type predicate literals when queries are
+     * combined, or <code>null</code> if they are not.
+     */
+    private SQLDialect _unionDialect;
+
     /**
      * Instantiate from the given values.
      *
@@ -50,11 +68,129 @@ public class TriplePatternSQLProvider implements SQLProvider {
                                     final boolean backslashIsEscape,
                                     final TriplePattern pattern,
                                     final List<String> targets) {
+        this(tableManager, backslashIsEscape, pattern, targets, 1, false);
+    }
+
+    /**
+     * Instantiate from the given values, combining the per-table queries
+     * into fewer statements.
+     *
+     * <p>
+     *   When the predicate is unbound, one <code>SELECT</code> is needed
+     *   for each predicate table.  Rather than executing each separately,
+     *   up to <code>unionWidth</code> of them will be combined into a
+     *   single statement with <code>UNION ALL</code>, saving a round trip
+     *   to the database for each.
+     * </p>
+     * <p>
+     *   If the table manager maintains a predicate summary index, and the
+     *   subject or object is bound, tables the index shows cannot contain
+     *   a match are skipped regardless of these settings.
+     * </p>
+     * <p>
+     *   If <code>pruneEmptyTables</code> is true, tables that the
+     *   statistics catalog shows to be empty are skipped entirely.  Since
+     *   statistics read from the database's catalog can be stale, this
+     *   should only be enabled when all writes go through this MPTStore
+     *   instance, or statistics are refreshed after external writes.
+     * </p>
+     *
+     * @param tableManager the table manager to use for getting table names.
+     * @param backslashIsEscape whether backslash should be escaped in SQL.
+     * @param pattern the triple pattern.
+     * @param targets the variable names to use.
+     * @param unionWidth the maximum number of per-table queries to combine
+     *        into each statement.
+     * @param pruneEmptyTables whether to skip tables known to be empty.
+     */
+    public TriplePatternSQLProvider(final TableManager tableManager,
+                                    final boolean backslashIsEscape,
+                                    final TriplePattern pattern,
+                                    final List<String> targets,
+                                    final int unionWidth,
+                                    final boolean pruneEmptyTables) {
+        this(tableManager, backslashIsEscape, pattern, targets, unionWidth,
+                pruneEmptyTables, false);
+    }
+
+    /**
+     * Instantiate from the given values, combining the per-table queries
+     * into fewer statements and optionally removing duplicate triples.
+     *
+     * <p>
+     *   Since tables have no uniqueness constraint, a triple that was
+     *   added more than once is stored (and returned) more than once.
+     *   If <code>distinct</code> is true, each query uses
+     *   <code>SELECT DISTINCT</code> so the database removes such
+     *   duplicates.  Different tables hold different predicates, so no
+     *   duplicates can arise between queries.
+     * </p>
+     *
+     * @param tableManager the table manager to use for getting table names.
+     * @param backslashIsEscape whether backslash should be escaped in SQL.
+     * @param pattern the triple pattern.
+     * @param targets the variable names to use.
+     * @param unionWidth the maximum number of per-table queries to combine
+     *        into each statement.
+     * @param pruneEmptyTables whether to skip tables known to be empty.
+     * @param distinct whether to remove duplicate triples.
+     * @see #TriplePatternSQLProvider(TableManager, boolean, TriplePattern,
+     *      List, int, boolean)
+     */
+    public TriplePatternSQLProvider(final TableManager tableManager,
+                                    final boolean backslashIsEscape,
+                                    final TriplePattern pattern,
+                                    final List<String> targets,
+                                    final int unionWidth,
+                                    final boolean pruneEmptyTables,
+                                    final boolean distinct) {
+        this(tableManager, backslashIsEscape, pattern, targets, unionWidth,
+                pruneEmptyTables, distinct, new GenericSQLDialect());
+    }
+
+    /**
+     * Instantiate from the given values, using the given dialect to
+     * combine per-table queries.
+     *
+     * <p>
+     *   Each per-table query returns its predicate as a string literal.
+     *   When queries are combined, the literals are given in the form
+     *   supplied by {@link SQLDialect#varcharLiteral(String, int)}, so
+     *   that databases that type literals as fixed-length strings do not
+     *   pad the shorter predicates.
+     * </p>
+     *
+     * @param tableManager the table manager to use for getting table names.
+     * @param backslashIsEscape whether backslash should be escaped in SQL.
+     * @param pattern the triple pattern.
+     * @param targets the variable names to use.
+     * @param unionWidth the maximum number of per-table queries to combine
+     *        into each statement.
+     * @param pruneEmptyTables whether to skip tables known to be empty.
+     * @param distinct whether to remove duplicate triples.
+     * @param dialect the dialect of the database.
+     * @see #TriplePatternSQLProvider(TableManager, boolean, TriplePattern,
+     *      List, int, boolean, boolean)
+     */
+    public TriplePatternSQLProvider(final TableManager tableManager,
+                                    final boolean backslashIsEscape,
+                                    final TriplePattern pattern,
+                                    final List<String> targets,
+                                    final int unionWidth,
+                                    final boolean pruneEmptyTables,
+                                    final boolean distinct,
+                                    final SQLDialect dialect) {
 
         _tableManager = tableManager;
+        _pruneEmptyTables = pruneEmptyTables;
+        _distinct = distinct;
         _backslashIsEscape = backslashIsEscape;
         _targets = targets;
 
+        if (unionWidth > 1) {
+            _unionDialect = dialect;
+        }
+
         SubjectNode subject = pattern.getSubject().getNode();
         PredicateNode predicate = pattern.getPredicate().getNode();
         ObjectNode object = pattern.getObject().getNode();
@@ -68,35 +204,124 @@ public class TriplePatternSQLProvider implements SQLProvider {
         }
 
         _sql = new ArrayList<String>();
+        _parameterizedSQL = new ArrayList<ParameterizedSQL>();
 
         if (predicate != null) {
             addSelect(predicate);
         } else {
+            Set<PredicateNode> candidates = null;
+            if (_subjectString != null || _objectString != null) {
+                PredicateSummaryIndex index =
+                        _tableManager.getSummaryIndex();
+                if (index != null) {
+                    candidates = getCandidatePredicates(index);
+                }
+            }
             Iterator<PredicateNode> preds =
                     _tableManager.getPredicates().iterator();
             while (preds.hasNext()) {
-                addSelect(preds.next());
+                PredicateNode pred = preds.next();
+                if (candidates == null || candidates.contains(pred)) {
+                    addSelect(pred);
+                }
             }
         }
+
+        if (unionWidth > 1 && _sql.size() > 1) {
+            combineSelects(unionWidth);
+        }
+    }
+
+    /**
+     * Get the predicates the summary index shows may appear with the
+     * bound subject and object.
+     *
+     * The index is asked once for each bound node, rather than once for
+     * each predicate.
+     *
+     * @param index the summary index.
+     * @return the predicates, or <code>null</code> if the index is not
+     *         complete.
+     */
+    private Set<PredicateNode> getCandidatePredicates(
+            final PredicateSummaryIndex index) {
+        Set<PredicateNode> candidates = null;
+        if (_subjectString != null) {
+            candidates = index.getPredicatesForSubject(_subjectString);
+        }
+        if (_objectString != null) {
+            Set<PredicateNode> forObject =
+                    index.getPredicatesForObject(_objectString);
+            if (candidates == null) {
+                candidates = forObject;
+            } else if (forObject != null) {
+                candidates.retainAll(forObject);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Combine the per-table queries into <code>UNION ALL</code> statements
+     * of up to the given width.
+     *
+     * @param unionWidth the maximum number of queries per statement.
+     */
+    private void combineSelects(final int unionWidth) {
+        List<String> sql = new ArrayList<String>();
+        List<ParameterizedSQL> parameterizedSQL =
+                new ArrayList<ParameterizedSQL>();
+        for (int i = 0; i < _sql.size(); i += unionWidth) {
+            int end = Math.min(i + unionWidth, _sql.size());
+            StringBuffer union = new StringBuffer();
+            StringBuffer parameterizedUnion = new StringBuffer();
+            List<String> parameters = new ArrayList<String>();
+            for (int j = i; j < end; j++) {
+                if (j > i) {
+                    union.append("\nUNION ALL\n");
+                    parameterizedUnion.append("\nUNION ALL\n");
+                }
+                union.append(_sql.get(j));
+                parameterizedUnion.append(_parameterizedSQL.get(j).getSQL());
+                parameters.addAll(_parameterizedSQL.get(j).getParameters());
+            }
+            sql.add(union.toString());
+            parameterizedSQL.add(new ParameterizedSQL(
+                    parameterizedUnion.toString(), parameters));
+        }
+        LOG.info("Combined " + _sql.size() + " queries into " + sql.size()
+                + " statement(s)");
+        _sql = sql;
+        _parameterizedSQL = parameterizedSQL;
     }
 
     /**
      * If a table exists for the given predicate, add the appropriate
      * SELECT query to the list.
      *
+     * The subject and object are added as bind parameters to the
+     * parameterized form of the query.  The predicate stays inline, since
+     * each predicate has its own table, and thus its own statement
+     * anyway.
+     *
      * @param predicate the predicate in question.
      */
     private void addSelect(final PredicateNode predicate) {
 
         String table = _tableManager.getTableFor(predicate);
 
+        if (table != null && _pruneEmptyTables
+                && _tableManager.getStatistics().getRowCount(predicate) == 0) {
+            LOG.debug("Skipping empty table " + table);
+            table = null;
+        }
+
         if (table != null) {
 
             StringBuffer select = new StringBuffer();
 
-            select.append("SELECT s, ");
-            select.append(DBUtil.quotedString(predicate.toString(),
-                                             _backslashIsEscape));
+            select.append(getSelect());
+            select.append(getPredicateLiteral(predicate));
             select.append(", o\nFROM ");
             select.append(table);
 
@@ -120,6 +345,78 @@ public class TriplePatternSQLProvider implements SQLProvider {
             String sqlString = select.toString();
             LOG.info("Generated query:\n" + sqlString);
             _sql.add(sqlString);
+
+            _parameterizedSQL.add(getParameterizedSelect(predicate, table));
+        }
+    }
+
+    /**
+     * Get the parameterized SELECT query for the given predicate.
+     *
+     * @param predicate the predicate in question.
+     * @param table the table for the predicate.
+     * @return the query.
+     */
+    private ParameterizedSQL getParameterizedSelect(
+            final PredicateNode predicate,
+            final String table) {
+
+        StringBuffer select = new StringBuffer();
+        List<String> parameters = new ArrayList<String>(2);
+
+        select.append(getSelect());
+        select.append(getPredicateLiteral(predicate));
+        select.append(", o\nFROM ");
+        select.append(table);
+
+        if (_subjectString != null) {
+            select.append("\nWHERE s = ?");
+            parameters.add(_subjectString);
+        }
+        if (_objectString != null) {
+            if (_subjectString != null) {
+                select.append("\nAND o = ?");
+            } else {
+                select.append("\nWHERE o = ?");
+            }
+            parameters.add(_objectString);
+        }
+
+        return new ParameterizedSQL(select.toString(), parameters);
+    }
+
+    /**
+     * Get the SQL literal for the given predicate, typed as a
+     * varying-length string if queries are to be combined.
+     *
+     * @param predicate the predicate.
+     * @return the literal.
+     */
+    private String getPredicateLiteral(final PredicateNode predicate) {
+        String value = predicate.toString();
+        String quoted = DBUtil.quotedString(value, _backslashIsEscape);
+        if (_unionDialect == null) {
+            return quoted;
+        }
+        try {
+            return _unionDialect.varcharLiteral(quoted,
+                    value.getBytes("UTF-8").length);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported", e);
+        }
+    }
+
+    /**
+     * Get the start of each per-table query.
+     *
+     * @return <code>SELECT</code> or <code>SELECT DISTINCT</code>, followed
+     *         by the subject column.
+     */
+    private String getSelect() {
+        if (_distinct) {
+            return "SELECT DISTINCT s, ";
+        } else {
+            return "SELECT s, ";
         }
     }
 
@@ -133,4 +430,9 @@ public class TriplePatternSQLProvider implements SQLProvider {
         return _sql;
     }
 
+    /** {@inheritDoc} */
+    public List<ParameterizedSQL> getParameterizedSQL() {
+        return _parameterizedSQL;
+    }
+
 }
@@ -0,0 +1,28 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.List;
+
+import org.nsdl.mptstore.rdf.URIReference;
+
+/**
+ * A <code>SQLProvider</code> whose statements may return plain values,
+ * rather than N-Triples-formatted nodes, in some columns.
+ *
+ * <p>
+ *   Such columns hold computed values, such as counts.  The results
+ *   return each value as a literal of the column's datatype.
+ * </p>
+ */
+public interface TypedSQLProvider extends SQLProvider {
+
+    /**
+     * Get the datatype of each column.
+     *
+     * The list is in the same order as {@link #getTargets()}.
+     *
+     * @return the datatype of each column holding plain values, or
+     *         <code>null</code> for each column holding N-Triples nodes.
+     */
+    List<URIReference> getTargetDatatypes();
+
+}
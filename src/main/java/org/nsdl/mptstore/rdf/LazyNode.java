@@ -0,0 +1,139 @@
+package org.nsdl.mptstore.rdf;
+
+import java.net.URI;
+
+import java.text.ParseException;
+
+import org.nsdl.mptstore.util.NTriplesUtil;
+
+/**
+ * A node that keeps its N-Triples form and is only parsed when needed.
+ *
+ * <p>
+ *   Parsing a node from N-Triples means creating a
+ *   <code>URIReference</code> or <code>Literal</code> and unescaping the
+ *   value of each literal.  A <code>LazyNode</code> defers that work
+ *   until the node's parts are actually asked for, so a consumer that
+ *   only re-serializes nodes with {@link #toString()} never pays for it.
+ *   The value of a URI reference is available without parsing, too.
+ * </p>
+ * <p>
+ *   The N-Triples text is assumed to be valid, as it is when it comes
+ *   from the database.  If it is not, the error is only discovered when
+ *   the node is parsed, and is thrown as an
+ *   <code>IllegalStateException</code>.
+ * </p>
+ * <p>
+ *   A <code>LazyNode</code> is only equal to another <code>LazyNode</code>
+ *   with the same parsed form.  It is never equal to a
+ *   <code>URIReference</code> or <code>Literal</code>, and does not
+ *   implement <code>SubjectNode</code>, <code>PredicateNode</code> or
+ *   <code>ObjectNode</code>; use {@link #getNode()} to compare it with
+ *   other nodes, or to obtain one of those types.
+ * </p>
+ */
+public class LazyNode implements Node {
+
+    /**
+     * The N-Triples form of the node.
+     */
+    private final String _text;
+
+    /**
+     * The parsed node, once needed.
+     */
+    private volatile Node _node;
+
+    /**
+     * Construct a <code>LazyNode</code> from its N-Triples form.
+     *
+     * @param ntNode the N-Triples form of a URI reference or literal.
+     */
+    public LazyNode(final String ntNode) {
+        _text = ntNode;
+    }
+
+    /**
+     * Get the parsed node, parsing it if that has not been done yet.
+     *
+     * @return the <code>URIReference</code> or <code>Literal</code>.
+     * @throws IllegalStateException if the N-Triples form is invalid.
+     */
+    public Node getNode() {
+        Node node = _node;
+        if (node == null) {
+            try {
+                node = NTriplesUtil.parseTrustedNode(_text);
+            } catch (ParseException e) {
+                throw new IllegalStateException("Invalid N-Triples node ("
+                        + _text + "): " + e.getMessage(), e);
+            }
+            _node = node;
+        }
+        return node;
+    }
+
+    /**
+     * Tell whether this node is a URI reference, without parsing it.
+     *
+     * @return true if a URI reference, false if a literal.
+     */
+    public boolean isURIReference() {
+        return _text.charAt(0) == '<';
+    }
+
+    /**
+     * Get the URI of this node, if it is a URI reference.
+     *
+     * @return the URI, or <code>null</code> if this node is a literal.
+     * @throws IllegalStateException if the N-Triples form is invalid.
+     */
+    public URI getURI() {
+        if (isURIReference()) {
+            return ((URIReference) getNode()).getURI();
+        } else {
+            return null;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public String getValue() {
+        if (isURIReference()) {
+            return _text.substring(1, _text.length() - 1);
+        } else {
+            return getNode().getValue();
+        }
+    }
+
+    /**
+     * Get the N-Triples form of this node, exactly as given.
+     *
+     * @return the N-Triples form.
+     */
+    public String toString() {
+        return _text;
+    }
+
+    /**
+     * Tell whether the given object is a <code>LazyNode</code> with the
+     * same parsed form as this one.
+     *
+     * @param obj the object to compare this one to.
+     * @return whether the objects are equal.
+     */
+    public boolean equals(final Object obj) {
+        if (obj instanceof LazyNode) {
+            LazyNode other = (LazyNode) obj;
+            return _text.equals(other._text)
+                    || getNode().equals(other.getNode());
+        } else {
+            return false;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int hashCode() {
+        return getNode().hashCode();
+    }
+
+}
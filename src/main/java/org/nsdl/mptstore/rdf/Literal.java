@@ -16,6 +16,11 @@ import org.nsdl.mptstore.util.NTriplesUtil;
  */
 public class Literal implements ObjectNode {
 
+    /**
+     * The multiplier used to combine the hash codes of the parts.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
     /**
      * The lexical value of this literal.
      */
@@ -31,6 +36,16 @@ public class Literal implements ObjectNode {
      */
     private URIReference _datatype;
 
+    /**
+     * The N-Triples form of this literal, once needed.
+     */
+    private String _string;
+
+    /**
+     * The hash code of this literal, or 0 if not yet computed.
+     */
+    private int _hash;
+
     /**
      * Construct a plain literal without a language tag.
      *
@@ -98,16 +113,32 @@ public class Literal implements ObjectNode {
 
     /** {@inheritDoc} */
     public String toString() {
-        StringBuffer out = new StringBuffer();
-        out.append('"');
-        out.append(NTriplesUtil.escapeLiteralValue(_value));
-        out.append('"');
-        if (_language != null) {
-            out.append("@" + _language);
-        } else if (_datatype != null) {
-            out.append("^^" + _datatype.toString());
+        String string = _string;
+        if (string == null) {
+            String escaped = NTriplesUtil.escapeLiteralValue(_value);
+            String suffix = null;
+            int len = escaped.length() + 2;
+            if (_language != null) {
+                len += _language.length() + 1;
+            } else if (_datatype != null) {
+                suffix = _datatype.toString();
+                len += suffix.length() + 2;
+            }
+            StringBuilder out = new StringBuilder(len);
+            out.append('"');
+            out.append(escaped);
+            out.append('"');
+            if (_language != null) {
+                out.append('@');
+                out.append(_language);
+            } else if (_datatype != null) {
+                out.append("^^");
+                out.append(suffix);
+            }
+            string = out.toString();
+            _string = string;
         }
-        return out.toString();
+        return string;
     }
 
     /** {@inheritDoc} */
@@ -132,7 +163,19 @@ public class Literal implements ObjectNode {
 
     /** {@inheritDoc} */
     public int hashCode() {
-        return _value.hashCode();
+        int hash = _hash;
+        if (hash == 0) {
+            hash = _value.hashCode();
+            if (_language != null) {
+                hash = hash * HASH_MULTIPLIER + _language.hashCode();
+            } else if (_datatype != null) {
+                // differs from the language case for the same string
+                hash = (hash * HASH_MULTIPLIER + _datatype.hashCode())
+                        * HASH_MULTIPLIER;
+            }
+            _hash = hash;
+        }
+        return hash;
     }
 
 }
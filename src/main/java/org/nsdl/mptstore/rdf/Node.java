@@ -61,7 +61,7 @@ public interface Node {
      *   <ul>
      *     <li> <code>obj != null</code></li>
      *     <li> <code>obj instanceof URIReference</code></li>
-     *     <li> <code>obj.getURI().equals(this.getURI())</code></li>
+     *     <li> <code>obj.getValue().equals(this.getValue())</code></li>
      *   </ul>
      * </p>
      * <p>
@@ -86,8 +86,14 @@ public interface Node {
     /**
      * Return a hash code for this node.
      * <p>
-     *   The hash code of a URIReference is the hash code of getURI().
-     *   The hash code of a Literal is the hash code of getValue().
+     *   The hash code of a URIReference is the hash code of getValue().
+     *   The hash code of a Literal combines the hash code of getValue()
+     *   with that of its language or datatype, if any, so literals that
+     *   differ only in those usually have different hash codes.
+     * </p>
+     * <p>
+     *   Since nodes are immutable, implementations may compute the hash
+     *   code once and keep it.
      * </p>
      *
      * @return the hash code.
@@ -9,6 +9,11 @@ package org.nsdl.mptstore.rdf;
  */
 public class Triple {
 
+    /**
+     * The multiplier used to combine the hash codes of the components.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
     /**
      * The subject of this triple.
      */
@@ -24,6 +29,11 @@ public class Triple {
      */
     private ObjectNode _object;
 
+    /**
+     * The hash code of this triple, or 0 if not yet computed.
+     */
+    private int _hash;
+
     /**
      * Construct a <code>Triple</code> with the given components.
      *
@@ -99,13 +109,22 @@ public class Triple {
     /**
      * Return a hash code for this triple.
      *
-     * The hash code of a <code>Triple</code> is the sum of the subject,
-     * predicate, and object components.
+     * The hash code of a <code>Triple</code> combines those of the
+     * subject, predicate, and object in order, as
+     * <code>List.hashCode()</code> does, so triples with the same nodes
+     * in different positions usually differ.
      *
      * @return the hashcode.
      */
     public int hashCode() {
-        return _subject.hashCode() + _predicate.hashCode() + _object.hashCode();
+        int hash = _hash;
+        if (hash == 0) {
+            hash = (_subject.hashCode() * HASH_MULTIPLIER
+                    + _predicate.hashCode()) * HASH_MULTIPLIER
+                    + _object.hashCode();
+            _hash = hash;
+        }
+        return hash;
     }
 
 }
@@ -9,6 +9,14 @@ import java.net.URISyntaxException;
  * This is an absolute URI with an optional fragment identifier.
  * A <code>URIReference</code> can play the part of a subject, predicate,
  * or object in an RDF triple.
+ * <p>
+ *   URI references are compared by their string form, and the
+ *   <code>java.net.URI</code> is only constructed if it is asked for,
+ *   unless it was given or needed to validate the string.  Values that
+ *   are already known to be valid, such as those read back from the
+ *   database, can be wrapped without validation by
+ *   {@link #createTrusted(String)}.
+ * </p>
  *
  * @author cwilper@cs.cornell.edu
  */
@@ -16,9 +24,24 @@ public class URIReference
         implements SubjectNode, PredicateNode, ObjectNode {
 
     /**
-     * The absolute URI.
+     * The string form of the absolute URI.
      */
-    private URI _uri;
+    private final String _value;
+
+    /**
+     * The absolute URI, once needed.
+     */
+    private volatile URI _uri;
+
+    /**
+     * The N-Triples form of this URI reference, once needed.
+     */
+    private String _string;
+
+    /**
+     * The hash code of this URI reference, or 0 if not yet computed.
+     */
+    private int _hash;
 
     /**
      * Construct a <code>URIReference</code> given an existing URI.
@@ -28,6 +51,7 @@ public class URIReference
      */
     public URIReference(final URI uri) throws URISyntaxException {
         if (uri.isAbsolute()) {
+            _value = uri.toString();
             _uri = uri;
         } else {
             throw new URISyntaxException(uri.toString(), "not absolute");
@@ -46,28 +70,78 @@ public class URIReference
     }
 
     /**
-     * Get the URI.
+     * Construct a <code>URIReference</code> from a URI string that is
+     * known to be valid, without validating it.
+     *
+     * @param uri The URI string.
+     * @param parsed The URI, or <code>null</code> to construct it when
+     *        needed.
+     */
+    private URIReference(final String uri, final URI parsed) {
+        _value = uri;
+        _uri = parsed;
+    }
+
+    /**
+     * Get a <code>URIReference</code> for a URI string that is known to
+     * be a valid, absolute URI, without validating it.
+     *
+     * This is much cheaper than the validating constructor, and is
+     * intended for values that were validated before being stored.  If
+     * the string is not in fact valid, the error is only discovered
+     * when {@link #getURI()} is called.
+     *
+     * @param uri The URI string.
+     * @return the URI reference.
+     */
+    public static URIReference createTrusted(final String uri) {
+        return new URIReference(uri, null);
+    }
+
+    /**
+     * Get the URI, constructing it if that has not been done yet.
      *
      * @return the URI.
+     * @throws IllegalStateException if the URI reference was created
+     *         from an invalid trusted string.
      */
     public URI getURI() {
-        return _uri;
+        URI uri = _uri;
+        if (uri == null) {
+            try {
+                uri = new URI(_value);
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException("Invalid URI (" + _value
+                        + "): " + e.getMessage(), e);
+            }
+            _uri = uri;
+        }
+        return uri;
     }
 
     /** {@inheritDoc} */
     public String getValue() {
-        return _uri.toString();
+        return _value;
     }
 
     /** {@inheritDoc} */
     public String toString() {
-        return "<" + _uri.toString() + ">";
+        String string = _string;
+        if (string == null) {
+            StringBuilder out = new StringBuilder(_value.length() + 2);
+            out.append('<');
+            out.append(_value);
+            out.append('>');
+            string = out.toString();
+            _string = string;
+        }
+        return string;
     }
 
     /** {@inheritDoc} */
     public boolean equals(final Object obj) {
         if (obj != null && obj instanceof URIReference) {
-            return _uri.equals(((URIReference) obj).getURI());
+            return _value.equals(((URIReference) obj).getValue());
         } else {
             return false;
         }
@@ -75,7 +149,12 @@ public class URIReference
 
     /** {@inheritDoc} */
     public int hashCode() {
-        return _uri.hashCode();
+        int hash = _hash;
+        if (hash == 0) {
+            hash = _value.hashCode();
+            _hash = hash;
+        }
+        return hash;
     }
 
 }
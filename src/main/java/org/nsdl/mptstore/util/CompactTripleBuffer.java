@@ -0,0 +1,480 @@
+package org.nsdl.mptstore.util;
+
+import java.nio.charset.Charset;
+
+import java.text.ParseException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.ObjectNode;
+import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.SubjectNode;
+import org.nsdl.mptstore.rdf.Triple;
+
+/**
+ * A buffer of triples held in a compact binary form.
+ *
+ * <p>
+ *   Holding many triples as <code>Triple</code> objects costs several
+ *   hundred bytes each, for the triple, its nodes, and their strings.
+ *   This buffer instead keeps the N-Triples form of each distinct node
+ *   once, as bytes in a single shared array, and each triple as three
+ *   <code>int</code> node numbers.  A triple whose nodes are already in
+ *   the buffer thus takes only twelve bytes.  N-Triples is 7-bit ASCII,
+ *   so each character takes one byte; any non-ASCII characters in URIs
+ *   are encoded as UTF-8.
+ * </p>
+ * <p>
+ *   <code>Triple</code>s are only created again when they are asked for,
+ *   by {@link #get(int)} or {@link #iterator()}, by parsing the nodes'
+ *   N-Triples form.  Since the nodes were valid when added, URIs are not
+ *   validated again.  The iterator can be given directly to
+ *   {@link org.nsdl.mptstore.core.DatabaseAdaptor#addTriples}, e.g. to
+ *   write a batch that was buffered in memory.
+ * </p>
+ * <p>
+ *   Instances are not thread-safe.
+ * </p>
+ */
+public class CompactTripleBuffer implements Iterable<Triple> {
+
+    /**
+     * The initial number of triples there is room for.
+     */
+    private static final int INITIAL_TRIPLES = 1024;
+
+    /**
+     * The initial number of distinct nodes there is room for.
+     */
+    private static final int INITIAL_NODES = 1024;
+
+    /**
+     * The initial size of the node arena, in bytes.
+     */
+    private static final int INITIAL_ARENA_SIZE = 64 * 1024;
+
+    /**
+     * The initial size of the scratch buffers, in bytes or characters.
+     */
+    private static final int INITIAL_SCRATCH_SIZE = 256;
+
+    /**
+     * The bytes used for each node besides its N-Triples form: its
+     * offset, its hash code, and two hash table slots.
+     */
+    private static final int BYTES_PER_NODE = 4 * 4;
+
+    /**
+     * The bytes used for each triple: three node numbers.
+     */
+    private static final int BYTES_PER_TRIPLE = 3 * 4;
+
+    /**
+     * The highest character stored as a single byte without encoding.
+     */
+    private static final int HIGHEST_ASCII_CHAR = 127;
+
+    /**
+     * The multiplier used to hash the bytes of a node.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * The character set used for any non-ASCII characters.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The bytes of the N-Triples form of every distinct node, one after
+     * another.
+     */
+    private byte[] _arena = new byte[INITIAL_ARENA_SIZE];
+
+    /**
+     * The number of bytes used in the arena.
+     */
+    private int _arenaSize;
+
+    /**
+     * The position in the arena at which each node starts, followed by
+     * the end of the last node.
+     */
+    private int[] _nodeOffsets = new int[INITIAL_NODES + 1];
+
+    /**
+     * The hash code of the bytes of each node.
+     */
+    private int[] _nodeHashes = new int[INITIAL_NODES];
+
+    /**
+     * The number of distinct nodes.
+     */
+    private int _nodeCount;
+
+    /**
+     * An open-addressing hash table of node numbers plus one, used to
+     * find existing nodes; zero marks an empty slot.
+     */
+    private int[] _table = new int[INITIAL_NODES * 2];
+
+    /**
+     * The subject, predicate, and object node numbers of each triple.
+     */
+    private int[] _triples = new int[INITIAL_TRIPLES * 3];
+
+    /**
+     * The number of triples.
+     */
+    private int _size;
+
+    /**
+     * The bytes of the node being added.
+     */
+    private byte[] _bytes = new byte[INITIAL_SCRATCH_SIZE];
+
+    /**
+     * The characters of the node being parsed.
+     */
+    private char[] _chars = new char[INITIAL_SCRATCH_SIZE];
+
+    /**
+     * Parses nodes when triples are created again.
+     */
+    private final NTriplesParser _parser = new NTriplesParser();
+
+    /**
+     * Instantiate an empty buffer.
+     */
+    public CompactTripleBuffer() {
+        _parser.setTrusted(true);
+    }
+
+    /**
+     * Add a triple to the end of the buffer.
+     *
+     * @param triple the triple.
+     * @throws IllegalStateException if the buffer is full.
+     */
+    public void add(final Triple triple) {
+        int s = addNode(triple.getSubject());
+        int p = addNode(triple.getPredicate());
+        int o = addNode(triple.getObject());
+        if (_size * 3 == _triples.length) {
+            _triples = grow(_triples, _triples.length + 3);
+        }
+        int i = _size * 3;
+        _triples[i] = s;
+        _triples[i + 1] = p;
+        _triples[i + 2] = o;
+        _size++;
+    }
+
+    /**
+     * Add all of the given triples to the end of the buffer.
+     *
+     * @param triples the triples.
+     * @return the number of triples added.
+     * @throws IllegalStateException if the buffer becomes full.
+     */
+    public int addAll(final Iterator<Triple> triples) {
+        int count = 0;
+        while (triples.hasNext()) {
+            add(triples.next());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get the triple at the given position, creating it from the buffer.
+     *
+     * @param index the position, starting at 0.
+     * @return a new <code>Triple</code> equal to the one added.
+     * @throws IndexOutOfBoundsException if there is no such triple.
+     */
+    public Triple get(final int index) {
+        if (index < 0 || index >= _size) {
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + _size);
+        }
+        int i = index * 3;
+        return new Triple((SubjectNode) getNode(_triples[i]),
+                          (PredicateNode) getNode(_triples[i + 1]),
+                          (ObjectNode) getNode(_triples[i + 2]));
+    }
+
+    /**
+     * Get the number of triples in the buffer.
+     *
+     * @return the number of triples.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Get the number of distinct nodes in the buffer.
+     *
+     * @return the number of nodes.
+     */
+    public int getNodeCount() {
+        return _nodeCount;
+    }
+
+    /**
+     * Get the approximate number of bytes of memory used to hold the
+     * triples and nodes currently in the buffer.
+     *
+     * @return the number of bytes.
+     */
+    public long getMemoryUsage() {
+        return (long) _arenaSize + (long) _nodeCount * BYTES_PER_NODE
+                + (long) _size * BYTES_PER_TRIPLE;
+    }
+
+    /**
+     * Remove all triples and nodes, keeping the space allocated for
+     * them.
+     */
+    public void clear() {
+        _arenaSize = 0;
+        _nodeCount = 0;
+        _size = 0;
+        Arrays.fill(_table, 0);
+    }
+
+    /**
+     * Get an iterator over the triples in the buffer, in the order they
+     * were added.
+     *
+     * Each triple is created from the buffer as it is returned.  Triples
+     * added while iterating will also be returned.
+     *
+     * @return the iterator.
+     */
+    public Iterator<Triple> iterator() {
+        return new Iterator<Triple>() {
+
+            /**
+             * The position of the next triple.
+             */
+            private int _next;
+
+            /** {@inheritDoc} */
+            public boolean hasNext() {
+                return _next < _size;
+            }
+
+            /** {@inheritDoc} */
+            public Triple next() {
+                if (_next >= _size) {
+                    throw new NoSuchElementException();
+                }
+                return get(_next++);
+            }
+
+            /**
+             * Throws <code>UnsupportedOperationException</code>.
+             */
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Get the number of the given node, adding it if not yet in the
+     * buffer.
+     *
+     * @param node the node.
+     * @return the node number.
+     */
+    private int addNode(final Node node) {
+        int len = encode(node.toString());
+        int hash = 0;
+        for (int i = 0; i < len; i++) {
+            hash = hash * HASH_MULTIPLIER + _bytes[i];
+        }
+
+        int mask = _table.length - 1;
+        int slot = hash & mask;
+        int entry = _table[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (_nodeHashes[id] == hash && sameBytes(id, len)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+            entry = _table[slot];
+        }
+
+        // add the node
+        if (len > Integer.MAX_VALUE - _arenaSize) {
+            throw new IllegalStateException("Buffer full");
+        }
+        if (_arenaSize + len > _arena.length) {
+            _arena = grow(_arena, _arenaSize + len);
+        }
+        System.arraycopy(_bytes, 0, _arena, _arenaSize, len);
+        if (_nodeCount == _nodeHashes.length) {
+            _nodeHashes = grow(_nodeHashes, _nodeCount + 1);
+            _nodeOffsets = grow(_nodeOffsets, _nodeCount + 2);
+        }
+        int id = _nodeCount++;
+        _nodeOffsets[id] = _arenaSize;
+        _arenaSize += len;
+        _nodeOffsets[id + 1] = _arenaSize;
+        _nodeHashes[id] = hash;
+        _table[slot] = id + 1;
+        if (_nodeCount * 2 > _table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Tell whether the bytes of the given node are the first
+     * <code>len</code> bytes of the scratch buffer.
+     *
+     * @param id the node number.
+     * @param len the number of bytes.
+     * @return true if they are the same.
+     */
+    private boolean sameBytes(final int id, final int len) {
+        int start = _nodeOffsets[id];
+        if (_nodeOffsets[id + 1] - start != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (_arena[start + i] != _bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Double the size of the hash table and re-insert every node.
+     */
+    private void rehash() {
+        int[] table = new int[_table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < _nodeCount; id++) {
+            int slot = _nodeHashes[id] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        _table = table;
+    }
+
+    /**
+     * Encode the N-Triples form of a node into the scratch buffer.
+     *
+     * @param ntNode the N-Triples form.
+     * @return the number of bytes.
+     */
+    private int encode(final String ntNode) {
+        int len = ntNode.length();
+        if (len > _bytes.length) {
+            _bytes = new byte[Math.max(len, _bytes.length * 2)];
+        }
+        for (int i = 0; i < len; i++) {
+            char c = ntNode.charAt(i);
+            if (c > HIGHEST_ASCII_CHAR) {
+                byte[] encoded = ntNode.getBytes(UTF8);
+                if (encoded.length > _bytes.length) {
+                    _bytes = new byte[encoded.length];
+                }
+                System.arraycopy(encoded, 0, _bytes, 0, encoded.length);
+                return encoded.length;
+            }
+            _bytes[i] = (byte) c;
+        }
+        return len;
+    }
+
+    /**
+     * Create a node from its bytes in the arena.
+     *
+     * @param id the node number.
+     * @return the node.
+     * @throws IllegalStateException if the node's N-Triples form does
+     *         not parse, which can only happen if it was added as a
+     *         node of an unknown kind.
+     */
+    private Node getNode(final int id) {
+        int start = _nodeOffsets[id];
+        int len = _nodeOffsets[id + 1] - start;
+        if (len > _chars.length) {
+            _chars = new char[Math.max(len, _chars.length * 2)];
+        }
+        for (int i = 0; i < len; i++) {
+            byte b = _arena[start + i];
+            if (b < 0) {
+                // not ASCII, so decode the whole node
+                String s = new String(_arena, start, len, UTF8);
+                len = s.length();
+                s.getChars(0, len, _chars, 0);
+                break;
+            }
+            _chars[i] = (char) b;
+        }
+        try {
+            return _parser.parseNode(_chars, 0, len);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid N-Triples node in "
+                    + "buffer: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get a larger copy of the given array.
+     *
+     * @param array the array.
+     * @param minLength the minimum length of the copy.
+     * @return the copy.
+     * @throws IllegalStateException if the copy would be too large.
+     */
+    private static int[] grow(final int[] array, final int minLength) {
+        int[] copy = new int[newLength(array.length, minLength)];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    /**
+     * Get a larger copy of the given array.
+     *
+     * @param array the array.
+     * @param minLength the minimum length of the copy.
+     * @return the copy.
+     * @throws IllegalStateException if the copy would be too large.
+     */
+    private static byte[] grow(final byte[] array, final int minLength) {
+        byte[] copy = new byte[newLength(array.length, minLength)];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    /**
+     * Get the length to grow an array to, normally double its length.
+     *
+     * @param length the current length.
+     * @param minLength the minimum new length.
+     * @return the new length.
+     * @throws IllegalStateException if the minimum cannot be met.
+     */
+    private static int newLength(final int length, final int minLength) {
+        if (minLength <= 0) {
+            throw new IllegalStateException("Buffer full");
+        }
+        long doubled = (long) length * 2;
+        return (int) Math.min(Math.max(doubled, minLength),
+                              Integer.MAX_VALUE);
+    }
+
+}
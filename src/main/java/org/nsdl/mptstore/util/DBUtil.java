@@ -67,9 +67,25 @@ public abstract class DBUtil {
      */
     public static String quotedString(final String in,
                                       final boolean backslashIsEscape) {
-        StringBuffer out = new StringBuffer();
+        int len = in.length();
+
+        // count the escapes needed, if any
+        int extra = 0;
+        for (int i = 0; i < len; i++) {
+            char c = in.charAt(i);
+            if (c == '\'' || (backslashIsEscape && c == '\\')) {
+                extra++;
+            }
+        }
+
+        StringBuilder out = new StringBuilder(len + extra + 2);
         out.append('\'');
-        for (int i = 0; i < in.length(); i++) {
+        if (extra == 0) {
+            out.append(in);
+            out.append('\'');
+            return out.toString();
+        }
+        for (int i = 0; i < len; i++) {
             char c = in.charAt(i);
             if (c == '\'') {
                 out.append("''");                           //  ' ==> ''
@@ -0,0 +1,720 @@
+package org.nsdl.mptstore.util;
+
+import java.net.URISyntaxException;
+
+import java.text.ParseException;
+
+import org.nsdl.mptstore.rdf.Literal;
+import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.ObjectNode;
+import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.SubjectNode;
+import org.nsdl.mptstore.rdf.Triple;
+import org.nsdl.mptstore.rdf.URIReference;
+
+/**
+ * A parser for triples and nodes in N-Triples format.
+ *
+ * <p>
+ *   Input is scanned in place as a range of a <code>char[]</code>, using
+ *   index arithmetic, so no intermediate strings are created: the only
+ *   strings made are the URIs, literal values and language tags of the
+ *   parsed nodes.  Literal values without escapes are copied straight
+ *   from the input, and those with escapes are unescaped into a buffer
+ *   that is reused from one call to the next.
+ * </p>
+ * <p>
+ *   The syntax accepted, and the message and offset of each
+ *   <code>ParseException</code>, are the same as for the corresponding
+ *   methods of {@link NTriplesUtil}, which delegate to this class.
+ *   Offsets are relative to the start of the given input.
+ * </p>
+ * <p>
+ *   Since its buffers are reused, an instance must not be used by more
+ *   than one thread at a time.
+ * </p>
+ */
+public class NTriplesParser {
+
+    private static final int HIGHEST_ASCII_CHAR = 127;
+    private static final int HEX = 16;
+    private static final int SHORT_ESCAPE_LENGTH = 5;
+    private static final int LONG_ESCAPE_LENGTH = 10;
+    private static final int HIGHEST_CODE_POINT = 0x10FFFF;
+
+    /**
+     * The initial size of the buffer that <code>CharSequence</code>
+     * input is copied to.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    /**
+     * The largest buffer, in characters, that is kept for reuse.  Larger
+     * input is parsed from a temporary buffer, so that one very large
+     * literal does not pin an equally large buffer for as long as the
+     * parser (often a thread's) is alive.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final String EXPECTED_ABS_URI = "Expected absolute URI";
+    private static final String EXPECTED_ACE = "Expected '@', '^', or EOF";
+    private static final String EXPECTED_C = "Expected '^'";
+    private static final String EXPECTED_G = "Expected '>'";
+    private static final String EXPECTED_L = "Expected '<'";
+    private static final String EXPECTED_PST = "Expected '.', ' ', or TAB";
+    private static final String EXPECTED_Q = "Expected '\"'";
+    private static final String EXPECTED_QL = "Expected '\"' or '<'";
+    private static final String EXPECTED_QLST = "Expected '\"', '<', ' ', "
+            + "or TAB";
+    private static final String EXPECTED_ST = "Expected ' ' or TAB";
+    private static final String NON_ASCII_CHAR = "Non-ASCII character";
+    private static final String UNESCAPED_BACKSLASH = "Unescaped backslash";
+    private static final String ILLEGAL_ESCAPE = "Illegal Unicode escape "
+            + "sequence";
+    private static final String INCOMPLETE_ESCAPE = "Incomplete Unicode "
+            + "escape sequence";
+    private static final String UNESCAPED_CR = "Unescaped carriage return";
+    private static final String UNESCAPED_LF = "Unescaped linefeed";
+    private static final String UNESCAPED_TAB = "Unescaped tab";
+
+    /**
+     * The buffer that <code>CharSequence</code> input is copied to.
+     */
+    private char[] _chars = new char[INITIAL_BUFFER_SIZE];
+
+    /**
+     * The buffer that escaped literal values are unescaped into.
+     */
+    private final StringBuilder _value = new StringBuilder();
+
+    /**
+     * The cache of parsed nodes to use, if any.
+     */
+    private NodeCache _nodeCache;
+
+    /**
+     * Whether URIs are assumed to be valid.
+     */
+    private boolean _trusted;
+
+    /**
+     * Instantiate a parser.
+     */
+    public NTriplesParser() {
+    }
+
+    /**
+     * Set the cache of parsed nodes to use.
+     * <p>
+     *   When set, the predicates and URI reference objects of triples,
+     *   which are few and often repeated, are looked up in the cache
+     *   before being parsed, and added to it afterwards.  Subjects and
+     *   literal objects are rarely repeated, so are not cached.  Since
+     *   the cache may be shared with validating parsers, a trusted parser
+     *   validates each URI it does not find in the cache before adding
+     *   it, and does not add any that are invalid.
+     * </p>
+     *
+     * @param nodeCache the cache, or <code>null</code> (the default).
+     */
+    public void setNodeCache(final NodeCache nodeCache) {
+        _nodeCache = nodeCache;
+    }
+
+    /**
+     * Set whether URIs in the input are assumed to be valid.
+     * <p>
+     *   When trusted, URI references are created with
+     *   {@link URIReference#createTrusted(String)}, which does not
+     *   construct a <code>java.net.URI</code>.  This is appropriate for
+     *   input that was validated before being stored, such as nodes read
+     *   back from the database.  All other syntax is still checked.
+     * </p>
+     *
+     * @param trusted whether URIs are trusted; false by default.
+     */
+    public void setTrusted(final boolean trusted) {
+        _trusted = trusted;
+    }
+
+    /**
+     * Parse an RDF triple in N-Triples format.
+     *
+     * @param ntTriple the input.
+     * @return the parsed triple.
+     * @throws ParseException if the input syntax is incorrect.
+     * @see NTriplesUtil#parseTriple(String)
+     */
+    public Triple parseTriple(final CharSequence ntTriple)
+            throws ParseException {
+        int len = ntTriple.length();
+        return parseTriple(copy(ntTriple), 0, len);
+    }
+
+    /**
+     * Parse an RDF triple in N-Triples format from a range of characters.
+     *
+     * @param chars the array holding the input.
+     * @param off the position of the first character of the input.
+     * @param len the number of characters in the input.
+     * @return the parsed triple.
+     * @throws ParseException if the input syntax is incorrect.
+     * @see NTriplesUtil#parseTriple(String)
+     */
+    public Triple parseTriple(final char[] chars,
+                              final int off,
+                              final int len)
+            throws ParseException {
+
+        int end = off + len;
+
+        // subject
+        int gt = indexOf(chars, '>', off, end);
+        if (gt == -1) {
+            throw new ParseException(EXPECTED_G, len);
+        }
+        SubjectNode subject = parseURIReference(chars, off, gt + 1, off);
+
+        // whitespace+
+        int i = skipWhitespace(chars, gt + 1, end, off);
+
+        // predicate
+        gt = indexOf(chars, '>', i, end);
+        if (gt == -1) {
+            throw new ParseException(EXPECTED_G, len);
+        }
+        PredicateNode predicate = parseCachedURIReference(chars, i, gt + 1,
+                                                          off);
+
+        // whitespace+
+        i = skipWhitespace(chars, gt + 1, end, off);
+
+        // object
+        int j = end - 1;
+        char ch = chars[j];
+        while (ch != '.') {
+            if (ch != '\t' && ch != ' ') {
+                throw new ParseException(EXPECTED_PST, j - off);
+            }
+            j--;
+            if (j < i) {
+                throw new ParseException(EXPECTED_QLST, j - off);
+            }
+            ch = chars[j];
+        }
+        j--;
+        if (j < i) {
+            throw new ParseException(EXPECTED_QLST, j - off);
+        }
+        ch = chars[j];
+        while (ch == ' ' || ch == '\t') {
+            j--;
+            if (j < i) {
+                throw new ParseException(EXPECTED_QLST, j - off);
+            }
+            ch = chars[j];
+        }
+        ObjectNode object;
+        if (chars[i] == '<') {
+            object = parseCachedURIReference(chars, i, j + 1, off);
+        } else {
+            object = (ObjectNode) parseNode(chars, i, j + 1, off);
+        }
+
+        // triple
+        return new Triple(subject, predicate, object);
+    }
+
+    /**
+     * Parse an RDF node in N-Triples format.
+     *
+     * @param ntNode the input.
+     * @return the parsed node.
+     * @throws ParseException if the input syntax is incorrect.
+     * @see NTriplesUtil#parseNode(String)
+     */
+    public Node parseNode(final CharSequence ntNode)
+            throws ParseException {
+        int len = ntNode.length();
+        return parseNode(copy(ntNode), 0, len, 0);
+    }
+
+    /**
+     * Parse an RDF node in N-Triples format from a range of characters.
+     *
+     * @param chars the array holding the input.
+     * @param off the position of the first character of the input.
+     * @param len the number of characters in the input.
+     * @return the parsed node.
+     * @throws ParseException if the input syntax is incorrect.
+     * @see NTriplesUtil#parseNode(String)
+     */
+    public Node parseNode(final char[] chars,
+                          final int off,
+                          final int len)
+            throws ParseException {
+        return parseNode(chars, off, off + len, off);
+    }
+
+    /**
+     * Parse an RDF literal in N-Triples format.
+     *
+     * @param ntLiteral the input.
+     * @return the parsed literal.
+     * @throws ParseException if the input syntax is incorrect.
+     * @see NTriplesUtil#parseLiteral(String)
+     */
+    public Literal parseLiteral(final CharSequence ntLiteral)
+            throws ParseException {
+        int len = ntLiteral.length();
+        return parseLiteral(copy(ntLiteral), 0, len, 0);
+    }
+
+    /**
+     * Parse an RDF URI reference in N-Triples format.
+     *
+     * @param ntURIReference the input.
+     * @return the parsed URI reference.
+     * @throws ParseException if the input syntax is incorrect.
+     * @see NTriplesUtil#parseURIReference(String)
+     */
+    public URIReference parseURIReference(final CharSequence ntURIReference)
+            throws ParseException {
+        int len = ntURIReference.length();
+        return parseURIReference(copy(ntURIReference), 0, len, 0);
+    }
+
+    /**
+     * Unescape an N-Triples-escaped string.
+     *
+     * If the input is a <code>String</code> without escapes, it is
+     * returned as-is.
+     *
+     * @param s the input.
+     * @return the unescaped string.
+     * @throws ParseException if the input syntax is incorrect.
+     * @see NTriplesUtil#unescapeLiteralValue(String)
+     */
+    public String unescapeLiteralValue(final CharSequence s)
+            throws ParseException {
+        int len = s.length();
+        char[] chars = copy(s);
+        boolean escaped = false;
+        for (int i = 0; i < len; i++) {
+            char c = chars[i];
+            if (c > HIGHEST_ASCII_CHAR) {
+                throw new ParseException(NON_ASCII_CHAR, i);
+            } else if (c == '\\') {
+                escaped = true;
+            }
+        }
+        if (!escaped) {
+            return s.toString();
+        }
+        return unescape(chars, 0, len, 0);
+    }
+
+    /**
+     * Copy the given input to the reusable buffer, growing it if needed,
+     * or to a temporary buffer if it is too large to keep.
+     *
+     * @param s the input.
+     * @return the buffer holding the input, from position 0.
+     */
+    private char[] copy(final CharSequence s) {
+        int len = s.length();
+        char[] chars = _chars;
+        if (len > MAX_RETAINED_BUFFER_SIZE) {
+            chars = new char[len];
+        } else if (len > chars.length) {
+            chars = new char[Math.min(Math.max(len, chars.length * 2),
+                    MAX_RETAINED_BUFFER_SIZE)];
+            _chars = chars;
+        }
+        if (s instanceof String) {
+            ((String) s).getChars(0, len, chars, 0);
+        } else if (s instanceof StringBuilder) {
+            ((StringBuilder) s).getChars(0, len, chars, 0);
+        } else {
+            for (int i = 0; i < len; i++) {
+                chars[i] = s.charAt(i);
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Find the first occurrence of a character in a range.
+     *
+     * @param chars the characters.
+     * @param c the character to find.
+     * @param from the start of the range.
+     * @param to the end of the range (exclusive).
+     * @return the position of the character, or -1 if not found.
+     */
+    private static int indexOf(final char[] chars,
+                               final char c,
+                               final int from,
+                               final int to) {
+        for (int i = from; i < to; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip one or more spaces or tabs.
+     *
+     * @param chars the characters.
+     * @param from the position of the first whitespace character.
+     * @param to the end of the input (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @return the position of the first character after the whitespace.
+     * @throws ParseException if there is no whitespace at the position.
+     */
+    private static int skipWhitespace(final char[] chars,
+                                      final int from,
+                                      final int to,
+                                      final int base)
+            throws ParseException {
+        int i = from;
+        while (i < to && (chars[i] == ' ' || chars[i] == '\t')) {
+            i++;
+        }
+        if (i == from) {
+            throw new ParseException(EXPECTED_ST, from - base);
+        }
+        return i;
+    }
+
+    /**
+     * Parse a URI reference or literal from a range of characters.
+     *
+     * @param chars the characters.
+     * @param from the start of the node.
+     * @param to the end of the node (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @return the parsed node.
+     * @throws ParseException if the input syntax is incorrect.
+     */
+    private Node parseNode(final char[] chars,
+                           final int from,
+                           final int to,
+                           final int base)
+            throws ParseException {
+        if (from < to && chars[from] == '"') {
+            return parseLiteral(chars, from, to, base);
+        } else if (from < to && chars[from] == '<') {
+            return parseURIReference(chars, from, to, base);
+        } else {
+            throw new ParseException(EXPECTED_QL, from - base);
+        }
+    }
+
+    /**
+     * Parse a URI reference from a range of characters.
+     *
+     * @param chars the characters.
+     * @param from the start of the URI reference.
+     * @param to the end of the URI reference (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @return the parsed URI reference.
+     * @throws ParseException if the input syntax is incorrect.
+     */
+    private URIReference parseURIReference(final char[] chars,
+                                           final int from,
+                                           final int to,
+                                           final int base)
+            throws ParseException {
+        return parseURIReference(chars, from, to, base, _trusted);
+    }
+
+    /**
+     * Parse a URI reference from a range of characters, validating the
+     * URI unless it is trusted.
+     *
+     * @param chars the characters.
+     * @param from the start of the URI reference.
+     * @param to the end of the URI reference (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @param trusted whether the URI is assumed to be valid.
+     * @return the parsed URI reference.
+     * @throws ParseException if the input syntax is incorrect.
+     */
+    private URIReference parseURIReference(final char[] chars,
+                                           final int from,
+                                           final int to,
+                                           final int base,
+                                           final boolean trusted)
+            throws ParseException {
+        if (from >= to || chars[from] != '<') {
+            throw new ParseException(EXPECTED_L, from - base);
+        }
+        if (chars[to - 1] != '>') {
+            throw new ParseException(EXPECTED_G, to - 1 - base);
+        }
+        String uri = new String(chars, from + 1, to - from - 2);
+        if (trusted) {
+            return URIReference.createTrusted(uri);
+        }
+        try {
+            return new URIReference(uri);
+        } catch (URISyntaxException e) {
+            throw new ParseException(EXPECTED_ABS_URI, from + 1 - base);
+        }
+    }
+
+    /**
+     * Parse a URI reference from a range of characters, using the node
+     * cache if there is one.
+     *
+     * @param chars the characters.
+     * @param from the start of the URI reference.
+     * @param to the end of the URI reference (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @return the parsed or cached URI reference.
+     * @throws ParseException if the input syntax is incorrect.
+     */
+    private URIReference parseCachedURIReference(final char[] chars,
+                                                 final int from,
+                                                 final int to,
+                                                 final int base)
+            throws ParseException {
+        NodeCache cache = _nodeCache;
+        if (cache == null) {
+            return parseURIReference(chars, from, to, base);
+        }
+        String key = new String(chars, from, to - from);
+        Node node = cache.get(key);
+        if (node instanceof URIReference) {
+            return (URIReference) node;
+        }
+        URIReference uriRef;
+        try {
+            uriRef = parseURIReference(chars, from, to, base, false);
+        } catch (ParseException e) {
+            if (!_trusted) {
+                throw e;
+            }
+            // invalid but trusted; use it without sharing it
+            return parseURIReference(chars, from, to, base, true);
+        }
+        cache.put(key, uriRef);
+        return uriRef;
+    }
+
+    /**
+     * Parse a literal from a range of characters.
+     *
+     * @param chars the characters.
+     * @param from the start of the literal.
+     * @param to the end of the literal (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @return the parsed literal.
+     * @throws ParseException if the input syntax is incorrect.
+     */
+    private Literal parseLiteral(final char[] chars,
+                                 final int from,
+                                 final int to,
+                                 final int base)
+            throws ParseException {
+
+        if (from >= to || chars[from] != '"') {
+            throw new ParseException(EXPECTED_Q, from - base);
+        }
+
+        // find the closing quote, noting what the value needs
+        boolean escaped = false;
+        int nonAscii = -1;
+        int i = from + 1;
+        while (true) {
+            if (i >= to) {
+                throw new ParseException(EXPECTED_Q, i - base);
+            }
+            char c = chars[i];
+            if (c == '"') {
+                break;
+            } else if (c == '\\') {
+                escaped = true;
+                i++;
+                if (i >= to) {
+                    throw new ParseException(EXPECTED_Q, i - base);
+                }
+                c = chars[i];
+            } else if (c == '\r') {
+                throw new ParseException(UNESCAPED_LF, i - base);
+            } else if (c == '\n') {
+                throw new ParseException(UNESCAPED_CR, i - base);
+            } else if (c == '\t') {
+                throw new ParseException(UNESCAPED_TAB, i - base);
+            }
+            if (c > HIGHEST_ASCII_CHAR && nonAscii == -1) {
+                nonAscii = i;
+            }
+            i++;
+        }
+
+        String value;
+        if (nonAscii != -1) {
+            throw new ParseException(NON_ASCII_CHAR, nonAscii - base);
+        } else if (escaped) {
+            value = unescape(chars, from + 1, i, base);
+        } else {
+            value = new String(chars, from + 1, i - from - 1);
+        }
+
+        // language or datatype, if any
+        i++;
+        if (i == to) {
+            return new Literal(value);
+        } else if (chars[i] == '@') {
+            try {
+                return new Literal(value,
+                                   new String(chars, i + 1, to - i - 1));
+            } catch (ParseException e) {
+                throw new ParseException(e.getMessage(),
+                                         e.getErrorOffset() + i + 1 - base);
+            }
+        } else if (chars[i] == '^') {
+            i++;
+            if (i == to || chars[i] != '^') {
+                throw new ParseException(EXPECTED_C, i - base);
+            }
+            // offsets are relative to the second '^', as they always were
+            return new Literal(value,
+                    parseURIReference(chars, i + 1, to, base + 1));
+        } else {
+            throw new ParseException(EXPECTED_ACE, i - base);
+        }
+    }
+
+    /**
+     * Unescape a range of N-Triples-escaped, 7-bit ASCII characters.
+     *
+     * As in earlier versions, the offset of an invalid escape sequence
+     * is reported as the end of the previous one, or the start of the
+     * range if there is none.
+     *
+     * @param chars the characters.
+     * @param from the start of the range.
+     * @param to the end of the range (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @return the unescaped string.
+     * @throws ParseException if an escape sequence is incomplete or
+     *         illegal.
+     */
+    private String unescape(final char[] chars,
+                            final int from,
+                            final int to,
+                            final int base)
+            throws ParseException {
+        try {
+            return unescape(chars, from, to, base, _value);
+        } finally {
+            if (_value.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                _value.setLength(0);
+                _value.trimToSize();
+            }
+        }
+    }
+
+    /**
+     * Unescape a range of N-Triples-escaped, 7-bit ASCII characters into
+     * the given buffer.
+     *
+     * @param chars the characters.
+     * @param from the start of the range.
+     * @param to the end of the range (exclusive).
+     * @param base the position that offsets are reported relative to.
+     * @param buf the buffer to unescape into.
+     * @return the unescaped string.
+     * @throws ParseException if an escape sequence is incomplete or
+     *         illegal.
+     */
+    private static String unescape(final char[] chars,
+                                   final int from,
+                                   final int to,
+                                   final int base,
+                                   final StringBuilder buf)
+            throws ParseException {
+
+        buf.setLength(0);
+
+        int i = from;
+        int backslashPos = indexOf(chars, '\\', i, to);
+        while (backslashPos != -1) {
+
+            buf.append(chars, i, backslashPos - i);
+
+            if (backslashPos + 1 >= to) {
+                throw new ParseException(UNESCAPED_BACKSLASH, i - base);
+            }
+
+            char c = chars[backslashPos + 1];
+            if (c == 'u' || c == 'U') {
+                int digits;
+                if (c == 'u') {
+                    digits = SHORT_ESCAPE_LENGTH - 1;
+                } else {
+                    digits = LONG_ESCAPE_LENGTH - 2;
+                }
+                if (backslashPos + digits + 1 >= to) {
+                    throw new ParseException(INCOMPLETE_ESCAPE, i - base);
+                }
+                int codePoint = parseHex(chars, backslashPos + 2, digits);
+                if (codePoint == -1) {
+                    throw new ParseException(ILLEGAL_ESCAPE, i - base);
+                }
+                buf.appendCodePoint(codePoint);
+                i = backslashPos + digits + 2;
+            } else {
+                if (c == 't') {
+                    buf.append('\t');
+                } else if (c == 'r') {
+                    buf.append('\r');
+                } else if (c == 'n') {
+                    buf.append('\n');
+                } else if (c == '"' || c == '\\') {
+                    buf.append(c);
+                } else {
+                    throw new ParseException(UNESCAPED_BACKSLASH, i - base);
+                }
+                i = backslashPos + 2;
+            }
+
+            backslashPos = indexOf(chars, '\\', i, to);
+        }
+        buf.append(chars, i, to - i);
+
+        return buf.toString();
+    }
+
+    /**
+     * Parse the hexadecimal digits of a Unicode escape sequence.
+     *
+     * @param chars the characters.
+     * @param from the position of the first digit.
+     * @param digits the number of digits.
+     * @return the code point, or -1 if the digits are not all hexadecimal
+     *         or the code point is out of range.
+     */
+    private static int parseHex(final char[] chars,
+                                final int from,
+                                final int digits) {
+        int value = 0;
+        for (int i = from; i < from + digits; i++) {
+            int digit = Character.digit(chars[i], HEX);
+            if (digit == -1) {
+                return -1;
+            }
+            value = value * HEX + digit;
+            if (value > HIGHEST_CODE_POINT) {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+}
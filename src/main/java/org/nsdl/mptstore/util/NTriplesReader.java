@@ -0,0 +1,415 @@
+package org.nsdl.mptstore.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import java.text.ParseException;
+
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+
+import org.nsdl.mptstore.core.ClosableIterator;
+import org.nsdl.mptstore.rdf.Triple;
+
+/**
+ * Reads triples from an N-Triples document, one at a time.
+ *
+ * <p>
+ *   Bytes are read from a channel into a large direct buffer, or from a
+ *   memory-mapped file, and decoded straight into a reusable line buffer
+ *   that is parsed in place by an {@link NTriplesParser}, so no
+ *   <code>String</code> is created for each line.  Input is expected to
+ *   be 7-bit ASCII, as N-Triples requires; any other characters are
+ *   decoded as UTF-8.
+ * </p>
+ * <p>
+ *   Blank lines and comment lines are skipped, and lines may end with a
+ *   linefeed, a carriage return, or both.  Since
+ *   <code>Iterator</code> methods cannot throw checked exceptions, an
+ *   invalid line causes <code>next()</code> or <code>hasNext()</code> to
+ *   throw an <code>IllegalStateException</code> giving its position, and
+ *   an I/O error causes a <code>RuntimeException</code>.  As a
+ *   <code>ClosableIterator</code>, a reader can be given directly to
+ *   {@link org.nsdl.mptstore.core.DatabaseAdaptor#addTriples}.
+ * </p>
+ *
+ * @see NTriplesWriter
+ */
+public class NTriplesReader implements ClosableIterator<Triple> {
+
+    /**
+     * The default size of the buffer bytes are read into, in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(NTriplesReader.class.getName());
+
+    /**
+     * The maximum size of each memory-mapped region of a file.
+     */
+    private static final long MAX_MAPPED_REGION = 256 * 1024 * 1024;
+
+    /**
+     * The initial size of the line buffer, in characters.
+     */
+    private static final int INITIAL_LINE_SIZE = 256;
+
+    /**
+     * The character decoded from malformed UTF-8.
+     */
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    /**
+     * The channel to read from, or <code>null</code> if reading a
+     * buffer.
+     */
+    private final ReadableByteChannel _channel;
+
+    /**
+     * Whether the channel is a file that is read by mapping it into
+     * memory.
+     */
+    private final boolean _mapped;
+
+    /**
+     * The position in the file of the next region to map, if mapped.
+     */
+    private long _mapPosition;
+
+    /**
+     * The size of the file, if mapped.
+     */
+    private long _mapSize;
+
+    /**
+     * The bytes read but not yet decoded.
+     */
+    private ByteBuffer _bytes;
+
+    /**
+     * The characters of the current line.
+     */
+    private char[] _line = new char[INITIAL_LINE_SIZE];
+
+    /**
+     * Parses each line.
+     */
+    private final NTriplesParser _parser = new NTriplesParser();
+
+    /**
+     * The number of the current line.
+     */
+    private int _lineNumber;
+
+    /**
+     * Whether a linefeed should be ignored because it completes a
+     * carriage return.
+     */
+    private boolean _skipLF;
+
+    /**
+     * The triple to be returned by the next call to next(), if read.
+     */
+    private Triple _next;
+
+    /**
+     * Whether there are no more triples.
+     */
+    private boolean _finished;
+
+    /**
+     * Instantiate a reader for the given channel.
+     *
+     * @param channel the channel to read from.
+     */
+    public NTriplesReader(final ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Instantiate a reader for the given channel, with the given buffer
+     * size.
+     *
+     * @param channel the channel to read from.
+     * @param bufferSize the size of the buffer bytes are read into.
+     */
+    public NTriplesReader(final ReadableByteChannel channel,
+                          final int bufferSize) {
+        _channel = channel;
+        _mapped = false;
+        _bytes = ByteBuffer.allocateDirect(bufferSize);
+        _bytes.limit(0);
+    }
+
+    /**
+     * Instantiate a reader for the remaining bytes of the given buffer,
+     * such as a memory-mapped part of a file.
+     *
+     * @param bytes the buffer to read from.
+     * @see NTriplesSplitter
+     */
+    public NTriplesReader(final ByteBuffer bytes) {
+        _channel = null;
+        _mapped = false;
+        _bytes = bytes;
+    }
+
+    /**
+     * Instantiate a reader for the given stream.
+     *
+     * @param in the stream to read from.
+     */
+    public NTriplesReader(final InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    /**
+     * Instantiate a reader for the given file.
+     *
+     * If <code>memoryMapped</code> is true, the file is mapped into
+     * memory a region at a time rather than read into a buffer, which
+     * saves copying its content.
+     *
+     * @param file the file to read.
+     * @param memoryMapped whether to map the file into memory.
+     * @throws IOException if the file cannot be opened.
+     */
+    public NTriplesReader(final File file,
+                          final boolean memoryMapped)
+            throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        _channel = channel;
+        _mapped = memoryMapped;
+        if (memoryMapped) {
+            _mapSize = channel.size();
+            _bytes = ByteBuffer.allocate(0);
+        } else {
+            _bytes = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+            _bytes.limit(0);
+        }
+    }
+
+    /**
+     * Get the number of the line the last triple was read from.
+     *
+     * @return the line number, starting at 1.
+     */
+    public int getLineNumber() {
+        return _lineNumber;
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasNext() {
+        if (_next == null && !_finished) {
+            readNext();
+        }
+        return _next != null;
+    }
+
+    /** {@inheritDoc} */
+    public Triple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Triple triple = _next;
+        _next = null;
+        return triple;
+    }
+
+    /**
+     * Throws <code>UnsupportedOperationException</code>.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Close the underlying channel, if any.
+     */
+    public void close() {
+        _finished = true;
+        _next = null;
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close channel", e);
+            }
+        }
+    }
+
+    /**
+     * Set _next to the triple on the next line that has one.
+     *
+     * If there are no more lines, proactively close.
+     */
+    private void readNext() {
+        try {
+            while (true) {
+                int len = readLine();
+                if (len == -1) {
+                    close();
+                    return;
+                }
+                _lineNumber++;
+                int start = 0;
+                while (start < len
+                        && (_line[start] == ' ' || _line[start] == '\t')) {
+                    start++;
+                }
+                if (start < len && _line[start] != '#') {
+                    try {
+                        _next = _parser.parseTriple(_line, start,
+                                                    len - start);
+                    } catch (ParseException e) {
+                        close();
+                        throw new IllegalStateException("Invalid N-Triples "
+                                + "at line " + _lineNumber + ", column "
+                                + (start + e.getErrorOffset() + 1) + ": "
+                                + e.getMessage(), e);
+                    }
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Error reading N-Triples", e);
+        }
+    }
+
+    /**
+     * Decode the next line into the line buffer.
+     *
+     * @return the number of characters in the line, or -1 if there are
+     *         no more lines.
+     * @throws IOException if there is an error reading.
+     */
+    private int readLine() throws IOException {
+        int len = 0;
+        while (true) {
+            int b = nextByte();
+            if (b == -1) {
+                if (len == 0) {
+                    return -1;
+                }
+                return len;
+            } else if (b == '\n') {
+                if (!_skipLF) {
+                    return len;
+                }
+                _skipLF = false;
+            } else {
+                _skipLF = false;
+                if (b == '\r') {
+                    _skipLF = true;
+                    return len;
+                }
+                if (len + 1 >= _line.length) {
+                    char[] line = new char[_line.length * 2];
+                    System.arraycopy(_line, 0, line, 0, len);
+                    _line = line;
+                }
+                if (b < 0x80) {
+                    _line[len++] = (char) b;
+                } else {
+                    len = decode(b, len);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode a multi-byte UTF-8 sequence into the line buffer.
+     *
+     * @param first the first byte of the sequence.
+     * @param len the number of characters already in the line.
+     * @return the number of characters in the line after decoding.
+     * @throws IOException if there is an error reading.
+     */
+    private int decode(final int first, final int len) throws IOException {
+        int count;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            count = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            count = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            count = 3;
+            codePoint = first & 0x07;
+        } else {
+            _line[len] = REPLACEMENT_CHAR;
+            return len + 1;
+        }
+        for (int i = 0; i < count; i++) {
+            // leave anything but a continuation byte to be read again
+            if ((!_bytes.hasRemaining() && !fill())
+                    || (_bytes.get(_bytes.position()) & 0xC0) != 0x80) {
+                _line[len] = REPLACEMENT_CHAR;
+                return len + 1;
+            }
+            codePoint = (codePoint << 6) | (_bytes.get() & 0x3F);
+        }
+        if (codePoint > Character.MAX_CODE_POINT) {
+            _line[len] = REPLACEMENT_CHAR;
+            return len + 1;
+        }
+        return len + Character.toChars(codePoint, _line, len);
+    }
+
+    /**
+     * Get the next byte, reading or mapping more if needed.
+     *
+     * @return the byte, from 0 to 255, or -1 at the end of input.
+     * @throws IOException if there is an error reading.
+     */
+    private int nextByte() throws IOException {
+        if (!_bytes.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return _bytes.get() & 0xFF;
+    }
+
+    /**
+     * Make more bytes available in the buffer.
+     *
+     * @return false if there are no more bytes.
+     * @throws IOException if there is an error reading.
+     */
+    private boolean fill() throws IOException {
+        if (_channel == null) {
+            return false;
+        } else if (_mapped) {
+            if (_mapPosition >= _mapSize) {
+                return false;
+            }
+            long size = Math.min(MAX_MAPPED_REGION, _mapSize - _mapPosition);
+            _bytes = ((FileChannel) _channel).map(
+                    FileChannel.MapMode.READ_ONLY, _mapPosition, size);
+            _mapPosition += size;
+            return true;
+        } else {
+            _bytes.clear();
+            int count = _channel.read(_bytes);
+            while (count == 0) {
+                count = _channel.read(_bytes);
+            }
+            _bytes.flip();
+            return count != -1;
+        }
+    }
+
+}
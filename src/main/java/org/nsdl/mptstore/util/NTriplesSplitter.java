@@ -0,0 +1,409 @@
+package org.nsdl.mptstore.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import org.nsdl.mptstore.core.ClosableIterator;
+import org.nsdl.mptstore.rdf.Triple;
+
+/**
+ * Splits an N-Triples file into ranges of lines that are parsed in
+ * parallel.
+ *
+ * <p>
+ *   The file is divided at the first line boundary after each of a
+ *   number of evenly spaced offsets.  Each range is mapped into memory
+ *   and read by its own {@link NTriplesReader}, which is given to a
+ *   {@link RangeHandler} in a worker thread.  Since a line break is a
+ *   single byte that never occurs within an encoded character, the
+ *   boundaries can be found without decoding the file.
+ * </p>
+ * <p>
+ *   A handler typically adds the triples of its range to the store on
+ *   a connection of its own, e.g.
+ * </p>
+ * <pre>
+ *   splitter.split(new NTriplesSplitter.RangeHandler() {
+ *       public void handle(ClosableIterator&lt;Triple&gt; triples)
+ *               throws Exception {
+ *           Connection conn = dataSource.getConnection();
+ *           try {
+ *               adaptor.addTriples(conn, triples);
+ *           } finally {
+ *               conn.close();
+ *           }
+ *       }
+ *   });
+ * </pre>
+ * <p>
+ *   Note that the line numbers given in parse errors are relative to
+ *   the start of the range.
+ * </p>
+ */
+public class NTriplesSplitter {
+
+    /**
+     * Handles the triples of one range of the file.
+     */
+    public interface RangeHandler {
+
+        /**
+         * Handle the triples of a range.
+         *
+         * This is called from a worker thread, concurrently with the
+         * handling of other ranges.
+         *
+         * @param triples the triples of the range, in order.
+         * @throws Exception if the triples could not be handled.
+         */
+        void handle(ClosableIterator<Triple> triples) throws Exception;
+
+    }
+
+    /**
+     * The Logger for this class.
+     */
+    private static final Logger LOG =
+            Logger.getLogger(NTriplesSplitter.class.getName());
+
+    /**
+     * The largest range that can be mapped into memory at once.
+     */
+    private static final long MAX_RANGE_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * The number of bytes read at a time when looking for a line
+     * boundary.
+     */
+    private static final int SCAN_SIZE = 4096;
+
+    /**
+     * The file to split.
+     */
+    private final File _file;
+
+    /**
+     * The number of ranges to handle at once.
+     */
+    private final int _parallelism;
+
+    /**
+     * The executor used to run workers, or <code>null</code> to start a
+     * thread for each.
+     */
+    private final Executor _executor;
+
+    /**
+     * Instantiate a splitter that starts a thread for each worker.
+     *
+     * @param file the N-Triples file to split.
+     * @param parallelism the number of ranges to split the file into,
+     *        and to handle at once.
+     */
+    public NTriplesSplitter(final File file,
+                            final int parallelism) {
+        this(file, parallelism, null);
+    }
+
+    /**
+     * Instantiate a splitter that runs workers on the given executor.
+     *
+     * @param file the N-Triples file to split.
+     * @param parallelism the number of ranges to split the file into,
+     *        and to handle at once.
+     * @param executor the executor used to run workers, or
+     *        <code>null</code> to start a thread for each.
+     */
+    public NTriplesSplitter(final File file,
+                            final int parallelism,
+                            final Executor executor) {
+        _file = file;
+        _parallelism = Math.max(parallelism, 1);
+        _executor = executor;
+    }
+
+    /**
+     * Split the file and handle each range, waiting until all are done.
+     *
+     * If handling any range fails, no further ranges are started, and
+     * the first failure is thrown once the others have finished.
+     *
+     * @param handler the handler for each range.
+     * @return the number of ranges.
+     * @throws IOException if the file cannot be read.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws ExecutionException if a handler or the parsing of a range
+     *         failed; the cause is the original exception.
+     */
+    public int split(final RangeHandler handler)
+            throws IOException, InterruptedException, ExecutionException {
+
+        FileChannel channel = new FileInputStream(_file).getChannel();
+        try {
+            List<Long> boundaries = findBoundaries(channel);
+            int ranges = boundaries.size() - 1;
+            if (ranges == 0) {
+                return 0;
+            }
+            int workers = Math.min(_parallelism, ranges);
+            LOG.info("Handling " + ranges + " ranges of " + _file
+                    + " with " + workers + " workers");
+
+            Job job = new Job(channel, boundaries, handler, workers);
+            for (int i = 0; i < workers; i++) {
+                try {
+                    if (_executor == null) {
+                        Thread thread = new Thread(job.new Worker(),
+                                "NTriplesSplitter worker");
+                        thread.setDaemon(true);
+                        thread.start();
+                    } else {
+                        _executor.execute(job.new Worker());
+                    }
+                } catch (RejectedExecutionException e) {
+                    // let the workers already started finish first
+                    job.fail(e);
+                    for (int j = i; j < workers; j++) {
+                        job.notStarted();
+                    }
+                    break;
+                }
+            }
+            job.await();
+            return ranges;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Find the start of each range, followed by the end of the file.
+     *
+     * @param channel the file.
+     * @return the offsets.
+     * @throws IOException if there is an error reading.
+     */
+    private List<Long> findBoundaries(final FileChannel channel)
+            throws IOException {
+        long size = channel.size();
+        long ranges = Math.max(_parallelism,
+                (size + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(Long.valueOf(0));
+        long last = 0;
+        for (long i = 1; i < ranges; i++) {
+            long start = lineStart(channel, size, size / ranges * i);
+            if (start > last && start < size) {
+                // a range may not exceed the limit even if lines are long
+                if (start - last > MAX_RANGE_SIZE) {
+                    throw new IOException("Line too long near offset "
+                            + start);
+                }
+                boundaries.add(Long.valueOf(start));
+                last = start;
+            }
+        }
+        if (size > last) {
+            if (size - last > MAX_RANGE_SIZE) {
+                throw new IOException("Line too long near offset " + size);
+            }
+            boundaries.add(Long.valueOf(size));
+        }
+        return boundaries;
+    }
+
+    /**
+     * Find the start of the first line beginning at or after the given
+     * offset.
+     *
+     * @param channel the file.
+     * @param size the size of the file.
+     * @param offset the offset.
+     * @return the start of the line, or the size of the file if there is
+     *         none.
+     * @throws IOException if there is an error reading.
+     */
+    private static long lineStart(final FileChannel channel,
+                                  final long size,
+                                  final long offset)
+            throws IOException {
+        if (offset == 0) {
+            return 0;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_SIZE);
+        long position = offset - 1;
+        boolean afterCR = false;
+        while (position < size) {
+            buf.clear();
+            int count = channel.read(buf, position);
+            if (count <= 0) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                byte b = buf.get(i);
+                if (afterCR) {
+                    if (b == '\n') {
+                        return position + i + 1;
+                    }
+                    return position + i;
+                } else if (b == '\n') {
+                    return position + i + 1;
+                } else if (b == '\r') {
+                    afterCR = true;
+                }
+            }
+            position += count;
+        }
+        return size;
+    }
+
+    /**
+     * The state of one call to <code>split</code>, shared by its
+     * workers.
+     */
+    private static class Job {
+
+        /**
+         * The file.
+         */
+        private final FileChannel _channel;
+
+        /**
+         * The start of each range, followed by the end of the file.
+         */
+        private final List<Long> _boundaries;
+
+        /**
+         * The handler for each range.
+         */
+        private final RangeHandler _handler;
+
+        /**
+         * The index of the next range to handle.
+         */
+        private final AtomicInteger _nextRange = new AtomicInteger();
+
+        /**
+         * Counts down as workers finish.
+         */
+        private final CountDownLatch _done;
+
+        /**
+         * The first failure, if any.
+         */
+        private volatile Throwable _error;
+
+        /**
+         * Instantiate a job.
+         *
+         * @param channel the file.
+         * @param boundaries the start of each range, followed by the end
+         *        of the file.
+         * @param handler the handler for each range.
+         * @param workers the number of workers.
+         */
+        Job(final FileChannel channel,
+            final List<Long> boundaries,
+            final RangeHandler handler,
+            final int workers) {
+            _channel = channel;
+            _boundaries = boundaries;
+            _handler = handler;
+            _done = new CountDownLatch(workers);
+        }
+
+        /**
+         * Record a failure, unless one has already occurred, and stop
+         * starting ranges.
+         *
+         * @param error the failure.
+         */
+        synchronized void fail(final Throwable error) {
+            if (_error == null) {
+                _error = error;
+            }
+            _nextRange.set(_boundaries.size());
+        }
+
+        /**
+         * Record that a worker could not be started, so will not finish.
+         */
+        void notStarted() {
+            _done.countDown();
+        }
+
+        /**
+         * Wait for all workers to finish, and throw the first failure.
+         *
+         * @throws InterruptedException if interrupted while waiting.
+         * @throws ExecutionException if a range failed.
+         */
+        void await() throws InterruptedException, ExecutionException {
+            try {
+                _done.await();
+            } catch (InterruptedException e) {
+                fail(e);
+                throw e;
+            }
+            if (_error != null) {
+                throw new ExecutionException("Error handling range",
+                                             _error);
+            }
+        }
+
+        /**
+         * Handles ranges until none remain or one fails.
+         */
+        private class Worker implements Runnable {
+
+            /** {@inheritDoc} */
+            public void run() {
+                try {
+                    int i = _nextRange.getAndIncrement();
+                    while (i < _boundaries.size() - 1) {
+                        handle(i);
+                        i = _nextRange.getAndIncrement();
+                    }
+                } catch (Throwable th) {
+                    fail(th);
+                } finally {
+                    _done.countDown();
+                }
+            }
+
+            /**
+             * Map a range into memory and handle its triples.
+             *
+             * @param i the index of the range.
+             * @throws Exception if handling the range failed.
+             */
+            private void handle(final int i) throws Exception {
+                long start = _boundaries.get(i).longValue();
+                long end = _boundaries.get(i + 1).longValue();
+                LOG.debug("Handling bytes " + start + " to " + end);
+                NTriplesReader reader = new NTriplesReader(_channel.map(
+                        FileChannel.MapMode.READ_ONLY, start, end - start));
+                try {
+                    _handler.handle(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+}
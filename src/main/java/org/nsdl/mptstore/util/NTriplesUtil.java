@@ -2,9 +2,6 @@ package org.nsdl.mptstore.util;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
-
-import java.net.URISyntaxException;
 
 import java.text.ParseException;
 
@@ -28,11 +25,13 @@ public abstract class NTriplesUtil {
      */
     private static final int SUBTAG_MAXLEN = 8;
 
-    private static final int HIGHEST_ASCII_CHAR = 127;
-    private static final int HEX = 16;
     private static final int SHORT_ESCAPE_LENGTH = 5;
     private static final int LONG_ESCAPE_LENGTH = 10;
 
+    private static final int HEX_DIGIT_BITS = 4;
+    private static final int HEX_MASK = 0xF;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     private static final int UC_LOW1 = 0x0;
     private static final int UC_HIGH1 = 0x8;
 
@@ -48,33 +47,73 @@ public abstract class NTriplesUtil {
     private static final int UC_LOW5 = 0x10000;
     private static final int UC_HIGH5 = 0x10FFFF;
 
-    private static final String EXPECTED_ABS_URI = "Expected absolute URI";
-    private static final String EXPECTED_ACE = "Expected '@', '^', or EOF";
-    private static final String EXPECTED_C = "Expected '^'";
     private static final String EXPECTED_G = "Expected '>'";
-    private static final String EXPECTED_L = "Expected '<'";
-    private static final String EXPECTED_LST = "Expected '<', ' ', or TAB";
-    private static final String EXPECTED_PST = "Expected '.', ' ', or TAB";
-    private static final String EXPECTED_Q = "Expected '\"'";
-    private static final String EXPECTED_QL = "Expected '\"' or '<'";
-    private static final String EXPECTED_QLST = "Expected '\"', '<', ' ', "
-            + "or TAB";
     private static final String EXPECTED_ST = "Expected ' ' or TAB";
     private static final String UNEXPECTED_EOF = "Unexpected EOF";
-    private static final String NON_ASCII_CHAR = "Non-ASCII character";
-    private static final String UNESCAPED_BACKSLASH = "Unescaped backslash";
-    private static final String ILLEGAL_ESCAPE = "Illegal Unicode escape "
-            + "sequence";
-    private static final String INCOMPLETE_ESCAPE = "Incomplete Unicode "
-            + "escape sequence";
-    private static final String UNESCAPED_CR = "Unescaped carriage return";
-    private static final String UNESCAPED_LF = "Unescaped linefeed";
-    private static final String UNESCAPED_TAB = "Unescaped tab";
 
     private static final int[] SPACE_OR_TAB = new int[] {' ', '\t'};
 
+    /**
+     * The parser used by each thread.
+     */
+    private static final ThreadLocal<NTriplesParser> PARSER =
+            new ThreadLocal<NTriplesParser>() {
+                protected NTriplesParser initialValue() {
+                    return new NTriplesParser();
+                }
+            };
+
+    /**
+     * The parser used by each thread for trusted input.
+     */
+    private static final ThreadLocal<NTriplesParser> TRUSTED_PARSER =
+            new ThreadLocal<NTriplesParser>() {
+                protected NTriplesParser initialValue() {
+                    NTriplesParser parser = new NTriplesParser();
+                    parser.setTrusted(true);
+                    return parser;
+                }
+            };
+
+    /**
+     * The cache of parsed nodes, if any.
+     */
+    private static volatile NodeCache _nodeCache;
+
     private NTriplesUtil() { }
 
+    /**
+     * Set the cache of parsed nodes used by the parse methods of this
+     * class.
+     *
+     * <p>
+     *   When set, <code>parseNode</code>, <code>parseSubject</code>,
+     *   <code>parsePredicate</code>, <code>parseObject</code> and
+     *   <code>parseURIReference</code> return the cached instance for
+     *   any input they have already parsed, and
+     *   <code>parseTriple</code> does the same for predicates and URI
+     *   reference objects.  Since nodes are immutable, sharing them is
+     *   safe, and saves both parsing time and memory when the same nodes
+     *   recur, as predicates do in query results.
+     * </p>
+     *
+     * @param nodeCache the cache, or <code>null</code> (the default) to
+     *        parse every node.
+     */
+    public static void setNodeCache(final NodeCache nodeCache) {
+        _nodeCache = nodeCache;
+    }
+
+    /**
+     * Get the cache of parsed nodes used by the parse methods of this
+     * class.
+     *
+     * @return the cache, or <code>null</code> if none.
+     */
+    public static NodeCache getNodeCache() {
+        return _nodeCache;
+    }
+
     /**
      * Consume the next URI reference.
      *
@@ -157,47 +196,6 @@ public abstract class NTriplesUtil {
         return i;
     }
 
-    /**
-     * Extract the object part of a triple string.
-     *
-     * @param ntTriple the full triple string.
-     * @param i the position of the first object character.
-     * @throws ParseException if the input does not appear to be a valid
-     *         triple string.
-     */
-    private static String getObjectString(final String ntTriple,
-                                          final int i)
-            throws ParseException {
-
-        int j = ntTriple.length() - 1;
-
-        char ch = ntTriple.charAt(j);
-        while (ch != '.') {
-            if (ch != '\t' && ch != ' ') {
-                throw new ParseException(EXPECTED_PST, j);
-            }
-            j--;
-            if (j < i) {
-                throw new ParseException(EXPECTED_QLST, j);
-            }
-            ch = ntTriple.charAt(j);
-        }
-        j--;
-        if (j < i) {
-            throw new ParseException(EXPECTED_QLST, j);
-        }
-        ch = ntTriple.charAt(j);
-        while (ch == ' ' || ch == '\t') {
-            j--;
-            if (j < i) {
-                throw new ParseException(EXPECTED_QLST, j);
-            }
-            ch = ntTriple.charAt(j);
-        }
-
-        return ntTriple.substring(i, j + 1);
-    }
-
     /**
      * Parse an RDF triple in N-Triples format.
      *
@@ -210,51 +208,9 @@ public abstract class NTriplesUtil {
     public static Triple parseTriple(final String ntTriple)
             throws ParseException {
 
-        StringReader reader = new StringReader(ntTriple);
-
-        try {
-            int i = 0;
-
-            // subject
-            String sString = consumeURIReference(reader, i);
-            SubjectNode subject = parseSubject(sString);
-            i += sString.length();
-
-            // whitespace+
-            i += consumeWhitespace(reader, i);
-
-            // predicate
-            String pString = consumeURIReference(reader, i);
-            PredicateNode predicate;
-            try {
-                predicate = parsePredicate(pString);
-            } catch (ParseException e) {
-                throw new ParseException(e.getMessage(),
-                        e.getErrorOffset() + i);
-            }
-            i += pString.length();
-
-            // whitespace+
-            i += consumeWhitespace(reader, i);
-
-            // object
-            String oString = getObjectString(ntTriple, i);
-            ObjectNode object;
-            try {
-                object = parseObject(oString);
-            } catch (ParseException e) {
-                throw new ParseException(e.getMessage(),
-                        e.getErrorOffset() + i);
-            }
-
-            // triple
-            return new Triple(subject, predicate, object);
-
-        } catch (IOException e) {
-            // should not happen -- we're using a StringReader
-            throw new RuntimeException("Unexpected IO error", e);
-        }
-
+        NTriplesParser parser = PARSER.get();
+        parser.setNodeCache(_nodeCache);
+        return parser.parseTriple(ntTriple);
     }
 
     /**
@@ -312,252 +268,102 @@ public abstract class NTriplesUtil {
     public static Node parseNode(final String ntNode)
             throws ParseException {
 
-        char first = ntNode.charAt(0);
-
-        if (first == '"') {
-            return parseLiteral(ntNode);
-        } else if (first == '<') {
-            return parseURIReference(ntNode);
-        } else {
-            throw new ParseException(EXPECTED_QL, 0);
-        }
+        return parseNode(ntNode, PARSER.get(), false);
     }
 
     /**
-     * Advance the reader until a double quote character is encountered
-     * and return the characters seen.
+     * Parse an RDF node in N-Triples format, assuming that any URI it
+     * contains is valid.
      *
-     * @param reader the reader.
-     * @param pos the current position in the overall string.
-     * @throws IOException if there is an error reading.
-     * @throws ParseException if EOF is encountered before the terminal
-     *         character or an unescaped linefeed, carriage return,
-     *         or tab character is encountered.
+     * This is intended for nodes that were validated before being
+     * stored, such as those read back from the database.  URI
+     * references are created without constructing a
+     * <code>java.net.URI</code>, but all other syntax is still checked.
+     *
+     * @param ntNode the input string.
+     * @return the parsed node.
+     * @throws ParseException if the input syntax is incorrect
+     * @see URIReference#createTrusted(String)
      */
-    private static String consumeLiteralValue(final Reader reader,
-                                              final int pos)
-            throws IOException, ParseException {
-
-        StringBuffer escaped = new StringBuffer();
-        int i = 0;
-        int c = reader.read();
-
-        while (c != '"') {
-
-            if (c == -1) {
-                throw new ParseException(EXPECTED_Q, pos + i);
-            }
-            escaped.append((char) c);
-
-            if (c == '\\') {
-                c = reader.read();
-                i++;
-                if (c == -1) {
-                    throw new ParseException(EXPECTED_Q, pos + i);
-                }
-                escaped.append((char) c);
-            } else if (c == '\r') {
-                throw new ParseException(UNESCAPED_LF, pos + i);
-            } else if (c == '\n') {
-                throw new ParseException(UNESCAPED_CR, pos + i);
-            } else if (c == '\t') {
-                throw new ParseException(UNESCAPED_TAB, pos + i);
-            }
-
-            c = reader.read();
-            i++;
-        }
+    public static Node parseTrustedNode(final String ntNode)
+            throws ParseException {
 
-        return escaped.toString();
+        return parseNode(ntNode, TRUSTED_PARSER.get(), true);
     }
 
     /**
-     * Parse an RDF literal in N-Triples format.
+     * Parse an RDF node in N-Triples format with the given parser,
+     * using the node cache if there is one.
      *
-     * @param s the input string.
-     * @return the parsed literal.
+     * Since the cache is shared by trusted and validating parses, nodes
+     * are always validated before being added to it, once per distinct
+     * node.  Trusted input that turns out to be invalid is parsed as
+     * trusted, and not cached.
+     *
+     * @param ntNode the input string.
+     * @param parser the parser.
+     * @param trusted whether the parser trusts its input.
+     * @return the parsed or cached node.
      * @throws ParseException if the input syntax is incorrect
      */
-    public static Literal parseLiteral(final String s)
+    private static Node parseNode(final String ntNode,
+                                  final NTriplesParser parser,
+                                  final boolean trusted)
             throws ParseException {
 
-        StringReader reader = new StringReader(s);
-
-        try {
-
-            int first = reader.read();
-
-            if (first != '"') {
-                throw new ParseException(EXPECTED_Q, 0);
-            }
-
-            int i = 1;
-
-            String escaped = consumeLiteralValue(reader, i);
-            String value;
+        NodeCache cache = _nodeCache;
+        if (cache == null) {
+            return parser.parseNode(ntNode);
+        }
+        Node node = cache.get(ntNode);
+        if (node == null) {
             try {
-                value = unescapeLiteralValue(escaped);
+                node = PARSER.get().parseNode(ntNode);
             } catch (ParseException e) {
-                throw new ParseException(e.getMessage(),
-                                         e.getErrorOffset() + i);
-            }
-            i += escaped.length();
-
-            // c == '"', read next char
-            int c = reader.read();
-            i++;
-
-            if (c == '@') {
-                try {
-                    return new Literal(value, s.substring(i + 1));
-                } catch (ParseException e) {
-                    throw new ParseException(e.getMessage(),
-                                             e.getErrorOffset() + i + 1);
+                if (!trusted) {
+                    throw e;
                 }
-            } else if (c == '^') {
-                c = reader.read(); i++;
-                if (c != '^') {
-                    throw new ParseException(EXPECTED_C, i);
-                }
-                try {
-                    URIReference datatype = parseURIReference(
-                            s.substring(i + 1));
-                    return new Literal(value, datatype);
-                } catch (ParseException e) {
-                    throw new ParseException(e.getMessage(),
-                                             e.getErrorOffset() + i);
-                }
-            } else if (c == -1) {
-                return new Literal(value);
-            } else {
-                throw new ParseException(EXPECTED_ACE, i);
+                return parser.parseNode(ntNode);
             }
-
-        } catch (IOException e) {
-            // should not happen -- we're using a StringReader
-            throw new RuntimeException("Unexpected IO error", e);
+            cache.put(ntNode, node);
         }
+        return node;
     }
 
     /**
-     * Parse an RDF URI reference in N-Triples format.
+     * Parse an RDF literal in N-Triples format.
      *
      * @param s the input string.
-     * @return the parsed URI reference.
+     * @return the parsed literal.
      * @throws ParseException if the input syntax is incorrect
      */
-    public static URIReference parseURIReference(final String s)
+    public static Literal parseLiteral(final String s)
             throws ParseException {
 
-        char first = s.charAt(0);
-
-        if (first != '<') {
-            throw new ParseException(EXPECTED_L, 0);
-        }
-
-        char last = s.charAt(s.length() - 1);
-        if (last != '>') {
-            throw new ParseException(EXPECTED_G, s.length() - 1);
-        }
-
-        try {
-            return new URIReference(s.substring(1, s.length() - 1));
-        } catch (URISyntaxException e) {
-            throw new ParseException(EXPECTED_ABS_URI, 1);
-        }
-    }
-
-    /**
-     * Verify all characters of the given string are 7-bit ASCII.
-     *
-     * @param s the string.
-     * @throws ParseException if a non-ASCII character exists in the string.
-     */
-    private static void verifyAscii(final String s) throws ParseException {
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c > HIGHEST_ASCII_CHAR) {
-                throw new ParseException(NON_ASCII_CHAR, i);
-            }
-        }
+        return PARSER.get().parseLiteral(s);
     }
 
     /**
-     * Return the next unescaped value from the escaped string.
+     * Parse an RDF URI reference in N-Triples format.
      *
-     * @param s the whole string.
-     * @param backslashPos the position of the current escape character.
-     * @param i the current position in the string.
-     * @param c the current character.
-     * @param buf the buffer to append to.
-     * @throws ParseException if an incomplete or illegal escape sequence
-     *         is encountered.
+     * @param s the input string.
+     * @return the parsed URI reference.
+     * @throws ParseException if the input syntax is incorrect
      */
-    private static int appendUnescaped(final String s,
-                                       final int backslashPos,
-                                       final int i,
-                                       final char c,
-                                       final StringBuffer buf)
+    public static URIReference parseURIReference(final String s)
             throws ParseException {
 
-
-        if (c == 'u') {
-            if (backslashPos + SHORT_ESCAPE_LENGTH >= s.length()) {
-                throw new ParseException(INCOMPLETE_ESCAPE, i);
-            }
-            String xx = s.substring(backslashPos + 2,
-                    backslashPos + SHORT_ESCAPE_LENGTH + 1);
-            try {
-                int nextChar = (char) Integer.parseInt(xx, HEX);
-                buf.append((char) nextChar);
-                return backslashPos + SHORT_ESCAPE_LENGTH + 1;
-            } catch (NumberFormatException e) {
-                throw new ParseException(ILLEGAL_ESCAPE, i);
-            }
-        } else if (c == 'U') {
-            if (backslashPos + LONG_ESCAPE_LENGTH - 1 >= s.length()) {
-                throw new ParseException(INCOMPLETE_ESCAPE, i);
-            }
-            String xx = s.substring(backslashPos + 2,
-                    backslashPos + LONG_ESCAPE_LENGTH);
-            try {
-                int nextChar = (char) Integer.parseInt(xx, HEX);
-                buf.append((char) nextChar);
-                return backslashPos + LONG_ESCAPE_LENGTH;
-            } catch (NumberFormatException e) {
-                throw new ParseException(ILLEGAL_ESCAPE, i);
-            }
-        } else {
-            buf.append(getUnescaped(c, i));
-            return backslashPos + 2;
+        NodeCache cache = _nodeCache;
+        if (cache == null) {
+            return PARSER.get().parseURIReference(s);
         }
-
-    }
-
-    /**
-     * Get the unescaped value for the given character.
-     *
-     * The character was encountered in the string after an escape
-     * character.
-     *
-     * @param c the character.
-     * @param i the current position in the overall string.
-     * @throws ParseException if the given character does not
-     *         represent a single character found in an escape sequence.
-     */
-    private static char getUnescaped(final char c,
-                                     final int i) throws ParseException {
-        if (c == 't') {
-            return '\t';
-        } else if (c == 'r') {
-            return '\r';
-        } else if (c == 'n') {
-            return '\n';
-        } else if (c == '"' || c == '\\') {
-            return c;
-        } else {
-            throw new ParseException(UNESCAPED_BACKSLASH, i);
+        Node node = cache.get(s);
+        if (node instanceof URIReference) {
+            return (URIReference) node;
         }
+        URIReference uriRef = PARSER.get().parseURIReference(s);
+        cache.put(s, uriRef);
+        return uriRef;
     }
 
     /**
@@ -580,35 +386,7 @@ public abstract class NTriplesUtil {
     public static String unescapeLiteralValue(final String s)
             throws ParseException {
 
-        verifyAscii(s);
-
-        int backslashPos = s.indexOf('\\');
-
-        // return early if no escape
-        if (backslashPos == -1) {
-            return s;
-        }
-
-        int i = 0;
-        StringBuffer buf = new StringBuffer(s.length());
-
-        // unescape all
-        while (backslashPos != -1) {
-
-            buf.append(s.substring(i, backslashPos));
-
-            if (backslashPos + 1 >= s.length()) {
-                throw new ParseException(UNESCAPED_BACKSLASH, i);
-            }
-
-            char c = s.charAt(backslashPos + 1);
-            i = appendUnescaped(s, backslashPos, i, c, buf);
-
-            backslashPos = s.indexOf('\\', i);
-        }
-        buf.append(s.substring(i));
-
-        return buf.toString();
+        return PARSER.get().unescapeLiteralValue(s);
     }
 
     /**
@@ -637,7 +415,17 @@ public abstract class NTriplesUtil {
     public static String escapeLiteralValue(final String s) {
 
         int len = s.length();
-        StringBuffer out = new StringBuffer(len * 2);
+
+        // return early if nothing needs escaping
+        int extra = 0;
+        for (int i = 0; i < len; i++) {
+            extra += extraEscapedLength(s.charAt(i));
+        }
+        if (extra == 0) {
+            return s;
+        }
+
+        StringBuilder out = new StringBuilder(len + extra);
 
         for (int i = 0; i < len; i++) {
             char c = s.charAt(i);
@@ -654,10 +442,10 @@ public abstract class NTriplesUtil {
                 out.append("\\t");
             } else if (isLowUnicode(cNum)) {
                 out.append("\\u");
-                out.append(hexString(cNum, SHORT_ESCAPE_LENGTH - 1));
+                appendHex(out, cNum, SHORT_ESCAPE_LENGTH - 1);
             } else if (isHighUnicode(cNum)) {
                 out.append("\\U");
-                out.append(hexString(cNum, LONG_ESCAPE_LENGTH - 2));
+                appendHex(out, cNum, LONG_ESCAPE_LENGTH - 2);
             } else {
                 out.append(c);
             }
@@ -666,6 +454,28 @@ public abstract class NTriplesUtil {
         return out.toString();
     }
 
+    /**
+     * Get the number of characters that escaping the given character
+     * adds.
+     *
+     * @param c the character.
+     * @return the number of characters added, or 0 if the character is
+     *         represented as-is.
+     */
+    private static int extraEscapedLength(final char c) {
+        if (c >= ' ' && c < UC_LOW4) {
+            return (c == '\\' || c == '"') ? 1 : 0;
+        } else if (c == '\n' || c == '\r' || c == '\t') {
+            return 1;
+        } else if (isLowUnicode(c)) {
+            return SHORT_ESCAPE_LENGTH;
+        } else if (isHighUnicode(c)) {
+            return LONG_ESCAPE_LENGTH - 1;
+        } else {
+            return 0;
+        }
+    }
+
     /**
      * Validate the given language tag according to RFC3066.
      *
@@ -759,22 +569,19 @@ public abstract class NTriplesUtil {
     }
 
     /**
-     * Get an uppercase hex string of the specified length,
+     * Append an uppercase hex string of the specified length,
      * representing the given number.
      *
+     * @param out The buffer to append to.
      * @param num The number to represent.
      * @param len The desired length of the output.
-     * @return The uppercase hex string.
      */
-    private static String hexString(final int num, final int len) {
-        StringBuffer out = new StringBuffer(len);
-        String hex = Integer.toHexString(num).toUpperCase();
-        int n = len - hex.length();
-        for (int i = 0; i < n; i++) {
-            out.append('0');
+    private static void appendHex(final StringBuilder out,
+                                  final int num,
+                                  final int len) {
+        for (int i = len - 1; i >= 0; i--) {
+            out.append(HEX_DIGITS[(num >> (i * HEX_DIGIT_BITS)) & HEX_MASK]);
         }
-        out.append(hex);
-        return out.toString();
     }
 
 }
@@ -0,0 +1,301 @@
+package org.nsdl.mptstore.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.Iterator;
+
+import org.nsdl.mptstore.rdf.Literal;
+import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.Triple;
+import org.nsdl.mptstore.rdf.URIReference;
+
+/**
+ * Writes triples as an N-Triples document.
+ *
+ * <p>
+ *   Each triple is encoded directly into a large direct buffer, which is
+ *   written to a channel whenever it fills, so no <code>String</code> is
+ *   created for each triple or node.  The output is the same as that of
+ *   <code>Triple.toString()</code>, one triple per line, with each line
+ *   ending in a linefeed.  It is 7-bit ASCII, except for any non-ASCII
+ *   characters in URIs, which are encoded as UTF-8.
+ * </p>
+ * <p>
+ *   Nodes that are neither <code>URIReference</code>s nor
+ *   <code>Literal</code>s, such as {@link org.nsdl.mptstore.rdf.LazyNode}s,
+ *   are written in the form given by their <code>toString()</code>
+ *   method.
+ * </p>
+ *
+ * @see NTriplesReader
+ */
+public class NTriplesWriter {
+
+    /**
+     * The default size of the buffer triples are encoded into, in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final int HIGHEST_ASCII_CHAR = 127;
+    private static final int HEX = 16;
+    private static final int HEX_DIGIT_BITS = 4;
+    private static final int SHORT_ESCAPE_DIGITS = 4;
+
+    /**
+     * The lowest character written as-is in literal values.
+     */
+    private static final int FIRST_PRINTABLE_CHAR = 0x20;
+
+    /**
+     * The channel to write to.
+     */
+    private final WritableByteChannel _channel;
+
+    /**
+     * The bytes encoded but not yet written.
+     */
+    private final ByteBuffer _bytes;
+
+    /**
+     * Instantiate a writer for the given channel.
+     *
+     * @param channel the channel to write to.
+     */
+    public NTriplesWriter(final WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Instantiate a writer for the given channel, with the given buffer
+     * size.
+     *
+     * @param channel the channel to write to.
+     * @param bufferSize the size of the buffer triples are encoded into.
+     */
+    public NTriplesWriter(final WritableByteChannel channel,
+                          final int bufferSize) {
+        _channel = channel;
+        _bytes = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Instantiate a writer for the given stream.
+     *
+     * @param out the stream to write to.
+     */
+    public NTriplesWriter(final OutputStream out) {
+        this(Channels.newChannel(out));
+    }
+
+    /**
+     * Instantiate a writer for the given file, replacing any content it
+     * has.
+     *
+     * @param file the file to write to.
+     * @throws IOException if the file cannot be opened.
+     */
+    public NTriplesWriter(final File file) throws IOException {
+        this(new FileOutputStream(file).getChannel());
+    }
+
+    /**
+     * Write a triple.
+     *
+     * @param triple the triple.
+     * @throws IOException if there is an error writing.
+     */
+    public void write(final Triple triple) throws IOException {
+        writeNode(triple.getSubject());
+        put(' ');
+        writeNode(triple.getPredicate());
+        put(' ');
+        writeNode(triple.getObject());
+        put(' ');
+        put('.');
+        put('\n');
+    }
+
+    /**
+     * Write all of the given triples.
+     *
+     * @param triples the triples.
+     * @return the number of triples written.
+     * @throws IOException if there is an error writing.
+     */
+    public long write(final Iterator<Triple> triples) throws IOException {
+        long count = 0;
+        while (triples.hasNext()) {
+            write(triples.next());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write any buffered bytes to the channel.
+     *
+     * @throws IOException if there is an error writing.
+     */
+    public void flush() throws IOException {
+        _bytes.flip();
+        while (_bytes.hasRemaining()) {
+            _channel.write(_bytes);
+        }
+        _bytes.clear();
+    }
+
+    /**
+     * Write any buffered bytes and close the channel.
+     *
+     * @throws IOException if there is an error writing or closing.
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /**
+     * Write a node in N-Triples format.
+     *
+     * @param node the node.
+     * @throws IOException if there is an error writing.
+     */
+    private void writeNode(final Node node) throws IOException {
+        if (node instanceof URIReference) {
+            writeURIReference((URIReference) node);
+        } else if (node instanceof Literal) {
+            Literal literal = (Literal) node;
+            put('"');
+            putEscaped(literal.getValue());
+            put('"');
+            if (literal.getLanguage() != null) {
+                put('@');
+                putString(literal.getLanguage());
+            } else if (literal.getDatatype() != null) {
+                put('^');
+                put('^');
+                writeURIReference(literal.getDatatype());
+            }
+        } else {
+            putString(node.toString());
+        }
+    }
+
+    /**
+     * Write a URI reference in N-Triples format.
+     *
+     * @param uriRef the URI reference.
+     * @throws IOException if there is an error writing.
+     */
+    private void writeURIReference(final URIReference uriRef)
+            throws IOException {
+        put('<');
+        putString(uriRef.getValue());
+        put('>');
+    }
+
+    /**
+     * Write a string without escaping it.
+     *
+     * @param s the string.
+     * @throws IOException if there is an error writing.
+     */
+    private void putString(final String s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c > HIGHEST_ASCII_CHAR) {
+                putUTF8(s.substring(i));
+                return;
+            }
+            put(c);
+        }
+    }
+
+    /**
+     * Write a string encoded as UTF-8.
+     *
+     * @param s the string.
+     * @throws IOException if there is an error writing.
+     */
+    private void putUTF8(final String s) throws IOException {
+        byte[] encoded;
+        try {
+            encoded = s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported", e);
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            if (!_bytes.hasRemaining()) {
+                flush();
+            }
+            _bytes.put(encoded[i]);
+        }
+    }
+
+    /**
+     * Write a literal value, escaped as by
+     * {@link NTriplesUtil#escapeLiteralValue(String)}.
+     *
+     * @param s the value.
+     * @throws IOException if there is an error writing.
+     */
+    private void putEscaped(final String s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                put('\\');
+                put('\\');
+            } else if (c == '"') {
+                put('\\');
+                put('"');
+            } else if (c == '\n') {
+                put('\\');
+                put('n');
+            } else if (c == '\r') {
+                put('\\');
+                put('r');
+            } else if (c == '\t') {
+                put('\\');
+                put('t');
+            } else if (c < FIRST_PRINTABLE_CHAR
+                    || c >= HIGHEST_ASCII_CHAR) {
+                put('\\');
+                put('u');
+                for (int j = SHORT_ESCAPE_DIGITS - 1; j >= 0; j--) {
+                    int digit = (c >> (j * HEX_DIGIT_BITS)) & (HEX - 1);
+                    put(Character.toUpperCase(
+                            Character.forDigit(digit, HEX)));
+                }
+            } else {
+                put(c);
+            }
+        }
+    }
+
+    /**
+     * Write an ASCII character.
+     *
+     * @param c the character.
+     * @throws IOException if there is an error writing.
+     */
+    private void put(final char c) throws IOException {
+        if (!_bytes.hasRemaining()) {
+            flush();
+        }
+        _bytes.put((byte) c);
+    }
+
+}
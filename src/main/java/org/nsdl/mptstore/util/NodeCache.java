@@ -0,0 +1,226 @@
+package org.nsdl.mptstore.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nsdl.mptstore.rdf.Node;
+
+/**
+ * A bounded cache of parsed nodes, keyed by their N-Triples form.
+ *
+ * <p>
+ *   A small number of nodes, such as predicates and the values of
+ *   <code>rdf:type</code>, occur over and over in imported triples and
+ *   query results.  When a cache is given to
+ *   {@link NTriplesUtil#setNodeCache(NodeCache)}, each such node is only
+ *   parsed once, and every occurrence shares the same instance.
+ * </p>
+ * <p>
+ *   The cache is safe for concurrent use.  It is divided into a number of
+ *   stripes by the hash of the key, each holding an equal share of the
+ *   capacity, and each evicting its least recently used node when full.
+ *   The number of lookups that found a node or not is counted, so the
+ *   effectiveness of the cache can be monitored.
+ * </p>
+ */
+public class NodeCache {
+
+    /**
+     * The default maximum number of nodes to keep.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * The number of stripes, a power of two.
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * The initial capacity of each stripe's map.
+     */
+    private static final int INITIAL_STRIPE_SIZE = 16;
+
+    /**
+     * The load factor of each stripe's map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * How far the high bits of a key's hash are shifted down to spread
+     * keys across the stripes.
+     */
+    private static final int HASH_SPREAD_BITS = 16;
+
+    /**
+     * The stripes.
+     */
+    private final Stripe[] _stripes;
+
+    /**
+     * The number of lookups that found a node.
+     */
+    private final AtomicLong _hits = new AtomicLong();
+
+    /**
+     * The number of lookups that found no node.
+     */
+    private final AtomicLong _misses = new AtomicLong();
+
+    /**
+     * Instantiate a cache that keeps up to
+     * <code>DEFAULT_CAPACITY</code> nodes.
+     */
+    public NodeCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Instantiate a cache that keeps up to the given number of nodes.
+     *
+     * @param capacity the maximum number of nodes to keep.
+     */
+    public NodeCache(final int capacity) {
+        int stripeCapacity = Math.max((capacity + STRIPES - 1) / STRIPES, 1);
+        _stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            _stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * Get the node with the given N-Triples form, if cached.
+     *
+     * @param ntNode the N-Triples form.
+     * @return the node, or <code>null</code> if not cached.
+     */
+    public Node get(final String ntNode) {
+        Stripe stripe = stripeFor(ntNode);
+        Node node;
+        synchronized (stripe) {
+            node = stripe.get(ntNode);
+        }
+        if (node == null) {
+            _misses.incrementAndGet();
+        } else {
+            _hits.incrementAndGet();
+        }
+        return node;
+    }
+
+    /**
+     * Cache a node under its N-Triples form.
+     *
+     * @param ntNode the N-Triples form.
+     * @param node the node.
+     */
+    public void put(final String ntNode, final Node node) {
+        Stripe stripe = stripeFor(ntNode);
+        synchronized (stripe) {
+            stripe.put(ntNode, node);
+        }
+    }
+
+    /**
+     * Get the number of nodes currently cached.
+     *
+     * @return the number of nodes.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (_stripes[i]) {
+                size += _stripes[i].size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Remove all cached nodes and reset the lookup counts.
+     */
+    public void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (_stripes[i]) {
+                _stripes[i].clear();
+            }
+        }
+        _hits.set(0);
+        _misses.set(0);
+    }
+
+    /**
+     * Get the number of lookups that found a node.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * Get the number of lookups that found no node.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * Get the fraction of lookups that found a node.
+     *
+     * @return the hit rate, from 0 to 1, or 0 if there have been no
+     *         lookups.
+     */
+    public double getHitRate() {
+        long hits = _hits.get();
+        long lookups = hits + _misses.get();
+        if (lookups == 0) {
+            return 0;
+        }
+        return (double) hits / lookups;
+    }
+
+    /**
+     * Get the stripe holding the given key.
+     *
+     * @param ntNode the key.
+     * @return the stripe.
+     */
+    private Stripe stripeFor(final String ntNode) {
+        int h = ntNode.hashCode();
+        h ^= h >>> HASH_SPREAD_BITS;
+        return _stripes[h & (STRIPES - 1)];
+    }
+
+    /**
+     * A map that evicts its least recently used entry when full.
+     */
+    private static class Stripe extends LinkedHashMap<String, Node> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The maximum number of entries.
+         */
+        private final int _capacity;
+
+        /**
+         * Instantiate a stripe.
+         *
+         * @param capacity the maximum number of entries.
+         */
+        Stripe(final int capacity) {
+            super(INITIAL_STRIPE_SIZE, LOAD_FACTOR, true);
+            _capacity = capacity;
+        }
+
+        /** {@inheritDoc} */
+        protected boolean removeEldestEntry(
+                final Map.Entry<String, Node> eldest) {
+            return size() > _capacity;
+        }
+    }
+
+}
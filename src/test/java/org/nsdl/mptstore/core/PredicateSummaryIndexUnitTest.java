@@ -0,0 +1,78 @@
+package org.nsdl.mptstore.core;
+
+import java.sql.Connection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.query.FakeDataSource;
+import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class PredicateSummaryIndexUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        PredicateNode p = new URIReference("urn:p");
+        PredicateSummaryIndex index = new PredicateSummaryIndex(1024);
+        assertTrue(index.mayContain(p, "<urn:x>", null));
+
+        index.rebuild(getConnection(), getTables(p));
+        assertTrue(index.isComplete());
+        assertTrue(index.mayContain(p, "<urn:a>", "<urn:b>"));
+        assertFalse(index.mayContain(p, "<urn:b>", null));
+        assertFalse(index.mayContain(new URIReference("urn:q"), null,
+                null));
+    }
+
+    @Test
+    public void testRebuildKeepsUncommittedAdds() throws Exception {
+        PredicateNode p = new URIReference("urn:p");
+        PredicateSummaryIndex index = new PredicateSummaryIndex(1024);
+        index.markComplete();
+
+        // added by a writer whose transaction commits after the rebuild
+        index.add("<urn:new>", p, "<urn:b>");
+        index.rebuild(getConnection(), getTables(p));
+
+        assertTrue(index.mayContain(p, "<urn:new>", null));
+        assertTrue(index.mayContain(p, "<urn:a>", null));
+    }
+
+    @Test
+    public void testClearAndRebuildTightens() throws Exception {
+        PredicateNode p = new URIReference("urn:p");
+        PredicateSummaryIndex index = new PredicateSummaryIndex(1024);
+        index.markComplete();
+        index.add("<urn:deleted>", p, "<urn:b>");
+
+        index.clear();
+        index.rebuild(getConnection(), getTables(p));
+        assertFalse(index.mayContain(p, "<urn:deleted>", null));
+    }
+
+    private static Connection getConnection() {
+        FakeDataSource db = new FakeDataSource();
+        db.add("SELECT DISTINCT s FROM t1", "<urn:a>");
+        db.add("SELECT DISTINCT o FROM t1", "<urn:b>");
+        return db.getConnection();
+    }
+
+    private static Map<String, PredicateNode> getTables(PredicateNode p) {
+        Map<String, PredicateNode> tables =
+                new HashMap<String, PredicateNode>();
+        tables.put("t1", p);
+        return tables;
+    }
+}
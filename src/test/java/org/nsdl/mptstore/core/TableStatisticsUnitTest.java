@@ -0,0 +1,54 @@
+package org.nsdl.mptstore.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+import org.nsdl.mptstore.TestConfig;
+
+public class TableStatisticsUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testConstrainedDistinctCounts() {
+        TableStatistics stats = new TableStatistics(10, 20, 0);
+        assertEquals(10, stats.getRowCount());
+        assertEquals(10, stats.getDistinctSubjects());
+        assertEquals(1, stats.getDistinctObjects());
+
+        stats = new TableStatistics(-5, 3, 3);
+        assertEquals(0, stats.getRowCount());
+        assertEquals(0, stats.getDistinctSubjects());
+        assertEquals(0, stats.getDistinctObjects());
+    }
+
+    @Test
+    public void testFanOut() {
+        TableStatistics stats = new TableStatistics(100, 50, 4);
+        assertEquals(2.0, stats.getSubjectFanOut(), 0.0);
+        assertEquals(25.0, stats.getObjectFanOut(), 0.0);
+        assertEquals(0.0, TableStatistics.EMPTY.getSubjectFanOut(), 0.0);
+    }
+
+    @Test
+    public void testAdjust() {
+        TableStatistics stats = TableStatistics.EMPTY.adjust(5);
+        assertEquals(5, stats.getRowCount());
+        assertEquals(5, stats.getDistinctSubjects());
+        assertEquals(5, stats.getDistinctObjects());
+
+        stats = new TableStatistics(100, 50, 4).adjust(100);
+        assertEquals(200, stats.getRowCount());
+        assertEquals(100, stats.getDistinctSubjects());
+        assertEquals(8, stats.getDistinctObjects());
+
+        stats = stats.adjust(-500);
+        assertEquals(0, stats.getRowCount());
+        assertEquals(0, stats.getDistinctSubjects());
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.nsdl.mptstore.query;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * A DataSource whose connections answer queries from canned rows.
+ *
+ * Only the JDBC methods used by the query results classes are
+ * implemented; others return null, zero or false.
+ */
+public class FakeDataSource implements InvocationHandler {
+
+    private final Map<String, List<String[]>> _rows =
+            new HashMap<String, List<String[]>>();
+
+    private final Map<String, Long> _delays =
+            Collections.synchronizedMap(new HashMap<String, Long>());
+
+    private final List<String> _executed =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    private int _openConnections;
+
+    public void add(String sql, String... row) {
+        List<String[]> rows = _rows.get(sql);
+        if (rows == null) {
+            rows = new ArrayList<String[]>();
+            _rows.put(sql, rows);
+        }
+        if (row.length > 0) {
+            rows.add(row);
+        }
+    }
+
+    public void setDelay(String sql, long millis) {
+        _delays.put(sql, Long.valueOf(millis));
+    }
+
+    public DataSource getDataSource() {
+        return (DataSource) proxy(DataSource.class, this);
+    }
+
+    public Connection getConnection() {
+        synchronized (this) {
+            _openConnections++;
+        }
+        return (Connection) proxy(Connection.class, new ConnectionHandler());
+    }
+
+    public synchronized int getOpenConnections() {
+        return _openConnections;
+    }
+
+    public List<String> getExecuted() {
+        return _executed;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("getConnection")) {
+            return getConnection();
+        }
+        return defaultValue(method);
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(FakeDataSource.class.getClassLoader(),
+                new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        } else if (type == Integer.TYPE) {
+            return new Integer(0);
+        } else if (type == Long.TYPE) {
+            return new Long(0);
+        } else {
+            return null;
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private boolean _closed;
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("createStatement")) {
+                return proxy(Statement.class, new StatementHandler(null));
+            } else if (name.equals("prepareStatement")) {
+                return proxy(java.sql.PreparedStatement.class,
+                        new StatementHandler((String) args[0]));
+            } else if (name.equals("getAutoCommit")) {
+                return Boolean.TRUE;
+            } else if (name.equals("isClosed")) {
+                return Boolean.valueOf(_closed);
+            } else if (name.equals("close")) {
+                if (!_closed) {
+                    _closed = true;
+                    synchronized (FakeDataSource.this) {
+                        _openConnections--;
+                    }
+                }
+                return null;
+            }
+            return defaultValue(method);
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final String _sql;
+
+        StatementHandler(String sql) {
+            _sql = sql;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("executeQuery")) {
+                String sql = _sql;
+                if (args != null && args.length > 0) {
+                    sql = (String) args[0];
+                }
+                _executed.add(sql);
+                Long delay = _delays.get(sql);
+                if (delay != null) {
+                    try {
+                        Thread.sleep(delay.longValue());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                List<String[]> rows = _rows.get(sql);
+                if (rows == null) {
+                    throw new RuntimeException("Unexpected SQL: " + sql);
+                }
+                return proxy(ResultSet.class, new ResultSetHandler(rows));
+            }
+            return defaultValue(method);
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+
+        private final List<String[]> _rows;
+
+        private int _row = -1;
+
+        ResultSetHandler(List<String[]> rows) {
+            _rows = rows;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("next")) {
+                _row++;
+                return Boolean.valueOf(_row < _rows.size());
+            } else if (name.equals("getString")) {
+                int column = ((Integer) args[0]).intValue();
+                return _rows.get(_row)[column - 1];
+            }
+            return defaultValue(method);
+        }
+    }
+}
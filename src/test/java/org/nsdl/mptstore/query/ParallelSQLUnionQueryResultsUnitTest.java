@@ -0,0 +1,159 @@
+package org.nsdl.mptstore.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.query.provider.SQLProvider;
+import org.nsdl.mptstore.rdf.Node;
+
+public class ParallelSQLUnionQueryResultsUnitTest {
+
+    private FakeDataSource _db;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Before
+    public void setUp() {
+        _db = new FakeDataSource();
+        _db.add("q1", "<urn:a>");
+        _db.add("q1", "<urn:b>");
+        _db.add("q2");
+        _db.add("q3", "<urn:c>");
+        _db.add("q3", "<urn:d>");
+        _db.add("q3", "<urn:e>");
+    }
+
+    @Test
+    public void testPreserveOrder() throws Exception {
+        QueryResults results = new ParallelSQLUnionQueryResults(
+                _db.getDataSource(), provider("q1", "q2", "q3"),
+                0, 3, 1, true, null);
+        assertEquals("[<urn:a>, <urn:b>, <urn:c>, <urn:d>, <urn:e>]",
+                read(results).toString());
+        waitForConnections();
+    }
+
+    @Test
+    public void testAnyOrder() throws Exception {
+        QueryResults results = new ParallelSQLUnionQueryResults(
+                _db.getDataSource(), provider("q3", "q2", "q1"),
+                0, 2, 1, false, null);
+        List<String> values = read(results);
+        Collections.sort(values);
+        assertEquals("[<urn:a>, <urn:b>, <urn:c>, <urn:d>, <urn:e>]",
+                values.toString());
+        waitForConnections();
+    }
+
+    @Test
+    public void testNoQueries() throws Exception {
+        QueryResults results = new ParallelSQLUnionQueryResults(
+                _db.getDataSource(), provider(), 0, 2, 1, true, null);
+        assertFalse(results.hasNext());
+    }
+
+    @Test
+    public void testCloseEarly() throws Exception {
+        QueryResults results = new ParallelSQLUnionQueryResults(
+                _db.getDataSource(), provider("q3", "q1"),
+                0, 2, 1, true, null);
+        assertTrue(results.hasNext());
+        results.next();
+        results.close();
+        waitForConnections();
+    }
+
+    @Test
+    public void testWorkerError() throws Exception {
+        try {
+            QueryResults results = new ParallelSQLUnionQueryResults(
+                    _db.getDataSource(), provider("q1", "bad"),
+                    0, 2, 1, true, null);
+            read(results);
+            fail("Expected an error from the bad query");
+        } catch (QueryException e) {
+            // expected; the first row may be read before the error is seen
+        } catch (RuntimeQueryException e) {
+            // expected
+        }
+        waitForConnections();
+    }
+
+    @Test
+    public void testAbandoned() throws Exception {
+        QueryResults results = new ParallelSQLUnionQueryResults(
+                _db.getDataSource(), provider("q3", "q1"),
+                0, 2, 1, true, null, 200);
+        assertTrue(results.hasNext());
+        assertTrue(_db.getOpenConnections() > 0);
+        // never read or closed; workers give up and release connections
+        Thread.sleep(400);
+        waitForConnections();
+        try {
+            read(results);
+            fail("Expected abandoned results to fail");
+        } catch (RuntimeQueryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSlowFirstQuery() throws Exception {
+        _db.setDelay("q1", 500);
+        QueryResults results = new ParallelSQLUnionQueryResults(
+                _db.getDataSource(), provider("q1", "q3"),
+                0, 2, 1, true, null, 200);
+        // q3 fills its queue while the reader waits for q1
+        assertEquals("[<urn:a>, <urn:b>, <urn:c>, <urn:d>, <urn:e>]",
+                read(results).toString());
+        waitForConnections();
+    }
+
+    private void waitForConnections() throws InterruptedException {
+        for (int i = 0; i < 50 && _db.getOpenConnections() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, _db.getOpenConnections());
+    }
+
+    private static List<String> read(QueryResults results) {
+        List<String> values = new ArrayList<String>();
+        try {
+            while (results.hasNext()) {
+                List<Node> row = results.next();
+                values.add(row.get(0).toString());
+            }
+        } finally {
+            results.close();
+        }
+        return values;
+    }
+
+    private static SQLProvider provider(final String... sql) {
+        return new SQLProvider() {
+            public List<String> getTargets() {
+                List<String> targets = new ArrayList<String>();
+                targets.add("x");
+                return targets;
+            }
+            public List<String> getSQL() {
+                List<String> list = new ArrayList<String>();
+                Collections.addAll(list, sql);
+                return list;
+            }
+        };
+    }
+}
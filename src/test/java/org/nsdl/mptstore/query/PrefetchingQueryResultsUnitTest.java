@@ -0,0 +1,160 @@
+package org.nsdl.mptstore.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class PrefetchingQueryResultsUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        ListQueryResults source = new ListQueryResults(5, false);
+        QueryResults results = new PrefetchingQueryResults(source, 2, null);
+        int count = 0;
+        while (results.hasNext()) {
+            assertEquals("<urn:" + count + ">",
+                    results.next().get(0).toString());
+            count++;
+        }
+        assertEquals(5, count);
+        results.close();
+        waitForClose(source);
+    }
+
+    @Test
+    public void testErrorAfterRows() throws Exception {
+        ListQueryResults source = new ListQueryResults(3, true);
+        QueryResults results = new PrefetchingQueryResults(source, 10, null);
+        int count = 0;
+        try {
+            while (results.hasNext()) {
+                results.next();
+                count++;
+            }
+            fail("Expected RuntimeQueryException");
+        } catch (RuntimeQueryException e) {
+            assertEquals(3, count);
+        }
+        assertFalse(results.hasNext());
+        waitForClose(source);
+    }
+
+    @Test
+    public void testCloseEarly() throws Exception {
+        ListQueryResults source = new ListQueryResults(1000, false);
+        QueryResults results = new PrefetchingQueryResults(source, 1, null);
+        assertTrue(results.hasNext());
+        results.next();
+        results.close();
+        assertFalse(results.hasNext());
+        waitForClose(source);
+        assertTrue(source.produced < 1000);
+    }
+
+    @Test
+    public void testAbandoned() throws Exception {
+        ListQueryResults source = new ListQueryResults(1000, false);
+        QueryResults results =
+                new PrefetchingQueryResults(source, 1, null, 200);
+        waitForClose(source);
+        assertTrue(source.produced < 1000);
+        try {
+            results.hasNext();
+            fail("Expected RuntimeQueryException");
+        } catch (RuntimeQueryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testProducerInterrupted() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ListQueryResults source = new ListQueryResults(1000, false);
+        QueryResults results =
+                new PrefetchingQueryResults(source, 1, executor);
+        assertTrue(results.hasNext());
+        executor.shutdownNow();
+        waitForClose(source);
+        try {
+            while (results.hasNext()) {
+                results.next();
+            }
+            fail("Expected RuntimeQueryException");
+        } catch (RuntimeQueryException e) {
+            // expected; results must not simply end
+        }
+    }
+
+    private static void waitForClose(ListQueryResults source)
+            throws InterruptedException {
+        for (int i = 0; i < 50 && !source.closed; i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(source.closed);
+    }
+
+private static class ListQueryResults implements QueryResults {
+
+    final int size;
+
+    final boolean failAtEnd;
+
+    volatile int produced;
+
+    volatile boolean closed;
+
+    ListQueryResults(int size, boolean failAtEnd) {
+        this.size = size;
+        this.failAtEnd = failAtEnd;
+    }
+
+    public List<String> getTargets() {
+        List<String> targets = new ArrayList<String>();
+        targets.add("x");
+        return targets;
+    }
+
+    public boolean hasNext() {
+        return !closed && (produced < size || failAtEnd);
+    }
+
+    public List<Node> next() {
+        if (produced == size) {
+            throw new RuntimeQueryException(new QueryException("failed"));
+        }
+        List<Node> row = new ArrayList<Node>();
+        try {
+            row.add(new URIReference("urn:" + produced++));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return row;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+        closed = true;
+    }
+}
+
+}
@@ -0,0 +1,203 @@
+package org.nsdl.mptstore.query;
+
+import java.io.StringWriter;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.core.SQLDialect;
+import org.nsdl.mptstore.query.provider.LimitedSQLProvider;
+import org.nsdl.mptstore.query.provider.RestrictedSQLProvider;
+import org.nsdl.mptstore.query.provider.SQLProvider;
+import org.nsdl.mptstore.query.provider.TypedSQLProvider;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class SQLResultsExporterUnitTest {
+
+    /** Leaves statements alone, so the fake database recognizes them. */
+    private static final SQLDialect NO_DIALECT = new SQLDialect() {
+        public String limit(String sql, int limit, int offset) {
+            return sql;
+        }
+        public boolean supportsDistinct() {
+            return false;
+        }
+        public int getMaxInListSize() {
+            return 1;
+        }
+        public String transitiveClosure(String table, String anchor,
+                boolean backward, int maxDepth) {
+            return null;
+        }
+        public String varcharLiteral(String quoted, int maxLength) {
+            return quoted;
+        }
+    };
+
+    private FakeDataSource _db;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Before
+    public void setUp() {
+        _db = new FakeDataSource();
+        _db.add("q1", "<urn:a>");
+        _db.add("q1", "<urn:b>");
+        _db.add("q2", "<urn:c>");
+        _db.add("q4", "<urn:a>");
+        _db.add("q4", "<urn:f>");
+        _db.add("q4", "<urn:a>");
+        _db.add("q5", "<urn:a>", "42");
+        _db.add("q6", "<urn:a>", "<urn:p>", "\"x\\ty\"");
+        _db.add("q6", "<urn:b>", "<urn:p>", "<urn:a>");
+    }
+
+    @Test
+    public void testExportNTriples() throws Exception {
+        SQLProvider provider = new SQLProvider() {
+            public List<String> getTargets() {
+                return Arrays.asList("s", "p", "o");
+            }
+            public List<String> getSQL() {
+                return Arrays.asList("q6");
+            }
+        };
+        StringWriter out = new StringWriter();
+        assertEquals(2, export(provider, out, ExportFormat.NTRIPLES));
+        assertEquals("<urn:a> <urn:p> \"x\\ty\" .\n"
+                + "<urn:b> <urn:p> <urn:a> .\n", out.toString());
+    }
+
+    @Test
+    public void testExportNTriplesWrongColumns() throws Exception {
+        try {
+            export(provider("q1"), new StringWriter(),
+                   ExportFormat.NTRIPLES);
+            fail("Exported one column as N-Triples");
+        } catch (QueryException e) {
+            assertTrue(_db.getExecuted().isEmpty());
+        }
+    }
+
+    @Test
+    public void testExportTSV() throws Exception {
+        StringWriter out = new StringWriter();
+        assertEquals(1, export(new TypedProvider("q5"), out,
+                               ExportFormat.TSV));
+        assertEquals("?x\t?n\n<urn:a>\t\"42\"^^<urn:int>\n",
+                     out.toString());
+    }
+
+    @Test
+    public void testExportDistinctWindow() throws Exception {
+        SQLProvider provider = new LimitedSQLProvider(
+                new DistinctProvider("q1", "q4", "q2"), NO_DIALECT, 2, 1);
+        StringWriter out = new StringWriter();
+        assertEquals(2, export(provider, out, ExportFormat.TSV));
+        assertEquals("?x\n<urn:b>\n<urn:f>\n", out.toString());
+        assertEquals(Arrays.asList("q1", "q4"), _db.getExecuted());
+    }
+
+    @Test
+    public void testExportNTriplesUnbound() throws Exception {
+        _db.add("q7", "<urn:a>", "<urn:p>", "<urn:b>");
+        _db.add("q7", "<urn:c>", "<urn:p>", null);
+        SQLProvider provider = new SQLProvider() {
+            public List<String> getTargets() {
+                return Arrays.asList("s", "p", "o");
+            }
+            public List<String> getSQL() {
+                return Arrays.asList("q7");
+            }
+        };
+        StringWriter out = new StringWriter();
+        try {
+            export(provider, out, ExportFormat.NTRIPLES);
+            fail("Exported unbound value as N-Triples");
+        } catch (QueryException e) {
+            assertEquals("<urn:a> <urn:p> <urn:b> .\n", out.toString());
+        }
+    }
+
+    private long export(SQLProvider provider, StringWriter out,
+            ExportFormat format) throws Exception {
+        return new SQLResultsExporter(_db.getConnection(), provider, 0,
+                null).export(out, format);
+    }
+
+    private static SQLProvider provider(final String... sql) {
+        return new SQLProvider() {
+            public List<String> getTargets() {
+                return Arrays.asList("x");
+            }
+            public List<String> getSQL() {
+                return Arrays.asList(sql);
+            }
+        };
+    }
+
+    private static class DistinctProvider implements RestrictedSQLProvider {
+
+        private final List<String> _sql;
+
+        DistinctProvider(String... sql) {
+            _sql = Arrays.asList(sql);
+        }
+
+        public List<String> getTargets() {
+            return Arrays.asList("x");
+        }
+
+        public List<String> getSQL() {
+            return _sql;
+        }
+
+        public boolean isDistinctRequired() {
+            return true;
+        }
+
+        public int getLimit() {
+            return -1;
+        }
+
+        public int getOffset() {
+            return 0;
+        }
+    }
+
+    private static class TypedProvider implements TypedSQLProvider {
+
+        private final List<String> _sql;
+
+        TypedProvider(String... sql) {
+            _sql = Arrays.asList(sql);
+        }
+
+        public List<String> getTargets() {
+            return Arrays.asList("x", "n");
+        }
+
+        public List<String> getSQL() {
+            return _sql;
+        }
+
+        public List<URIReference> getTargetDatatypes() {
+            try {
+                return Arrays.asList(null, new URIReference("urn:int"));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
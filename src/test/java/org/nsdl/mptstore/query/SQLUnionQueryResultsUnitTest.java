@@ -0,0 +1,205 @@
+package org.nsdl.mptstore.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.core.SQLDialect;
+import org.nsdl.mptstore.query.provider.LimitedSQLProvider;
+import org.nsdl.mptstore.query.provider.RestrictedSQLProvider;
+import org.nsdl.mptstore.query.provider.SQLProvider;
+import org.nsdl.mptstore.query.provider.TypedSQLProvider;
+import org.nsdl.mptstore.rdf.LazyNode;
+import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class SQLUnionQueryResultsUnitTest {
+
+    /** Leaves statements alone, so the fake database recognizes them. */
+    private static final SQLDialect NO_DIALECT = new SQLDialect() {
+        public String limit(String sql, int limit, int offset) {
+            return sql;
+        }
+        public boolean supportsDistinct() {
+            return false;
+        }
+        public int getMaxInListSize() {
+            return 1;
+        }
+        public String transitiveClosure(String table, String anchor,
+                boolean backward, int maxDepth) {
+            return null;
+        }
+        public String varcharLiteral(String quoted, int maxLength) {
+            return quoted;
+        }
+    };
+
+    private FakeDataSource _db;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Before
+    public void setUp() {
+        _db = new FakeDataSource();
+        _db.add("q1", "<urn:a>");
+        _db.add("q1", "<urn:b>");
+        _db.add("q2", "<urn:c>");
+        _db.add("q2", "<urn:d>");
+        _db.add("q3", "<urn:e>");
+        _db.add("q4", "<urn:a>");
+        _db.add("q4", "<urn:f>");
+        _db.add("q4", "<urn:a>");
+        _db.add("q5", "<urn:a>", "42");
+    }
+
+    @Test
+    public void testAll() throws Exception {
+        assertEquals("[<urn:a>, <urn:b>, <urn:c>, <urn:d>, <urn:e>]",
+                read(provider("q1", "q2", "q3")).toString());
+    }
+
+    @Test
+    public void testWindowAcrossStatements() throws Exception {
+        SQLProvider provider = new LimitedSQLProvider(
+                provider("q1", "q2", "q3"), NO_DIALECT, 2, 1);
+        assertEquals("[<urn:b>, <urn:c>]", read(provider).toString());
+        assertEquals(Arrays.asList("q1", "q2"), _db.getExecuted());
+    }
+
+    @Test
+    public void testOffsetOnly() throws Exception {
+        SQLProvider provider = new LimitedSQLProvider(
+                provider("q1", "q2", "q3"), NO_DIALECT, -1, 3);
+        assertEquals("[<urn:d>, <urn:e>]", read(provider).toString());
+    }
+
+    @Test
+    public void testDistinctWindow() throws Exception {
+        SQLProvider provider = new LimitedSQLProvider(
+                new DistinctProvider("q1", "q4"), NO_DIALECT, 2, 1);
+        assertEquals("[<urn:b>, <urn:f>]", read(provider).toString());
+    }
+
+    @Test
+    public void testDistinctQueryResults() throws Exception {
+        QueryResults results = new DistinctQueryResults(
+                new SQLUnionQueryResults(_db.getConnection(),
+                        provider("q4", "q1"), 0, true), 10);
+        List<String> values = new ArrayList<String>();
+        while (results.hasNext()) {
+            values.add(results.next().get(0).toString());
+        }
+        results.close();
+        assertEquals("[<urn:a>, <urn:f>, <urn:b>]", values.toString());
+    }
+
+    @Test
+    public void testTypedColumn() throws Exception {
+        QueryResults results = new SQLUnionQueryResults(_db.getConnection(),
+                new TypedProvider("q5"), 0, true);
+        assertEquals("[<urn:a>, \"42\"^^<urn:int>]",
+                results.next().toString());
+        results.close();
+    }
+
+    @Test
+    public void testLazyNodes() throws Exception {
+        QueryResults results = new SQLUnionQueryResults(_db.getConnection(),
+                provider("q1"), 0, true, null, true);
+        Node node = results.next().get(0);
+        results.close();
+        assertTrue(node instanceof LazyNode);
+        assertEquals("<urn:a>", node.toString());
+    }
+
+    private List<String> read(SQLProvider provider) throws Exception {
+        QueryResults results = new SQLUnionQueryResults(
+                _db.getConnection(), provider, 0, true);
+        List<String> values = new ArrayList<String>();
+        try {
+            while (results.hasNext()) {
+                values.add(results.next().get(0).toString());
+            }
+        } finally {
+            results.close();
+        }
+        assertEquals(0, _db.getOpenConnections());
+        return values;
+    }
+
+    private static SQLProvider provider(final String... sql) {
+        return new SQLProvider() {
+            public List<String> getTargets() {
+                return Arrays.asList("x");
+            }
+            public List<String> getSQL() {
+                return Arrays.asList(sql);
+            }
+        };
+    }
+
+    private static class DistinctProvider implements RestrictedSQLProvider {
+
+        private final List<String> _sql;
+
+        DistinctProvider(String... sql) {
+            _sql = Arrays.asList(sql);
+        }
+
+        public List<String> getTargets() {
+            return Arrays.asList("x");
+        }
+
+        public List<String> getSQL() {
+            return _sql;
+        }
+
+        public boolean isDistinctRequired() {
+            return true;
+        }
+
+        public int getLimit() {
+            return -1;
+        }
+
+        public int getOffset() {
+            return 0;
+        }
+    }
+
+    private static class TypedProvider implements TypedSQLProvider {
+
+        private final List<String> _sql;
+
+        TypedProvider(String... sql) {
+            _sql = Arrays.asList(sql);
+        }
+
+        public List<String> getTargets() {
+            return Arrays.asList("x", "n");
+        }
+
+        public List<String> getSQL() {
+            return _sql;
+        }
+
+        public List<URIReference> getTargetDatatypes() {
+            try {
+                return Arrays.asList(null, new URIReference("urn:int"));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.nsdl.mptstore.query.lang;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.core.PredicateSummaryIndex;
+import org.nsdl.mptstore.core.StatisticsCatalog;
+import org.nsdl.mptstore.core.TableManager;
+import org.nsdl.mptstore.query.provider.SQLProvider;
+import org.nsdl.mptstore.rdf.PredicateNode;
+
+public class CachingQueryCompilerUnitTest {
+
+    private FakeTableManager _tableManager;
+
+    private CountingQueryCompiler _counter;
+
+    private CachingQueryCompiler _compiler;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Before
+    public void setUp() {
+        _tableManager = new FakeTableManager();
+        _counter = new CountingQueryCompiler();
+        _compiler = new CachingQueryCompiler(_counter, _tableManager, 2);
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("* * *", CachingQueryCompiler.normalize("*  *\t\t*"));
+        assertEquals("<urn:a> * \"a  \\\"  b\"",
+                CachingQueryCompiler.normalize("<urn:a>\t* \"a  \\\"  b\""));
+        assertEquals(" * * *", CachingQueryCompiler.normalize("  * * *"));
+    }
+
+    @Test
+    public void testHitsAndEviction() throws Exception {
+        SQLProvider first = _compiler.compile("* * *");
+        assertSame(first, _compiler.compile("*   *  *"));
+        assertEquals(1, _counter.count);
+        assertEquals(1, _compiler.getHitCount());
+
+        _compiler.compile("<urn:a> * *");
+        _compiler.compile("<urn:b> * *");
+        assertEquals(2, _compiler.size());
+        assertNotSame(first, _compiler.compile("* * *"));
+        assertEquals(4, _counter.count);
+    }
+
+    @Test
+    public void testMappingVersionChange() throws Exception {
+        SQLProvider first = _compiler.compile("* * *");
+        _tableManager.version++;
+        assertNotSame(first, _compiler.compile("* * *"));
+        assertEquals(2, _counter.count);
+    }
+
+private class CountingQueryCompiler implements QueryCompiler {
+
+    int count;
+
+    public SQLProvider compile(final String queryText) {
+        count++;
+        return new SQLProvider() {
+            public List<String> getTargets() {
+                return new ArrayList<String>();
+            }
+            public List<String> getSQL() {
+                List<String> sql = new ArrayList<String>();
+                sql.add(queryText);
+                return sql;
+            }
+        };
+    }
+}
+
+private class FakeTableManager implements TableManager {
+
+    long version;
+
+    public String getOrMapTableFor(PredicateNode predicate) {
+        return null;
+    }
+
+    public String getTableFor(PredicateNode predicate) {
+        return null;
+    }
+
+    public PredicateNode getPredicateFor(String table) {
+        return null;
+    }
+
+    public Set<String> getTables() {
+        return new HashSet<String>();
+    }
+
+    public Set<PredicateNode> getPredicates() {
+        return new HashSet<PredicateNode>();
+    }
+
+    public long getMappingVersion() {
+        return version;
+    }
+
+    public int dropEmptyPredicateTables() {
+        return 0;
+    }
+
+    public int dropAllPredicateTables() {
+        return 0;
+    }
+
+    public StatisticsCatalog getStatistics() {
+        return new StatisticsCatalog();
+    }
+
+    public void refreshStatistics() {
+    }
+
+    public PredicateSummaryIndex getSummaryIndex() {
+        return null;
+    }
+}
+
+}
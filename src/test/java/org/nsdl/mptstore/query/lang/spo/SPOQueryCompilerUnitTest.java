@@ -81,6 +81,10 @@ private class FakeTableManager implements TableManager {
         return new java.util.HashSet<PredicateNode>();
     }
 
+    public long getMappingVersion() {
+        return 0;
+    }
+
     public int dropEmptyPredicateTables() {
         return 0;
     }
@@ -88,6 +92,17 @@ private class FakeTableManager implements TableManager {
     public int dropAllPredicateTables() {
         return 0;
     }
+
+    public org.nsdl.mptstore.core.StatisticsCatalog getStatistics() {
+        return new org.nsdl.mptstore.core.StatisticsCatalog();
+    }
+
+    public void refreshStatistics() {
+    }
+
+    public org.nsdl.mptstore.core.PredicateSummaryIndex getSummaryIndex() {
+        return null;
+    }
 }
 
 }
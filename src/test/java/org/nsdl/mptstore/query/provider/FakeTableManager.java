@@ -0,0 +1,86 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.nsdl.mptstore.core.PredicateSummaryIndex;
+import org.nsdl.mptstore.core.StatisticsCatalog;
+import org.nsdl.mptstore.core.TableManager;
+import org.nsdl.mptstore.core.TableStatistics;
+import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.URIReference;
+
+/**
+ * An in-memory <code>TableManager</code> for provider unit tests.
+ */
+class FakeTableManager implements TableManager {
+
+    private Map<PredicateNode, String> _tables =
+            new LinkedHashMap<PredicateNode, String>();
+
+    private StatisticsCatalog _statistics = new StatisticsCatalog();
+
+    private PredicateSummaryIndex _summaryIndex;
+
+    public void add(String predicate, String table, TableStatistics stats)
+            throws Exception {
+        PredicateNode p = new URIReference(predicate);
+        _tables.put(p, table);
+        _statistics.put(p, stats);
+    }
+
+    public void setSummaryIndex(PredicateSummaryIndex index) {
+        _summaryIndex = index;
+    }
+
+    public String getOrMapTableFor(PredicateNode predicate) {
+        return _tables.get(predicate);
+    }
+
+    public String getTableFor(PredicateNode predicate) {
+        return _tables.get(predicate);
+    }
+
+    public PredicateNode getPredicateFor(String table) {
+        for (Map.Entry<PredicateNode, String> e : _tables.entrySet()) {
+            if (e.getValue().equals(table)) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    public Set<String> getTables() {
+        return new HashSet<String>(_tables.values());
+    }
+
+    public Set<PredicateNode> getPredicates() {
+        return new LinkedHashSet<PredicateNode>(_tables.keySet());
+    }
+
+    public long getMappingVersion() {
+        return 0;
+    }
+
+    public int dropEmptyPredicateTables() {
+        return 0;
+    }
+
+    public int dropAllPredicateTables() {
+        return 0;
+    }
+
+    public StatisticsCatalog getStatistics() {
+        return _statistics;
+    }
+
+    public void refreshStatistics() {
+    }
+
+    public PredicateSummaryIndex getSummaryIndex() {
+        return _summaryIndex;
+    }
+}
@@ -0,0 +1,422 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.core.GenericSQLDialect;
+import org.nsdl.mptstore.core.PredicateSummaryIndex;
+import org.nsdl.mptstore.core.TableStatistics;
+import org.nsdl.mptstore.impl.derby.DerbySQLDialect;
+import org.nsdl.mptstore.impl.oracle.OracleSQLDialect;
+import org.nsdl.mptstore.impl.postgres.PostgresSQLDialect;
+import org.nsdl.mptstore.query.QueryException;
+import org.nsdl.mptstore.query.component.Aggregate;
+import org.nsdl.mptstore.query.component.BasicNodePattern;
+import org.nsdl.mptstore.query.component.BasicTriplePattern;
+import org.nsdl.mptstore.query.component.GraphPattern;
+import org.nsdl.mptstore.query.component.GraphQuery;
+import org.nsdl.mptstore.query.component.GraphUnion;
+import org.nsdl.mptstore.query.component.NodePattern;
+import org.nsdl.mptstore.query.component.NodeSetPattern;
+import org.nsdl.mptstore.query.component.TransitivePattern;
+import org.nsdl.mptstore.rdf.ObjectNode;
+import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.SubjectNode;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class GraphQuerySQLProviderUnitTest {
+
+    private FakeTableManager _tableManager;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _tableManager = new FakeTableManager();
+        _tableManager.add("urn:type", "t1",
+                new TableStatistics(1000000, 1000000, 10));
+        _tableManager.add("urn:title", "t2",
+                new TableStatistics(1000, 1000, 1000));
+        _tableManager.add("urn:knows", "t3",
+                new TableStatistics(1000, 100, 1000));
+    }
+
+    @Test
+    public void testJoinOrderGiven() throws Exception {
+        GraphQuerySQLProvider provider = getProvider();
+        provider.setOptimizeJoinOrder(false);
+        String sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.startsWith("SELECT t1.s FROM (t1 JOIN t3"));
+        assertEquals(0, provider.getOptimizerTrace().size());
+    }
+
+    @Test
+    public void testJoinOrderOptimized() throws Exception {
+        GraphQuerySQLProvider provider = getProvider();
+        String sql = provider.getSQL().get(0);
+        // constant-bound subject of the small table comes first,
+        // the huge rdf:type-like table comes last
+        assertTrue(sql, sql.startsWith("SELECT t3.o FROM (t3 JOIN t1"));
+        assertEquals(2, provider.getOptimizerTrace().size());
+    }
+
+    @Test
+    public void testParameterizedSQL() throws Exception {
+        GraphQuerySQLProvider provider = getProvider();
+        String sql = provider.getSQL().get(0);
+        ParameterizedSQL psql = provider.getParameterizedSQL().get(0);
+        assertTrue(sql, sql.indexOf("'<urn:a>'") != -1);
+        assertTrue(psql.getSQL(), psql.getSQL().indexOf("'") == -1);
+        assertEquals(sql.replace("'<urn:a>'", "?")
+                .replace("'<urn:Thing>'", "?"), psql.getSQL());
+        assertEquals(2, psql.getParameters().size());
+        assertTrue(psql.getParameters().contains("<urn:a>"));
+        assertTrue(psql.getParameters().contains("<urn:Thing>"));
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        GraphQuerySQLProvider provider = getProvider();
+        provider.setDialect(new PostgresSQLDialect());
+        provider.orderBy("x", false);
+        provider.setLimit(50);
+        provider.setOffset(100);
+        String sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.startsWith("SELECT t3.o AS v1 FROM"));
+        assertTrue(sql, sql.endsWith(" ORDER BY t3.o ASC LIMIT 50 OFFSET 100"));
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        GraphQuerySQLProvider provider = getProvider();
+        provider.setDistinct(true);
+        provider.setLimit(10);
+        String sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.startsWith("SELECT DISTINCT t3.o AS v1 FROM"));
+        assertTrue(sql, sql.endsWith("FETCH FIRST 10 ROWS ONLY"));
+        assertFalse(provider.isDistinctRequired());
+        assertEquals(-1, provider.getLimit());
+
+        GenericSQLDialect dialect = new GenericSQLDialect();
+        dialect.setSupportsDistinct(false);
+        provider.setDialect(dialect);
+        sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.startsWith("SELECT t3.o FROM"));
+        assertTrue(sql, sql.indexOf("FETCH") == -1);
+        assertTrue(provider.isDistinctRequired());
+        assertEquals(10, provider.getLimit());
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+        GraphPattern pattern = new GraphPattern();
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>("x"),
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:knows")),
+                new BasicNodePattern<ObjectNode>("y")));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern);
+        query.addAggregate(new Aggregate(Aggregate.Function.COUNT_DISTINCT,
+                "y", "friends"));
+        query.addAggregate(new Aggregate(Aggregate.Function.COUNT, "n"));
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("x"));
+        provider.orderBy("friends", true);
+        assertEquals("SELECT t3.s, COUNT(DISTINCT t3.o), COUNT(*) FROM t3"
+                + " GROUP BY t3.s ORDER BY COUNT(DISTINCT t3.o) DESC",
+                provider.getSQL().get(0));
+        assertEquals(Arrays.asList("x", "friends", "n"),
+                provider.getTargets());
+        assertEquals(null, provider.getTargetDatatypes().get(0));
+        assertEquals("http://www.w3.org/2001/XMLSchema#integer",
+                provider.getTargetDatatypes().get(2).getValue());
+
+        provider.setTargets(new ArrayList<String>());
+        provider.orderBy("n", false);
+        assertEquals("SELECT COUNT(DISTINCT t3.o), COUNT(*) FROM t3"
+                + " ORDER BY COUNT(*) ASC", provider.getSQL().get(0));
+    }
+
+    @Test
+    public void testNodeSet() throws Exception {
+        GraphPattern pattern = new GraphPattern();
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new NodeSetPattern<SubjectNode>(Arrays.asList(
+                        new URIReference("urn:a"), new URIReference("urn:b"),
+                        new URIReference("urn:c"))),
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:title")),
+                new BasicNodePattern<ObjectNode>("t")));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("t"));
+        GenericSQLDialect dialect = new GenericSQLDialect();
+        dialect.setMaxInListSize(2);
+        provider.setDialect(dialect);
+        assertEquals("SELECT t2.o FROM t2 WHERE (t2.s IN ('<urn:a>', "
+                + "'<urn:b>') OR t2.s IN ('<urn:c>'))",
+                provider.getSQL().get(0));
+        ParameterizedSQL psql = provider.getParameterizedSQL().get(0);
+        assertEquals("SELECT t2.o FROM t2 WHERE (t2.s IN (?, ?) OR t2.s IN "
+                + "(?))", psql.getSQL());
+        assertEquals(3, psql.getParameters().size());
+    }
+
+    @Test
+    public void testNodeSetJoined() throws Exception {
+        GraphPattern pattern = new GraphPattern();
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new NodeSetPattern<SubjectNode>(Arrays.asList(
+                        new URIReference("urn:a"), new URIReference("urn:b"))),
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:knows")),
+                new BasicNodePattern<ObjectNode>("x")));
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>("x"),
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:title")),
+                new BasicNodePattern<ObjectNode>("t")));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("x", "t"));
+        String sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.indexOf("t3.s IN ('<urn:a>', '<urn:b>')") != -1);
+    }
+
+    @Test
+    public void testNodeSetJoinedSecond() throws Exception {
+        for (boolean optimize : new boolean[] {true, false}) {
+            GraphPattern pattern = new GraphPattern();
+            pattern.addTriplePattern(new BasicTriplePattern(
+                    new BasicNodePattern<SubjectNode>(
+                            new URIReference("urn:me")),
+                    new BasicNodePattern<PredicateNode>(
+                            new URIReference("urn:knows")),
+                    new BasicNodePattern<ObjectNode>("x")));
+            pattern.addTriplePattern(new BasicTriplePattern(
+                    new NodeSetPattern<SubjectNode>(Arrays.asList(
+                            new URIReference("urn:a"),
+                            new URIReference("urn:b"))),
+                    new BasicNodePattern<PredicateNode>(
+                            new URIReference("urn:title")),
+                    new BasicNodePattern<ObjectNode>("x")));
+            GraphQuery query = new GraphQuery();
+            query.addRequired(pattern);
+            GraphQuerySQLProvider provider =
+                    new GraphQuerySQLProvider(_tableManager, query, true);
+            provider.setOptimizeJoinOrder(optimize);
+            provider.setTargets(Arrays.asList("x"));
+            String sql = provider.getSQL().get(0);
+            assertTrue(sql, sql.indexOf("t2.s IN ('<urn:a>', '<urn:b>')")
+                    != -1);
+            assertTrue(sql, sql.indexOf("t3.s = '<urn:me>'") != -1);
+            assertTrue(sql, sql.indexOf("null") == -1);
+        }
+    }
+
+    @Test
+    public void testTransitive() throws Exception {
+        GraphQuerySQLProvider provider = getTransitiveProvider(
+                new BasicNodePattern<SubjectNode>(new URIReference("urn:a")),
+                new BasicNodePattern<ObjectNode>("x"), 3);
+        provider.setDialect(new PostgresSQLDialect());
+        assertEquals("SELECT t3.o FROM (WITH RECURSIVE tc(s, o, depth) AS "
+                + "(SELECT s, o, 1 FROM t3 WHERE s = '<urn:a>' UNION "
+                + "SELECT tc.s, t3.o, tc.depth + 1 FROM tc JOIN t3 ON "
+                + "tc.o = t3.s WHERE tc.depth < 3) SELECT DISTINCT s, o "
+                + "FROM tc) t3 WHERE t3.s = '<urn:a>'",
+                provider.getSQL().get(0));
+
+        provider = getTransitiveProvider(
+                new BasicNodePattern<SubjectNode>("x"),
+                new BasicNodePattern<ObjectNode>(new URIReference("urn:a")),
+                TransitivePattern.UNLIMITED);
+        provider.setDialect(new OracleSQLDialect());
+        assertEquals("SELECT t3.s FROM (SELECT DISTINCT s, CONNECT_BY_ROOT o "
+                + "AS o FROM t3 START WITH o = '<urn:a>' CONNECT BY NOCYCLE "
+                + "PRIOR s = o) t3 WHERE t3.o = '<urn:a>'",
+                provider.getSQL().get(0));
+
+        provider.setDialect(new DerbySQLDialect());
+        try {
+            provider.getSQL();
+            fail("Derby cannot express a transitive closure");
+        } catch (QueryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnion() throws Exception {
+        GraphUnion union = new GraphUnion();
+        union.addAlternative(pattern("x", "urn:knows", "y"));
+        union.addAlternative(pattern("y", "urn:knows", "x"));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern("x", "urn:title", "t"));
+        query.addRequired(union);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("t", "y"));
+        assertEquals("SELECT t2.o, sq1.v2 FROM t2 JOIN "
+                + "(SELECT t3.s AS v1, t3.o AS v2 FROM t3 UNION ALL "
+                + "SELECT t3.o AS v1, t3.s AS v2 FROM t3) sq1 "
+                + "ON (t2.s = sq1.v1)", provider.getSQL().get(0));
+
+        union.addAlternative(pattern("x", "urn:title", "t"));
+        try {
+            provider.getSQL();
+            fail("Alternatives with different variables");
+        } catch (QueryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSubquery() throws Exception {
+        GraphQuery sub = new GraphQuery();
+        sub.addRequired(pattern("y", "urn:knows", "x"));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern("x", "urn:title", "t"));
+        query.addOptional(sub);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("t", "y"));
+        ParameterizedSQL psql = provider.getParameterizedSQL().get(0);
+        assertEquals("SELECT t2.o, sq1.v1 FROM t2 LEFT OUTER JOIN "
+                + "(SELECT t3.s AS v1, t3.o AS v2 FROM t3) sq1 "
+                + "ON (t2.s = sq1.v2)", psql.getSQL());
+    }
+
+    @Test
+    public void testVariablePredicate() throws Exception {
+        _tableManager.add("urn:empty", "t4", TableStatistics.EMPTY);
+        GraphPattern pattern = new GraphPattern();
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>(new URIReference("urn:a")),
+                new BasicNodePattern<PredicateNode>("p"),
+                new BasicNodePattern<ObjectNode>(new URIReference("urn:b"))));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("p"));
+
+        // without a summary index, every table is a candidate
+        String sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.startsWith("SELECT ap_1.p FROM (SELECT "
+                + "CAST('<urn:empty>' AS VARCHAR(11)) AS p, s, o FROM t4 "
+                + "WHERE s = '<urn:a>' AND o = '<urn:b>' UNION ALL SELECT "
+                + "CAST('<urn:knows>' AS VARCHAR(11)) AS p"));
+        assertTrue(sql, sql.indexOf("<urn:type>") != -1);
+
+        // ... unless empty tables are pruned
+        provider.setPruneEmptyTables(true);
+        sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.startsWith("SELECT ap_1.p FROM (SELECT "
+                + "CAST('<urn:knows>' AS VARCHAR(11)) AS p, s, o FROM t3 "
+                + "WHERE s = '<urn:a>' AND o = '<urn:b>' UNION ALL SELECT "
+                + "CAST('<urn:title>' AS VARCHAR(11)) AS p"));
+        assertTrue(sql, sql.indexOf("t4") == -1);
+
+        PredicateSummaryIndex index = new PredicateSummaryIndex(64);
+        index.add("<urn:a>", new URIReference("urn:knows"), "<urn:b>");
+        index.add("<urn:c>", new URIReference("urn:title"), "<urn:d>");
+        index.markComplete();
+        _tableManager.setSummaryIndex(index);
+        sql = provider.getSQL().get(0);
+        assertTrue(sql, sql.startsWith("SELECT ap_1.p FROM (SELECT "
+                + "CAST('<urn:knows>' AS VARCHAR(11)) AS p, s, o FROM t3 "
+                + "WHERE s = '<urn:a>' AND o = '<urn:b>') ap_1 WHERE "));
+    }
+
+    @Test
+    public void testTableAliases() throws Exception {
+        GraphPattern pattern = pattern("x", "urn:knows", "y");
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>("y"),
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:knows")),
+                new BasicNodePattern<ObjectNode>("z")));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setOptimizeJoinOrder(false);
+        provider.setDialect(new OracleSQLDialect());
+        provider.setTargets(Arrays.asList("x", "z"));
+        assertEquals("SELECT t3.s, t3_1.o FROM (t3 JOIN t3 t3_1 ON "
+                + "(t3_1.s = t3.o))", provider.getSQL().get(0));
+    }
+
+    /*
+     * ?s <p> ?o
+     */
+    private GraphPattern pattern(String s, String p, String o)
+            throws Exception {
+        GraphPattern pattern = new GraphPattern();
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>(s),
+                new BasicNodePattern<PredicateNode>(new URIReference(p)),
+                new BasicNodePattern<ObjectNode>(o)));
+        return pattern;
+    }
+
+    private GraphQuerySQLProvider getTransitiveProvider(
+            NodePattern<SubjectNode> s, NodePattern<ObjectNode> o,
+            int maxDepth) throws Exception {
+        GraphPattern pattern = new GraphPattern();
+        pattern.addTriplePattern(new TransitivePattern(s,
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:knows")), o, maxDepth));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("x"));
+        return provider;
+    }
+
+    /*
+     * ?x <urn:type> <urn:Thing> . <urn:a> <urn:knows> ?x
+     */
+    private GraphQuerySQLProvider getProvider() throws Exception {
+        GraphPattern pattern = new GraphPattern();
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>("x"),
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:type")),
+                new BasicNodePattern<ObjectNode>(
+                        new URIReference("urn:Thing"))));
+        pattern.addTriplePattern(new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>(
+                        new URIReference("urn:a")),
+                new BasicNodePattern<PredicateNode>(
+                        new URIReference("urn:knows")),
+                new BasicNodePattern<ObjectNode>("x")));
+        GraphQuery query = new GraphQuery();
+        query.addRequired(pattern);
+        GraphQuerySQLProvider provider =
+                new GraphQuerySQLProvider(_tableManager, query, true);
+        provider.setTargets(Arrays.asList("x"));
+        return provider;
+    }
+
+}
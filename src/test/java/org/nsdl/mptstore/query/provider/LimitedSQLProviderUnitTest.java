@@ -0,0 +1,78 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.core.GenericSQLDialect;
+import org.nsdl.mptstore.impl.mysql.MysqlSQLDialect;
+import org.nsdl.mptstore.impl.oracle.OracleSQLDialect;
+import org.nsdl.mptstore.impl.postgres.PostgresSQLDialect;
+
+public class LimitedSQLProviderUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testSingleStatement() throws Exception {
+        LimitedSQLProvider provider = new LimitedSQLProvider(
+                provider("SELECT s FROM t1"), new GenericSQLDialect(), 50, 100);
+        assertEquals(Arrays.asList(
+                "SELECT s FROM t1 OFFSET 100 ROWS FETCH FIRST 50 ROWS ONLY"),
+                provider.getSQL());
+        assertEquals(-1, provider.getLimit());
+        assertEquals(0, provider.getOffset());
+    }
+
+    @Test
+    public void testMultipleStatements() throws Exception {
+        LimitedSQLProvider provider = new LimitedSQLProvider(
+                provider("SELECT s FROM t1", "SELECT s FROM t2"),
+                new PostgresSQLDialect(), 50, 100);
+        assertEquals(Arrays.asList("SELECT s FROM t1 LIMIT 150",
+                                   "SELECT s FROM t2 LIMIT 150"),
+                provider.getSQL());
+        assertEquals(50, provider.getLimit());
+        assertEquals(100, provider.getOffset());
+    }
+
+    @Test
+    public void testZeroLimit() throws Exception {
+        LimitedSQLProvider provider = new LimitedSQLProvider(
+                provider("SELECT s FROM t1"), new GenericSQLDialect(), 0, 0);
+        assertEquals(0, provider.getSQL().size());
+    }
+
+    @Test
+    public void testDialects() {
+        assertEquals("SELECT s FROM t1 LIMIT 10, 5",
+                new MysqlSQLDialect().limit("SELECT s FROM t1", 5, 10));
+        assertEquals("SELECT s FROM t1 LIMIT 10, 18446744073709551615",
+                new MysqlSQLDialect().limit("SELECT s FROM t1", -1, 10));
+        assertEquals("SELECT * FROM (SELECT s FROM t1) WHERE ROWNUM <= 5",
+                new OracleSQLDialect().limit("SELECT s FROM t1", 5, 0));
+        assertEquals("SELECT * FROM (SELECT q.*, ROWNUM AS rn FROM "
+                + "(SELECT s FROM t1) q WHERE ROWNUM <= 15) WHERE rn > 10",
+                new OracleSQLDialect().limit("SELECT s FROM t1", 5, 10));
+        assertEquals("SELECT s FROM t1 OFFSET 10 ROWS",
+                new GenericSQLDialect().limit("SELECT s FROM t1", -1, 10));
+    }
+
+    private static SQLProvider provider(final String... sql) {
+        return new SQLProvider() {
+            public List<String> getTargets() {
+                return Arrays.asList("s");
+            }
+            public List<String> getSQL() {
+                return Arrays.asList(sql);
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package org.nsdl.mptstore.query.provider;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.core.PredicateSummaryIndex;
+import org.nsdl.mptstore.core.TableStatistics;
+import org.nsdl.mptstore.impl.mysql.MysqlSQLDialect;
+import org.nsdl.mptstore.query.component.BasicNodePattern;
+import org.nsdl.mptstore.query.component.BasicTriplePattern;
+import org.nsdl.mptstore.query.component.TriplePattern;
+import org.nsdl.mptstore.rdf.ObjectNode;
+import org.nsdl.mptstore.rdf.PredicateNode;
+import org.nsdl.mptstore.rdf.SubjectNode;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class TriplePatternSQLProviderUnitTest {
+
+    private static final List<String> TARGETS = Arrays.asList("s", "p", "o");
+
+    private FakeTableManager _tableManager;
+
+    private TriplePattern _pattern;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _tableManager = new FakeTableManager();
+        _tableManager.add("urn:p1", "t1", new TableStatistics(10, 10, 10));
+        _tableManager.add("urn:p2", "t2", TableStatistics.EMPTY);
+        _tableManager.add("urn:p3", "t3", new TableStatistics(10, 10, 10));
+        _tableManager.add("urn:p4", "t4", new TableStatistics(10, 10, 10));
+
+        // <urn:a> * *
+        _pattern = new BasicTriplePattern(
+                new BasicNodePattern<SubjectNode>(new URIReference("urn:a")),
+                new BasicNodePattern<PredicateNode>("p"),
+                new BasicNodePattern<ObjectNode>("o"));
+    }
+
+    @Test
+    public void testSelectPerTable() throws Exception {
+        TriplePatternSQLProvider provider = new TriplePatternSQLProvider(
+                _tableManager, true, _pattern, TARGETS);
+        assertEquals(4, provider.getSQL().size());
+        assertEquals(4, provider.getParameterizedSQL().size());
+        ParameterizedSQL psql = provider.getParameterizedSQL().get(0);
+        assertTrue(psql.getSQL(), psql.getSQL().endsWith("WHERE s = ?"));
+        assertEquals(Arrays.asList("<urn:a>"), psql.getParameters());
+    }
+
+    @Test
+    public void testUnionWidth() throws Exception {
+        TriplePatternSQLProvider provider = new TriplePatternSQLProvider(
+                _tableManager, true, _pattern, TARGETS, 3, false);
+        List<String> sql = provider.getSQL();
+        assertEquals(2, sql.size());
+        assertEquals(3, sql.get(0).split("UNION ALL").length);
+        assertEquals(1, sql.get(1).split("UNION ALL").length);
+        ParameterizedSQL psql = provider.getParameterizedSQL().get(0);
+        assertEquals(3, psql.getParameters().size());
+
+        // predicate literals are not padded to a common CHAR length
+        assertTrue(sql.get(0), sql.get(0).startsWith(
+                "SELECT s, CAST('<urn:p1>' AS VARCHAR(8)), o"));
+        assertTrue(psql.getSQL().indexOf(
+                "CAST('<urn:p2>' AS VARCHAR(8))") != -1);
+    }
+
+    @Test
+    public void testUnionWidthDialect() throws Exception {
+        TriplePatternSQLProvider provider = new TriplePatternSQLProvider(
+                _tableManager, true, _pattern, TARGETS, 3, false, false,
+                new MysqlSQLDialect());
+        assertTrue(provider.getSQL().get(0).startsWith(
+                "SELECT s, '<urn:p1>', o"));
+
+        // uncombined queries are left alone
+        provider = new TriplePatternSQLProvider(
+                _tableManager, true, _pattern, TARGETS);
+        assertTrue(provider.getSQL().get(0).startsWith(
+                "SELECT s, '<urn:p1>', o"));
+    }
+
+    @Test
+    public void testPruneEmptyTables() throws Exception {
+        TriplePatternSQLProvider provider = new TriplePatternSQLProvider(
+                _tableManager, true, _pattern, TARGETS, 10, true);
+        List<String> sql = provider.getSQL();
+        assertEquals(1, sql.size());
+        assertEquals(3, sql.get(0).split("UNION ALL").length);
+        assertTrue(sql.get(0).indexOf("t2") == -1);
+    }
+
+    @Test
+    public void testSummaryIndex() throws Exception {
+        PredicateSummaryIndex index = new PredicateSummaryIndex(1024);
+        index.add("<urn:a>", new URIReference("urn:p3"), "<urn:b>");
+        _tableManager.setSummaryIndex(index);
+
+        // incomplete index is not consulted
+        TriplePatternSQLProvider provider = new TriplePatternSQLProvider(
+                _tableManager, true, _pattern, TARGETS);
+        assertEquals(4, provider.getSQL().size());
+
+        index.markComplete();
+        provider = new TriplePatternSQLProvider(
+                _tableManager, true, _pattern, TARGETS);
+        assertEquals(1, provider.getSQL().size());
+        assertTrue(provider.getSQL().get(0).indexOf("FROM t3") != -1);
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.nsdl.mptstore.rdf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.nsdl.mptstore.TestConfig;
+
+public class LazyNodeUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testURIReference() throws Exception {
+        LazyNode n = new LazyNode("<urn:a>");
+        assertTrue(n.isURIReference());
+        assertEquals("urn:a", n.getValue());
+        assertEquals("<urn:a>", n.toString());
+        assertEquals(new URIReference("urn:a"), n.getNode());
+        assertEquals("urn:a", n.getURI().toString());
+        assertEquals(n, new LazyNode("<urn:a>"));
+        assertEquals(new LazyNode("<urn:a>").hashCode(), n.hashCode());
+        assertFalse(n.equals(new URIReference("urn:a")));
+        assertFalse(new URIReference("urn:a").equals(n));
+        assertFalse(n.equals(new LazyNode("<urn:b>")));
+    }
+
+    @Test
+    public void testLiteral() throws Exception {
+        LazyNode n = new LazyNode("\"a\\tb\"@EN");
+        assertFalse(n.isURIReference());
+        assertNull(n.getURI());
+        assertEquals("a\tb", n.getValue());
+        assertEquals("\"a\\tb\"@EN", n.toString());
+        assertEquals(new Literal("a\tb", "en"), n.getNode());
+        assertEquals(n, new LazyNode("\"a\\tb\"@en"));
+        assertFalse(n.equals(new LazyNode("\"a\\tb\"")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvalid() {
+        new LazyNode("\"unterminated").getValue();
+    }
+}
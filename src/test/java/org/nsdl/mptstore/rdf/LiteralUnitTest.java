@@ -7,6 +7,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.nsdl.mptstore.TestConfig;
 
@@ -125,4 +126,22 @@ public class LiteralUnitTest {
 
     }
 
+    @Test
+    public void testHashCodeDistinguishesKinds() throws Exception {
+
+        int plain = new Literal("en").hashCode();
+        int language = new Literal("en", "en").hashCode();
+        int typed = new Literal("en", new URIReference("urn:en"))
+                .hashCode();
+        assertTrue(plain != language);
+        assertTrue(plain != typed);
+        assertTrue(language != typed);
+
+        // same nodes in different positions
+        URIReference a = new URIReference("urn:a");
+        URIReference b = new URIReference("urn:b");
+        assertTrue(new Triple(a, b, a).hashCode()
+                != new Triple(b, a, a).hashCode());
+    }
+
 }
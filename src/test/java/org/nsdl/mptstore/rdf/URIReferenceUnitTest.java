@@ -0,0 +1,51 @@
+package org.nsdl.mptstore.rdf;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.util.NTriplesUtil;
+
+public class URIReferenceUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testTrustedEqualsValidated() throws Exception {
+        URIReference trusted = URIReference.createTrusted("urn:a#b");
+        URIReference validated = new URIReference("urn:a#b");
+        assertEquals(validated, trusted);
+        assertEquals(trusted, validated);
+        assertEquals(validated.hashCode(), trusted.hashCode());
+        assertEquals("<urn:a#b>", trusted.toString());
+        assertEquals(new URI("urn:a#b"), trusted.getURI());
+        assertSame(trusted.getURI(), trusted.getURI());
+    }
+
+    @Test(expected = URISyntaxException.class)
+    public void testValidatedRelative() throws Exception {
+        new URIReference("a/b");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTrustedInvalid() {
+        URIReference.createTrusted("urn:a b").getURI();
+    }
+
+    @Test
+    public void testParseTrustedNode() throws Exception {
+        Node node = NTriplesUtil.parseTrustedNode("<urn:a>");
+        assertEquals(new URIReference("urn:a"), node);
+        assertEquals(new Literal("x", new URIReference("urn:t")),
+                NTriplesUtil.parseTrustedNode("\"x\"^^<urn:t>"));
+    }
+
+}
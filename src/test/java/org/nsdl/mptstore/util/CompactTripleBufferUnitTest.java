@@ -0,0 +1,73 @@
+package org.nsdl.mptstore.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.rdf.Triple;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class CompactTripleBufferUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Triple> triples = new ArrayList<Triple>();
+        triples.add(NTriplesUtil.parseTriple("<urn:a> <urn:p> <urn:b> ."));
+        triples.add(NTriplesUtil.parseTriple(
+                "<urn:a> <urn:p> \"x\\ty\\u00E9\"@en ."));
+        triples.add(NTriplesUtil.parseTriple(
+                "<urn:b> <urn:q> \"1\"^^<urn:int> ."));
+        triples.add(new Triple(new URIReference("urn:caf\u00E9"),
+                NTriplesUtil.parsePredicate("<urn:p>"),
+                NTriplesUtil.parseObject("<urn:a>")));
+
+        CompactTripleBuffer buffer = new CompactTripleBuffer();
+        assertEquals(4, buffer.addAll(triples.iterator()));
+        assertEquals(4, buffer.size());
+        assertEquals(7, buffer.getNodeCount());
+        for (int i = 0; i < triples.size(); i++) {
+            assertEquals(triples.get(i), buffer.get(i));
+        }
+        Iterator<Triple> iter = buffer.iterator();
+        for (Triple triple : triples) {
+            assertEquals(triple, iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getNodeCount());
+        buffer.add(triples.get(0));
+        assertEquals(triples.get(0), buffer.get(0));
+    }
+
+    @Test
+    public void testGrowth() throws Exception {
+        CompactTripleBuffer buffer = new CompactTripleBuffer();
+        for (int i = 0; i < 5000; i++) {
+            buffer.add(NTriplesUtil.parseTriple("<urn:s" + i + "> <urn:p"
+                    + (i % 7) + "> \"" + (i % 100) + "\" ."));
+        }
+        assertEquals(5000, buffer.size());
+        assertEquals(5000 + 7 + 100, buffer.getNodeCount());
+        assertEquals("<urn:s4321> <urn:p2> \"21\" .",
+                buffer.get(4321).toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        new CompactTripleBuffer().get(0);
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.nsdl.mptstore.util;
+
+import java.text.ParseException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.rdf.Literal;
+
+public class NTriplesParserUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testParseRange() throws Exception {
+        String line = "xx<urn:a> <urn:b> \"a\\tb\"@EN .yy";
+        char[] chars = line.toCharArray();
+        NTriplesParser parser = new NTriplesParser();
+        assertEquals("<urn:a> <urn:b> \"a\\tb\"@en .",
+                parser.parseTriple(chars, 2, chars.length - 4).toString());
+        assertEquals("<urn:b>", parser.parseNode(chars, 10, 7).toString());
+    }
+
+    @Test
+    public void testErrorOffsetsRelativeToRange() throws Exception {
+        char[] chars = "xx<urn:a> <urn:b> \"a\nb\" .".toCharArray();
+        try {
+            new NTriplesParser().parseTriple(chars, 2, chars.length - 2);
+            fail("Parsed triple with unescaped linefeed");
+        } catch (ParseException e) {
+            assertEquals(18, e.getErrorOffset());
+            assertEquals(e.getErrorOffset(), offsetOf("<urn:a> <urn:b> "
+                    + "\"a\nb\" ."));
+        }
+    }
+
+    @Test
+    public void testUnescape() throws Exception {
+        NTriplesParser parser = new NTriplesParser();
+        assertEquals("plain", parser.parseLiteral("\"plain\"").getValue());
+        assertEquals("\u00E9\"\uD83D\uDE00", parser.unescapeLiteralValue(
+                "\\u00E9\\\"\\U0001F600"));
+        Literal typed = parser.parseLiteral("\"1\"^^<urn:int>");
+        assertEquals("urn:int", typed.getDatatype().getValue());
+    }
+
+    @Test
+    public void testLargeInput() throws Exception {
+        NTriplesParser parser = new NTriplesParser();
+        StringBuilder value = new StringBuilder();
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            value.append("a\t");
+            escaped.append("a\\t");
+        }
+        for (int i = 0; i < 2; i++) {
+            Literal literal = (Literal) parser.parseTriple(
+                    "<urn:a> <urn:b> \"" + escaped + "\" .").getObject();
+            assertEquals(value.toString(), literal.getValue());
+            assertEquals("<urn:c>", parser.parseNode("<urn:c>").toString());
+            assertEquals("x\ty",
+                    parser.parseLiteral("\"x\\ty\"").getValue());
+        }
+    }
+
+    private static int offsetOf(String triple) {
+        try {
+            NTriplesUtil.parseTriple(triple);
+            return -1;
+        } catch (ParseException e) {
+            return e.getErrorOffset();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.nsdl.mptstore.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import java.nio.channels.Channels;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.rdf.Literal;
+import org.nsdl.mptstore.rdf.Triple;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class NTriplesReaderUnitTest {
+
+    private static final String DOCUMENT =
+            "# comment\r\n"
+            + "<urn:a> <urn:b> <urn:c> .\r\n"
+            + "\n"
+            + "  <urn:a> <urn:b> \"tab\\there\"@EN .\r"
+            + "<urn:a> <urn:b> \"\\u00E9\"^^<urn:t> .";
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        List<String> triples = read(new NTriplesReader(
+                new ByteArrayInputStream(DOCUMENT.getBytes("US-ASCII"))));
+        assertEquals("[<urn:a> <urn:b> <urn:c> ., "
+                + "<urn:a> <urn:b> \"tab\\there\"@en ., "
+                + "<urn:a> <urn:b> \"\\u00E9\"^^<urn:t> .]",
+                triples.toString());
+    }
+
+    @Test
+    public void testSmallBuffer() throws Exception {
+        List<String> triples = read(new NTriplesReader(Channels.newChannel(
+                new ByteArrayInputStream(DOCUMENT.getBytes("US-ASCII"))), 7));
+        assertEquals(3, triples.size());
+    }
+
+    @Test
+    public void testInvalidLine() throws Exception {
+        NTriplesReader reader = new NTriplesReader(new ByteArrayInputStream(
+                "<urn:a> <urn:b> <urn:c> .\n<urn:a> <urn:b>\n"
+                .getBytes("US-ASCII")));
+        reader.next();
+        try {
+            reader.next();
+            fail("Read invalid line");
+        } catch (IllegalStateException e) {
+            assertEquals("Invalid N-Triples at line 2, column 16: "
+                    + "Expected ' ' or TAB", e.getMessage());
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testWriteAndReadFile() throws Exception {
+        List<Triple> triples = new ArrayList<Triple>();
+        URIReference s = new URIReference("urn:s");
+        URIReference p = new URIReference("urn:p");
+        triples.add(new Triple(s, p, new URIReference("http://x/\u00E9")));
+        triples.add(new Triple(s, p, new Literal("a\"b\\c\n\u00E9\u0001")));
+        triples.add(new Triple(s, p, new Literal("x", "en-US")));
+        triples.add(new Triple(s, p, new Literal("1", p)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NTriplesWriter writer = new NTriplesWriter(bytes);
+        assertEquals(4, writer.write(triples.iterator()));
+        writer.flush();
+        StringBuffer expected = new StringBuffer();
+        for (Triple triple : triples) {
+            expected.append(triple.toString());
+            expected.append('\n');
+        }
+        assertEquals(expected.toString(), bytes.toString("UTF-8"));
+
+        File file = File.createTempFile("mptstore", ".nt");
+        try {
+            writer = new NTriplesWriter(file);
+            writer.write(triples.iterator());
+            writer.close();
+            for (boolean mapped : new boolean[] {false, true}) {
+                NTriplesReader reader = new NTriplesReader(file, mapped);
+                List<Triple> read = new ArrayList<Triple>();
+                while (reader.hasNext()) {
+                    read.add(reader.next());
+                }
+                assertEquals(triples, read);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static List<String> read(NTriplesReader reader) {
+        List<String> triples = new ArrayList<String>();
+        while (reader.hasNext()) {
+            triples.add(reader.next().toString());
+        }
+        reader.close();
+        return triples;
+    }
+}
@@ -0,0 +1,109 @@
+package org.nsdl.mptstore.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.core.ClosableIterator;
+import org.nsdl.mptstore.rdf.Triple;
+
+public class NTriplesSplitterUnitTest {
+
+    private File _file;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _file = File.createTempFile("mptstore", ".nt");
+    }
+
+    @After
+    public void tearDown() {
+        _file.delete();
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        StringBuffer doc = new StringBuffer();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            String triple = "<urn:s" + i + "> <urn:p> \"" + i + "\" .";
+            expected.add(triple);
+            doc.append(triple);
+            doc.append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        write(doc.toString());
+
+        final List<String> found =
+                Collections.synchronizedList(new ArrayList<String>());
+        int ranges = new NTriplesSplitter(_file, 7).split(
+                new NTriplesSplitter.RangeHandler() {
+            public void handle(ClosableIterator<Triple> triples) {
+                while (triples.hasNext()) {
+                    found.add(triples.next().toString());
+                }
+            }
+        });
+        assertEquals(7, ranges);
+        Collections.sort(expected);
+        Collections.sort(found);
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void testSmallFile() throws Exception {
+        write("<urn:a> <urn:b> <urn:c> .");
+        final List<String> found = new ArrayList<String>();
+        int ranges = new NTriplesSplitter(_file, 4).split(
+                new NTriplesSplitter.RangeHandler() {
+            public void handle(ClosableIterator<Triple> triples) {
+                while (triples.hasNext()) {
+                    found.add(triples.next().toString());
+                }
+            }
+        });
+        assertTrue(ranges >= 1);
+        assertEquals(1, found.size());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        write("<urn:a> <urn:b> <urn:c> .\n<urn:a> <urn:b> .\n");
+        try {
+            new NTriplesSplitter(_file, 1).split(
+                    new NTriplesSplitter.RangeHandler() {
+                public void handle(ClosableIterator<Triple> triples) {
+                    while (triples.hasNext()) {
+                        triples.next();
+                    }
+                }
+            });
+            fail("Split invalid file");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private void write(String doc) throws Exception {
+        FileOutputStream out = new FileOutputStream(_file);
+        out.write(doc.getBytes("US-ASCII"));
+        out.close();
+    }
+}
@@ -127,6 +127,16 @@ public class NTriplesUtilUnitTest {
         assertEquals(escaped, NTriplesUtil.escapeLiteralValue(notEscaped));
     }
 
+    @Test
+    public void testEscapingUnchanged() throws Exception {
+
+        String plain = "nothing to escape here";
+        assertTrue(plain == NTriplesUtil.escapeLiteralValue(plain));
+
+        assertEquals("a\\\\b\\\"\\t\\u0001\\u007F",
+                NTriplesUtil.escapeLiteralValue("a\\b\"\t\u0001\u007F"));
+    }
+
     @Test
     public void testParseBadTriples() {
         assertNotNull(checkTriple(""));
@@ -0,0 +1,110 @@
+package org.nsdl.mptstore.util;
+
+import java.text.ParseException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.nsdl.mptstore.TestConfig;
+import org.nsdl.mptstore.rdf.Node;
+import org.nsdl.mptstore.rdf.Triple;
+import org.nsdl.mptstore.rdf.URIReference;
+
+public class NodeCacheUnitTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestConfig.init();
+    }
+
+    @After
+    public void tearDown() {
+        NTriplesUtil.setNodeCache(null);
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        NodeCache cache = new NodeCache();
+        URIReference uriRef = new URIReference("urn:a");
+        assertNull(cache.get("<urn:a>"));
+        cache.put("<urn:a>", uriRef);
+        assertSame(uriRef, cache.get("<urn:a>"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        NodeCache cache = new NodeCache(32);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("<urn:" + i + ">", new URIReference("urn:" + i));
+        }
+        assertTrue(cache.size() <= 32);
+    }
+
+    @Test
+    public void testParseShared() throws Exception {
+        NodeCache cache = new NodeCache();
+        NTriplesUtil.setNodeCache(cache);
+        Node literal = NTriplesUtil.parseNode("\"a\"@en");
+        assertSame(literal, NTriplesUtil.parseNode("\"a\"@en"));
+        assertSame(NTriplesUtil.parsePredicate("<urn:p>"),
+                   NTriplesUtil.parsePredicate("<urn:p>"));
+        Triple t1 = NTriplesUtil.parseTriple("<urn:a> <urn:p> <urn:o> .");
+        Triple t2 = NTriplesUtil.parseTriple("<urn:b> <urn:p> <urn:o> .");
+        assertSame(t1.getPredicate(), t2.getPredicate());
+        assertSame(t1.getObject(), t2.getObject());
+        assertEquals(NTriplesUtil.parsePredicate("<urn:p>"),
+                     t1.getPredicate());
+        assertTrue(cache.getHitRate() > 0);
+    }
+
+    @Test
+    public void testTrustedShared() throws Exception {
+        NodeCache cache = new NodeCache();
+        NTriplesUtil.setNodeCache(cache);
+        Node node = NTriplesUtil.parseTrustedNode("<urn:x>");
+        assertEquals(1, cache.size());
+        assertSame(node, NTriplesUtil.parseNode("<urn:x>"));
+        NTriplesParser trusted = new NTriplesParser();
+        trusted.setTrusted(true);
+        trusted.setNodeCache(cache);
+        Triple t = trusted.parseTriple("<urn:s> <urn:p> <urn:x> .");
+        assertSame(node, t.getObject());
+        assertSame(t.getPredicate(), NTriplesUtil.parsePredicate("<urn:p>"));
+    }
+
+    @Test
+    public void testTrustedNotShared() throws Exception {
+        NodeCache cache = new NodeCache();
+        NTriplesUtil.setNodeCache(cache);
+        NTriplesUtil.parseTrustedNode("<urn:a b>");
+        NTriplesParser trusted = new NTriplesParser();
+        trusted.setTrusted(true);
+        trusted.setNodeCache(cache);
+        trusted.parseTriple("<urn:s> <urn:a b> <urn:a b> .");
+        try {
+            NTriplesUtil.parseNode("<urn:a b>");
+            fail("Expected ParseException");
+        } catch (ParseException e) {
+            // expected
+        }
+        try {
+            NTriplesUtil.parseTriple("<urn:s> <urn:p> <urn:a b> .");
+            fail("Expected ParseException");
+        } catch (ParseException e) {
+            // expected
+        }
+    }
+
+}